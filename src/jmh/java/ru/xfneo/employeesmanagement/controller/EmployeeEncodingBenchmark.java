@@ -0,0 +1,97 @@
+package ru.xfneo.employeesmanagement.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import ru.xfneo.employeesmanagement.config.EmployeeProtobufHttpMessageConverter;
+import ru.xfneo.employeesmanagement.model.Employee;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encoding of the list endpoint response by the message converter of every format, optionally gzipped
+ * like "server.compression" does. Wire sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeEncodingBenchmark {
+    private static final Type EMPLOYEE_LIST_TYPE = new TypeReference<List<Employee>>() {
+    }.getType();
+
+    @Param({"json", "smile", "cbor", "protobuf"})
+    private String format;
+    @Param({"false", "true"})
+    private boolean gzip;
+    @Param({"10000"})
+    private int size;
+
+    private GenericHttpMessageConverter<Object> converter;
+    private EmployeeProtobufHttpMessageConverter protobufConverter;
+    private MediaType mediaType;
+    private List<Employee> employees;
+
+    @Setup
+    public void setUp() throws IOException {
+        switch (format) {
+            case "json":
+                converter = new MappingJackson2HttpMessageConverter(Jackson2ObjectMapperBuilder.json().build());
+                break;
+            case "smile":
+                converter = new MappingJackson2SmileHttpMessageConverter(
+                        Jackson2ObjectMapperBuilder.json().factory(new SmileFactory()).build());
+                break;
+            case "cbor":
+                converter = new MappingJackson2CborHttpMessageConverter(
+                        Jackson2ObjectMapperBuilder.json().factory(new CBORFactory()).build());
+                break;
+            default:
+                protobufConverter = new EmployeeProtobufHttpMessageConverter();
+        }
+        mediaType = converter != null ? converter.getSupportedMediaTypes().get(0)
+                : protobufConverter.getSupportedMediaTypes().get(0);
+        employees = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            Employee employee = new Employee(i, i % 100, "firstName" + i, "lastName" + i, "title" + i % 10);
+            employee.setVersion(i % 3);
+            employees.add(employee);
+        }
+        System.out.printf("%n%s of %d employees, gzip %s: %d bytes%n", format, size, gzip, encode().length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+        if (protobufConverter != null) {
+            protobufConverter.write(employees, mediaType, outputMessage);
+        } else {
+            converter.write(employees, EMPLOYEE_LIST_TYPE, mediaType, outputMessage);
+        }
+        byte[] body = outputMessage.getBodyAsBytes();
+        if (!gzip) {
+            return body;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzipOutput = new GZIPOutputStream(compressed)) {
+            gzipOutput.write(body);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,84 @@
+package ru.xfneo.employeesmanagement.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.xfneo.employeesmanagement.model.Employee;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of employee lists as done by the list endpoint (JSON array)
+ * and the stream endpoint (newline delimited JSON).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeSerializationBenchmark {
+    private static final OutputStream DISCARDING_OUTPUT_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Param({"10", "1000", "100000"})
+    private int size;
+
+    private ObjectWriter listWriter;
+    private ObjectWriter streamWriter;
+    private ObjectReader listReader;
+    private List<Employee> employees;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        listWriter = objectMapper.writerFor(new TypeReference<List<Employee>>() {
+        });
+        streamWriter = objectMapper.writerFor(Employee.class)
+                .withRootValueSeparator("\n")
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        listReader = objectMapper.readerFor(new TypeReference<List<Employee>>() {
+        });
+        employees = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            employees.add(new Employee(i, i % 100, "firstName" + i, "lastName" + i, "title" + i % 10));
+        }
+        json = listWriter.writeValueAsBytes(employees);
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws IOException {
+        return listWriter.writeValueAsBytes(employees);
+    }
+
+    @Benchmark
+    public void serializeStream() throws IOException {
+        try (SequenceWriter sequenceWriter = streamWriter.writeValues(DISCARDING_OUTPUT_STREAM)) {
+            for (Employee employee : employees) {
+                sequenceWriter.write(employee);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Employee> deserializeList() throws IOException {
+        return listReader.readValue(json);
+    }
+}
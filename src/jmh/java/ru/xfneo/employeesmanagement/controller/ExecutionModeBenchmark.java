@@ -0,0 +1,109 @@
+package ru.xfneo.employeesmanagement.controller;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import ru.xfneo.employeesmanagement.EmployeeManagementApplication;
+import ru.xfneo.employeesmanagement.client.DepartmentStubServer;
+import ru.xfneo.employeesmanagement.model.Employee;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * "concurrency" employees created by simultaneous HTTP requests to the servlet, the reactive
+ * or the virtual threads (Java 21 runtime) mode.
+ * Every employee has a department not checked before, so every request calls a local department-management-ws stub
+ * answering after "latencyMillis". The department client pool and the bulkhead are sized for all requests,
+ * so the number of request threads is what differs between the modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+    private static final int DEPARTMENTS = 100_000;
+    private static final int MAX_CONNECTIONS = 10000;
+
+    @Param({"servlet", "reactive", "virtual-threads"})
+    private String mode;
+    @Param({"1000"})
+    private int concurrency;
+    @Param({"1000"})
+    private long latencyMillis;
+
+    private DepartmentStubServer departmentStubServer;
+    private ConfigurableApplicationContext context;
+    private WebClient webClient;
+    private long lastDepartmentId;
+
+    @Setup
+    public void setUp() throws IOException {
+        departmentStubServer = new DepartmentStubServer(
+                LongStream.rangeClosed(1, DEPARTMENTS).boxed().collect(Collectors.toList()), latencyMillis);
+        context = new SpringApplicationBuilder(EmployeeManagementApplication.class)
+                .profiles("servlet".equals(mode) ? new String[0] : new String[]{mode})
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.flyway.enabled=false",
+                        "--logging.level.root=WARN",
+                        "--departments.service.url=" + departmentStubServer.url(),
+                        "--departments.client.max-connections=" + MAX_CONNECTIONS,
+                        "--departments.client.max-connections-per-route=" + MAX_CONNECTIONS,
+                        "--departments.client.connect-timeout-ms=60000",
+                        "--departments.client.pool-timeout-ms=60000",
+                        "--departments.client.read-timeout-ms=60000",
+                        "--departments.circuit-breaker.slow-call-duration-ms=60000",
+                        "--departments.bulkhead.max-concurrent-calls=" + MAX_CONNECTIONS,
+                        "--server.tomcat.accept-count=" + MAX_CONNECTIONS);
+        String port = context.getEnvironment().getProperty("local.server.port");
+        webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + port)
+                .clientConnector(new ReactorClientHttpConnector(
+                        HttpClient.create(ConnectionProvider.fixed("benchmark", MAX_CONNECTIONS, 60000))))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        departmentStubServer.close();
+    }
+
+    @Benchmark
+    public List<Integer> createConcurrently() {
+        List<Employee> employees = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            employees.add(new Employee(0, ++lastDepartmentId, "firstName" + i, "lastName" + i, "title"));
+        }
+        return Flux.fromIterable(employees)
+                .flatMap(employee -> webClient.post()
+                        .uri("/api/employees")
+                        .contentType(MediaType.APPLICATION_JSON_UTF8)
+                        .syncBody(employee)
+                        .exchange()
+                        .flatMap(response -> response.bodyToMono(Void.class).thenReturn(response.rawStatusCode())), concurrency)
+                .doOnNext(status -> {
+                    if (status != 201) {
+                        throw new IllegalStateException("Employee is not created, status " + status);
+                    }
+                })
+                .collectList()
+                .block();
+    }
+}
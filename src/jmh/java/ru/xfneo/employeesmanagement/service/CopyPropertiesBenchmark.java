@@ -0,0 +1,43 @@
+package ru.xfneo.employeesmanagement.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.BeanUtils;
+import ru.xfneo.employeesmanagement.model.Employee;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copying of edited employee data in EmployeeService.update by BeanUtils.copyProperties
+ * compared with plain setters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyPropertiesBenchmark {
+    private Employee editedEmployee;
+    private Employee employeeToSave;
+
+    @Setup
+    public void setUp() {
+        editedEmployee = new Employee(2, 2, "firstName2", "lastName2", "title2");
+        employeeToSave = new Employee(1, 1, "firstName1", "lastName1", "title1");
+    }
+
+    @Benchmark
+    public Employee copyProperties() {
+        BeanUtils.copyProperties(editedEmployee, employeeToSave, "id", "version");
+        return employeeToSave;
+    }
+
+    @Benchmark
+    public Employee setters() {
+        employeeToSave.setDepartmentId(editedEmployee.getDepartmentId());
+        employeeToSave.setFirstName(editedEmployee.getFirstName());
+        employeeToSave.setLastName(editedEmployee.getLastName());
+        employeeToSave.setTitle(editedEmployee.getTitle());
+        return employeeToSave;
+    }
+}
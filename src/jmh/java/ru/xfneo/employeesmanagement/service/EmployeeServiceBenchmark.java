@@ -0,0 +1,112 @@
+package ru.xfneo.employeesmanagement.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import ru.xfneo.employeesmanagement.EmployeeManagementApplication;
+import ru.xfneo.employeesmanagement.client.DepartmentStubServer;
+import ru.xfneo.employeesmanagement.model.DepartmentsToReplaceDto;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.repository.EmployeeRepository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * EmployeeService against in-memory H2 and a local department-management-ws stub answering after "latencyMillis".
+ * With "departmentsCacheTtlSeconds" = 0 every department check goes to the stub.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeServiceBenchmark {
+    private static final int EMPLOYEES = 10_000;
+    private static final int DEPARTMENTS = 100;
+
+    @Param({"0", "10"})
+    private long latencyMillis;
+    @Param({"0", "600"})
+    private long departmentsCacheTtlSeconds;
+
+    private DepartmentStubServer departmentStubServer;
+    private ConfigurableApplicationContext context;
+    private EmployeeService employeeService;
+    private List<Long> ids;
+    private long replaceDepartmentInvocations;
+
+    @Setup
+    public void setUp() throws IOException {
+        departmentStubServer = new DepartmentStubServer(
+                LongStream.rangeClosed(1, DEPARTMENTS).boxed().collect(Collectors.toList()), latencyMillis);
+        context = new SpringApplicationBuilder(EmployeeManagementApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.flyway.enabled=false",
+                        "--logging.level.root=WARN",
+                        "--departments.service.url=" + departmentStubServer.url(),
+                        "--departments.cache.positive-ttl-seconds=" + departmentsCacheTtlSeconds);
+        employeeService = context.getBean(EmployeeService.class);
+        List<Employee> employees = new ArrayList<>(EMPLOYEES);
+        for (int i = 0; i < EMPLOYEES; i++) {
+            employees.add(new Employee(0, i % DEPARTMENTS + 1, "firstName" + i, "lastName" + i, "title" + i % 10));
+        }
+        ids = context.getBean(EmployeeRepository.class).saveAll(employees).stream()
+                .map(Employee::getId)
+                .collect(Collectors.toList());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        departmentStubServer.close();
+    }
+
+    @Benchmark
+    public ResponseEntity<?> find() {
+        return employeeService.find(ids.get(ThreadLocalRandom.current().nextInt(ids.size())));
+    }
+
+    @Benchmark
+    public ResponseEntity<?> create() {
+        long departmentId = ThreadLocalRandom.current().nextInt(DEPARTMENTS) + 1;
+        return employeeService.create(new Employee(0, departmentId, "firstName", "lastName", "title"));
+    }
+
+    @Benchmark
+    public ResponseEntity<?> update() {
+        long id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        long departmentId = ThreadLocalRandom.current().nextInt(DEPARTMENTS) + 1;
+        return employeeService.update(id, new Employee(0, departmentId, "firstName", "lastName", "title"));
+    }
+
+    /**
+     * Moves employees of department d to d + DEPARTMENTS / 2 and back on the next call,
+     * so every call transfers the same number of employees.
+     */
+    @Benchmark
+    public ResponseEntity<?> replaceDepartmentId() {
+        long department = replaceDepartmentInvocations / 2 % (DEPARTMENTS / 2) + 1;
+        DepartmentsToReplaceDto departments = new DepartmentsToReplaceDto();
+        if (replaceDepartmentInvocations++ % 2 == 0) {
+            departments.setOldDepartmentID(department);
+            departments.setNewDepartmentID(department + DEPARTMENTS / 2);
+        } else {
+            departments.setOldDepartmentID(department + DEPARTMENTS / 2);
+            departments.setNewDepartmentID(department);
+        }
+        return employeeService.replaceDepartmentId(departments);
+    }
+}
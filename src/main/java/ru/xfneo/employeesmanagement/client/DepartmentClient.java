@@ -3,10 +3,21 @@ package ru.xfneo.employeesmanagement.client;
 import feign.Response;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.Collection;
 
 public interface DepartmentClient {
 
     @GetMapping(value = "/api/departments/{id}")
     Response checkDepartment(@PathVariable("id") long id);
 
+    /**
+     * Bulk lookup answering a JSON array of the existing departments among the ids, each having "id".
+     * department-management-ws without the bulk endpoint answers 404, 405 or 501.
+     * An answer with a department not among the ids, or not a JSON array, is taken as no bulk endpoint too.
+     */
+    @GetMapping(value = "/api/departments")
+    Response checkDepartments(@RequestParam("ids") Collection<Long> ids);
+
 }
@@ -0,0 +1,80 @@
+package ru.xfneo.employeesmanagement.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Per-client rate limiting enabled by "employees.rate-limit.enabled"
+ * and load shedding enabled by "employees.load-shedding.enabled" of the servlet mode /api/employees endpoints.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class AdmissionControlConfig implements WebMvcConfigurer {
+    @Value("${employees.rate-limit.client-header:X-Client-Id}")
+    private String clientHeader;
+    @Value("${employees.rate-limit.trusted-proxies:}")
+    private String[] trustedProxies;
+    @Value("${employees.rate-limit.read-per-second:200}")
+    private double readPerSecond;
+    @Value("${employees.rate-limit.read-burst:400}")
+    private double readBurst;
+    @Value("${employees.rate-limit.write-per-second:50}")
+    private double writePerSecond;
+    @Value("${employees.rate-limit.write-burst:100}")
+    private double writeBurst;
+    @Value("${employees.rate-limit.maximum-clients:100000}")
+    private long maximumClients;
+    @Value("${employees.load-shedding.latency-threshold-ms:2000}")
+    private long latencyThresholdMillis;
+    @Value("${employees.load-shedding.pool-wait-threshold-ms:500}")
+    private long poolWaitThresholdMillis;
+
+    private final ObjectProvider<ClientRateLimiter> rateLimiter;
+    private final ObjectProvider<LoadShedder> loadShedder;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public AdmissionControlConfig(ObjectProvider<ClientRateLimiter> rateLimiter,
+                                  ObjectProvider<LoadShedder> loadShedder,
+                                  ObjectProvider<MeterRegistry> meterRegistry) {
+        this.rateLimiter = rateLimiter;
+        this.loadShedder = loadShedder;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "employees.rate-limit.enabled", havingValue = "true")
+    public ClientRateLimiter clientRateLimiter() {
+        return new ClientRateLimiter(readPerSecond, readBurst, writePerSecond, writeBurst, maximumClients, System::nanoTime);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "employees.load-shedding.enabled", havingValue = "true")
+    public LoadShedder loadShedder(MeterRegistry meterRegistry) {
+        return new LoadShedder(meterRegistry, latencyThresholdMillis, poolWaitThresholdMillis, System::currentTimeMillis);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        ClientRateLimiter clientRateLimiter = rateLimiter.getIfAvailable();
+        LoadShedder shedder = loadShedder.getIfAvailable();
+        if (clientRateLimiter == null && shedder == null) return;
+        registry.addInterceptor(new AdmissionControlInterceptor(clientRateLimiter, shedder,
+                meterRegistry.getObject(), clientHeader, trustedProxies()))
+                .addPathPatterns("/api/employees", "/api/employees/**");
+    }
+
+    private Set<String> trustedProxies() {
+        return Arrays.stream(trustedProxies).map(String::trim).filter(proxy -> !proxy.isEmpty()).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,103 @@
+package ru.xfneo.employeesmanagement.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Admission control of /api/employees, before the controller starts any database or departments service work:
+ * a client over its read or write budget of {@link ClientRateLimiter} gets 429,
+ * any request while {@link LoadShedder} sees an overload gets 503, both with "Retry-After".
+ * Clients are identified by the "employees.rate-limit.client-header" header only if the request comes
+ * from one of "employees.rate-limit.trusted-proxies" (which set the header themselves), by the remote address otherwise,
+ * so a client can not get fresh budgets by sending another header value with every request.
+ * Every rejected request increments "employees.shed" tagged with the reason and the budget (read or write).
+ */
+public class AdmissionControlInterceptor implements AsyncHandlerInterceptor {
+    static final String SHED_METRIC = "employees.shed";
+    static final String RATE_LIMIT = "rate_limit";
+    private static final String STARTED_AT = AdmissionControlInterceptor.class.getName() + ".STARTED_AT";
+    private static final Set<String> READ_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final ClientRateLimiter rateLimiter;
+    private final LoadShedder loadShedder;
+    private final MeterRegistry meterRegistry;
+    private final String clientHeader;
+    private final Set<String> trustedProxies;
+
+    /**
+     * @param rateLimiter    null to disable rate limiting
+     * @param loadShedder    null to disable load shedding
+     * @param trustedProxies remote addresses whose client header is trusted
+     */
+    public AdmissionControlInterceptor(ClientRateLimiter rateLimiter, LoadShedder loadShedder,
+                                       MeterRegistry meterRegistry, String clientHeader, Set<String> trustedProxies) {
+        this.rateLimiter = rateLimiter;
+        this.loadShedder = loadShedder;
+        this.meterRegistry = meterRegistry;
+        this.clientHeader = clientHeader;
+        this.trustedProxies = trustedProxies;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        // an asynchronous dispatch continues a request which was admitted already
+        if (request.getDispatcherType() == DispatcherType.ASYNC) return true;
+        boolean write = !READ_METHODS.contains(request.getMethod());
+        if (rateLimiter != null && !rateLimiter.tryAcquire(client(request), write)) {
+            return reject(response, HttpStatus.TOO_MANY_REQUESTS, RATE_LIMIT, write,
+                    "Too many requests from this client, retry later!");
+        }
+        if (loadShedder != null) {
+            String reason = loadShedder.shedReason();
+            if (reason != null) {
+                return reject(response, HttpStatus.SERVICE_UNAVAILABLE, reason, write,
+                        "Service is overloaded, retry later!");
+            }
+            request.setAttribute(STARTED_AT, loadShedder.begin());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        end(request);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        end(request);
+    }
+
+    private void end(HttpServletRequest request) {
+        Object startedAt = request.getAttribute(STARTED_AT);
+        if (startedAt == null) return;
+        request.removeAttribute(STARTED_AT);
+        loadShedder.end((Long) startedAt);
+    }
+
+    private String client(HttpServletRequest request) {
+        String remoteAddress = request.getRemoteAddr();
+        if (!trustedProxies.contains(remoteAddress)) return remoteAddress;
+        String client = request.getHeader(clientHeader);
+        return client == null || client.isEmpty() ? remoteAddress : client;
+    }
+
+    private boolean reject(HttpServletResponse response, HttpStatus status, String reason, boolean write, String message)
+            throws IOException {
+        meterRegistry.counter(SHED_METRIC, "reason", reason, "budget", write ? "write" : "read").increment();
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write(message);
+        return false;
+    }
+}
@@ -0,0 +1,72 @@
+package ru.xfneo.employeesmanagement.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets of every client, one for reads and one for writes: a bucket holds up to "burst" tokens,
+ * refilled at "per-second" tokens per second, and every request takes one token or is rejected.
+ * Buckets of clients idle for 10 minutes are dropped (a returning client starts with a full bucket).
+ */
+public class ClientRateLimiter {
+    private final double readPerSecond;
+    private final double readBurst;
+    private final double writePerSecond;
+    private final double writeBurst;
+    private final LongSupplier nanoTime;
+    private final Cache<String, Buckets> buckets;
+
+    public ClientRateLimiter(double readPerSecond, double readBurst, double writePerSecond, double writeBurst,
+                             long maximumClients, LongSupplier nanoTime) {
+        this.readPerSecond = readPerSecond;
+        this.readBurst = readBurst;
+        this.writePerSecond = writePerSecond;
+        this.writeBurst = writeBurst;
+        this.nanoTime = nanoTime;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maximumClients)
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * @return true if the client has a token left for the request.
+     */
+    public boolean tryAcquire(String client, boolean write) {
+        Buckets clientBuckets = buckets.get(client, key -> new Buckets(nanoTime.getAsLong()));
+        return write
+                ? clientBuckets.write.tryAcquire(writePerSecond, writeBurst, nanoTime.getAsLong())
+                : clientBuckets.read.tryAcquire(readPerSecond, readBurst, nanoTime.getAsLong());
+    }
+
+    private class Buckets {
+        private final TokenBucket read;
+        private final TokenBucket write;
+
+        Buckets(long now) {
+            read = new TokenBucket(readBurst, now);
+            write = new TokenBucket(writeBurst, now);
+        }
+    }
+
+    private static class TokenBucket {
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        synchronized boolean tryAcquire(double perSecond, double burst, long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * perSecond / TimeUnit.SECONDS.toNanos(1));
+            refilledAt = now;
+            if (tokens < 1) return false;
+            tokens--;
+            return true;
+        }
+    }
+}
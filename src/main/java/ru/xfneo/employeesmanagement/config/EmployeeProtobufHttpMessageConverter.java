@@ -0,0 +1,139 @@
+package ru.xfneo.employeesmanagement.config;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeFieldsPage;
+import ru.xfneo.employeesmanagement.model.EmployeesPage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes employees, lists and pages of employees, whole or sparse fieldsets, as "application/x-protobuf"
+ * messages of "proto/employee.proto". Messages are encoded directly from the model, so no code is generated from the schema.
+ * Only endpoints listing "application/x-protobuf" in "produces" are written as protobuf,
+ * other lists and maps (like error attributes) stay with the JSON converter for any Accept header.
+ */
+public class EmployeeProtobufHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+    public static final String APPLICATION_X_PROTOBUF_VALUE = "application/x-protobuf";
+
+    private static final int EMPLOYEE_ID = 1;
+    private static final int EMPLOYEE_DEPARTMENT_ID = 2;
+    private static final int EMPLOYEE_FIRST_NAME = 3;
+    private static final int EMPLOYEE_LAST_NAME = 4;
+    private static final int EMPLOYEE_TITLE = 5;
+    private static final int EMPLOYEE_VERSION = 6;
+    private static final int EMPLOYEES = 1;
+    private static final int NEXT_CURSOR = 2;
+
+    public EmployeeProtobufHttpMessageConverter() {
+        super(MediaType.parseMediaType(APPLICATION_X_PROTOBUF_VALUE));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Employee.class.isAssignableFrom(clazz)
+                || Map.class.isAssignableFrom(clazz)
+                || List.class.isAssignableFrom(clazz)
+                || EmployeesPage.class.isAssignableFrom(clazz)
+                || EmployeeFieldsPage.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return mediaType != null && !mediaType.isWildcardType() && super.canWrite(clazz, mediaType);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Protobuf requests are not supported", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Object body, HttpOutputMessage outputMessage) throws IOException {
+        CodedOutputStream output = CodedOutputStream.newInstance(outputMessage.getBody());
+        if (body instanceof EmployeesPage) {
+            EmployeesPage page = (EmployeesPage) body;
+            writeEmployees(page.getEmployees(), output);
+            writeNextCursor(page.getNextCursor(), output);
+        } else if (body instanceof EmployeeFieldsPage) {
+            EmployeeFieldsPage page = (EmployeeFieldsPage) body;
+            writeEmployees(page.getEmployees(), output);
+            writeNextCursor(page.getNextCursor(), output);
+        } else if (body instanceof List) {
+            writeEmployees((List<?>) body, output);
+        } else {
+            writeEmployeeFields(fields(body), output);
+        }
+        output.flush();
+    }
+
+    private static void writeEmployees(List<?> employees, CodedOutputStream output) throws IOException {
+        for (Object employee : employees) {
+            Object[] fields = fields(employee);
+            output.writeTag(EMPLOYEES, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(employeeSize(fields));
+            writeEmployeeFields(fields, output);
+        }
+    }
+
+    private static void writeNextCursor(Long nextCursor, CodedOutputStream output) throws IOException {
+        if (nextCursor != null) {
+            output.writeInt64(NEXT_CURSOR, nextCursor);
+        }
+    }
+
+    /**
+     * Values of the Employee message fields by field number, null if the field is not sent.
+     */
+    private static Object[] fields(Object employee) {
+        if (employee instanceof Employee) {
+            Employee whole = (Employee) employee;
+            return new Object[]{null, whole.getId(), whole.getDepartmentId(), whole.getFirstName(),
+                    whole.getLastName(), whole.getTitle(), whole.getVersion()};
+        }
+        if (employee instanceof Map) {
+            Map<?, ?> sparse = (Map<?, ?>) employee;
+            return new Object[]{null, sparse.get("id"), sparse.get("departmentId"), sparse.get("firstName"),
+                    sparse.get("lastName"), sparse.get("title"), sparse.get("version")};
+        }
+        throw new HttpMessageNotWritableException("Only employees can be written as protobuf");
+    }
+
+    private static int employeeSize(Object[] fields) {
+        int size = 0;
+        for (int field = EMPLOYEE_ID; field <= EMPLOYEE_VERSION; field++) {
+            Object value = fields[field];
+            if (value instanceof Number && ((Number) value).longValue() != 0) {
+                size += CodedOutputStream.computeInt64Size(field, ((Number) value).longValue());
+            } else if (value instanceof String && !((String) value).isEmpty()) {
+                size += CodedOutputStream.computeStringSize(field, (String) value);
+            }
+        }
+        return size;
+    }
+
+    private static void writeEmployeeFields(Object[] fields, CodedOutputStream output) throws IOException {
+        for (int field = EMPLOYEE_ID; field <= EMPLOYEE_VERSION; field++) {
+            Object value = fields[field];
+            if (value instanceof Number && ((Number) value).longValue() != 0) {
+                output.writeInt64(field, ((Number) value).longValue());
+            } else if (value instanceof String && !((String) value).isEmpty()) {
+                output.writeString(field, (String) value);
+            }
+        }
+    }
+}
@@ -2,28 +2,82 @@ package ru.xfneo.employeesmanagement.config;
 
 import feign.Feign;
 import feign.Logger;
+import feign.Request;
+import feign.Retryer;
+import feign.httpclient.ApacheHttpClient;
 import feign.jackson.JacksonDecoder;
 import feign.jackson.JacksonEncoder;
+import feign.slf4j.Slf4jLogger;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.openfeign.support.SpringMvcContract;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import ru.xfneo.employeesmanagement.client.DepartmentClient;
 
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class FeignConfig {
 
     @Value("${departments.service.url}")
     private String departmentServiceUrl;
+    @Value("${departments.client.connect-timeout-ms:1000}")
+    private int connectTimeoutMillis;
+    @Value("${departments.client.read-timeout-ms:3000}")
+    private int readTimeoutMillis;
+    @Value("${departments.client.pool-timeout-ms:1000}")
+    private int poolTimeoutMillis;
+    @Value("${departments.client.max-connections:200}")
+    private int maxConnections;
+    @Value("${departments.client.max-connections-per-route:50}")
+    private int maxConnectionsPerRoute;
+    @Value("${departments.client.keep-alive-ms:30000}")
+    private long keepAliveMillis;
+    @Value("${departments.client.log-level:NONE}")
+    private Logger.Level logLevel;
+
+    /**
+     * Pooled HTTP client with keep-alive for department-management-ws,
+     * idle connections are kept at most "departments.client.keep-alive-ms".
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient departmentHttpClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+                .disableCookieManagement()
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(poolTimeoutMillis)
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setSocketTimeout(readTimeoutMillis)
+                        .build())
+                .build();
+    }
 
     @Bean
-    public DepartmentClient departmentClientService() {
+    public DepartmentClient departmentClientService(CloseableHttpClient departmentHttpClient) {
         return Feign.builder()
+                .client(new ApacheHttpClient(departmentHttpClient))
+                .options(new Request.Options(connectTimeoutMillis, readTimeoutMillis))
+                .retryer(Retryer.NEVER_RETRY)
                 .contract(new SpringMvcContract())
                 .encoder(new JacksonEncoder())
                 .decoder(new JacksonDecoder())
-                .logger(new Logger.ErrorLogger())
-                .logLevel(Logger.Level.FULL)
+                .logger(new Slf4jLogger(DepartmentClient.class))
+                .logLevel(logLevel)
                 .target(DepartmentClient.class, departmentServiceUrl);
     }
 
@@ -0,0 +1,122 @@
+package ru.xfneo.employeesmanagement.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Overload signals of the servlet mode, checked before a request reaches the controller:
+ * <ul>
+ * <li>latency: average age of the requests in flight, a request stops being in flight when it returns
+ * or starts streaming asynchronously (exports and imports);</li>
+ * <li>pool wait: average time to get a connection from the Hikari pools during the last sample,
+ * or the sample period if threads are waiting and none got a connection.</li>
+ * </ul>
+ * Once a signal crosses its threshold requests are shed with the probability growing linearly
+ * from 0 at the threshold to 1 at twice the threshold, so the admitted load adapts to the overload
+ * instead of flapping between all and nothing.
+ */
+public class LoadShedder {
+    static final String LATENCY = "latency";
+    static final String POOL_WAIT = "pool_wait";
+    private static final String ACQUIRE_TIMER = "hikaricp.connections.acquire";
+    private static final String PENDING_GAUGE = "hikaricp.connections.pending";
+
+    private final MeterRegistry meterRegistry;
+    private final long latencyThresholdMillis;
+    private final long poolWaitThresholdMillis;
+    private final LongSupplier currentTimeMillis;
+    private final long startedAt;
+    private final LongAdder inFlight = new LongAdder();
+    /**
+     * Sum of the start times of the requests in flight, relative to {@link #startedAt} so it does not overflow.
+     */
+    private final LongAdder inFlightStartSum = new LongAdder();
+    private volatile long poolWaitMillis;
+    private long sampledAt;
+    private long acquireCount;
+    private double acquireNanos;
+
+    public LoadShedder(MeterRegistry meterRegistry, long latencyThresholdMillis, long poolWaitThresholdMillis,
+                       LongSupplier currentTimeMillis) {
+        this.meterRegistry = meterRegistry;
+        this.latencyThresholdMillis = latencyThresholdMillis;
+        this.poolWaitThresholdMillis = poolWaitThresholdMillis;
+        this.currentTimeMillis = currentTimeMillis;
+        this.startedAt = currentTimeMillis.getAsLong();
+        this.sampledAt = startedAt;
+        Gauge.builder("employees.requests.in-flight", inFlight, LongAdder::sum)
+                .description("Requests to /api/employees being handled")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the signal over its threshold if the request must be shed, or null to admit it
+     */
+    public String shedReason() {
+        if (shouldShed(getInFlightLatencyMillis(), latencyThresholdMillis)) return LATENCY;
+        if (shouldShed(poolWaitMillis, poolWaitThresholdMillis)) return POOL_WAIT;
+        return null;
+    }
+
+    /**
+     * @return start time of the admitted request, to pass to {@link #end(long)}
+     */
+    public long begin() {
+        long start = currentTimeMillis.getAsLong() - startedAt;
+        inFlightStartSum.add(start);
+        inFlight.increment();
+        return start;
+    }
+
+    public void end(long start) {
+        inFlight.decrement();
+        inFlightStartSum.add(-start);
+    }
+
+    public long getInFlightLatencyMillis() {
+        long count = inFlight.sum();
+        if (count <= 0) return 0;
+        return Math.max(0, currentTimeMillis.getAsLong() - startedAt - inFlightStartSum.sum() / count);
+    }
+
+    public long getPoolWaitMillis() {
+        return poolWaitMillis;
+    }
+
+    /**
+     * Sample the Hikari acquire timers of all pools (the primary and the replicas).
+     */
+    @Scheduled(fixedDelayString = "${employees.load-shedding.sample-ms:1000}")
+    public synchronized void samplePoolWait() {
+        long now = currentTimeMillis.getAsLong();
+        long count = 0;
+        double nanos = 0;
+        for (Timer timer : meterRegistry.find(ACQUIRE_TIMER).timers()) {
+            count += timer.count();
+            nanos += timer.totalTime(TimeUnit.NANOSECONDS);
+        }
+        double pending = meterRegistry.find(PENDING_GAUGE).gauges().stream().mapToDouble(Gauge::value).sum();
+        long acquired = count - acquireCount;
+        if (acquired > 0) {
+            poolWaitMillis = TimeUnit.NANOSECONDS.toMillis((long) ((nanos - acquireNanos) / acquired));
+        } else {
+            poolWaitMillis = pending > 0 ? now - sampledAt : 0;
+        }
+        acquireCount = count;
+        acquireNanos = nanos;
+        sampledAt = now;
+    }
+
+    private static boolean shouldShed(long value, long threshold) {
+        if (threshold <= 0 || value <= threshold) return false;
+        double probability = (double) (value - threshold) / threshold;
+        return probability >= 1 || ThreadLocalRandom.current().nextDouble() < probability;
+    }
+}
@@ -0,0 +1,24 @@
+package ru.xfneo.employeesmanagement.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Latency timers in addition to the ones of Spring Boot (http.server.requests, hikaricp.*):
+ * "employees.service" for methods annotated with @Timed and "employees.db" for repository calls.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Bean
+    public RepositoryMetricsAspect repositoryMetricsAspect(MeterRegistry meterRegistry) {
+        return new RepositoryMetricsAspect(meterRegistry);
+    }
+}
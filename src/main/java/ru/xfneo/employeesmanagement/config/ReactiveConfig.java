@@ -0,0 +1,81 @@
+package ru.xfneo.employeesmanagement.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reactive execution mode enabled by "reactive" profile: WebFlux on Netty event loops,
+ * non-blocking WebClient for department-management-ws and a bounded scheduler for JPA calls.
+ * Department calls can not pile up in the connection pool: the bulkhead admits fewer calls
+ * ("departments.bulkhead.max-concurrent-calls") than there are connections, and an acquisition waits
+ * at most "departments.client.pool-timeout-ms".
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig {
+
+    @Value("${departments.service.url}")
+    private String departmentServiceUrl;
+    @Value("${departments.client.connect-timeout-ms:1000}")
+    private int connectTimeoutMillis;
+    @Value("${departments.client.pool-timeout-ms:1000}")
+    private long poolTimeoutMillis;
+    @Value("${departments.client.max-connections:200}")
+    private int maxConnections;
+    @Value("${employees.reactive.jdbc-threads:10}")
+    private int jdbcThreads;
+    @Value("${employees.reactive.jdbc-queue-size:100}")
+    private int jdbcQueueSize;
+
+    /**
+     * Netty is preferred over Tomcat, which Spring Boot would pick for WebFlux as it is on the classpath too.
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public WebClient departmentWebClient() {
+        HttpClient httpClient = HttpClient
+                .create(ConnectionProvider.fixed("departments", maxConnections, poolTimeoutMillis))
+                .tcpConfiguration(tcpClient -> tcpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis));
+        return WebClient.builder()
+                .baseUrl(departmentServiceUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    /**
+     * JDBC is blocking, so repository calls run on as many threads as there are pooled connections,
+     * never on event loop threads.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jdbcScheduler() {
+        return jdbcScheduler(jdbcThreads, jdbcQueueSize);
+    }
+
+    /**
+     * At most "employees.reactive.jdbc-queue-size" calls wait for a thread, a call beyond them is rejected at once
+     * (the controller answers 503) instead of waiting behind a backlog the pool can not work off in time.
+     */
+    static Scheduler jdbcScheduler(int threads, int queueSize) {
+        return Schedulers.fromExecutorService(new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("jdbc-"), new ThreadPoolExecutor.AbortPolicy()));
+    }
+}
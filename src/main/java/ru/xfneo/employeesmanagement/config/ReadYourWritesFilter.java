@@ -0,0 +1,62 @@
+package ru.xfneo.employeesmanagement.config;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Read-your-writes stickiness of {@link ReplicaRoutingDataSource}: a request which may change employees
+ * (any method but GET, HEAD and OPTIONS) gets a cookie valid for "employees.datasource.read-your-writes-ms",
+ * while the client sends it back all its reads go to the primary, so it sees its own changes not yet replicated.
+ * Requests without the cookie read from one replica for the whole request.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+    static final String PRIMARY_UNTIL_COOKIE = "EMPLOYEES_PRIMARY_UNTIL";
+    private static final Set<String> READ_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final long windowMillis;
+
+    public ReadYourWritesFilter(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        boolean write = !READ_METHODS.contains(request.getMethod());
+        if (write) {
+            Cookie cookie = new Cookie(PRIMARY_UNTIL_COOKIE, String.valueOf(now + windowMillis));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, (windowMillis + 999) / 1000));
+            response.addCookie(cookie);
+        }
+        ReplicaRoutingDataSource.beginRequest(write || primaryUntil(request) > now);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.endRequest();
+        }
+    }
+
+    private static long primaryUntil(HttpServletRequest request) {
+        if (request.getCookies() == null) return 0;
+        for (Cookie cookie : request.getCookies()) {
+            if (PRIMARY_UNTIL_COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
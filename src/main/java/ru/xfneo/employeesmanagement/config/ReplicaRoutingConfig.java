@@ -0,0 +1,86 @@
+package ru.xfneo.employeesmanagement.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read replicas enabled by "employees.datasource.replica-urls" (comma separated JDBC URLs):
+ * read-only transactions go to the replicas, everything else, including Flyway migrations, to "spring.datasource.url".
+ * Every replica gets its own pool configured by "spring.datasource.hikari.*" like the primary one.
+ */
+@Configuration
+@ConditionalOnExpression("!'${employees.datasource.replica-urls:}'.isEmpty()")
+public class ReplicaRoutingConfig {
+    @Value("${employees.datasource.replica-urls}")
+    private String[] replicaUrls;
+    @Value("${employees.datasource.replica-username:${spring.datasource.username:}}")
+    private String replicaUsername;
+    @Value("${employees.datasource.replica-password:${spring.datasource.password:}}")
+    private String replicaPassword;
+    @Value("${employees.datasource.replica-validation-timeout-seconds:1}")
+    private int validationTimeoutSeconds;
+    @Value("${employees.datasource.read-your-writes-ms:5000}")
+    private long readYourWritesMillis;
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties properties, Environment environment,
+                                                             MeterRegistry meterRegistry) {
+        DataSource primary = pool(properties, environment, meterRegistry, "primary",
+                properties.determineUrl(), properties.determineUsername(), properties.determinePassword());
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < replicaUrls.length; i++) {
+            String name = "replica-" + (i + 1);
+            replicas.put(name, pool(properties, environment, meterRegistry, name,
+                    replicaUrls[i].trim(), replicaUsername, replicaPassword));
+        }
+        ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primary, replicas, validationTimeoutSeconds);
+        Gauge.builder("employees.datasource.replicas.healthy", routingDataSource, ReplicaRoutingDataSource::getHealthyReplicas)
+                .description("Replicas receiving read-only transactions")
+                .register(meterRegistry);
+        return routingDataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter() {
+        FilterRegistrationBean<ReadYourWritesFilter> registration =
+                new FilterRegistrationBean<>(new ReadYourWritesFilter(readYourWritesMillis));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+
+    private static HikariDataSource pool(DataSourceProperties properties, Environment environment,
+                                         MeterRegistry meterRegistry, String name,
+                                         String url, String username, String password) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class)
+                .url(url).username(username).password(password).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        dataSource.setPoolName(name);
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return dataSource;
+    }
+}
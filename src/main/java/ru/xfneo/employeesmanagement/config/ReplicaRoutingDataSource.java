@@ -0,0 +1,148 @@
+package ru.xfneo.employeesmanagement.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends connections of read-only transactions ({@code @Transactional(readOnly = true)}) to the replicas round-robin
+ * and all other connections to the primary. Must be wrapped into a LazyConnectionDataSourceProxy,
+ * so the connection is taken on the first statement, after the transaction is marked read-only.
+ * A replica failing to give a connection or its health check is ejected until its health check passes again,
+ * reads go to the primary while no replica is healthy.
+ * Within a request ({@link #beginRequest(boolean)}) all read-only transactions use the same replica,
+ * so e.g. the list version and the list are read from one replica, or all of them use the primary.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+    private static final String PRIMARY = "primary";
+    private static final ThreadLocal<RequestRouting> REQUEST_ROUTING = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final Map<String, DataSource> replicas;
+    private final List<String> replicaNames;
+    private final Set<String> ejected = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger next = new AtomicInteger();
+    private final int validationTimeoutSeconds;
+
+    /**
+     * @param primary                  data source of all writes
+     * @param replicas                 data sources of read-only transactions by name
+     * @param validationTimeoutSeconds time a replica has to answer its health check
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, int validationTimeoutSeconds) {
+        this.primary = primary;
+        this.replicas = new LinkedHashMap<>(replicas);
+        this.replicaNames = new ArrayList<>(replicas.keySet());
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    /**
+     * Start routing all read-only transactions of the current thread to one replica,
+     * or to the primary if the client has to read its own writes.
+     * Must be followed by {@link #endRequest()}.
+     */
+    public static void beginRequest(boolean primaryOnly) {
+        REQUEST_ROUTING.set(new RequestRouting(primaryOnly));
+    }
+
+    public static void endRequest() {
+        REQUEST_ROUTING.remove();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        String name = determineDataSource();
+        if (PRIMARY.equals(name)) return primary.getConnection();
+        try {
+            return replicas.get(name).getConnection();
+        } catch (SQLException e) {
+            eject(name, e);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Connections use the credentials of the primary and replica pools");
+    }
+
+    public int getHealthyReplicas() {
+        return replicaNames.size() - ejected.size();
+    }
+
+    /**
+     * Validate a connection of every replica, ejecting the failed ones and readmitting the recovered ones.
+     */
+    @Scheduled(fixedDelayString = "${employees.datasource.replica-check-ms:5000}")
+    public void checkReplicas() {
+        replicas.forEach((name, replica) -> {
+            try (Connection connection = replica.getConnection()) {
+                if (!connection.isValid(validationTimeoutSeconds)) {
+                    eject(name, null);
+                } else if (ejected.remove(name)) {
+                    log.info("Replica {} is healthy again, reads are routed to it", name);
+                }
+            } catch (SQLException e) {
+                eject(name, e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DataSource replica : replicas.values()) {
+            if (replica instanceof AutoCloseable) ((AutoCloseable) replica).close();
+        }
+        if (primary instanceof AutoCloseable) ((AutoCloseable) primary).close();
+    }
+
+    private String determineDataSource() {
+        RequestRouting routing = REQUEST_ROUTING.get();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || routing != null && routing.primaryOnly) {
+            return PRIMARY;
+        }
+        if (routing != null && routing.replica != null && !ejected.contains(routing.replica)) {
+            return routing.replica;
+        }
+        String replica = nextHealthyReplica();
+        if (routing != null) routing.replica = replica;
+        return replica;
+    }
+
+    private String nextHealthyReplica() {
+        for (int i = 0; i < replicaNames.size(); i++) {
+            String name = replicaNames.get(Math.floorMod(next.getAndIncrement(), replicaNames.size()));
+            if (!ejected.contains(name)) return name;
+        }
+        return PRIMARY;
+    }
+
+    private void eject(String name, SQLException cause) {
+        if (ejected.add(name)) {
+            log.warn("Replica {} is ejected, reads are routed to other replicas or the primary", name, cause);
+        }
+    }
+
+    private static class RequestRouting {
+        private final boolean primaryOnly;
+        private String replica;
+
+        RequestRouting(boolean primaryOnly) {
+            this.primaryOnly = primaryOnly;
+        }
+    }
+}
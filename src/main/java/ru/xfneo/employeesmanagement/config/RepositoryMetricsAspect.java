@@ -0,0 +1,51 @@
+package ru.xfneo.employeesmanagement.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.data.repository.Repository;
+
+/**
+ * Times every call of a Spring Data repository in "employees.db" by repository, method and exception.
+ * Methods returning a Stream are timed until the stream is opened, not until it is consumed.
+ */
+@Aspect
+public class RepositoryMetricsAspect {
+    static final String DB_METRIC = "employees.db";
+
+    private final MeterRegistry meterRegistry;
+
+    public RepositoryMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(DB_METRIC)
+                    .tag("repository", repositoryName(joinPoint.getTarget()))
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("exception", exception)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    private static String repositoryName(Object repository) {
+        for (Class<?> repositoryInterface : repository.getClass().getInterfaces()) {
+            if (Repository.class.isAssignableFrom(repositoryInterface)) {
+                return repositoryInterface.getSimpleName();
+            }
+        }
+        return repository.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,92 @@
+package ru.xfneo.employeesmanagement.config;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker and bulkhead guarding calls to department-management-ws.
+ */
+@Configuration
+public class ResilienceConfig {
+    public static final String DEPARTMENTS = "departments";
+
+    @Value("${departments.circuit-breaker.failure-rate-threshold:50}")
+    private float failureRateThreshold;
+    @Value("${departments.circuit-breaker.slow-call-duration-ms:2000}")
+    private long slowCallDurationMillis;
+    @Value("${departments.circuit-breaker.slow-call-rate-threshold:100}")
+    private float slowCallRateThreshold;
+    @Value("${departments.circuit-breaker.sliding-window-size:50}")
+    private int slidingWindowSize;
+    @Value("${departments.circuit-breaker.minimum-number-of-calls:20}")
+    private int minimumNumberOfCalls;
+    @Value("${departments.circuit-breaker.wait-in-open-state-ms:10000}")
+    private long waitInOpenStateMillis;
+    @Value("${departments.circuit-breaker.half-open-probes:3}")
+    private int halfOpenProbes;
+    @Value("${departments.bulkhead.max-concurrent-calls:50}")
+    private int maxConcurrentCalls;
+    @Value("${departments.bulkhead.max-wait-ms:0}")
+    private long maxWaitMillis;
+
+    /**
+     * Opens when the failure or slow call rate of the last calls crosses its threshold,
+     * after "departments.circuit-breaker.wait-in-open-state-ms" lets a few probe calls through (half-open)
+     * and closes again if they succeed.
+     * Calls rejected by the bulkhead are neither failures nor successes for the breaker.
+     */
+    @Bean
+    public CircuitBreaker departmentsCircuitBreaker(MeterRegistry meterRegistry) {
+        CircuitBreaker circuitBreaker = CircuitBreaker.of(DEPARTMENTS, CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(Duration.ofMillis(slowCallDurationMillis))
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .waitDurationInOpenState(Duration.ofMillis(waitInOpenStateMillis))
+                .permittedNumberOfCallsInHalfOpenState(halfOpenProbes)
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .ignoreExceptions(BulkheadFullException.class)
+                .build());
+        Gauge.builder("departments.circuitbreaker.state", circuitBreaker, cb -> cb.getState().getOrder())
+                .description("Circuit breaker state: 0 closed, 1 open, 2 half open")
+                .register(meterRegistry);
+        circuitBreaker.getEventPublisher()
+                .onStateTransition(event -> meterRegistry.counter("departments.circuitbreaker.transitions",
+                        "from", event.getStateTransition().getFromState().name(),
+                        "to", event.getStateTransition().getToState().name()).increment())
+                .onCallNotPermitted(event -> meterRegistry.counter("departments.client.rejected",
+                        "reason", CallNotPermittedException.class.getSimpleName()).increment());
+        return circuitBreaker;
+    }
+
+    /**
+     * Caps concurrent calls to department-management-ws,
+     * calls over the limit wait at most "departments.bulkhead.max-wait-ms" and are rejected then.
+     */
+    @Bean
+    public Bulkhead departmentsBulkhead(MeterRegistry meterRegistry) {
+        Bulkhead bulkhead = Bulkhead.of(DEPARTMENTS, BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(Duration.ofMillis(maxWaitMillis))
+                .build());
+        Gauge.builder("departments.bulkhead.available", bulkhead, b -> b.getMetrics().getAvailableConcurrentCalls())
+                .description("Free slots for concurrent calls to departments service")
+                .register(meterRegistry);
+        bulkhead.getEventPublisher()
+                .onCallRejected(event -> meterRegistry.counter("departments.client.rejected",
+                        "reason", BulkheadFullException.class.getSimpleName()).increment());
+        return bulkhead;
+    }
+}
@@ -1,81 +1,449 @@
 package ru.xfneo.employeesmanagement.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.xfneo.employeesmanagement.model.DepartmentHeadcount;
 import ru.xfneo.employeesmanagement.model.DepartmentsToReplaceDto;
 import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeBatchResult;
+import ru.xfneo.employeesmanagement.model.EmployeeChangesPage;
+import ru.xfneo.employeesmanagement.model.EmployeeValidation;
+import ru.xfneo.employeesmanagement.model.EmployeesPage;
+import ru.xfneo.employeesmanagement.model.TitleHeadcount;
+import ru.xfneo.employeesmanagement.service.DepartmentServiceUnavailableException;
+import ru.xfneo.employeesmanagement.service.EmployeeBulkService;
 import ru.xfneo.employeesmanagement.service.EmployeeService;
+import ru.xfneo.employeesmanagement.service.EmployeeValidationService;
+import ru.xfneo.employeesmanagement.service.IdempotencyService;
+import ru.xfneo.employeesmanagement.service.InvalidCsvHeaderException;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static ru.xfneo.employeesmanagement.config.EmployeeProtobufHttpMessageConverter.APPLICATION_X_PROTOBUF_VALUE;
+import static ru.xfneo.employeesmanagement.config.MessageConvertersConfig.APPLICATION_CBOR_VALUE;
+import static ru.xfneo.employeesmanagement.config.MessageConvertersConfig.APPLICATION_SMILE_VALUE;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/employees")
 @Api(value = "/api", tags = "Employees API")
 public class EmployeesController {
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final String APPLICATION_MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+    /**
+     * Representations of employees, lists and pages in the order of preference of content negotiation.
+     */
+    private static final List<MediaType> REPRESENTATIONS = MediaType.parseMediaTypes(Arrays.asList(
+            MediaType.APPLICATION_JSON_UTF8_VALUE, APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_X_PROTOBUF_VALUE));
+    static final String IDEMPOTENCY_NOTES = "Retries with the same Idempotency-Key header get the stored response " +
+            "of the first request (with header Idempotent-Replayed) without executing it again";
+
     private final EmployeeService employeeService;
+    private final EmployeeBulkService employeeBulkService;
+    private final EmployeeValidationService employeeValidationService;
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public EmployeesController(EmployeeService employeeService) {
+    public EmployeesController(EmployeeService employeeService, EmployeeBulkService employeeBulkService,
+                               EmployeeValidationService employeeValidationService,
+                               IdempotencyService idempotencyService, ObjectMapper objectMapper) {
         this.employeeService = employeeService;
+        this.employeeBulkService = employeeBulkService;
+        this.employeeValidationService = employeeValidationService;
+        this.idempotencyService = idempotencyService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Get the representation content negotiation selects for the Accept header of the request:
+     * every representation compatible with an acceptable media type gets its quality,
+     * the first one of the highest quality wins, JSON without Accept.
+     */
+    private static MediaType representation(WebRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null) return REPRESENTATIONS.get(0);
+        List<MediaType> candidates = new ArrayList<>();
+        try {
+            for (MediaType acceptable : MediaType.parseMediaTypes(accept)) {
+                REPRESENTATIONS.stream()
+                        .filter(acceptable::isCompatibleWith)
+                        .forEach(representation -> candidates.add(representation.copyQualityValue(acceptable)));
+            }
+        } catch (InvalidMediaTypeException e) {
+            return REPRESENTATIONS.get(0);
+        }
+        MediaType.sortBySpecificityAndQuality(candidates);
+        return candidates.isEmpty() ? REPRESENTATIONS.get(0) : candidates.get(0).removeQualityValue();
+    }
+
+    /**
+     * Make the ETag of a version depend on the representation, so a cache or a client never gets 304
+     * for a representation it does not have. JSON keeps the bare version.
+     */
+    private static String representationETag(String version, MediaType representation) {
+        return REPRESENTATIONS.get(0).equals(representation) ? version : version + "-" + representation.getSubtype();
+    }
+
+    /**
+     * Add "Vary: Accept" to the response of an endpoint producing every representation,
+     * and make its ETag, the version of the employee, depend on the representation.
+     */
+    private static ResponseEntity<?> varyByAccept(ResponseEntity<?> response, WebRequest request) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        String eTag = headers.getETag();
+        if (eTag != null) {
+            String weak = eTag.startsWith("W/") ? "W/" : "";
+            String version = eTag.substring(weak.length() + 1, eTag.length() - 1);
+            headers.setETag(weak + "\"" + representationETag(version, representation(request)) + "\"");
+        }
+        headers.setVary(Collections.singletonList(HttpHeaders.ACCEPT));
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+    }
+
+    @ApiOperation(value = "Retrieve a list of all employees", response = Employee.class, responseContainer="List",
+            notes = "With \"fields\" only the listed fields of employees are selected and returned")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully retrieved list"),
+            @ApiResponse(code = 304, message = "List has not changed since the version in If-None-Match"),
+            @ApiResponse(code = 400, message = "Field is not an employee field")
+    })
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_UTF8_VALUE, APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_X_PROTOBUF_VALUE})
+    public ResponseEntity<?> getListOfEmployees(
+            @RequestParam(value = "fields", required = false) Set<String> fields,
+            WebRequest request
+    ){
+        // weak, because Tomcat does not compress responses with a strong ETag
+        String eTag = employeeService.findAllVersion()
+                .map(version -> "W/\"" + representationETag(version.toString(), representation(request)) + "\"")
+                .orElse(null);
+        if (eTag != null && request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).varyBy(HttpHeaders.ACCEPT).build();
+        }
+        ResponseEntity<?> response = employeeService.findAll(fields);
+        if (eTag == null || !response.getStatusCode().is2xxSuccessful()) {
+            return varyByAccept(response, request);
+        }
+        return ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT).body(response.getBody());
+    }
+
+    @ApiOperation(value = "Retrieve a page of employees ordered by id", response = EmployeesPage.class,
+            notes = "With \"fields\" only the listed fields of employees are selected and returned")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully retrieved page"),
+            @ApiResponse(code = 400, message = "Page size is out of range or field is not an employee field")
+    })
+    @GetMapping(value = "/page", produces = {MediaType.APPLICATION_JSON_UTF8_VALUE, APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_X_PROTOBUF_VALUE})
+    public ResponseEntity<?> getPageOfEmployees(
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "fields", required = false) Set<String> fields,
+            WebRequest request
+    ){
+        return varyByAccept(employeeService.findPage(after, size, fields), request);
+    }
+
+    @ApiOperation(value = "Search employees by first name, last name and title, ordered by id",
+            notes = "PREFIX finds words starting with the query, FUZZY finds words similar to the query",
+            response = EmployeesPage.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully retrieved page of found employees"),
+            @ApiResponse(code = 400, message = "Query is too short or page size is out of range")
+    })
+    @GetMapping(value = "/search", produces = {MediaType.APPLICATION_JSON_UTF8_VALUE, APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_X_PROTOBUF_VALUE})
+    public ResponseEntity<?> searchEmployees(
+            @RequestParam(value = "query", required = false) String query,
+            @RequestParam(value = "mode", required = false) EmployeeService.SearchMode mode,
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "size", required = false) Integer size,
+            WebRequest request
+    ){
+        return varyByAccept(employeeService.search(query, mode, after, size), request);
+    }
+
+    @ApiOperation(value = "Retrieve changes of employees numbered after the given change, in commit order",
+            notes = "Without \"since\" returns no changes and the sequence number of the last change to start the sync from",
+            response = EmployeeChangesPage.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully retrieved changes"),
+            @ApiResponse(code = 400, message = "Page size is out of range")
+    })
+    @GetMapping(value = "/changes", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<?> getChangesOfEmployees(
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "size", required = false) Integer size
+    ){
+        return employeeService.findChanges(since, size);
+    }
+
+    @ApiOperation(value = "Export all employees ordered by id as CSV with header or newline delimited JSON")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully exported employees")
+    })
+    @GetMapping(value = "/export", produces = {APPLICATION_NDJSON_VALUE, EmployeeBulkService.TEXT_CSV_VALUE})
+    public ResponseEntity<StreamingResponseBody> exportEmployees(
+            @RequestParam(value = "format", defaultValue = "NDJSON") EmployeeBulkService.Format format
+    ){
+        StreamingResponseBody body = outputStream -> employeeBulkService.exportAll(format, outputStream);
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=employees." + format.name().toLowerCase(Locale.ROOT))
+                .body(body);
+    }
+
+    @ApiOperation(value = "Import employees from CSV with header or newline delimited JSON, ignoring their ids",
+            notes = "Answers newline delimited JSON of an EmployeeBatchResult with the line number as index " +
+                    "for every line which is not created and an EmployeeImportProgress after every chunk, " +
+                    "the last one has \"done\" = true")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Import started"),
+            @ApiResponse(code = 400, message = "CSV header has an unknown column")
+    })
+    @PostMapping(value = "/import", consumes = {APPLICATION_NDJSON_VALUE, EmployeeBulkService.TEXT_CSV_VALUE},
+            produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> importEmployees(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            InputStream inputStream
+    ) throws IOException {
+        EmployeeBulkService.Format format = EmployeeBulkService.Format.of(contentType);
+        Charset charset = contentType.getCharset() == null ? StandardCharsets.UTF_8 : contentType.getCharset();
+        BufferedReader input = new BufferedReader(new InputStreamReader(inputStream, charset));
+        ObjectReader rowReader = employeeBulkService.rowReader(format, input);
+        if (rowReader == null) {
+            throw new InvalidCsvHeaderException();
+        }
+        ObjectWriter writer = objectMapper.writer().withRootValueSeparator("\n");
+        StreamingResponseBody body = outputStream -> {
+            try (SequenceWriter sequenceWriter = writer.writeValues(outputStream)) {
+                employeeBulkService.importAll(format, rowReader, input, report -> {
+                    try {
+                        sequenceWriter.write(report);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
+    }
+
+    @ApiOperation(value = "Retrieve the number of employees of every department having employees, ordered by department id",
+            response = DepartmentHeadcount.class, responseContainer = "List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully counted employees")
+    })
+    @GetMapping(value = "/departments/counts", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<List<DepartmentHeadcount>> countEmployeesByDepartment(){
+        return ResponseEntity.ok(employeeService.countByDepartment());
+    }
+
+    @ApiOperation(value = "Retrieve the number of employees of the department by title, ordered by title",
+            response = TitleHeadcount.class, responseContainer = "List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully counted employees, empty list if the department has no employees")
+    })
+    @GetMapping(value = "/departments/{departmentId}/titles/counts", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<List<TitleHeadcount>> countEmployeesByTitle(@PathVariable("departmentId") long departmentId){
+        return ResponseEntity.ok(employeeService.countByTitle(departmentId));
+    }
+
+    @ApiOperation(value = "Check that the department has employees", response = Boolean.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "true if at least one employee belongs to the department")
+    })
+    @GetMapping(value = "/departments/{departmentId}/exists", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<Boolean> hasEmployees(@PathVariable("departmentId") long departmentId){
+        return ResponseEntity.ok(employeeService.hasEmployees(departmentId));
     }
 
-    @ApiOperation(value = "Retrieve a list of all employees", response = Employee.class, responseContainer="List")
-    @ApiResponse(code = 200, message = "Successfully retrieved list")
-    @GetMapping(produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public List<Employee> getListOfEmployees(){
-        return employeeService.findAll();
+    @ApiOperation(value = "Stream all employees as newline delimited JSON", response = Employee.class, responseContainer="List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully streamed employees")
+    })
+    @GetMapping(value = "/stream", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamEmployees(){
+        ObjectWriter writer = objectMapper.writerFor(Employee.class)
+                .withRootValueSeparator("\n")
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = outputStream -> {
+            try (SequenceWriter sequenceWriter = writer.writeValues(outputStream)) {
+                employeeService.streamAll(employee -> {
+                    try {
+                        sequenceWriter.write(employee);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
     }
 
-    @ApiOperation(value = "Retrieve employee", response = Employee.class)
+    @ApiOperation(value = "Retrieve employee", response = Employee.class,
+            notes = "With \"fields\" only the listed fields of the employee are returned")
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Successfully retrieved employee"),
+            @ApiResponse(code = 304, message = "Employee has not changed since the version in If-None-Match"),
+            @ApiResponse(code = 400, message = "Field is not an employee field"),
             @ApiResponse(code = 404, message = "Employee not found")
     })
-    @GetMapping(value = "{id}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public ResponseEntity<?> getEmployee(@PathVariable("id") Long id){
-        return employeeService.find(id);
+    @GetMapping(value = "{id}", produces = {MediaType.APPLICATION_JSON_UTF8_VALUE, APPLICATION_SMILE_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_X_PROTOBUF_VALUE})
+    public ResponseEntity<?> getEmployee(
+            @PathVariable("id") Long id,
+            @RequestParam(value = "fields", required = false) Set<String> fields,
+            WebRequest request
+    ){
+        return varyByAccept(employeeService.find(id, fields), request);
     }
 
-    @ApiOperation(value = "Create employee", code = 201, response = Employee.class)
+    @ApiOperation(value = "Create employee", code = 201, response = Employee.class,
+            notes = IDEMPOTENCY_NOTES + ". With \"Prefer: respond-async\" the employee is queued without waiting " +
+                    "for the department check and answered with 202 and its status URI as Location")
     @ApiResponses(value = {
             @ApiResponse(code = 201, message = "Successfully created employee"),
-            @ApiResponse(code = 400, message = "Department not found")
+            @ApiResponse(code = 202, message = "Employee is queued for the department check"),
+            @ApiResponse(code = 400, message = "Department not found or Idempotency-Key is too long"),
+            @ApiResponse(code = 409, message = "Request with the same Idempotency-Key is in progress"),
+            @ApiResponse(code = 422, message = "Idempotency-Key is used for another request"),
+            @ApiResponse(code = 503, message = "Departments service unavailable or validation queue is full")
     })
     @PostMapping(produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
     @ResponseStatus(code = HttpStatus.CREATED)
-    public ResponseEntity<?> createEmployee(@RequestBody Employee employee){
-        return employeeService.create(employee);
+    public ResponseEntity<?> createEmployee(
+            @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @RequestHeader(value = EmployeeValidationService.PREFER_HEADER, required = false) String prefer,
+            @RequestBody Employee employee
+    ){
+        if (EmployeeValidationService.respondAsync(prefer)) {
+            return idempotencyService.execute(idempotencyKey, "create async", employee,
+                    () -> employeeValidationService.submit(employee));
+        }
+        return idempotencyService.execute(idempotencyKey, "create", employee, () -> employeeService.create(employee));
+    }
+
+    @ApiOperation(value = "Retrieve status of employee created with \"Prefer: respond-async\"",
+            response = EmployeeValidation.class,
+            notes = "PENDING_VALIDATION until the department is checked, then VALID with the employee id or REJECTED")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully retrieved status"),
+            @ApiResponse(code = 404, message = "Queued employee not found or purged")
+    })
+    @GetMapping(value = "/validations/{id}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<?> getEmployeeValidation(@PathVariable("id") Long id){
+        return employeeValidationService.find(id);
     }
 
-    @ApiOperation(value = "Update employee", response = Employee.class)
+    @ApiOperation(value = "Create list of employees", response = EmployeeBatchResult.class, responseContainer = "List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Processed list, every result has its own status"),
+            @ApiResponse(code = 400, message = "List is empty or too large"),
+            @ApiResponse(code = 503, message = "Departments service unavailable")
+    })
+    @PostMapping(value = "/batch", produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<?> createEmployees(@RequestBody List<Employee> employees){
+        return employeeService.createAll(employees);
+    }
+
+    @ApiOperation(value = "Update list of employees", response = EmployeeBatchResult.class, responseContainer = "List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Processed list, every result has its own status"),
+            @ApiResponse(code = 400, message = "List is empty or too large"),
+            @ApiResponse(code = 503, message = "Departments service unavailable")
+    })
+    @PutMapping(value = "/batch", produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<?> updateEmployees(@RequestBody List<Employee> editedEmployees){
+        return employeeService.updateAll(editedEmployees);
+    }
+
+    @ApiOperation(value = "Update employee", response = Employee.class, notes = IDEMPOTENCY_NOTES)
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Successfully updated employee"),
-            @ApiResponse(code = 400, message = "Employee data is not valid or new department not found"),
-            @ApiResponse(code = 404, message = "Employee for update not found")
+            @ApiResponse(code = 400, message = "Employee data is not valid, new department not found or Idempotency-Key is too long"),
+            @ApiResponse(code = 404, message = "Employee for update not found"),
+            @ApiResponse(code = 409, message = "Employee changed concurrently or request with the same Idempotency-Key is in progress"),
+            @ApiResponse(code = 422, message = "Idempotency-Key is used for another request"),
+            @ApiResponse(code = 503, message = "Departments service unavailable")
     })
     @PutMapping(value = "{id}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
     public ResponseEntity<?> updateEmployee(
+            @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
             @PathVariable("id") Long originalEmployeeId,
             @RequestBody Employee editedEmployee
     ){
-        return employeeService.update(originalEmployeeId, editedEmployee);
+        return idempotencyService.execute(idempotencyKey, "update " + originalEmployeeId, editedEmployee,
+                () -> employeeService.update(originalEmployeeId, editedEmployee));
     }
 
-    @ApiOperation(value = "Transfer all employees from one department to another", response = String.class)
+    @ApiOperation(value = "Change only the given fields of employee", response = Employee.class,
+            notes = "JSON merge patch of departmentId, firstName, lastName and title, null clears a name or title. " +
+                    IDEMPOTENCY_NOTES)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully updated employee"),
+            @ApiResponse(code = 400, message = "Field can not be changed, value is not valid, new department not found or Idempotency-Key is too long"),
+            @ApiResponse(code = 404, message = "Employee for update not found"),
+            @ApiResponse(code = 409, message = "Request with the same Idempotency-Key is in progress"),
+            @ApiResponse(code = 422, message = "Idempotency-Key is used for another request"),
+            @ApiResponse(code = 503, message = "Departments service unavailable")
+    })
+    @PatchMapping(value = "{id}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE,
+            consumes = {MediaType.APPLICATION_JSON_UTF8_VALUE, APPLICATION_MERGE_PATCH_JSON_VALUE})
+    public ResponseEntity<?> patchEmployee(
+            @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @PathVariable("id") Long id,
+            @RequestBody Map<String, Object> fields
+    ){
+        return idempotencyService.execute(idempotencyKey, "patch " + id, fields, () -> employeeService.patch(id, fields));
+    }
+
+    @ApiOperation(value = "Transfer all employees from one department to another", response = String.class,
+            notes = IDEMPOTENCY_NOTES)
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Successfully transferred employees"),
-            @ApiResponse(code = 400, message = "New department not found")
+            @ApiResponse(code = 400, message = "New department not found or Idempotency-Key is too long"),
+            @ApiResponse(code = 409, message = "Request with the same Idempotency-Key is in progress"),
+            @ApiResponse(code = 422, message = "Idempotency-Key is used for another request"),
+            @ApiResponse(code = 503, message = "Departments service unavailable")
     })
     @PostMapping(value = "/replaceDepartment", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public ResponseEntity<?> replaceDepartmentId(@RequestBody DepartmentsToReplaceDto departments){
-        return employeeService.replaceDepartmentId(departments);
+    public ResponseEntity<?> replaceDepartmentId(
+            @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @RequestBody DepartmentsToReplaceDto departments
+    ){
+        return idempotencyService.execute(idempotencyKey, "replaceDepartment", departments,
+                () -> employeeService.replaceDepartmentId(departments));
     }
 
     @ApiOperation(value = "Delete employee", code = 204)
@@ -87,4 +455,19 @@ public class EmployeesController {
     public ResponseEntity<?> deleteEmployee(@PathVariable("id") Long id){
         return employeeService.delete(id);
     }
+
+    @ExceptionHandler(DepartmentServiceUnavailableException.class)
+    public ResponseEntity<?> departmentServiceUnavailable(){
+        return ResponseEntity.status(503).body("Departments service is unavailable, try again later");
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<?> employeeChangedConcurrently(){
+        return ResponseEntity.status(409).body("Employee was changed or deleted concurrently, try again");
+    }
+
+    @ExceptionHandler(InvalidCsvHeaderException.class)
+    public ResponseEntity<String> invalidCsvHeader(InvalidCsvHeaderException e){
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,421 @@
+package ru.xfneo.employeesmanagement.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import ru.xfneo.employeesmanagement.model.DepartmentHeadcount;
+import ru.xfneo.employeesmanagement.model.DepartmentsToReplaceDto;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeesPage;
+import ru.xfneo.employeesmanagement.model.TitleHeadcount;
+import ru.xfneo.employeesmanagement.service.DepartmentServiceUnavailableException;
+import ru.xfneo.employeesmanagement.service.EmployeeBulkService;
+import ru.xfneo.employeesmanagement.service.EmployeeService;
+import ru.xfneo.employeesmanagement.service.EmployeeValidationService;
+import ru.xfneo.employeesmanagement.service.IdempotencyService;
+import ru.xfneo.employeesmanagement.service.InvalidCsvHeaderException;
+import ru.xfneo.employeesmanagement.service.ReactiveDepartmentService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Same contract as {@link EmployeesController} for the reactive mode ("reactive" profile).
+ * Departments are checked by non-blocking {@link ReactiveDepartmentService} before {@link EmployeeService} is called,
+ * so its department checks are cache hits. {@link EmployeeService} runs on the bounded JDBC scheduler,
+ * so event loop threads never block. With "departments.cache.positive-ttl-seconds" = 0 {@link EmployeeService}
+ * checks departments again by the blocking client.
+ */
+@RestController
+@RequestMapping("/api/employees")
+@Profile("reactive")
+public class ReactiveEmployeesController {
+    private final EmployeeService employeeService;
+    private final EmployeeBulkService employeeBulkService;
+    private final EmployeeValidationService employeeValidationService;
+    private final ReactiveDepartmentService departmentService;
+    private final IdempotencyService idempotencyService;
+    private final Scheduler jdbcScheduler;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public ReactiveEmployeesController(EmployeeService employeeService, EmployeeBulkService employeeBulkService,
+                                       EmployeeValidationService employeeValidationService,
+                                       ReactiveDepartmentService departmentService,
+                                       IdempotencyService idempotencyService, Scheduler jdbcScheduler,
+                                       ObjectMapper objectMapper) {
+        this.employeeService = employeeService;
+        this.employeeBulkService = employeeBulkService;
+        this.employeeValidationService = employeeValidationService;
+        this.departmentService = departmentService;
+        this.idempotencyService = idempotencyService;
+        this.jdbcScheduler = jdbcScheduler;
+        this.objectMapper = objectMapper;
+    }
+
+    private <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(jdbcScheduler);
+    }
+
+    /**
+     * The write, including its department checks, is subscribed only if the key is claimed.
+     * The claim is released if the write fails or completes without a response, and on the JDBC scheduler
+     * if the client cancels the request (disconnects) after the key is claimed or while it is being claimed.
+     */
+    private Mono<ResponseEntity<?>> idempotent(String key, String operation, Object request, Mono<ResponseEntity<?>> write) {
+        if (key == null) return write;
+        AtomicBoolean claimed = new AtomicBoolean();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Runnable releaseClaim = () -> {
+            if (claimed.compareAndSet(true, false)) idempotencyService.release(key);
+        };
+        return blocking(() -> {
+            ResponseEntity<?> stored = idempotencyService.begin(key, operation, request);
+            if (stored == null) {
+                claimed.set(true);
+                if (cancelled.get()) releaseClaim.run();
+            }
+            return Optional.<ResponseEntity<?>>ofNullable(stored);
+        })
+                .flatMap(stored -> stored.isPresent()
+                        ? Mono.just(stored.get())
+                        : write.onErrorResume(e -> blocking(() -> {
+                            releaseClaim.run();
+                            return key;
+                        }).then(Mono.error(e)))
+                        .switchIfEmpty(blocking(() -> {
+                            releaseClaim.run();
+                            return key;
+                        }).then(Mono.empty()))
+                        .flatMap(response -> blocking(() -> claimed.compareAndSet(true, false)
+                                ? idempotencyService.complete(key, response)
+                                : response)))
+                .doOnCancel(() -> {
+                    cancelled.set(true);
+                    if (claimed.get()) jdbcScheduler.schedule(releaseClaim);
+                });
+    }
+
+    private Mono<Void> checkDepartments(Collection<Long> departmentIds) {
+        return Flux.fromIterable(departmentIds)
+                .distinct()
+                .flatMap(departmentService::exists)
+                .then();
+    }
+
+    private static List<Long> departmentIds(List<Employee> employees) {
+        return employees == null
+                ? Collections.emptyList()
+                : employees.stream().filter(Objects::nonNull).map(Employee::getDepartmentId).collect(Collectors.toList());
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<ResponseEntity<?>> getListOfEmployees(
+            @RequestParam(value = "fields", required = false) Set<String> fields,
+            ServerWebExchange exchange
+    ){
+        return blocking(employeeService::findAllVersion).flatMap(version -> {
+            String eTag = version.map(Object::toString).orElse(null);
+            if (eTag != null && exchange.checkNotModified(eTag)) {
+                return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build());
+            }
+            return blocking(() -> employeeService.findAll(fields)).map(response ->
+                    eTag != null && response.getStatusCode().is2xxSuccessful()
+                            ? ResponseEntity.ok().eTag(eTag).body(response.getBody())
+                            : response);
+        });
+    }
+
+    @GetMapping(value = "/page", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<ResponseEntity<?>> getPageOfEmployees(
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "fields", required = false) Set<String> fields
+    ){
+        return blocking(() -> employeeService.findPage(after, size, fields));
+    }
+
+    @GetMapping(value = "/search", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<ResponseEntity<?>> searchEmployees(
+            @RequestParam(value = "query", required = false) String query,
+            @RequestParam(value = "mode", required = false) EmployeeService.SearchMode mode,
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "size", required = false) Integer size
+    ){
+        return blocking(() -> employeeService.search(query, mode, after, size));
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<ResponseEntity<?>> getChangesOfEmployees(
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestParam(value = "size", required = false) Integer size
+    ){
+        return blocking(() -> employeeService.findChanges(since, size));
+    }
+
+    /**
+     * Reads employees by keyset pages of the default size like {@link #streamEmployees()},
+     * so unlike the servlet mode the export is not a snapshot of one transaction.
+     */
+    @GetMapping(value = "/export", produces = {EmployeesController.APPLICATION_NDJSON_VALUE, EmployeeBulkService.TEXT_CSV_VALUE})
+    public ResponseEntity<Flux<String>> exportEmployees(
+            @RequestParam(value = "format", defaultValue = "NDJSON") EmployeeBulkService.Format format
+    ){
+        Flux<String> body = page(null)
+                .expand(page -> page.getNextCursor() == null ? Mono.empty() : page(page.getNextCursor()))
+                .index()
+                .map(page -> exportPage(format, page.getT2().getEmployees(), page.getT1() == 0));
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=employees." + format.name().toLowerCase(Locale.ROOT))
+                .body(body);
+    }
+
+    private String exportPage(EmployeeBulkService.Format format, List<Employee> employees, boolean header) {
+        try {
+            return employeeBulkService.exportPage(format, employees, header);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Lines are imported on the JDBC scheduler by buffers of "employees.import.chunk-size" lines,
+     * the next buffer is read when the reports of the previous one are written.
+     */
+    @PostMapping(value = "/import", consumes = {EmployeesController.APPLICATION_NDJSON_VALUE, EmployeeBulkService.TEXT_CSV_VALUE},
+            produces = EmployeesController.APPLICATION_NDJSON_VALUE)
+    public Flux<String> importEmployees(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestBody Flux<String> lines
+    ){
+        EmployeeBulkService.Format format = EmployeeBulkService.Format.of(contentType);
+        return Flux.defer(() -> {
+            AtomicReference<EmployeeBulkService.EmployeeImport> employeeImport = new AtomicReference<>();
+            List<Object> reports = new ArrayList<>();
+            return lines.buffer(employeeBulkService.getChunkSize())
+                    .concatMap(buffer -> blocking(() -> importLines(format, employeeImport, reports, buffer)), 1)
+                    .takeUntil(imported -> employeeImport.get().isStopped())
+                    .concatWith(blocking(() -> {
+                        startImport(format, employeeImport, reports, Collections.emptyIterator()).finish();
+                        return drain(reports);
+                    }))
+                    .concatMapIterable(imported -> imported)
+                    .map(this::toJsonLine);
+        });
+    }
+
+    /**
+     * Add the lines to the import, starting it with the CSV header of the first line.
+     *
+     * @return errors and progress reported while the lines were added
+     */
+    private List<Object> importLines(EmployeeBulkService.Format format,
+                                     AtomicReference<EmployeeBulkService.EmployeeImport> employeeImport,
+                                     List<Object> reports, List<String> lines) throws IOException {
+        Iterator<String> line = lines.iterator();
+        EmployeeBulkService.EmployeeImport started = startImport(format, employeeImport, reports, line);
+        while (line.hasNext() && started.add(line.next())) {
+        }
+        return drain(reports);
+    }
+
+    private EmployeeBulkService.EmployeeImport startImport(EmployeeBulkService.Format format,
+                                                          AtomicReference<EmployeeBulkService.EmployeeImport> employeeImport,
+                                                          List<Object> reports, Iterator<String> lines) {
+        if (employeeImport.get() == null) {
+            ObjectReader rowReader = employeeBulkService.rowReader(format,
+                    format == EmployeeBulkService.Format.CSV && lines.hasNext() ? lines.next() : null);
+            if (rowReader == null) throw new InvalidCsvHeaderException();
+            employeeImport.set(employeeBulkService.startImport(format, rowReader, reports::add));
+        }
+        return employeeImport.get();
+    }
+
+    private static List<Object> drain(List<Object> reports) {
+        List<Object> drained = new ArrayList<>(reports);
+        reports.clear();
+        return drained;
+    }
+
+    @GetMapping(value = "/departments/counts", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<List<DepartmentHeadcount>> countEmployeesByDepartment(){
+        return blocking(employeeService::countByDepartment);
+    }
+
+    @GetMapping(value = "/departments/{departmentId}/titles/counts", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<List<TitleHeadcount>> countEmployeesByTitle(@PathVariable("departmentId") long departmentId){
+        return blocking(() -> employeeService.countByTitle(departmentId));
+    }
+
+    @GetMapping(value = "/departments/{departmentId}/exists", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<Boolean> hasEmployees(@PathVariable("departmentId") long departmentId){
+        return blocking(() -> employeeService.hasEmployees(departmentId));
+    }
+
+    /**
+     * Reads employees by keyset pages of the default size, the next page is read when the client has consumed the previous one.
+     */
+    @GetMapping(value = "/stream", produces = EmployeesController.APPLICATION_NDJSON_VALUE)
+    public Flux<String> streamEmployees(){
+        return page(null)
+                .expand(page -> page.getNextCursor() == null ? Mono.empty() : page(page.getNextCursor()))
+                .concatMapIterable(EmployeesPage::getEmployees)
+                .map(this::toJsonLine);
+    }
+
+    private Mono<EmployeesPage> page(Long after) {
+        return blocking(() -> (EmployeesPage) employeeService.findPage(after, null).getBody());
+    }
+
+    private String toJsonLine(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value) + "\n";
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @GetMapping(value = "{id}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<ResponseEntity<?>> getEmployee(
+            @PathVariable("id") Long id,
+            @RequestParam(value = "fields", required = false) Set<String> fields
+    ){
+        return blocking(() -> employeeService.find(id, fields));
+    }
+
+    @PostMapping(produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    @ResponseStatus(code = HttpStatus.CREATED)
+    public Mono<ResponseEntity<?>> createEmployee(
+            @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @RequestHeader(value = EmployeeValidationService.PREFER_HEADER, required = false) String prefer,
+            @RequestBody Employee employee
+    ){
+        if (EmployeeValidationService.respondAsync(prefer)) {
+            return idempotent(idempotencyKey, "create async", employee,
+                    blocking(() -> employeeValidationService.submit(employee)));
+        }
+        return idempotent(idempotencyKey, "create", employee, checkDepartments(Collections.singleton(employee.getDepartmentId()))
+                .then(blocking(() -> employeeService.create(employee))));
+    }
+
+    @GetMapping(value = "/validations/{id}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<ResponseEntity<?>> getEmployeeValidation(@PathVariable("id") Long id){
+        return blocking(() -> employeeValidationService.find(id));
+    }
+
+    @PostMapping(value = "/batch", produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<ResponseEntity<?>> createEmployees(@RequestBody List<Employee> employees){
+        return checkDepartments(departmentIds(employees))
+                .then(blocking(() -> employeeService.createAll(employees)));
+    }
+
+    @PutMapping(value = "/batch", produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<ResponseEntity<?>> updateEmployees(@RequestBody List<Employee> editedEmployees){
+        return checkDepartments(departmentIds(editedEmployees))
+                .then(blocking(() -> employeeService.updateAll(editedEmployees)));
+    }
+
+    @PutMapping(value = "{id}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<ResponseEntity<?>> updateEmployee(
+            @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @PathVariable("id") Long originalEmployeeId,
+            @RequestBody Employee editedEmployee
+    ){
+        return idempotent(idempotencyKey, "update " + originalEmployeeId, editedEmployee,
+                blocking(() -> employeeService.find(originalEmployeeId))
+                        .flatMap(original -> changesDepartment(original, editedEmployee)
+                                ? checkDepartments(Collections.singleton(editedEmployee.getDepartmentId()))
+                                : Mono.empty())
+                        .then(blocking(() -> employeeService.update(originalEmployeeId, editedEmployee))));
+    }
+
+    /**
+     * Like {@link EmployeeService#update(Long, Employee)}, the department is checked only if it changes.
+     * The cached employee may be stale, the service compares with the employee read for the update
+     * and checks a department changed since by the blocking client.
+     */
+    private static boolean changesDepartment(ResponseEntity<?> original, Employee editedEmployee) {
+        return editedEmployee != null && original.getBody() instanceof Employee
+                && ((Employee) original.getBody()).getDepartmentId() != editedEmployee.getDepartmentId();
+    }
+
+    @PatchMapping(value = "{id}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE,
+            consumes = {MediaType.APPLICATION_JSON_UTF8_VALUE, EmployeesController.APPLICATION_MERGE_PATCH_JSON_VALUE})
+    public Mono<ResponseEntity<?>> patchEmployee(
+            @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @PathVariable("id") Long id,
+            @RequestBody Map<String, Object> fields
+    ){
+        Object departmentId = fields == null ? null : fields.get("departmentId");
+        return idempotent(idempotencyKey, "patch " + id, fields,
+                checkDepartments(departmentId instanceof Integer || departmentId instanceof Long
+                        ? Collections.singleton(((Number) departmentId).longValue())
+                        : Collections.emptySet())
+                        .then(blocking(() -> employeeService.patch(id, fields))));
+    }
+
+    @PostMapping(value = "/replaceDepartment", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Mono<ResponseEntity<?>> replaceDepartmentId(
+            @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @RequestBody DepartmentsToReplaceDto departments
+    ){
+        return idempotent(idempotencyKey, "replaceDepartment", departments,
+                checkDepartments(Collections.singleton(departments.getNewDepartmentID()))
+                        .then(blocking(() -> employeeService.replaceDepartmentId(departments))));
+    }
+
+    @DeleteMapping(value = "{id}")
+    @ResponseStatus(code = HttpStatus.NO_CONTENT)
+    public Mono<ResponseEntity<?>> deleteEmployee(@PathVariable("id") Long id){
+        return blocking(() -> employeeService.delete(id));
+    }
+
+    @ExceptionHandler(DepartmentServiceUnavailableException.class)
+    public ResponseEntity<?> departmentServiceUnavailable(){
+        return ResponseEntity.status(503).body("Departments service is unavailable, try again later");
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<?> jdbcQueueFull(){
+        return ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "1").body("Service is overloaded, retry later!");
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<?> employeeChangedConcurrently(){
+        return ResponseEntity.status(409).body("Employee was changed or deleted concurrently, try again");
+    }
+
+    @ExceptionHandler(InvalidCsvHeaderException.class)
+    public ResponseEntity<String> invalidCsvHeader(InvalidCsvHeaderException e){
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
@@ -0,0 +1,15 @@
+package ru.xfneo.employeesmanagement.model;
+
+import io.swagger.annotations.ApiModel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel
+public class DepartmentHeadcount {
+    private long departmentId;
+    private long count;
+}
@@ -1,8 +1,8 @@
 package ru.xfneo.employeesmanagement.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
@@ -11,20 +11,40 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Version;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "employee_department_id_id_idx", columnList = "departmentId, id"),
+        @Index(name = "employee_department_id_title_idx", columnList = "departmentId, title")
+})
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 @EqualsAndHashCode(of = "id")
 @ApiModel
 public class Employee {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employee_id_generator")
+    @SequenceGenerator(name = "employee_id_generator", sequenceName = "hibernate_sequence", allocationSize = 50)
     @ApiModelProperty(notes = "Used for response only", readOnly = true) // https://github.com/springfox/springfox/issues/895
     private long id;
     private long departmentId;
     private String firstName;
     private String lastName;
     private String title;
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @ApiModelProperty(notes = "Incremented on every change, used for response only", readOnly = true)
+    private long version;
+
+    public Employee(long id, long departmentId, String firstName, String lastName, String title) {
+        this.id = id;
+        this.departmentId = departmentId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.title = title;
+    }
 }
@@ -0,0 +1,28 @@
+package ru.xfneo.employeesmanagement.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel
+public class EmployeeBatchResult {
+    @ApiModelProperty(notes = "Position of the employee in the request")
+    private int index;
+    @ApiModelProperty(notes = "HTTP status the employee would get from the single employee endpoint")
+    private int status;
+    private Employee employee;
+    private String error;
+
+    public static EmployeeBatchResult success(int index, int status, Employee employee) {
+        return new EmployeeBatchResult(index, status, employee, null);
+    }
+
+    public static EmployeeBatchResult failure(int index, int status, String error) {
+        return new EmployeeBatchResult(index, status, null, error);
+    }
+}
@@ -0,0 +1,92 @@
+package ru.xfneo.employeesmanagement.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import java.time.Instant;
+
+/**
+ * Outbox row written in the same transaction as the change of employees.
+ * Ids are drawn before the commit, so a transaction holding a smaller id may still commit after a larger id
+ * is visible. Readers use the sequence number instead, assigned after the commit in commit order
+ * (see {@link ru.xfneo.employeesmanagement.service.EmployeeChangeSequencer}).
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(of = "id")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@ApiModel
+public class EmployeeChangeEvent {
+    public enum Type {
+        CREATED, UPDATED, DELETED, DEPARTMENT_REPLACED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employee_change_event_id_generator")
+    @SequenceGenerator(name = "employee_change_event_id_generator", sequenceName = "employee_change_event_seq", allocationSize = 1)
+    private long id;
+    @ApiModelProperty(notes = "Position in commit order")
+    private Long sequenceNumber;
+    @Enumerated(EnumType.STRING)
+    private Type type;
+    @ApiModelProperty(notes = "Null for DEPARTMENT_REPLACED")
+    private Long employeeId;
+    @ApiModelProperty(notes = "Department of the employee, new department for DEPARTMENT_REPLACED")
+    private long departmentId;
+    @ApiModelProperty(notes = "Old department for DEPARTMENT_REPLACED only")
+    private Long oldDepartmentId;
+    private String firstName;
+    private String lastName;
+    private String title;
+    private Instant createdAt;
+    @JsonIgnore
+    private Instant publishedAt;
+
+    private EmployeeChangeEvent(Type type, long departmentId) {
+        this.type = type;
+        this.departmentId = departmentId;
+        this.createdAt = Instant.now();
+    }
+
+    private static EmployeeChangeEvent snapshot(Type type, Employee employee) {
+        EmployeeChangeEvent event = new EmployeeChangeEvent(type, employee.getDepartmentId());
+        event.employeeId = employee.getId();
+        event.firstName = employee.getFirstName();
+        event.lastName = employee.getLastName();
+        event.title = employee.getTitle();
+        return event;
+    }
+
+    public static EmployeeChangeEvent created(Employee employee) {
+        return snapshot(Type.CREATED, employee);
+    }
+
+    public static EmployeeChangeEvent updated(Employee employee) {
+        return snapshot(Type.UPDATED, employee);
+    }
+
+    public static EmployeeChangeEvent deleted(Employee employee) {
+        EmployeeChangeEvent event = new EmployeeChangeEvent(Type.DELETED, employee.getDepartmentId());
+        event.employeeId = employee.getId();
+        return event;
+    }
+
+    public static EmployeeChangeEvent departmentReplaced(long oldDepartmentId, long newDepartmentId) {
+        EmployeeChangeEvent event = new EmployeeChangeEvent(Type.DEPARTMENT_REPLACED, newDepartmentId);
+        event.oldDepartmentId = oldDepartmentId;
+        return event;
+    }
+}
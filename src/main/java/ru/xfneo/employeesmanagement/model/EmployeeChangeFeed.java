@@ -0,0 +1,24 @@
+package ru.xfneo.employeesmanagement.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * The single row of the change feed: the last sequence number assigned to a change event.
+ * Locked by the sequencer while it numbers committed events, never touched by the writers of employees.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmployeeChangeFeed {
+    public static final long ID = 1;
+
+    @Id
+    private long id;
+    private long lastSequenceNumber;
+}
@@ -0,0 +1,19 @@
+package ru.xfneo.employeesmanagement.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel
+public class EmployeeChangesPage {
+    private List<EmployeeChangeEvent> changes;
+    @ApiModelProperty(notes = "Pass as \"since\" to get the next changes")
+    private long lastSequenceNumber;
+}
@@ -0,0 +1,21 @@
+package ru.xfneo.employeesmanagement.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel
+public class EmployeeFieldsPage {
+    @ApiModelProperty(notes = "Only the requested fields of every employee")
+    private List<Map<String, Object>> employees;
+    @ApiModelProperty(notes = "Pass as \"after\" to get the next page, null on the last page")
+    private Long nextCursor;
+}
@@ -0,0 +1,20 @@
+package ru.xfneo.employeesmanagement.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel
+public class EmployeeImportProgress {
+    @ApiModelProperty(notes = "Lines read so far, including the CSV header")
+    private long lines;
+    private long imported;
+    private long failed;
+    @ApiModelProperty(notes = "True on the last progress of the import")
+    private boolean done;
+}
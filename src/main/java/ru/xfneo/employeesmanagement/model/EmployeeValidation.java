@@ -0,0 +1,79 @@
+package ru.xfneo.employeesmanagement.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Employee created without waiting for the check of its department, queued until the check:
+ * an existing department promotes it to an {@link Employee}, a nonexistent one rejects it.
+ * Pending employees are not visible to the reads of employees.
+ */
+@Entity
+@Table(indexes = @Index(name = "employee_validation_status_id_idx", columnList = "status, id"))
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(of = "id")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@ApiModel
+public class EmployeeValidation {
+    public enum Status {
+        PENDING_VALIDATION, VALID, REJECTED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employee_validation_id_generator")
+    @SequenceGenerator(name = "employee_validation_id_generator", sequenceName = "employee_validation_seq", allocationSize = 50)
+    private long id;
+    @Enumerated(EnumType.STRING)
+    private Status status;
+    private long departmentId;
+    private String firstName;
+    private String lastName;
+    private String title;
+    @ApiModelProperty(notes = "Id of the created employee, for VALID only")
+    private Long employeeId;
+    @ApiModelProperty(notes = "Reason of the rejection, for REJECTED only")
+    private String error;
+    private Instant createdAt;
+    private Instant validatedAt;
+
+    public EmployeeValidation(Employee employee) {
+        this.status = Status.PENDING_VALIDATION;
+        this.departmentId = employee.getDepartmentId();
+        this.firstName = employee.getFirstName();
+        this.lastName = employee.getLastName();
+        this.title = employee.getTitle();
+        this.createdAt = Instant.now();
+    }
+
+    public Employee toEmployee() {
+        return new Employee(0, departmentId, firstName, lastName, title);
+    }
+
+    public void validated(Employee employee) {
+        this.status = Status.VALID;
+        this.employeeId = employee.getId();
+        this.validatedAt = Instant.now();
+    }
+
+    public void rejected(String error) {
+        this.status = Status.REJECTED;
+        this.error = error;
+        this.validatedAt = Instant.now();
+    }
+}
@@ -0,0 +1,19 @@
+package ru.xfneo.employeesmanagement.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel
+public class EmployeesPage {
+    private List<Employee> employees;
+    @ApiModelProperty(notes = "Pass as \"after\" to get the next page, null on the last page")
+    private Long nextCursor;
+}
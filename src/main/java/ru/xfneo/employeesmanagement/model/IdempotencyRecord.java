@@ -0,0 +1,40 @@
+package ru.xfneo.employeesmanagement.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Response of a write made with an Idempotency-Key, replayed to the retries of the write.
+ * Status 0 while the write is in progress.
+ */
+@Entity
+@Table(name = "idempotency_key", indexes = @Index(name = "idempotency_key_created_at_idx", columnList = "createdAt"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+    @Id
+    private String idempotencyKey;
+    /**
+     * Hash of the operation and the request body, a key may be used for one request only.
+     */
+    private String fingerprint;
+    private int status;
+    private boolean jsonBody;
+    @Column(columnDefinition = "text")
+    private String body;
+    /**
+     * JSON object of the response headers replayed with the body (e.g. Location), null if there are none.
+     */
+    @Column(columnDefinition = "text")
+    private String headers;
+    private Instant createdAt;
+}
@@ -0,0 +1,17 @@
+package ru.xfneo.employeesmanagement.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel
+public class TitleHeadcount {
+    @ApiModelProperty(notes = "Null for employees without title")
+    private String title;
+    private long count;
+}
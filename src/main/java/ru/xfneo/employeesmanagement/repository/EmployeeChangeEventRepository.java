@@ -0,0 +1,45 @@
+package ru.xfneo.employeesmanagement.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface EmployeeChangeEventRepository extends JpaRepository<EmployeeChangeEvent, Long> {
+    /**
+     * Keyset page: numbered events with sequence number greater than the cursor, in commit order.
+     */
+    List<EmployeeChangeEvent> findBySequenceNumberGreaterThanOrderBySequenceNumberAsc(long sequenceNumber, Pageable pageable);
+
+    /**
+     * Committed events not numbered yet, served by the partial index on unsequenced events.
+     */
+    List<EmployeeChangeEvent> findBySequenceNumberIsNullOrderByIdAsc(Pageable pageable);
+
+    /**
+     * Oldest numbered events not published by the relay yet, served by the partial index on unpublished events.
+     */
+    List<EmployeeChangeEvent> findBySequenceNumberNotNullAndPublishedAtIsNullOrderBySequenceNumberAsc(Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("update EmployeeChangeEvent e set e.publishedAt = :publishedAt where e.id in :ids")
+    int markPublished(@Param("ids") Collection<Long> ids, @Param("publishedAt") Instant publishedAt);
+
+    /**
+     * Delete the numbered events created before the given instant. Unpublished events are kept for the relay
+     * unless no publisher is configured.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from EmployeeChangeEvent e where e.createdAt < :before and e.sequenceNumber is not null " +
+            "and (e.publishedAt is not null or :withUnpublished = true)")
+    int deleteCreatedBefore(@Param("before") Instant before, @Param("withUnpublished") boolean withUnpublished);
+}
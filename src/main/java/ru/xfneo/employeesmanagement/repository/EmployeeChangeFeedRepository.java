@@ -0,0 +1,25 @@
+package ru.xfneo.employeesmanagement.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeFeed;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+
+public interface EmployeeChangeFeedRepository extends JpaRepository<EmployeeChangeFeed, Long> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from EmployeeChangeFeed f where f.id = :id")
+    Optional<EmployeeChangeFeed> lockById(@Param("id") long id);
+
+    /**
+     * Last sequence number of the feed, or -1 while a committed event is not numbered yet.
+     * One statement, so both are read from the same snapshot.
+     */
+    @Query(value = "select case when exists (select 1 from employee_change_event where sequence_number is null) then -1 " +
+            "else coalesce((select last_sequence_number from employee_change_feed where id = 1), 0) end",
+            nativeQuery = true)
+    Long findVersion();
+}
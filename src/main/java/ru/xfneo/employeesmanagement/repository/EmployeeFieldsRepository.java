@@ -0,0 +1,25 @@
+package ru.xfneo.employeesmanagement.repository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sparse fieldsets: only the requested properties of employees are selected as columns
+ * and returned as rows keyed by property name, in the order of {@link #FIELDS}.
+ */
+public interface EmployeeFieldsRepository {
+    List<String> FIELDS = Collections.unmodifiableList(
+            Arrays.asList("id", "departmentId", "firstName", "lastName", "title", "version"));
+
+    /**
+     * Given properties of all employees ordered by id.
+     */
+    List<Map<String, Object>> findAllFields(List<String> fields);
+
+    /**
+     * Keyset page: given properties of employees with id greater than the cursor, ordered by id.
+     */
+    List<Map<String, Object>> findFieldsByIdGreaterThan(long id, List<String> fields, int limit);
+}
@@ -0,0 +1,54 @@
+package ru.xfneo.employeesmanagement.repository;
+
+import ru.xfneo.employeesmanagement.model.Employee;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class EmployeeFieldsRepositoryImpl implements EmployeeFieldsRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Map<String, Object>> findAllFields(List<String> fields) {
+        return select(fields, null, null);
+    }
+
+    @Override
+    public List<Map<String, Object>> findFieldsByIdGreaterThan(long id, List<String> fields, int limit) {
+        return select(fields, id, limit);
+    }
+
+    private List<Map<String, Object>> select(List<String> fields, Long after, Integer limit) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = criteriaBuilder.createTupleQuery();
+        Root<Employee> employee = query.from(Employee.class);
+        query.multiselect(fields.stream()
+                .map(field -> employee.get(field).alias(field))
+                .collect(Collectors.toList()));
+        if (after != null) {
+            query.where(criteriaBuilder.greaterThan(employee.get("id"), after));
+        }
+        query.orderBy(criteriaBuilder.asc(employee.get("id")));
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        if (limit != null) {
+            typedQuery.setMaxResults(limit);
+        }
+        return typedQuery.getResultList().stream()
+                .map(tuple -> {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    fields.forEach(field -> row.put(field, tuple.get(field)));
+                    return row;
+                })
+                .collect(Collectors.toList());
+    }
+}
@@ -1,10 +1,123 @@
 package ru.xfneo.employeesmanagement.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.xfneo.employeesmanagement.model.DepartmentHeadcount;
 import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.TitleHeadcount;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+public interface EmployeeRepository extends JpaRepository<Employee, Long>, EmployeeFieldsRepository, EmployeeWriteRepository {
+    /**
+     * Lower-cased names and title of the employee, indexed by employee_search_trgm_idx (V6 migration),
+     * search queries must use this exact expression.
+     */
+    String SEARCH_TEXT = "lower(coalesce(first_name, '') || ' ' || coalesce(last_name, '') || ' ' || coalesce(title, ''))";
 
-public interface EmployeeRepository extends JpaRepository<Employee, Long> {
     List<Employee> findByDepartmentId(long departmentId);
+
+    boolean existsByDepartmentId(long departmentId);
+
+    /**
+     * Number of employees of every department having employees, ordered by department id.
+     */
+    @Query("select new ru.xfneo.employeesmanagement.model.DepartmentHeadcount(e.departmentId, count(e)) " +
+            "from Employee e group by e.departmentId order by e.departmentId")
+    List<DepartmentHeadcount> countByDepartment();
+
+    /**
+     * Number of employees of the department by title, ordered by title.
+     */
+    @Query("select new ru.xfneo.employeesmanagement.model.TitleHeadcount(e.title, count(e)) " +
+            "from Employee e where e.departmentId = :departmentId group by e.title order by e.title")
+    List<TitleHeadcount> countByTitle(@Param("departmentId") long departmentId);
+
+    /**
+     * Number of employees by department and title, rows of department id, title and count.
+     */
+    @Query("select e.departmentId, e.title, count(e) from Employee e group by e.departmentId, e.title")
+    List<Object[]> countByDepartmentAndTitle();
+
+    /**
+     * Keyset page: employees with id greater than the cursor, ordered by id.
+     * Only the first page of {@code pageable} is meaningful, no count query is issued.
+     */
+    List<Employee> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+    /**
+     * Server-side cursor over the whole table. Must be consumed and closed inside a transaction.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("select e from Employee e order by e.id")
+    Stream<Employee> streamAll();
+
+    /**
+     * Move all employees of one department to another with a single statement.
+     *
+     * @return number of transferred employees
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update Employee e set e.departmentId = :newDepartmentId, e.version = e.version + 1 " +
+            "where e.departmentId = :oldDepartmentId")
+    int updateDepartmentId(@Param("oldDepartmentId") long oldDepartmentId,
+                           @Param("newDepartmentId") long newDepartmentId);
+
+    /**
+     * Move at most {@code limit} employees of one department to another, each call in its own transaction.
+     *
+     * @return number of transferred employees, less than {@code limit} when the old department is drained
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query(value = "update employee set department_id = :newDepartmentId, version = version + 1 where id in " +
+            "(select id from employee where department_id = :oldDepartmentId limit :limit)", nativeQuery = true)
+    int updateDepartmentIdChunk(@Param("oldDepartmentId") long oldDepartmentId,
+                                @Param("newDepartmentId") long newDepartmentId,
+                                @Param("limit") int limit);
+
+    /**
+     * Keyset page of employees having a word of the names or title starting with the prefix,
+     * PostgreSQL only, served by the trigram index.
+     *
+     * @param prefix     lower-cased LIKE pattern "prefix%"
+     * @param wordPrefix lower-cased LIKE pattern "% prefix%"
+     */
+    @Query(value = "select * from employee where (" + SEARCH_TEXT + " like :prefix or " + SEARCH_TEXT + " like :wordPrefix) " +
+            "and id > :after order by id limit :limit", nativeQuery = true)
+    List<Employee> searchByPrefix(@Param("prefix") String prefix, @Param("wordPrefix") String wordPrefix,
+                                  @Param("after") long after, @Param("limit") int limit);
+
+    /**
+     * Keyset page of employees having a word of the names or title similar to the query
+     * (pg_trgm word similarity above pg_trgm.word_similarity_threshold), PostgreSQL only, served by the trigram index.
+     */
+    @Query(value = "select * from employee where :query <% " + SEARCH_TEXT + " " +
+            "and id > :after order by id limit :limit", nativeQuery = true)
+    List<Employee> searchBySimilarity(@Param("query") String query, @Param("after") long after, @Param("limit") int limit);
+
+    /**
+     * Portable {@link #searchByPrefix} for databases without pg_trgm, scans the table.
+     * Matching a substring with "%query%" as the prefix is the fallback of {@link #searchBySimilarity}.
+     */
+    @Query("select e from Employee e where e.id > :after and (" +
+            "lower(concat(coalesce(e.firstName, ''), ' ', coalesce(e.lastName, ''), ' ', coalesce(e.title, ''))) like :prefix or " +
+            "lower(concat(coalesce(e.firstName, ''), ' ', coalesce(e.lastName, ''), ' ', coalesce(e.title, ''))) like :wordPrefix) " +
+            "order by e.id")
+    List<Employee> searchByPrefixPortable(@Param("prefix") String prefix, @Param("wordPrefix") String wordPrefix,
+                                          @Param("after") long after, Pageable pageable);
 }
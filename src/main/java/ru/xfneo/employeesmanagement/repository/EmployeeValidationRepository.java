@@ -0,0 +1,33 @@
+package ru.xfneo.employeesmanagement.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.xfneo.employeesmanagement.model.EmployeeValidation;
+
+import javax.persistence.LockModeType;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface EmployeeValidationRepository extends JpaRepository<EmployeeValidation, Long> {
+    List<EmployeeValidation> findByStatusOrderByIdAsc(EmployeeValidation.Status status, Pageable pageable);
+
+    long countByStatus(EmployeeValidation.Status status);
+
+    /**
+     * Lock the rows still having the status until the end of the transaction,
+     * so rows are validated once when workers of several instances read the same batch.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<EmployeeValidation> findByIdInAndStatus(Collection<Long> ids, EmployeeValidation.Status status);
+
+    @Transactional
+    @Modifying
+    @Query("delete from EmployeeValidation v where v.validatedAt < :before")
+    int deleteValidatedBefore(@Param("before") Instant before);
+}
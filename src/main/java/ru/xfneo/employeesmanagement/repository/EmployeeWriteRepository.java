@@ -0,0 +1,33 @@
+package ru.xfneo.employeesmanagement.repository;
+
+import ru.xfneo.employeesmanagement.model.Employee;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Writes of a single employee issued as one statement returning the changed row,
+ * instead of loading the entity before the write: RETURNING on PostgreSQL, data change delta tables on H2,
+ * other databases load the entity first. Must be called inside a transaction.
+ */
+public interface EmployeeWriteRepository {
+    List<String> UPDATABLE_FIELDS = Collections.unmodifiableList(
+            Arrays.asList("departmentId", "firstName", "lastName", "title"));
+
+    /**
+     * @return the deleted employee, or empty if it does not exist
+     */
+    Optional<Employee> deleteReturning(long id);
+
+    /**
+     * Update only the given properties of the employee and increment its version.
+     *
+     * @param fields  values of {@link #UPDATABLE_FIELDS} by property name, departmentId must be a Long
+     * @param version version the employee must have to be updated, or null to update any version
+     * @return the updated employee, or empty if it does not exist or has another version
+     */
+    Optional<Employee> updateFields(long id, Long version, Map<String, Object> fields);
+}
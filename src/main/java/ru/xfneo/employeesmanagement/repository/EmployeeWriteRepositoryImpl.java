@@ -0,0 +1,126 @@
+package ru.xfneo.employeesmanagement.repository;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+import ru.xfneo.employeesmanagement.model.Employee;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+public class EmployeeWriteRepositoryImpl implements EmployeeWriteRepository {
+    private static final String COLUMNS = "id, department_id, first_name, last_name, title, version";
+    private static final Map<String, String> FIELD_COLUMNS = new HashMap<>();
+
+    static {
+        FIELD_COLUMNS.put("departmentId", "department_id");
+        FIELD_COLUMNS.put("firstName", "first_name");
+        FIELD_COLUMNS.put("lastName", "last_name");
+        FIELD_COLUMNS.put("title", "title");
+    }
+
+    private enum Returning {
+        POSTGRESQL, H2, NONE
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    private volatile Returning returning;
+
+    @Override
+    public Optional<Employee> deleteReturning(long id) {
+        String delete = "delete from employee where id = :id";
+        switch (returning()) {
+            case POSTGRESQL:
+                return single(entityManager.createNativeQuery(delete + " returning " + COLUMNS).setParameter("id", id));
+            case H2:
+                return single(entityManager.createNativeQuery("select " + COLUMNS + " from old table (" + delete + ")")
+                        .setParameter("id", id));
+            default:
+                Optional<Employee> employee = Optional.ofNullable(entityManager.find(Employee.class, id));
+                employee.ifPresent(entityManager::remove);
+                return employee;
+        }
+    }
+
+    @Override
+    public Optional<Employee> updateFields(long id, Long version, Map<String, Object> fields) {
+        String update = "update employee set " + fields.keySet().stream()
+                .map(field -> FIELD_COLUMNS.get(field) + " = :" + field)
+                .collect(Collectors.joining(", ")) +
+                (fields.isEmpty() ? "" : ", ") + "version = version + 1 where id = :id" +
+                (version == null ? "" : " and version = :version");
+        Query query;
+        switch (returning()) {
+            case POSTGRESQL:
+                query = entityManager.createNativeQuery(update + " returning " + COLUMNS);
+                break;
+            case H2:
+                query = entityManager.createNativeQuery("select " + COLUMNS + " from new table (" + update + ")");
+                break;
+            default:
+                Employee employee = entityManager.find(Employee.class, id);
+                if (employee == null || version != null && employee.getVersion() != version) return Optional.empty();
+                fields.forEach((field, value) -> set(employee, field, value));
+                entityManager.flush();
+                return Optional.of(employee);
+        }
+        query.setParameter("id", id);
+        if (version != null) query.setParameter("version", version);
+        // typed, so a null name or title is bound as varchar and not as binary
+        NativeQuery<?> nativeQuery = query.unwrap(NativeQuery.class);
+        fields.forEach((field, value) -> nativeQuery.setParameter(field, value,
+                value instanceof Long ? StandardBasicTypes.LONG : StandardBasicTypes.STRING));
+        return single(query);
+    }
+
+    private Returning returning() {
+        if (returning == null) {
+            Dialect dialect = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                    .getJdbcServices().getDialect();
+            returning = dialect instanceof PostgreSQL81Dialect ? Returning.POSTGRESQL
+                    : dialect instanceof H2Dialect ? Returning.H2
+                    : Returning.NONE;
+        }
+        return returning;
+    }
+
+    private static Optional<Employee> single(Query query) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+        if (rows.isEmpty()) return Optional.empty();
+        Object[] row = rows.get(0);
+        Employee employee = new Employee(((Number) row[0]).longValue(), ((Number) row[1]).longValue(),
+                (String) row[2], (String) row[3], (String) row[4]);
+        employee.setVersion(((Number) row[5]).longValue());
+        return Optional.of(employee);
+    }
+
+    private static void set(Employee employee, String field, Object value) {
+        switch (field) {
+            case "departmentId":
+                employee.setDepartmentId((Long) value);
+                break;
+            case "firstName":
+                employee.setFirstName((String) value);
+                break;
+            case "lastName":
+                employee.setLastName((String) value);
+                break;
+            case "title":
+                employee.setTitle((String) value);
+                break;
+            default:
+                throw new IllegalArgumentException("Not an updatable field: " + field);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ru.xfneo.employeesmanagement.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import ru.xfneo.employeesmanagement.model.IdempotencyRecord;
+
+import java.time.Instant;
+
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+    /**
+     * Insert an in-progress row, failing with a primary key violation if the key is claimed already
+     * (save would merge into the existing row).
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into idempotency_key (idempotency_key, fingerprint, status, json_body, created_at) " +
+            "values (:key, :fingerprint, 0, false, :createdAt)", nativeQuery = true)
+    int insertClaim(@Param("key") String key, @Param("fingerprint") String fingerprint,
+                    @Param("createdAt") Instant createdAt);
+
+    /**
+     * Store the response in the in-progress row of the claim, unless the claim was taken over since.
+     *
+     * @return 1 if the claim was still the row of the key, 0 otherwise
+     */
+    @Transactional
+    @Modifying
+    @Query("update IdempotencyRecord r set r.status = :status, r.jsonBody = :jsonBody, r.body = :body, " +
+            "r.headers = :headers, r.createdAt = :completedAt where r.idempotencyKey = :key and r.status = 0 " +
+            "and r.fingerprint = :fingerprint and r.createdAt = :claimedAt")
+    int completeClaim(@Param("key") String key, @Param("fingerprint") String fingerprint,
+                      @Param("claimedAt") Instant claimedAt, @Param("status") int status,
+                      @Param("jsonBody") boolean jsonBody, @Param("body") String body,
+                      @Param("headers") String headers, @Param("completedAt") Instant completedAt);
+
+    /**
+     * Delete the row of the key only if it is still the one read (or inserted) before,
+     * a concurrent request may have replaced it.
+     *
+     * @return 1 if the row was deleted, 0 otherwise
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.idempotencyKey = :key and r.status = :status " +
+            "and r.fingerprint = :fingerprint and r.createdAt = :createdAt")
+    int deleteRecord(@Param("key") String key, @Param("status") int status, @Param("fingerprint") String fingerprint,
+                     @Param("createdAt") Instant createdAt);
+
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") Instant before);
+}
@@ -0,0 +1,418 @@
+package ru.xfneo.employeesmanagement.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import feign.Response;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.xfneo.employeesmanagement.client.DepartmentClient;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Department existence checks against department-management-ws,
+ * cached in a bounded cache with separate time to live for existing and nonexistent departments.
+ * Concurrent checks of the same department share one remote call, which is made outside of any lock,
+ * so a virtual thread waiting for department-management-ws does not pin its carrier thread.
+ * Remote calls go through the departments circuit breaker and bulkhead,
+ * when they fail the fallback policy decides whether a department known to exist before is accepted.
+ * Several departments are checked by the bulk endpoint, in chunks of "departments.client.bulk-size",
+ * or by single checks on at most "departments.client.parallelism" threads if department-management-ws
+ * has no bulk endpoint, answers it with departments not requested (or not a JSON array),
+ * or "departments.client.bulk-size" is 0.
+ */
+@Slf4j
+@Service
+public class DepartmentService {
+    static final String CACHE_NAME = "departments";
+    static final String CLIENT_METRIC = "departments.client.requests";
+    static final String BULK_CLIENT_METRIC = "departments.client.bulk-requests";
+    private static final ObjectReader DEPARTMENTS_READER = new ObjectMapper().readerFor(JsonNode.class);
+
+    public enum FallbackPolicy {
+        /**
+         * Fail the check with {@link DepartmentServiceUnavailableException}.
+         */
+        FAIL_FAST,
+        /**
+         * Accept departments which existed during the last "departments.cache.known-ttl-seconds",
+         * fail the check for others.
+         */
+        ACCEPT_KNOWN
+    }
+
+    private final DepartmentClient departmentClient;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final FallbackPolicy fallbackPolicy;
+    private final MeterRegistry meterRegistry;
+    private final Cache<Long, Boolean> departmentExistence;
+    private final Cache<Long, Boolean> knownDepartments;
+    private final ConcurrentMap<Long, CompletableFuture<Boolean>> remoteChecks = new ConcurrentHashMap<>();
+    private final ExecutorService checkExecutor;
+    private final int bulkSize;
+    /**
+     * False once department-management-ws answered that it has no bulk endpoint, until restart.
+     */
+    private volatile boolean bulkSupported;
+
+    @Autowired
+    public DepartmentService(DepartmentClient departmentClient,
+                             CircuitBreaker departmentsCircuitBreaker,
+                             Bulkhead departmentsBulkhead,
+                             MeterRegistry meterRegistry,
+                             @Value("${departments.cache.maximum-size:10000}") long maximumSize,
+                             @Value("${departments.cache.positive-ttl-seconds:600}") long positiveTtlSeconds,
+                             @Value("${departments.cache.negative-ttl-seconds:30}") long negativeTtlSeconds,
+                             @Value("${departments.cache.known-ttl-seconds:86400}") long knownTtlSeconds,
+                             @Value("${departments.client.fallback:FAIL_FAST}") FallbackPolicy fallbackPolicy,
+                             @Value("${departments.client.bulk-size:100}") int bulkSize,
+                             @Value("${departments.client.parallelism:8}") int parallelism) {
+        this.departmentClient = departmentClient;
+        this.circuitBreaker = departmentsCircuitBreaker;
+        this.bulkhead = departmentsBulkhead;
+        this.fallbackPolicy = fallbackPolicy;
+        this.meterRegistry = meterRegistry;
+        this.departmentExistence = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new ExistenceExpiry(
+                        TimeUnit.SECONDS.toNanos(positiveTtlSeconds),
+                        TimeUnit.SECONDS.toNanos(negativeTtlSeconds)))
+                .recordStats()
+                .build();
+        this.knownDepartments = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(knownTtlSeconds, TimeUnit.SECONDS)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, departmentExistence, CACHE_NAME);
+        this.bulkSize = bulkSize;
+        this.bulkSupported = bulkSize > 0;
+        AtomicInteger threads = new AtomicInteger();
+        this.checkExecutor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "departments-check-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        checkExecutor.shutdownNow();
+    }
+
+    /**
+     * Check that the department exists, calling department-management-ws only on a cache miss.
+     *
+     * @param departmentId ID of the department to check
+     * @return true if the department exists.
+     * @throws DepartmentServiceUnavailableException if department-management-ws can not answer
+     * and the fallback policy does not accept the department.
+     */
+    public boolean exists(long departmentId) {
+        Boolean cached = departmentExistence.getIfPresent(departmentId);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            return sharedRemoteCheck(departmentId);
+        } catch (DepartmentServiceUnavailableException e) {
+            if (acceptedWhenUnavailable(departmentId)) {
+                return true;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Check that the departments exist, calling department-management-ws only for the cache misses,
+     * by the bulk endpoint or by single checks in parallel.
+     *
+     * @param departmentIds IDs of the departments to check
+     * @return existence of every distinct department by its ID.
+     * @throws DepartmentServiceUnavailableException if department-management-ws can not answer
+     * and the fallback policy does not accept a department.
+     */
+    public Map<Long, Boolean> exists(Collection<Long> departmentIds) {
+        Map<Long, Boolean> existence = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long departmentId : new LinkedHashSet<>(departmentIds)) {
+            Boolean cached = departmentExistence.getIfPresent(departmentId);
+            if (cached != null) {
+                existence.put(departmentId, cached);
+            } else {
+                misses.add(departmentId);
+            }
+        }
+        if (misses.size() > 1 && bulkSupported) {
+            for (int from = 0; from < misses.size() && bulkSupported; from += bulkSize) {
+                List<Long> chunk = misses.subList(from, Math.min(from + bulkSize, misses.size()));
+                Map<Long, Boolean> chunkExistence = bulkRemoteCheck(chunk);
+                if (chunkExistence != null) existence.putAll(chunkExistence);
+            }
+        }
+        List<Long> unchecked = misses.stream().filter(id -> !existence.containsKey(id)).collect(Collectors.toList());
+        if (unchecked.size() == 1) {
+            existence.put(unchecked.get(0), exists(unchecked.get(0)));
+        } else if (!unchecked.isEmpty()) {
+            existence.putAll(parallelChecks(unchecked));
+        }
+        return existence;
+    }
+
+    /**
+     * Single checks of the departments on the check executor, the calling thread waits for all of them.
+     */
+    private Map<Long, Boolean> parallelChecks(List<Long> departmentIds) {
+        Map<Long, CompletableFuture<Boolean>> checks = new LinkedHashMap<>();
+        departmentIds.forEach(departmentId ->
+                checks.put(departmentId, CompletableFuture.supplyAsync(() -> exists(departmentId), checkExecutor)));
+        Map<Long, Boolean> existence = new HashMap<>();
+        try {
+            checks.forEach((departmentId, check) -> existence.put(departmentId, check.join()));
+        } catch (CompletionException e) {
+            checks.values().forEach(check -> check.cancel(false));
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        return existence;
+    }
+
+    /**
+     * Check the departments by one call of the bulk endpoint and cache the results.
+     *
+     * @return existence by department ID, or null if department-management-ws has no bulk endpoint.
+     */
+    private Map<Long, Boolean> bulkRemoteCheck(List<Long> departmentIds) {
+        Set<Long> existing;
+        try {
+            existing = circuitBreaker.executeSupplier(
+                    Bulkhead.decorateSupplier(bulkhead, () -> checkDepartments(departmentIds)));
+        } catch (RuntimeException e) {
+            Map<Long, Boolean> accepted = new HashMap<>();
+            for (Long departmentId : departmentIds) {
+                if (!acceptedWhenUnavailable(departmentId)) {
+                    throw e instanceof DepartmentServiceUnavailableException ? e : new DepartmentServiceUnavailableException(
+                            String.format("Departments %s can not be checked: %s", departmentIds, e.getMessage()), e);
+                }
+                accepted.put(departmentId, true);
+            }
+            return accepted;
+        }
+        if (existing == null) {
+            log.info("Departments service has no usable bulk endpoint, departments are checked one by one from now on");
+            bulkSupported = false;
+            return null;
+        }
+        Map<Long, Boolean> existence = new HashMap<>();
+        departmentIds.forEach(departmentId -> {
+            boolean exists = existing.contains(departmentId);
+            cacheExistence(departmentId, exists);
+            existence.put(departmentId, exists);
+        });
+        return existence;
+    }
+
+    /**
+     * Join the running remote check of the department or run a new one and cache its result.
+     */
+    private boolean sharedRemoteCheck(long departmentId) {
+        CompletableFuture<Boolean> check = new CompletableFuture<>();
+        CompletableFuture<Boolean> runningCheck = remoteChecks.putIfAbsent(departmentId, check);
+        if (runningCheck != null) {
+            try {
+                return runningCheck.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            Boolean cached = departmentExistence.asMap().get(departmentId);
+            boolean exists = cached != null ? cached : fetchDepartmentExistence(departmentId);
+            departmentExistence.put(departmentId, exists);
+            check.complete(exists);
+            return exists;
+        } catch (Throwable e) {
+            // also an Error, the checks which joined this one must not wait forever
+            check.completeExceptionally(e);
+            throw e;
+        } finally {
+            remoteChecks.remove(departmentId, check);
+        }
+    }
+
+    /**
+     * Get the cached existence of the department without calling department-management-ws.
+     *
+     * @param departmentId ID of the department to check
+     * @return true or false if existence of the department is cached, null otherwise.
+     */
+    public Boolean cachedExistence(long departmentId) {
+        return departmentExistence.getIfPresent(departmentId);
+    }
+
+    /**
+     * Cache existence of the department checked by the caller, so the next {@link #exists(long)} is a cache hit.
+     */
+    public void cacheExistence(long departmentId, boolean exists) {
+        departmentExistence.put(departmentId, exists);
+        if (exists) {
+            knownDepartments.put(departmentId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @return true if the fallback policy accepts the department while department-management-ws is unavailable.
+     */
+    public boolean acceptedWhenUnavailable(long departmentId) {
+        return fallbackPolicy == FallbackPolicy.ACCEPT_KNOWN && knownDepartments.getIfPresent(departmentId) != null;
+    }
+
+    /**
+     * Existence of the department by the status of "GET /api/departments/{id}" response.
+     *
+     * @throws DepartmentServiceUnavailableException if the status is 5xx.
+     */
+    static boolean existence(long departmentId, int status) {
+        if (status >= 500) {
+            throw new DepartmentServiceUnavailableException(String.format(
+                    "Department with id %d can not be checked: status %d", departmentId, status));
+        }
+        return status >= 200 && status < 300;
+    }
+
+    private boolean fetchDepartmentExistence(long departmentId) {
+        boolean exists;
+        try {
+            exists = circuitBreaker.executeSupplier(
+                    Bulkhead.decorateSupplier(bulkhead, () -> checkDepartment(departmentId)));
+        } catch (DepartmentServiceUnavailableException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new DepartmentServiceUnavailableException(
+                    String.format("Department with id %d can not be checked: %s", departmentId, e.getMessage()), e);
+        }
+        if (exists) {
+            knownDepartments.put(departmentId, Boolean.TRUE);
+        }
+        return exists;
+    }
+
+    /**
+     * Remote call timed in "departments.client.requests" by response status, "IO_ERROR" when there is no response.
+     */
+    private boolean checkDepartment(long departmentId) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String status = "IO_ERROR";
+        try (Response response = departmentClient.checkDepartment(departmentId)) {
+            status = Integer.toString(response.status());
+            return existence(departmentId, response.status());
+        } finally {
+            recordClientRequest(sample, status);
+        }
+    }
+
+    /**
+     * Bulk remote call timed in "departments.client.bulk-requests" by response status.
+     *
+     * @return IDs of the existing departments, or null if the bulk endpoint does not exist
+     * or does not answer by its contract (see {@link DepartmentClient#checkDepartments}):
+     * a JSON array of departments among the requested ones, each with its numeric "id".
+     * @throws DepartmentServiceUnavailableException if the status is 5xx other than 501.
+     */
+    private Set<Long> checkDepartments(List<Long> departmentIds) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String status = "IO_ERROR";
+        try (Response response = departmentClient.checkDepartments(departmentIds)) {
+            status = Integer.toString(response.status());
+            if (response.status() == 404 || response.status() == 405 || response.status() == 501) return null;
+            if (response.status() < 200 || response.status() >= 300) {
+                throw new DepartmentServiceUnavailableException(String.format(
+                        "Departments %s can not be checked: status %d", departmentIds, response.status()));
+            }
+            Set<Long> existing = new HashSet<>();
+            if (response.body() == null) return existing;
+            JsonNode departments;
+            try (InputStream body = response.body().asInputStream()) {
+                departments = DEPARTMENTS_READER.readValue(body);
+            }
+            // an endpoint ignoring "ids" (e.g. a list of all departments) would accept any department
+            if (departments == null || !departments.isArray()) {
+                log.warn("Departments service answered the bulk check of {} with no JSON array", departmentIds);
+                return null;
+            }
+            Set<Long> requested = new HashSet<>(departmentIds);
+            for (JsonNode department : departments) {
+                JsonNode id = department.path("id");
+                if (!id.canConvertToLong() || !requested.contains(id.asLong())) {
+                    log.warn("Departments service answered the bulk check of {} with department {} not requested",
+                            departmentIds, id);
+                    return null;
+                }
+                existing.add(id.asLong());
+            }
+            return existing;
+        } catch (IOException e) {
+            throw new DepartmentServiceUnavailableException(
+                    String.format("Departments %s can not be checked: %s", departmentIds, e.getMessage()), e);
+        } finally {
+            sample.stop(Timer.builder(BULK_CLIENT_METRIC)
+                    .tag("status", status)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    void recordClientRequest(Timer.Sample sample, String status) {
+        sample.stop(Timer.builder(CLIENT_METRIC)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private static class ExistenceExpiry implements Expiry<Long, Boolean> {
+        private final long positiveTtlNanos;
+        private final long negativeTtlNanos;
+
+        ExistenceExpiry(long positiveTtlNanos, long negativeTtlNanos) {
+            this.positiveTtlNanos = positiveTtlNanos;
+            this.negativeTtlNanos = negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(Long departmentId, Boolean exists, long currentTime) {
+            return exists ? positiveTtlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(Long departmentId, Boolean exists, long currentTime, long currentDuration) {
+            return expireAfterCreate(departmentId, exists, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Long departmentId, Boolean exists, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package ru.xfneo.employeesmanagement.service;
+
+/**
+ * Thrown when existence of a department can not be checked because department-management-ws
+ * fails, is too slow, or is shielded by the open circuit breaker or the full bulkhead.
+ */
+public class DepartmentServiceUnavailableException extends RuntimeException {
+    public DepartmentServiceUnavailableException(String message) {
+        super(message);
+    }
+
+    public DepartmentServiceUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,295 @@
+package ru.xfneo.employeesmanagement.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeBatchResult;
+import ru.xfneo.employeesmanagement.model.EmployeeImportProgress;
+import ru.xfneo.employeesmanagement.repository.EmployeeFieldsRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Export and import of all employees as CSV (header of {@link EmployeeFieldsRepository#FIELDS}) or newline delimited JSON.
+ * Export streams from the database cursor of {@link EmployeeService#streamAll(Consumer)},
+ * import parses one line at a time and creates employees by chunks of "employees.import.chunk-size"
+ * through {@link EmployeeService#createAll(List)}, so memory use does not depend on the size of the file.
+ * The chunk size must not exceed "employees.batch.max-size".
+ */
+@Service
+public class EmployeeBulkService {
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    public enum Format {
+        CSV(TEXT_CSV_VALUE), NDJSON("application/x-ndjson");
+
+        private final MediaType mediaType;
+
+        Format(String mediaType) {
+            this.mediaType = MediaType.parseMediaType(mediaType);
+        }
+
+        public MediaType getMediaType() {
+            return mediaType;
+        }
+
+        /**
+         * @return format of the content type, or null if it is neither CSV nor newline delimited JSON.
+         */
+        public static Format of(MediaType contentType) {
+            return Arrays.stream(values())
+                    .filter(format -> format.mediaType.isCompatibleWith(contentType))
+                    .findFirst()
+                    .orElse(null);
+        }
+    }
+
+    private final EmployeeService employeeService;
+    private final ObjectMapper objectMapper;
+    private final CsvMapper csvMapper = new CsvMapper();
+
+    @Value("${employees.import.chunk-size:500}")
+    private int chunkSize;
+    @Value("${employees.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    @Autowired
+    public EmployeeBulkService(EmployeeService employeeService, ObjectMapper objectMapper) {
+        this.employeeService = employeeService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Write all existing employees ordered by id to the output stream.
+     *
+     * @param format       CSV with header or newline delimited JSON
+     * @param outputStream stream to write to, not closed
+     */
+    public void exportAll(Format format, OutputStream outputStream) throws IOException {
+        try (SequenceWriter sequenceWriter = exportWriter(format, true).writeValues(outputStream)) {
+            employeeService.streamAll(employee -> {
+                try {
+                    sequenceWriter.write(employee);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Write one page of employees of an export read by pages, every page ends with a line break.
+     *
+     * @param format    CSV or newline delimited JSON
+     * @param employees employees of the page
+     * @param header    whether CSV starts with the header, true for the first page
+     */
+    public String exportPage(Format format, List<Employee> employees, boolean header) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (SequenceWriter sequenceWriter = exportWriter(format, header).writeValues(writer)) {
+            sequenceWriter.writeAll(employees);
+        }
+        if (format == Format.NDJSON && !employees.isEmpty()) {
+            writer.write('\n');
+        }
+        return writer.toString();
+    }
+
+    private ObjectWriter exportWriter(Format format, boolean header) {
+        CsvSchema schema = csvSchema(EmployeeFieldsRepository.FIELDS);
+        ObjectWriter writer = format == Format.CSV
+                ? csvMapper.writerFor(Employee.class).with(header ? schema.withHeader() : schema)
+                : objectMapper.writerFor(Employee.class).withRootValueSeparator("\n");
+        return writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Get the reader of the lines of employees, reading the header of CSV.
+     * CSV columns may be any of {@link EmployeeFieldsRepository#FIELDS} in any order.
+     *
+     * @param format CSV with header or newline delimited JSON
+     * @param input  lines of employees
+     * @return reader of one employee from one line, or null if CSV header is empty or has an unknown column.
+     */
+    public ObjectReader rowReader(Format format, BufferedReader input) throws IOException {
+        return rowReader(format, format == Format.CSV ? input.readLine() : null);
+    }
+
+    /**
+     * Get the reader of the lines of employees.
+     *
+     * @param format CSV with header or newline delimited JSON
+     * @param header CSV header line, ignored for newline delimited JSON
+     * @return reader of one employee from one line, or null if CSV header is null, empty or has an unknown column.
+     */
+    public ObjectReader rowReader(Format format, String header) {
+        if (format == Format.NDJSON) {
+            return objectMapper.readerFor(Employee.class);
+        }
+        if (header == null) return null;
+        List<String> columns = Arrays.stream(header.split(",", -1)).map(String::trim).collect(Collectors.toList());
+        if (!EmployeeFieldsRepository.FIELDS.containsAll(columns)) return null;
+        return csvMapper.readerFor(Employee.class).with(csvSchema(columns));
+    }
+
+    /**
+     * Create employees from the lines, ignoring their IDs and versions, chunk by chunk,
+     * every chunk in one transaction, so employees of the committed chunks stay created if the import fails.
+     * Reports an {@link EmployeeBatchResult} with the line number as index for every line which is not created
+     * (at most "employees.import.max-reported-errors" of them) and an {@link EmployeeImportProgress} after every chunk.
+     * When departments service is unavailable the import stops with an error of status 503 at the first line
+     * of the chunk not created, the import may be repeated from that line.
+     *
+     * @param format    CSV with header or newline delimited JSON
+     * @param rowReader reader of {@link #rowReader(Format, BufferedReader)}
+     * @param input     lines of employees after the CSV header, blank lines are skipped
+     * @param report    consumer of errors and progress
+     * @return progress of the completed import
+     */
+    public EmployeeImportProgress importAll(Format format, ObjectReader rowReader, BufferedReader input,
+                                            Consumer<Object> report) throws IOException {
+        EmployeeImport employeeImport = startImport(format, rowReader, report);
+        String line;
+        while ((line = input.readLine()) != null && employeeImport.add(line)) {
+        }
+        return employeeImport.finish();
+    }
+
+    /**
+     * Start an import fed line by line, for callers which do not read the lines from a {@link BufferedReader},
+     * see {@link #importAll(Format, ObjectReader, BufferedReader, Consumer)}.
+     *
+     * @param format    CSV with header or newline delimited JSON
+     * @param rowReader reader of {@link #rowReader(Format, String)}
+     * @param report    consumer of errors and progress
+     */
+    public EmployeeImport startImport(Format format, ObjectReader rowReader, Consumer<Object> report) {
+        return new EmployeeImport(format, rowReader, report);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Import in progress, lines are added one by one from a single thread at a time.
+     */
+    public class EmployeeImport {
+        private final ObjectReader rowReader;
+        private final Consumer<Object> report;
+        private final EmployeeImportProgress progress;
+        private final List<Employee> chunk = new ArrayList<>(chunkSize);
+        private final List<Long> chunkLines = new ArrayList<>(chunkSize);
+        private boolean stopped;
+
+        private EmployeeImport(Format format, ObjectReader rowReader, Consumer<Object> report) {
+            this.rowReader = rowReader;
+            this.report = report;
+            this.progress = new EmployeeImportProgress(format == Format.CSV ? 1 : 0, 0, 0, false);
+        }
+
+        /**
+         * Parse the next line, creating the chunk of employees when it is full.
+         *
+         * @return false if the import is stopped because departments service is unavailable,
+         * the rest of the lines must not be added
+         */
+        public boolean add(String line) throws IOException {
+            if (stopped) return false;
+            progress.setLines(progress.getLines() + 1);
+            if (line.trim().isEmpty()) return true;
+            try {
+                chunk.add(rowReader.readValue(line));
+                chunkLines.add(progress.getLines());
+            } catch (JsonProcessingException e) {
+                failed(progress, EmployeeBatchResult.failure((int) progress.getLines(), 400,
+                        "Employee data is not valid: " + e.getOriginalMessage()), report);
+            }
+            if (chunk.size() == chunkSize && !createChunk(chunk, chunkLines, progress, report)) {
+                stopped = true;
+            }
+            return !stopped;
+        }
+
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * Create the last chunk unless the import is stopped and report the final progress.
+         *
+         * @return progress of the completed import
+         */
+        public EmployeeImportProgress finish() {
+            if (!stopped) {
+                createChunk(chunk, chunkLines, progress, report);
+            }
+            progress.setDone(true);
+            report.accept(progress);
+            return progress;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean createChunk(List<Employee> chunk, List<Long> chunkLines, EmployeeImportProgress progress,
+                                Consumer<Object> report) {
+        if (chunk.isEmpty()) return true;
+        ResponseEntity<?> response;
+        try {
+            response = employeeService.createAll(chunk);
+        } catch (DepartmentServiceUnavailableException e) {
+            progress.setFailed(progress.getFailed() + chunk.size());
+            report.accept(EmployeeBatchResult.failure(chunkLines.get(0).intValue(), 503,
+                    "Departments service is unavailable, import is stopped at this line"));
+            return false;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new IllegalStateException("Import chunk is rejected: " + response.getBody());
+        }
+        for (EmployeeBatchResult result : (List<EmployeeBatchResult>) response.getBody()) {
+            if (result.getStatus() == 201) {
+                progress.setImported(progress.getImported() + 1);
+            } else {
+                failed(progress, EmployeeBatchResult.failure(chunkLines.get(result.getIndex()).intValue(),
+                        result.getStatus(), result.getError()), report);
+            }
+        }
+        chunk.clear();
+        chunkLines.clear();
+        report.accept(new EmployeeImportProgress(progress.getLines(), progress.getImported(), progress.getFailed(), false));
+        return true;
+    }
+
+    private void failed(EmployeeImportProgress progress, EmployeeBatchResult error, Consumer<Object> report) {
+        progress.setFailed(progress.getFailed() + 1);
+        if (progress.getFailed() <= maxReportedErrors) {
+            report.accept(error);
+        }
+    }
+
+    private static CsvSchema csvSchema(List<String> columns) {
+        CsvSchema.Builder schema = CsvSchema.builder();
+        columns.forEach(schema::addColumn);
+        return schema.build();
+    }
+}
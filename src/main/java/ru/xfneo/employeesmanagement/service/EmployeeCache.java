@@ -0,0 +1,299 @@
+package ru.xfneo.employeesmanagement.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.xfneo.employeesmanagement.model.Employee;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * In-process read-through cache of employees by ID, bounded by the number of entries.
+ * Entries are evicted by "employees.cache.eviction" policy and expire "employees.cache.ttl-seconds" after load.
+ * Writers must invalidate changed employees after their transaction is committed,
+ * a load racing with an invalidation of the same employee (or with an invalidation of a department) is not cached.
+ * Changes made through other instances are invalidated by {@link EmployeeCacheInvalidator}.
+ */
+@Component
+public class EmployeeCache {
+    static final String CACHE_NAME = "employees";
+    private static final int ESTIMATED_ENTRY_OVERHEAD = 96;
+    private static final int ESTIMATED_EMPLOYEE_SIZE = 40;
+    private static final int ESTIMATED_STRING_SIZE = 40;
+
+    public enum Eviction {
+        /**
+         * Least recently used entry is evicted.
+         */
+        LRU,
+        /**
+         * Window TinyLFU of Caffeine, keeps frequently used entries even after a scan of rarely used ones.
+         */
+        TINY_LFU
+    }
+
+    private final Store store;
+
+    @Autowired
+    public EmployeeCache(@Value("${employees.cache.maximum-size:10000}") int maximumSize,
+                         @Value("${employees.cache.eviction:TINY_LFU}") Eviction eviction,
+                         @Value("${employees.cache.ttl-seconds:300}") long ttlSeconds,
+                         MeterRegistry meterRegistry) {
+        this.store = eviction == Eviction.LRU
+                ? new LruStore(maximumSize, TimeUnit.SECONDS.toNanos(ttlSeconds), meterRegistry)
+                : new TinyLfuStore(maximumSize, ttlSeconds, meterRegistry);
+        Gauge.builder("employees.cache.hit.ratio", store, Store::hitRatio)
+                .tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+        Gauge.builder("employees.cache.memory", this, EmployeeCache::estimatedMemory)
+                .tag("cache", CACHE_NAME)
+                .description("Estimated heap used by cached employees")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the employee from cache, or load and cache it on a miss.
+     *
+     * @param id     ID of the employee
+     * @param loader loads the employee from repository, returns null if it does not exist
+     * @return cached or loaded employee, or null if it does not exist.
+     */
+    public Employee get(long id, Supplier<Employee> loader) {
+        return store.get(id, loader);
+    }
+
+    public void invalidate(long id) {
+        store.invalidateAll(Collections.singleton(id));
+    }
+
+    public void invalidateAll(Collection<Long> ids) {
+        store.invalidateAll(ids);
+    }
+
+    /**
+     * Invalidate all cached employees, and loads in progress.
+     */
+    public void invalidateAll() {
+        store.invalidateIf(employee -> true);
+    }
+
+    /**
+     * Invalidate all cached employees of the department.
+     */
+    public void invalidateDepartment(long departmentId) {
+        store.invalidateIf(employee -> employee.getDepartmentId() == departmentId);
+    }
+
+    long estimatedMemory() {
+        return store.values().stream().mapToLong(EmployeeCache::estimatedSize).sum();
+    }
+
+    private static long estimatedSize(Employee employee) {
+        return ESTIMATED_ENTRY_OVERHEAD + ESTIMATED_EMPLOYEE_SIZE
+                + estimatedSize(employee.getFirstName())
+                + estimatedSize(employee.getLastName())
+                + estimatedSize(employee.getTitle());
+    }
+
+    private static long estimatedSize(String value) {
+        return value == null ? 0 : ESTIMATED_STRING_SIZE + 2L * value.length();
+    }
+
+    private interface Store {
+        Employee get(long id, Supplier<Employee> loader);
+
+        void invalidateAll(Collection<Long> ids);
+
+        void invalidateIf(Predicate<Employee> predicate);
+
+        Collection<Employee> values();
+
+        long size();
+
+        double hitRatio();
+    }
+
+    private static class TinyLfuStore implements Store {
+        private final Cache<Long, Employee> cache;
+        private final ConcurrentMap<Long, Object> loads = new ConcurrentHashMap<>();
+
+        TinyLfuStore(int maximumSize, long ttlSeconds, MeterRegistry meterRegistry) {
+            cache = Caffeine.newBuilder()
+                    .maximumSize(maximumSize)
+                    .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        }
+
+        /**
+         * Loads outside of the cache's locks, so a virtual thread waiting for the database does not pin its carrier.
+         * A load registers its token for the ID, invalidations remove the tokens of their IDs before removing entries,
+         * a load whose token was removed (or replaced by a later load) is not cached.
+         */
+        @Override
+        public Employee get(long id, Supplier<Employee> loader) {
+            Employee cached = cache.getIfPresent(id);
+            if (cached != null) {
+                return cached;
+            }
+            Object load = new Object();
+            loads.put(id, load);
+            try {
+                Employee employee = loader.get();
+                if (employee != null) {
+                    cache.asMap().computeIfAbsent(id, key -> loads.remove(id, load) ? employee : null);
+                }
+                return employee;
+            } finally {
+                loads.remove(id, load);
+            }
+        }
+
+        @Override
+        public void invalidateAll(Collection<Long> ids) {
+            ids.forEach(loads::remove);
+            cache.invalidateAll(ids);
+        }
+
+        /**
+         * Loads in progress are not cached, the department of a loading employee is not known.
+         */
+        @Override
+        public void invalidateIf(Predicate<Employee> predicate) {
+            loads.clear();
+            cache.asMap().values().removeIf(predicate);
+        }
+
+        @Override
+        public Collection<Employee> values() {
+            return new ArrayList<>(cache.asMap().values());
+        }
+
+        @Override
+        public long size() {
+            return cache.estimatedSize();
+        }
+
+        @Override
+        public double hitRatio() {
+            return cache.stats().hitRate();
+        }
+    }
+
+    private static class LruStore implements Store {
+        private final int maximumSize;
+        private final long ttlNanos;
+        private final LinkedHashMap<Long, Entry> entries;
+        private final Map<Long, Object> loads = new HashMap<>();
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        LruStore(int maximumSize, long ttlNanos, MeterRegistry meterRegistry) {
+            this.maximumSize = maximumSize;
+            this.ttlNanos = ttlNanos;
+            this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                    boolean evict = size() > LruStore.this.maximumSize;
+                    if (evict) evictions++;
+                    return evict;
+                }
+            };
+            FunctionCounter.builder("cache.gets", this, store -> store.count(() -> store.hits))
+                    .tags("cache", CACHE_NAME, "result", "hit")
+                    .register(meterRegistry);
+            FunctionCounter.builder("cache.gets", this, store -> store.count(() -> store.misses))
+                    .tags("cache", CACHE_NAME, "result", "miss")
+                    .register(meterRegistry);
+            FunctionCounter.builder("cache.evictions", this, store -> store.count(() -> store.evictions))
+                    .tags("cache", CACHE_NAME)
+                    .register(meterRegistry);
+            Gauge.builder("cache.size", this, LruStore::size)
+                    .tags("cache", CACHE_NAME)
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public Employee get(long id, Supplier<Employee> loader) {
+            Object load = new Object();
+            synchronized (this) {
+                Entry entry = entries.get(id);
+                if (entry != null && entry.expiresAt - System.nanoTime() > 0) {
+                    hits++;
+                    return entry.employee;
+                }
+                misses++;
+                loads.put(id, load);
+            }
+            Employee employee = null;
+            try {
+                employee = loader.get();
+                return employee;
+            } finally {
+                synchronized (this) {
+                    if (loads.remove(id, load) && employee != null) {
+                        entries.put(id, new Entry(employee, System.nanoTime() + ttlNanos));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public synchronized void invalidateAll(Collection<Long> ids) {
+            ids.forEach(loads::remove);
+            ids.forEach(entries::remove);
+        }
+
+        @Override
+        public synchronized void invalidateIf(Predicate<Employee> predicate) {
+            loads.clear();
+            entries.values().removeIf(entry -> predicate.test(entry.employee));
+        }
+
+        @Override
+        public synchronized Collection<Employee> values() {
+            List<Employee> employees = new ArrayList<>(entries.size());
+            entries.values().forEach(entry -> employees.add(entry.employee));
+            return employees;
+        }
+
+        @Override
+        public synchronized long size() {
+            return entries.size();
+        }
+
+        @Override
+        public synchronized double hitRatio() {
+            long requests = hits + misses;
+            return requests == 0 ? 1.0 : (double) hits / requests;
+        }
+
+        private synchronized double count(Supplier<Long> counter) {
+            return counter.get();
+        }
+
+        private static class Entry {
+            final Employee employee;
+            final long expiresAt;
+
+            Entry(Employee employee, long expiresAt) {
+                this.employee = employee;
+                this.expiresAt = expiresAt;
+            }
+        }
+    }
+}
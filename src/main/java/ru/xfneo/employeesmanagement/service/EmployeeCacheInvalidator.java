@@ -0,0 +1,84 @@
+package ru.xfneo.employeesmanagement.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeFeed;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeEventRepository;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeFeedRepository;
+
+import java.util.List;
+
+/**
+ * Invalidates the {@link EmployeeCache} of this instance for changes made through any instance:
+ * every "employees.cache.invalidation.interval-ms" reads the change events numbered since the previous run,
+ * in batches of "employees.cache.invalidation.batch-size", and invalidates their employees
+ * (or all cached employees of the old department of DEPARTMENT_REPLACED).
+ * A cached employee is stale for at most about "employees.changes.sequencer.interval-ms" plus this interval,
+ * "employees.cache.ttl-seconds" only bounds it while the database can not be read.
+ * The first run, and a run finding events purged before they were read, invalidate the whole cache.
+ */
+@Component
+public class EmployeeCacheInvalidator {
+    private final EmployeeChangeEventRepository changeEventRepository;
+    private final EmployeeChangeFeedRepository changeFeedRepository;
+    private final EmployeeCache employeeCache;
+    private final int batchSize;
+    /**
+     * Sequence number of the last event read, negative before the first run.
+     */
+    private long lastSequenceNumber = -1;
+
+    @Autowired
+    public EmployeeCacheInvalidator(EmployeeChangeEventRepository changeEventRepository,
+                                    EmployeeChangeFeedRepository changeFeedRepository,
+                                    EmployeeCache employeeCache,
+                                    @Value("${employees.cache.invalidation.batch-size:1000}") int batchSize) {
+        this.changeEventRepository = changeEventRepository;
+        this.changeFeedRepository = changeFeedRepository;
+        this.employeeCache = employeeCache;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Read the events numbered since the previous run and invalidate their employees.
+     *
+     * @return number of events read
+     */
+    @Scheduled(fixedDelayString = "${employees.cache.invalidation.interval-ms:1000}")
+    public synchronized int invalidate() {
+        if (lastSequenceNumber < 0) {
+            // the events numbered until now were committed before the cache is cleared, so they are all seen by loads
+            lastSequenceNumber = changeFeedRepository.findById(EmployeeChangeFeed.ID)
+                    .map(EmployeeChangeFeed::getLastSequenceNumber)
+                    .orElse(0L);
+            employeeCache.invalidateAll();
+            return 0;
+        }
+        int total = 0;
+        List<EmployeeChangeEvent> events;
+        do {
+            events = changeEventRepository.findBySequenceNumberGreaterThanOrderBySequenceNumberAsc(
+                    lastSequenceNumber, PageRequest.of(0, batchSize));
+            if (events.isEmpty()) break;
+            if (events.get(0).getSequenceNumber() != lastSequenceNumber + 1) {
+                employeeCache.invalidateAll();
+            }
+            events.forEach(this::invalidate);
+            lastSequenceNumber = events.get(events.size() - 1).getSequenceNumber();
+            total += events.size();
+        } while (events.size() == batchSize);
+        return total;
+    }
+
+    private void invalidate(EmployeeChangeEvent event) {
+        if (event.getType() == EmployeeChangeEvent.Type.DEPARTMENT_REPLACED) {
+            employeeCache.invalidateDepartment(event.getOldDepartmentId());
+        } else if (event.getEmployeeId() != null) {
+            employeeCache.invalidate(event.getEmployeeId());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package ru.xfneo.employeesmanagement.service;
+
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+
+import java.util.List;
+
+/**
+ * Destination of the change events relayed from the outbox by {@link EmployeeChangeRelay}.
+ * Delivery is at least once: a batch is published again if it could not be marked as published,
+ * so consumers must skip events with already seen ids.
+ */
+public interface EmployeeChangePublisher {
+    /**
+     * Publish the batch of events ordered by id, throwing an exception if any of them is not published.
+     */
+    void publish(List<EmployeeChangeEvent> events) throws Exception;
+}
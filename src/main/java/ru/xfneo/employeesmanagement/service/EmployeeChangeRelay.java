@@ -0,0 +1,87 @@
+package ru.xfneo.employeesmanagement.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeEventRepository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Publishes unpublished change events from the outbox in batches of "employees.changes.relay.batch-size",
+ * every "employees.changes.relay.interval-ms", when an {@link EmployeeChangePublisher} is configured.
+ * Only events numbered by {@link EmployeeChangeSequencer} are published, in commit order.
+ * A failed batch is retried on the next run. Relays of several instances may publish the same batch,
+ * which is allowed by the at least once contract of the publisher.
+ * Events older than "employees.changes.retention-seconds" are purged once published.
+ */
+@Slf4j
+@Component
+public class EmployeeChangeRelay {
+    static final String PUBLISHED_METRIC = "employees.changes.published";
+
+    private final EmployeeChangeEventRepository changeEventRepository;
+    private final EmployeeChangePublisher publisher;
+    private final Counter published;
+    private final int batchSize;
+    private final long retentionMillis;
+
+    @Autowired
+    public EmployeeChangeRelay(EmployeeChangeEventRepository changeEventRepository,
+                               ObjectProvider<EmployeeChangePublisher> publisher, MeterRegistry meterRegistry,
+                               @Value("${employees.changes.relay.batch-size:500}") int batchSize,
+                               @Value("${employees.changes.retention-seconds:604800}") long retentionSeconds) {
+        this.changeEventRepository = changeEventRepository;
+        this.publisher = publisher.getIfAvailable();
+        this.published = meterRegistry.counter(PUBLISHED_METRIC);
+        this.batchSize = batchSize;
+        this.retentionMillis = TimeUnit.SECONDS.toMillis(retentionSeconds);
+    }
+
+    /**
+     * Publish batches until the outbox is drained or a batch fails.
+     *
+     * @return number of published events
+     */
+    @Scheduled(fixedDelayString = "${employees.changes.relay.interval-ms:1000}")
+    public int relay() {
+        if (publisher == null) return 0;
+        int total = 0;
+        List<EmployeeChangeEvent> batch;
+        do {
+            batch = changeEventRepository.findBySequenceNumberNotNullAndPublishedAtIsNullOrderBySequenceNumberAsc(
+                    PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) break;
+            try {
+                publisher.publish(batch);
+            } catch (Exception e) {
+                log.warn("Failed to publish {} employee change event(s) from sequence number {}, retrying on the next run",
+                        batch.size(), batch.get(0).getSequenceNumber(), e);
+                break;
+            }
+            changeEventRepository.markPublished(
+                    batch.stream().map(EmployeeChangeEvent::getId).collect(Collectors.toList()), Instant.now());
+            published.increment(batch.size());
+            total += batch.size();
+        } while (batch.size() == batchSize);
+        return total;
+    }
+
+    /**
+     * Delete the numbered events older than "employees.changes.retention-seconds".
+     */
+    @Scheduled(fixedDelayString = "${employees.changes.purge-ms:600000}")
+    public void purge() {
+        changeEventRepository.deleteCreatedBefore(Instant.now().minusMillis(retentionMillis), publisher == null);
+    }
+}
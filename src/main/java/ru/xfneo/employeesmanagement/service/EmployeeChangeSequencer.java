@@ -0,0 +1,72 @@
+package ru.xfneo.employeesmanagement.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeFeed;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeEventRepository;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeFeedRepository;
+
+import java.util.List;
+
+/**
+ * Numbers committed change events in commit order, in batches of "employees.changes.sequencer.batch-size",
+ * every "employees.changes.sequencer.interval-ms".
+ * Only committed events are visible to the sequencer, and sequencers of all instances take turns on the locked
+ * {@link EmployeeChangeFeed} row, so an event committed later always gets a larger sequence number than every
+ * event numbered before: a consumer reading the changes after the last seen sequence number never skips one,
+ * however long the transaction of the change took. Writers of employees do not take any lock for it.
+ */
+@Component
+public class EmployeeChangeSequencer {
+    private final EmployeeChangeEventRepository changeEventRepository;
+    private final EmployeeChangeFeedRepository changeFeedRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public EmployeeChangeSequencer(EmployeeChangeEventRepository changeEventRepository,
+                                   EmployeeChangeFeedRepository changeFeedRepository,
+                                   TransactionTemplate transactionTemplate,
+                                   @Value("${employees.changes.sequencer.batch-size:1000}") int batchSize) {
+        this.changeEventRepository = changeEventRepository;
+        this.changeFeedRepository = changeFeedRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Number batches until all committed events are numbered.
+     *
+     * @return number of numbered events
+     */
+    @Scheduled(fixedDelayString = "${employees.changes.sequencer.interval-ms:200}")
+    public int sequence() {
+        int total = 0;
+        int sequenced;
+        do {
+            sequenced = transactionTemplate.execute(status -> sequenceBatch());
+            total += sequenced;
+        } while (sequenced == batchSize);
+        return total;
+    }
+
+    private int sequenceBatch() {
+        // the row is created by the migration, only a schema generated by Hibernate lacks it
+        EmployeeChangeFeed feed = changeFeedRepository.lockById(EmployeeChangeFeed.ID).orElseGet(() ->
+                changeFeedRepository.saveAndFlush(new EmployeeChangeFeed(EmployeeChangeFeed.ID, 0)));
+        // read after taking the lock, so every event committed before the previous sequencer released it is seen
+        List<EmployeeChangeEvent> events =
+                changeEventRepository.findBySequenceNumberIsNullOrderByIdAsc(PageRequest.of(0, batchSize));
+        long sequenceNumber = feed.getLastSequenceNumber();
+        for (EmployeeChangeEvent event : events) {
+            event.setSequenceNumber(++sequenceNumber);
+        }
+        feed.setLastSequenceNumber(sequenceNumber);
+        return events.size();
+    }
+}
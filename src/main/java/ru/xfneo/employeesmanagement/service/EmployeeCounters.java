@@ -0,0 +1,150 @@
+package ru.xfneo.employeesmanagement.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.xfneo.employeesmanagement.model.DepartmentHeadcount;
+import ru.xfneo.employeesmanagement.model.TitleHeadcount;
+import ru.xfneo.employeesmanagement.repository.EmployeeRepository;
+
+import java.util.*;
+
+/**
+ * In-memory number of employees by department and title, enabled by "employees.aggregates.in-memory".
+ * Loaded by a GROUP BY query on the first read, kept up to date by writers after their transaction is committed
+ * and rebuilt every "employees.aggregates.refresh-ms" to pick up changes made by other instances.
+ * A rebuild racing with a change is discarded, the next one is retried.
+ */
+@Component
+public class EmployeeCounters {
+    private static final Comparator<String> TITLE_ORDER = Comparator.nullsLast(Comparator.naturalOrder());
+
+    private final EmployeeRepository employeeRepository;
+    private final boolean enabled;
+    private Map<Long, Map<String, Long>> counts;
+    private long changes;
+
+    @Autowired
+    public EmployeeCounters(EmployeeRepository employeeRepository,
+                            @Value("${employees.aggregates.in-memory:false}") boolean enabled) {
+        this.employeeRepository = employeeRepository;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return number of employees of every department having employees, ordered by department id.
+     */
+    public List<DepartmentHeadcount> countByDepartment() {
+        Map<Long, Map<String, Long>> counts = loadedCounts();
+        List<DepartmentHeadcount> headcounts = new ArrayList<>();
+        synchronized (this) {
+            counts.forEach((departmentId, titles) -> headcounts.add(new DepartmentHeadcount(departmentId,
+                    titles.values().stream().mapToLong(Long::longValue).sum())));
+        }
+        headcounts.sort(Comparator.comparingLong(DepartmentHeadcount::getDepartmentId));
+        return headcounts;
+    }
+
+    /**
+     * @return number of employees of the department by title, ordered by title.
+     */
+    public List<TitleHeadcount> countByTitle(long departmentId) {
+        Map<Long, Map<String, Long>> counts = loadedCounts();
+        List<TitleHeadcount> headcounts = new ArrayList<>();
+        synchronized (this) {
+            counts.getOrDefault(departmentId, Collections.emptyMap())
+                    .forEach((title, count) -> headcounts.add(new TitleHeadcount(title, count)));
+        }
+        headcounts.sort(Comparator.comparing(TitleHeadcount::getTitle, TITLE_ORDER));
+        return headcounts;
+    }
+
+    public boolean hasEmployees(long departmentId) {
+        Map<Long, Map<String, Long>> counts = loadedCounts();
+        synchronized (this) {
+            return counts.containsKey(departmentId);
+        }
+    }
+
+    public void added(long departmentId, String title) {
+        change(departmentId, title, 1);
+    }
+
+    public void removed(long departmentId, String title) {
+        change(departmentId, title, -1);
+    }
+
+    public void moved(long oldDepartmentId, String oldTitle, long newDepartmentId, String newTitle) {
+        if (oldDepartmentId == newDepartmentId && Objects.equals(oldTitle, newTitle)) return;
+        synchronized (this) {
+            removed(oldDepartmentId, oldTitle);
+            added(newDepartmentId, newTitle);
+        }
+    }
+
+    /**
+     * All employees of the old department moved to the new one.
+     */
+    public synchronized void departmentReplaced(long oldDepartmentId, long newDepartmentId) {
+        if (!enabled || counts == null || oldDepartmentId == newDepartmentId) return;
+        changes++;
+        Map<String, Long> moved = counts.remove(oldDepartmentId);
+        if (moved != null) {
+            moved.forEach((title, count) -> counts.computeIfAbsent(newDepartmentId, id -> new HashMap<>())
+                    .merge(title, count, Long::sum));
+        }
+    }
+
+    /**
+     * Replace the counters with the ones counted by the database, does nothing before the first read.
+     */
+    @Scheduled(fixedDelayString = "${employees.aggregates.refresh-ms:60000}")
+    public void refresh() {
+        synchronized (this) {
+            if (!enabled || counts == null) return;
+        }
+        load();
+    }
+
+    private synchronized void change(long departmentId, String title, long delta) {
+        if (!enabled || counts == null) return;
+        changes++;
+        Map<String, Long> titles = counts.computeIfAbsent(departmentId, id -> new HashMap<>());
+        if (titles.merge(title, delta, Long::sum) <= 0) {
+            titles.remove(title);
+            if (titles.isEmpty()) counts.remove(departmentId);
+        }
+    }
+
+    private Map<Long, Map<String, Long>> loadedCounts() {
+        synchronized (this) {
+            if (counts != null) return counts;
+        }
+        return load();
+    }
+
+    /**
+     * Queries outside of the lock, so a virtual thread waiting for the database does not pin its carrier.
+     */
+    private Map<Long, Map<String, Long>> load() {
+        long changesBeforeLoad;
+        synchronized (this) {
+            changesBeforeLoad = changes;
+        }
+        Map<Long, Map<String, Long>> loaded = new HashMap<>();
+        for (Object[] row : employeeRepository.countByDepartmentAndTitle()) {
+            loaded.computeIfAbsent((Long) row[0], id -> new HashMap<>()).put((String) row[1], (Long) row[2]);
+        }
+        synchronized (this) {
+            if (counts == null || changes == changesBeforeLoad) {
+                counts = loaded;
+            }
+            return counts;
+        }
+    }
+}
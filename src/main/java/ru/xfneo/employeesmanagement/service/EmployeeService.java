@@ -1,32 +1,186 @@
 package ru.xfneo.employeesmanagement.service;
 
-import feign.Response;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import ru.xfneo.employeesmanagement.client.DepartmentClient;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.xfneo.employeesmanagement.model.DepartmentHeadcount;
 import ru.xfneo.employeesmanagement.model.DepartmentsToReplaceDto;
 import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeBatchResult;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeFeed;
+import ru.xfneo.employeesmanagement.model.EmployeeChangesPage;
+import ru.xfneo.employeesmanagement.model.EmployeeFieldsPage;
+import ru.xfneo.employeesmanagement.model.EmployeeValidation;
+import ru.xfneo.employeesmanagement.model.EmployeesPage;
+import ru.xfneo.employeesmanagement.model.TitleHeadcount;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeEventRepository;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeFeedRepository;
+import ru.xfneo.employeesmanagement.repository.EmployeeFieldsRepository;
 import ru.xfneo.employeesmanagement.repository.EmployeeRepository;
+import ru.xfneo.employeesmanagement.repository.EmployeeValidationRepository;
+import ru.xfneo.employeesmanagement.repository.EmployeeWriteRepository;
 
-import java.util.List;
-import java.util.Optional;
+import javax.persistence.EntityManager;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Every change of employees commits together with its {@link EmployeeChangeEvent}s (transactional outbox),
+ * which are read by {@link #findChanges(Long, Integer)} and published by {@link EmployeeChangeRelay}.
+ * Read-only transactions go to the read replicas when they are configured (see ReplicaRoutingDataSource).
+ * Reads of single employees and of changes stay on the primary: single employees are cached,
+ * and a replica lagging behind an invalidation would put the old employee back into the cache,
+ * and the change id to start the sync from must not be newer than the list read after it.
+ * {@link #hasEmployees(long)} stays on the primary as well, it guards deleting a department.
+ */
 @Service
 public class EmployeeService {
+    static final String SERVICE_METRIC = "employees.service";
+    static final String REJECTED_METRIC = "employees.rejected";
+    static final String DEPARTMENT_NOT_FOUND = "department_not_found";
+    static final String EMPLOYEE_NOT_FOUND = "employee_not_found";
+    static final String INVALID_DATA = "invalid_data";
+    static final String BATCH_TOO_LARGE = "batch_too_large";
+    static final String INVALID_PAGE_SIZE = "invalid_page_size";
+    static final String INVALID_QUERY = "invalid_query";
+    static final String INVALID_FIELDS = "invalid_fields";
+    static final int MIN_SEARCH_QUERY_LENGTH = 3;
+
+    public enum SearchMode {
+        PREFIX, FUZZY
+    }
+
     private final EmployeeRepository employeeRepository;
-    private final DepartmentClient departmentClient;
+    private final EmployeeChangeEventRepository changeEventRepository;
+    private final EmployeeChangeFeedRepository changeFeedRepository;
+    private final EmployeeValidationRepository validationRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final DepartmentService departmentService;
+    private final EmployeeCache employeeCache;
+    private final EmployeeCounters employeeCounters;
+    private final EntityManager entityManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${employees.page.default-size:100}")
+    private int defaultPageSize;
+    @Value("${employees.page.max-size:1000}")
+    private int maxPageSize;
+    @Value("${employees.replace-department.chunk-size:0}")
+    private int replaceDepartmentChunkSize;
+    @Value("${employees.batch.max-size:1000}")
+    private int maxBatchSize;
+    @Value("${employees.search.trigram:true}")
+    private boolean trigramSearch;
 
     @Autowired
-    public EmployeeService(EmployeeRepository employeeRepository, DepartmentClient departmentClient) {
+    public EmployeeService(EmployeeRepository employeeRepository, EmployeeChangeEventRepository changeEventRepository,
+                           EmployeeChangeFeedRepository changeFeedRepository,
+                           EmployeeValidationRepository validationRepository, TransactionTemplate transactionTemplate,
+                           DepartmentService departmentService, EmployeeCache employeeCache,
+                           EmployeeCounters employeeCounters, EntityManager entityManager, MeterRegistry meterRegistry) {
         this.employeeRepository = employeeRepository;
-        this.departmentClient = departmentClient;
+        this.changeEventRepository = changeEventRepository;
+        this.changeFeedRepository = changeFeedRepository;
+        this.validationRepository = validationRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.departmentService = departmentService;
+        this.employeeCache = employeeCache;
+        this.employeeCounters = employeeCounters;
+        this.entityManager = entityManager;
+        this.meterRegistry = meterRegistry;
     }
 
     private boolean nonexistentDepartment(long departmentId) {
-        Response response = departmentClient.checkDepartment(departmentId);
-        return response.status() < 200 || response.status() >= 300;
+        return !departmentService.exists(departmentId);
+    }
+
+    private Map<Long, Boolean> departmentsExistence(Collection<Long> departmentIds) {
+        return departmentIds.isEmpty() ? Collections.emptyMap() : departmentService.exists(departmentIds);
+    }
+
+    /**
+     * Read in a read-write transaction, so the read goes to the primary even when read replicas are configured:
+     * CRUD methods of Spring Data repositories are read-only transactions on their own.
+     */
+    private <T> T readFromPrimary(Supplier<T> read) {
+        return transactionTemplate.execute(status -> read.get());
+    }
+
+    /**
+     * Write the change events to the outbox in the transaction of the change,
+     * they are numbered in commit order by {@link EmployeeChangeSequencer} after the commit.
+     */
+    private void employeesChanged(List<EmployeeChangeEvent> events) {
+        changeEventRepository.saveAll(events);
+    }
+
+    /**
+     * Count the rejected request in "employees.rejected" by reason, 4xx responses are not errors of the service.
+     */
+    private ResponseEntity.BodyBuilder rejected(int status, String reason) {
+        meterRegistry.counter(REJECTED_METRIC, "reason", reason).increment();
+        return ResponseEntity.status(status);
+    }
+
+    private EmployeeBatchResult rejected(int index, int status, String reason, String error) {
+        meterRegistry.counter(REJECTED_METRIC, "reason", reason).increment();
+        return EmployeeBatchResult.failure(index, status, error);
+    }
+
+    private ResponseEntity<?> invalidBatch(List<Employee> employees) {
+        if (employees == null || employees.isEmpty()) {
+            return rejected(400, INVALID_DATA).body("Employees data is not valid!");
+        }
+        if (employees.size() > maxBatchSize) {
+            return rejected(400, BATCH_TOO_LARGE)
+                    .body(String.format("Batch size must not exceed %d!", maxBatchSize));
+        }
+        return null;
+    }
+
+    private ResponseEntity<?> invalidPageSize(int pageSize) {
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            return rejected(400, INVALID_PAGE_SIZE)
+                    .body(String.format("Page size must be between 1 and %d!", maxPageSize));
+        }
+        return null;
+    }
+
+    private ResponseEntity<?> invalidFields(Set<String> fields) {
+        if (!EmployeeFieldsRepository.FIELDS.containsAll(fields)) {
+            return rejected(400, INVALID_FIELDS)
+                    .body(String.format("Fields must be of %s!", String.join(", ", EmployeeFieldsRepository.FIELDS)));
+        }
+        return null;
+    }
+
+    private static List<String> orderedFields(Set<String> fields) {
+        return EmployeeFieldsRepository.FIELDS.stream().filter(fields::contains).collect(Collectors.toList());
+    }
+
+    private static boolean allFields(Set<String> fields) {
+        return fields == null || fields.isEmpty();
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 
     /**
@@ -34,23 +188,266 @@ public class EmployeeService {
      *
      * @return List of all existing employees from repository.
      */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    @Transactional(readOnly = true)
     public List<Employee> findAll() {
         return employeeRepository.findAll();
     }
 
     /**
-     * Get the employee from repository.
+     * Get only the given fields of all existing employees, selecting only their columns.
+     *
+     * @param fields names of Employee properties, or null or empty for whole employees
+     * @return ResponseEntity with code 200 and list of employees ordered by id with the given fields in body,
+     * or ResponseEntity with code 400 and body "Fields must be of %s!" if a field is not an Employee property.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> findAll(Set<String> fields) {
+        if (allFields(fields)) return ResponseEntity.ok(employeeRepository.findAll());
+        ResponseEntity<?> invalidFields = invalidFields(fields);
+        if (invalidFields != null) return invalidFields;
+        return ResponseEntity.ok(employeeRepository.findAllFields(orderedFields(fields)));
+    }
+
+    /**
+     * Get the sequence number of the last change of employees as the version of the list of all employees.
+     * Read it before {@link #findAll()} in the same request, so the version is never newer than the list
+     * (both are read from the same replica). A committed change not numbered yet does not change the last
+     * sequence number, so there is no version until {@link EmployeeChangeSequencer} numbers it.
+     *
+     * @return version of the list of all employees, 0 if employees were never changed,
+     * or empty if a committed change is not numbered yet.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    @Transactional(readOnly = true)
+    public Optional<Long> findAllVersion() {
+        Long version = changeFeedRepository.findVersion();
+        return version < 0 ? Optional.empty() : Optional.of(version);
+    }
+
+    /**
+     * Get one page of employees ordered by id, using the id of the last seen employee as a cursor.
+     *
+     * @param after id of the last employee of the previous page, or null for the first page
+     * @param size  page size, or null for the default page size
+     * @return ResponseEntity with code 200 and page of employees with the cursor of the next page in body,
+     * or ResponseEntity with code 400 and body "Page size must be between 1 and %d!" if size is out of range.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> findPage(Long after, Integer size) {
+        int pageSize = size == null ? defaultPageSize : size;
+        ResponseEntity<?> invalidPageSize = invalidPageSize(pageSize);
+        if (invalidPageSize != null) return invalidPageSize;
+        List<Employee> employees = employeeRepository.findByIdGreaterThanOrderByIdAsc(
+                after == null ? 0L : after, PageRequest.of(0, pageSize));
+        Long nextCursor = employees.size() < pageSize ? null : employees.get(employees.size() - 1).getId();
+        return ResponseEntity.ok(new EmployeesPage(employees, nextCursor));
+    }
+
+    /**
+     * Get one page of employees ordered by id with only the given fields, selecting only their columns
+     * (and id for the cursor).
+     *
+     * @param after  id of the last employee of the previous page, or null for the first page
+     * @param size   page size, or null for the default page size
+     * @param fields names of Employee properties, or null or empty for whole employees
+     * @return ResponseEntity with code 200 and page of employees with the given fields
+     * and the cursor of the next page in body,
+     * or ResponseEntity with code 400 and body "Page size must be between 1 and %d!" if size is out of range,
+     * or ResponseEntity with code 400 and body "Fields must be of %s!" if a field is not an Employee property.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> findPage(Long after, Integer size, Set<String> fields) {
+        if (allFields(fields)) return findPage(after, size);
+        int pageSize = size == null ? defaultPageSize : size;
+        ResponseEntity<?> invalidPageSize = invalidPageSize(pageSize);
+        if (invalidPageSize != null) return invalidPageSize;
+        ResponseEntity<?> invalidFields = invalidFields(fields);
+        if (invalidFields != null) return invalidFields;
+        List<String> selectedFields = orderedFields(fields);
+        if (!fields.contains("id")) selectedFields.add(0, "id");
+        List<Map<String, Object>> employees = employeeRepository.findFieldsByIdGreaterThan(
+                after == null ? 0L : after, selectedFields, pageSize);
+        Long nextCursor = employees.size() < pageSize ? null : (Long) employees.get(employees.size() - 1).get("id");
+        if (!fields.contains("id")) employees.forEach(employee -> employee.remove("id"));
+        return ResponseEntity.ok(new EmployeeFieldsPage(employees, nextCursor));
+    }
+
+    /**
+     * Search employees by first name, last name and title, one page ordered by id,
+     * using the id of the last seen employee as a cursor. The query is case-insensitive.
+     * PREFIX finds employees having a word starting with the query, FUZZY finds employees having a word similar
+     * to the query (trigram word similarity), both served by the trigram index of PostgreSQL.
+     * With "employees.search.trigram" = false (databases without pg_trgm) the table is scanned
+     * and FUZZY falls back to matching the query as a substring.
+     *
+     * @param query search query, at least 3 characters
+     * @param mode  PREFIX or FUZZY, or null for PREFIX
+     * @param after id of the last employee of the previous page, or null for the first page
+     * @param size  page size, or null for the default page size
+     * @return ResponseEntity with code 200 and page of found employees with the cursor of the next page in body,
+     * or ResponseEntity with code 400 and body "Search query must have at least %d characters!" if query is too short,
+     * or ResponseEntity with code 400 and body "Page size must be between 1 and %d!" if size is out of range.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> search(String query, SearchMode mode, Long after, Integer size) {
+        int pageSize = size == null ? defaultPageSize : size;
+        ResponseEntity<?> invalidPageSize = invalidPageSize(pageSize);
+        if (invalidPageSize != null) return invalidPageSize;
+        String normalizedQuery = query == null ? "" : query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        if (normalizedQuery.length() < MIN_SEARCH_QUERY_LENGTH) {
+            return rejected(400, INVALID_QUERY)
+                    .body(String.format("Search query must have at least %d characters!", MIN_SEARCH_QUERY_LENGTH));
+        }
+        long cursor = after == null ? 0L : after;
+        List<Employee> employees;
+        if (mode == SearchMode.FUZZY) {
+            String contains = "%" + escapeLike(normalizedQuery) + "%";
+            employees = trigramSearch
+                    ? employeeRepository.searchBySimilarity(normalizedQuery, cursor, pageSize)
+                    : employeeRepository.searchByPrefixPortable(contains, contains, cursor, PageRequest.of(0, pageSize));
+        } else {
+            String prefix = escapeLike(normalizedQuery) + "%";
+            String wordPrefix = "% " + prefix;
+            employees = trigramSearch
+                    ? employeeRepository.searchByPrefix(prefix, wordPrefix, cursor, pageSize)
+                    : employeeRepository.searchByPrefixPortable(prefix, wordPrefix, cursor, PageRequest.of(0, pageSize));
+        }
+        Long nextCursor = employees.size() < pageSize ? null : employees.get(employees.size() - 1).getId();
+        return ResponseEntity.ok(new EmployeesPage(employees, nextCursor));
+    }
+
+    /**
+     * Get the changes of employees numbered after the change with the given sequence number, in commit order.
+     * Without "since" no changes are returned, only the sequence number of the last change to start the sync from:
+     * read it, then read all employees, then poll the changes since that number, applying them as idempotent upserts.
+     * Changes are numbered after their commit (see {@link EmployeeChangeSequencer}), so a change committed late
+     * is never skipped. Changes are kept for "employees.changes.retention-seconds",
+     * a consumer must poll more often to see every change.
+     *
+     * @param since sequence number of the last seen change, or null to get the one of the last change
+     * @param size  page size, or null for the default page size
+     * @return ResponseEntity with code 200 and changes with the sequence number to pass as "since" of the next request in body,
+     * or ResponseEntity with code 400 and body "Page size must be between 1 and %d!" if size is out of range.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    public ResponseEntity<?> findChanges(Long since, Integer size) {
+        int pageSize = size == null ? defaultPageSize : size;
+        ResponseEntity<?> invalidPageSize = invalidPageSize(pageSize);
+        if (invalidPageSize != null) return invalidPageSize;
+        if (since == null) {
+            long last = changeFeedRepository.findById(EmployeeChangeFeed.ID)
+                    .map(EmployeeChangeFeed::getLastSequenceNumber).orElse(0L);
+            return ResponseEntity.ok(new EmployeeChangesPage(Collections.emptyList(), last));
+        }
+        List<EmployeeChangeEvent> changes = changeEventRepository
+                .findBySequenceNumberGreaterThanOrderBySequenceNumberAsc(since, PageRequest.of(0, pageSize));
+        long last = changes.isEmpty() ? since : changes.get(changes.size() - 1).getSequenceNumber();
+        return ResponseEntity.ok(new EmployeeChangesPage(changes, last));
+    }
+
+    /**
+     * Get the number of employees of every department having employees, ordered by department id,
+     * counted by the database or by the in-memory counters when "employees.aggregates.in-memory" is true.
+     *
+     * @return List of department ids with their number of employees.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    @Transactional(readOnly = true)
+    public List<DepartmentHeadcount> countByDepartment() {
+        return employeeCounters.isEnabled()
+                ? employeeCounters.countByDepartment()
+                : employeeRepository.countByDepartment();
+    }
+
+    /**
+     * Get the number of employees of the department by title, ordered by title,
+     * counted by the database or by the in-memory counters when "employees.aggregates.in-memory" is true.
+     *
+     * @param departmentId id of the department
+     * @return List of titles with their number of employees, empty if the department has no employees.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    @Transactional(readOnly = true)
+    public List<TitleHeadcount> countByTitle(long departmentId) {
+        return employeeCounters.isEnabled()
+                ? employeeCounters.countByTitle(departmentId)
+                : employeeRepository.countByTitle(departmentId);
+    }
+
+    /**
+     * Check that the department has employees,
+     * in the database or in the in-memory counters when "employees.aggregates.in-memory" is true.
+     *
+     * @param departmentId id of the department
+     * @return true if at least one employee belongs to the department.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    public boolean hasEmployees(long departmentId) {
+        return employeeCounters.isEnabled()
+                ? employeeCounters.hasEmployees(departmentId)
+                : employeeRepository.existsByDepartmentId(departmentId);
+    }
+
+    /**
+     * Pass all existing employees ordered by id to the consumer one by one,
+     * reading them through a database cursor so memory use does not depend on the table size.
+     *
+     * @param consumer action to perform for each employee
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<Employee> consumer) {
+        try (Stream<Employee> employees = employeeRepository.streamAll()) {
+            employees.forEach(employee -> {
+                consumer.accept(employee);
+                entityManager.detach(employee);
+            });
+        }
+    }
+
+    /**
+     * Get the employee from cache, or from repository on a cache miss.
      *
      * @param id  ID of the employee you want to receive
-     * @return ResponseEntity with code 200 and employee in body,
+     * @return ResponseEntity with code 200, employee in body and employee version as ETag,
      * or ResponseEntity with code 404 and body "Employee Not Found" if employee with that id does not exist.
      */
+    @Timed(value = SERVICE_METRIC, histogram = true)
     public ResponseEntity<?> find(Long id) {
-        Optional<Employee> employeeOptional = employeeRepository.findById(id);
-        if (employeeOptional.isPresent()) {
-            return ResponseEntity.ok(employeeOptional.get());
+        Employee employee = id == null
+                ? null
+                : employeeCache.get(id, () -> readFromPrimary(() -> employeeRepository.findById(id)).orElse(null));
+        if (employee != null) {
+            return ResponseEntity.ok().eTag(Long.toString(employee.getVersion())).body(employee);
         }
-        return ResponseEntity.status(404).body("Employee Not Found");
+        return rejected(404, EMPLOYEE_NOT_FOUND).body("Employee Not Found");
+    }
+
+    /**
+     * Get only the given fields of the employee from cache, or from repository on a cache miss.
+     *
+     * @param id     ID of the employee you want to receive
+     * @param fields names of Employee properties, or null or empty for the whole employee
+     * @return ResponseEntity with code 200, employee with the given fields in body and employee version as ETag,
+     * or ResponseEntity with code 404 and body "Employee Not Found" if employee with that id does not exist,
+     * or ResponseEntity with code 400 and body "Fields must be of %s!" if a field is not an Employee property.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    public ResponseEntity<?> find(Long id, Set<String> fields) {
+        if (allFields(fields)) return find(id);
+        ResponseEntity<?> invalidFields = invalidFields(fields);
+        if (invalidFields != null) return invalidFields;
+        ResponseEntity<?> response = find(id);
+        if (!(response.getBody() instanceof Employee)) return response;
+        BeanWrapper employee = new BeanWrapperImpl(response.getBody());
+        Map<String, Object> employeeFields = new LinkedHashMap<>();
+        orderedFields(fields).forEach(field -> employeeFields.put(field, employee.getPropertyValue(field)));
+        return ResponseEntity.ok().headers(response.getHeaders()).body(employeeFields);
     }
 
     /**
@@ -62,18 +459,116 @@ public class EmployeeService {
      * @return ResponseEntity with code 201 and saved employee in body,
      * or ResponseEntity with code 400 and body "Department with id %d not found!" if department does not exist.
      */
+    @Timed(value = SERVICE_METRIC, histogram = true)
     public ResponseEntity<?> create(Employee employee) {
         if (nonexistentDepartment(employee.getDepartmentId()))
-            return ResponseEntity
-                    .status(400)
+            return rejected(400, DEPARTMENT_NOT_FOUND)
                     .body(String.format("Department with id %d not found!", employee.getDepartmentId()));
-        return ResponseEntity.status(201).body(employeeRepository.save(employee));
+        Employee savedEmployee = transactionTemplate.execute(status -> {
+            Employee saved = employeeRepository.save(employee);
+            employeesChanged(Collections.singletonList(EmployeeChangeEvent.created(saved)));
+            return saved;
+        });
+        employeeCounters.added(savedEmployee.getDepartmentId(), savedEmployee.getTitle());
+        return ResponseEntity.status(201).body(savedEmployee);
+    }
+
+    /**
+     * Create and save the list of employees to repository in one transaction with batched inserts,
+     * checking before that every distinct department exists only once
+     * (call external service department-management-ws, by its bulk endpoint when it has one).
+     * IDs in the request are ignored, new ones are generated.
+     *
+     * @param employees  employees to check and save
+     * @return ResponseEntity with code 200 and list of results in the request order in body,
+     * where successfully created employees have status 201,
+     * employees with nonexistent department have status 400 and error "Department with id %d not found!",
+     * null employees have status 400 and error "Employee data is not valid!",
+     * or ResponseEntity with code 400 and body "Employees data is not valid!" if list is null or empty,
+     * or ResponseEntity with code 400 and body "Batch size must not exceed %d!" if list is too large.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    public ResponseEntity<?> createAll(List<Employee> employees) {
+        ResponseEntity<?> invalidBatch = invalidBatch(employees);
+        if (invalidBatch != null) return invalidBatch;
+        Map<Long, Boolean> departmentsExistence = departmentsExistence(employees.stream()
+                .filter(Objects::nonNull)
+                .map(Employee::getDepartmentId)
+                .collect(Collectors.toSet()));
+        EmployeeBatchResult[] results = new EmployeeBatchResult[employees.size()];
+        List<Employee> employeesToSave = new ArrayList<>();
+        List<Integer> indexesToSave = new ArrayList<>();
+        for (int i = 0; i < employees.size(); i++) {
+            Employee employee = employees.get(i);
+            if (employee == null) {
+                results[i] = rejected(i, 400, INVALID_DATA, "Employee data is not valid!");
+            } else if (!departmentsExistence.get(employee.getDepartmentId())) {
+                results[i] = rejected(i, 400, DEPARTMENT_NOT_FOUND,
+                        String.format("Department with id %d not found!", employee.getDepartmentId()));
+            } else {
+                employee.setId(0);
+                employeesToSave.add(employee);
+                indexesToSave.add(i);
+            }
+        }
+        List<Employee> savedEmployees = transactionTemplate.execute(status -> {
+            List<Employee> saved = employeeRepository.saveAll(employeesToSave);
+            if (!saved.isEmpty()) {
+                employeesChanged(saved.stream().map(EmployeeChangeEvent::created).collect(Collectors.toList()));
+            }
+            return saved;
+        });
+        savedEmployees.forEach(saved -> employeeCounters.added(saved.getDepartmentId(), saved.getTitle()));
+        for (int i = 0; i < savedEmployees.size(); i++) {
+            results[indexesToSave.get(i)] = EmployeeBatchResult.success(indexesToSave.get(i), 201, savedEmployees.get(i));
+        }
+        return ResponseEntity.ok(Arrays.asList(results));
+    }
+
+    /**
+     * Promote the employees queued by {@link EmployeeValidationService} whose department exists
+     * to employees with their CREATED events and reject the others, in one transaction.
+     * The queued rows are locked and only those still pending are validated,
+     * so a batch read by the workers of several instances is validated once.
+     *
+     * @param validationIds        ids of the queued employees
+     * @param departmentsExistence existence of the departments of the queued employees by department id
+     * @return the queued employees which were validated now, with their new status
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    public List<EmployeeValidation> validate(Collection<Long> validationIds, Map<Long, Boolean> departmentsExistence) {
+        List<EmployeeValidation> validated = transactionTemplate.execute(status -> {
+            List<EmployeeValidation> pending = validationRepository.findByIdInAndStatus(
+                    validationIds, EmployeeValidation.Status.PENDING_VALIDATION);
+            List<EmployeeValidation> valid = new ArrayList<>();
+            for (EmployeeValidation validation : pending) {
+                if (departmentsExistence.get(validation.getDepartmentId())) {
+                    valid.add(validation);
+                } else {
+                    validation.rejected(String.format("Department with id %d not found!", validation.getDepartmentId()));
+                }
+            }
+            List<Employee> saved = employeeRepository.saveAll(
+                    valid.stream().map(EmployeeValidation::toEmployee).collect(Collectors.toList()));
+            for (int i = 0; i < saved.size(); i++) {
+                valid.get(i).validated(saved.get(i));
+            }
+            if (!saved.isEmpty()) {
+                employeesChanged(saved.stream().map(EmployeeChangeEvent::created).collect(Collectors.toList()));
+            }
+            return pending;
+        });
+        validated.stream()
+                .filter(validation -> validation.getStatus() == EmployeeValidation.Status.VALID)
+                .forEach(validation -> employeeCounters.added(validation.getDepartmentId(), validation.getTitle()));
+        return validated;
     }
 
     /**
      * Update the employee and save to repository,
      * if department changed, checking before that the specified department exists
      * (call external service department-management-ws).
+     * The employee is written by one UPDATE of the version which was read, as a merge would read it again.
      *
      * @param originalEmployeeId  id of the employee to change
      * @param editedEmployee  updated employee's data to save
@@ -81,58 +576,256 @@ public class EmployeeService {
      * or ResponseEntity with code 404 and body "Employee Not Found" if original employee does not exist,
      * or ResponseEntity with code 400 and body "Employee data is not valid!" if updated employee is null,
      * or ResponseEntity with code 400 and body "Department with id %d not found!" if edited department does not exist.
+     * @throws ObjectOptimisticLockingFailureException if the employee was changed or deleted after it was read
      */
+    @Timed(value = SERVICE_METRIC, histogram = true)
     public ResponseEntity<?> update(Long originalEmployeeId, Employee editedEmployee) {
-        Optional<Employee> employeeOptional = employeeRepository.findById(originalEmployeeId);
+        Optional<Employee> employeeOptional = readFromPrimary(() -> employeeRepository.findById(originalEmployeeId));
         if (!employeeOptional.isPresent()) {
-            return ResponseEntity.status(404).body("Employee Not Found");
+            return rejected(404, EMPLOYEE_NOT_FOUND).body("Employee Not Found");
         }
-        if (editedEmployee == null) return ResponseEntity.status(400).body("Employee data is not valid!");
-        Employee employeeToSave = employeeOptional.get();
-        if (employeeToSave.getDepartmentId() != editedEmployee.getDepartmentId()) {
+        if (editedEmployee == null) return rejected(400, INVALID_DATA).body("Employee data is not valid!");
+        Employee originalEmployee = employeeOptional.get();
+        if (originalEmployee.getDepartmentId() != editedEmployee.getDepartmentId()) {
             if (nonexistentDepartment(editedEmployee.getDepartmentId())) {
-                return ResponseEntity
-                        .status(400)
+                return rejected(400, DEPARTMENT_NOT_FOUND)
                         .body(String.format("Department with id %d not found!", editedEmployee.getDepartmentId()));
             }
         }
-        BeanUtils.copyProperties(editedEmployee, employeeToSave, "id");
-        return ResponseEntity.ok(employeeRepository.save(employeeToSave));
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("departmentId", editedEmployee.getDepartmentId());
+        fields.put("firstName", editedEmployee.getFirstName());
+        fields.put("lastName", editedEmployee.getLastName());
+        fields.put("title", editedEmployee.getTitle());
+        Employee savedEmployee = transactionTemplate.execute(status -> {
+            Employee saved = employeeRepository.updateFields(originalEmployeeId, originalEmployee.getVersion(), fields)
+                    .orElseThrow(() -> new ObjectOptimisticLockingFailureException(Employee.class, originalEmployeeId));
+            employeesChanged(Collections.singletonList(EmployeeChangeEvent.updated(saved)));
+            return saved;
+        });
+        employeeCache.invalidate(savedEmployee.getId());
+        employeeCounters.moved(originalEmployee.getDepartmentId(), originalEmployee.getTitle(),
+                savedEmployee.getDepartmentId(), savedEmployee.getTitle());
+        return ResponseEntity.ok(savedEmployee);
+    }
+
+    /**
+     * Change only the given fields of the employee with one UPDATE statement returning the employee
+     * (JSON merge patch), checking before that the department exists if it is given
+     * (call external service department-management-ws).
+     * The employee is not read before, but with "employees.aggregates.in-memory" when the department or title changes,
+     * as the counters need the old ones.
+     *
+     * @param id     id of the employee to change
+     * @param fields new values of departmentId, firstName, lastName or title by field name, null clears a name or title
+     * @return ResponseEntity with code 200 and updated employee in body,
+     * or ResponseEntity with code 404 and body "Employee Not Found" if employee does not exist,
+     * or ResponseEntity with code 400 and body "Fields must be of %s!" if a field can not be changed or no field is given,
+     * or ResponseEntity with code 400 and body "Employee data is not valid!" if a value is of wrong type,
+     * or ResponseEntity with code 400 and body "Department with id %d not found!" if department does not exist.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    public ResponseEntity<?> patch(Long id, Map<String, Object> fields) {
+        if (fields == null || fields.isEmpty() || !EmployeeWriteRepository.UPDATABLE_FIELDS.containsAll(fields.keySet())) {
+            return rejected(400, INVALID_FIELDS).body(String.format("Fields must be of %s!",
+                    String.join(", ", EmployeeWriteRepository.UPDATABLE_FIELDS)));
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            Object value = field.getValue();
+            if (field.getKey().equals("departmentId")) {
+                if (!(value instanceof Integer || value instanceof Long)) {
+                    return rejected(400, INVALID_DATA).body("Employee data is not valid!");
+                }
+                value = ((Number) value).longValue();
+            } else if (value != null && !(value instanceof String)) {
+                return rejected(400, INVALID_DATA).body("Employee data is not valid!");
+            }
+            values.put(field.getKey(), value);
+        }
+        Long departmentId = (Long) values.get("departmentId");
+        if (departmentId != null && nonexistentDepartment(departmentId)) {
+            return rejected(400, DEPARTMENT_NOT_FOUND)
+                    .body(String.format("Department with id %d not found!", departmentId));
+        }
+        boolean readBefore = employeeCounters.isEnabled()
+                && (values.containsKey("departmentId") || values.containsKey("title"));
+        AtomicReference<Employee> beforeUpdate = new AtomicReference<>();
+        Optional<Employee> savedEmployee = transactionTemplate.execute(status -> {
+            if (readBefore) {
+                employeeRepository.findById(id).ifPresent(employee -> beforeUpdate.set(
+                        new Employee(id, employee.getDepartmentId(), null, null, employee.getTitle())));
+            }
+            Optional<Employee> saved = employeeRepository.updateFields(id, null, values);
+            saved.ifPresent(employee -> employeesChanged(Collections.singletonList(EmployeeChangeEvent.updated(employee))));
+            return saved;
+        });
+        if (!savedEmployee.isPresent()) return rejected(404, EMPLOYEE_NOT_FOUND).body("Employee Not Found");
+        employeeCache.invalidate(id);
+        if (beforeUpdate.get() != null) {
+            employeeCounters.moved(beforeUpdate.get().getDepartmentId(), beforeUpdate.get().getTitle(),
+                    savedEmployee.get().getDepartmentId(), savedEmployee.get().getTitle());
+        }
+        return ResponseEntity.ok(savedEmployee.get());
+    }
+
+    /**
+     * Update the list of employees identified by their IDs in one transaction with batched updates,
+     * checking before that every distinct changed department exists only once
+     * (call external service department-management-ws, by its bulk endpoint when it has one).
+     * The employees are read once before the departments are checked, and changed as read again in the transaction,
+     * so only the UPDATE statements follow. An employee changed to a department that was not checked,
+     * because it was the employee's department when first read, is accepted.
+     *
+     * @param editedEmployees  updated employees' data with IDs of the employees to change
+     * @return ResponseEntity with code 200 and list of results in the request order in body,
+     * where successfully updated employees have status 200,
+     * employees which do not exist have status 404 and error "Employee Not Found",
+     * employees with nonexistent edited department have status 400 and error "Department with id %d not found!",
+     * null employees have status 400 and error "Employee data is not valid!",
+     * employees whose ID is given earlier in the list have status 400 and error "Employee with id %d is repeated!",
+     * or ResponseEntity with code 400 and body "Employees data is not valid!" if list is null or empty,
+     * or ResponseEntity with code 400 and body "Batch size must not exceed %d!" if list is too large.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    public ResponseEntity<?> updateAll(List<Employee> editedEmployees) {
+        ResponseEntity<?> invalidBatch = invalidBatch(editedEmployees);
+        if (invalidBatch != null) return invalidBatch;
+        EmployeeBatchResult[] results = new EmployeeBatchResult[editedEmployees.size()];
+        Map<Long, Integer> indexesById = new LinkedHashMap<>();
+        for (int i = 0; i < editedEmployees.size(); i++) {
+            Employee editedEmployee = editedEmployees.get(i);
+            if (editedEmployee == null) {
+                results[i] = rejected(i, 400, INVALID_DATA, "Employee data is not valid!");
+            } else if (indexesById.putIfAbsent(editedEmployee.getId(), i) != null) {
+                results[i] = rejected(i, 400, INVALID_DATA,
+                        String.format("Employee with id %d is repeated!", editedEmployee.getId()));
+            }
+        }
+        Map<Long, Long> originalDepartments = readFromPrimary(() -> employeeRepository.findAllById(indexesById.keySet()))
+                .stream()
+                .collect(Collectors.toMap(Employee::getId, Employee::getDepartmentId));
+        Map<Long, Boolean> departmentsExistence = departmentsExistence(indexesById.keySet().stream()
+                .filter(originalDepartments::containsKey)
+                .map(id -> editedEmployees.get(indexesById.get(id)))
+                .filter(edited -> originalDepartments.get(edited.getId()) != edited.getDepartmentId())
+                .map(Employee::getDepartmentId)
+                .collect(Collectors.toSet()));
+        Map<Long, Employee> employeesBeforeUpdate = new HashMap<>();
+        List<Employee> savedEmployees = transactionTemplate.execute(status -> {
+            Map<Long, Employee> employees = employeeRepository.findAllById(originalDepartments.keySet())
+                    .stream()
+                    .collect(Collectors.toMap(Employee::getId, Function.identity()));
+            List<Employee> saved = new ArrayList<>();
+            for (Map.Entry<Long, Integer> indexById : indexesById.entrySet()) {
+                int i = indexById.getValue();
+                Employee editedEmployee = editedEmployees.get(i);
+                Employee employeeToSave = employees.get(indexById.getKey());
+                if (employeeToSave == null) {
+                    results[i] = rejected(i, 404, EMPLOYEE_NOT_FOUND, "Employee Not Found");
+                } else if (employeeToSave.getDepartmentId() != editedEmployee.getDepartmentId()
+                        && !departmentsExistence.getOrDefault(editedEmployee.getDepartmentId(), true)) {
+                    results[i] = rejected(i, 400, DEPARTMENT_NOT_FOUND,
+                            String.format("Department with id %d not found!", editedEmployee.getDepartmentId()));
+                } else {
+                    employeesBeforeUpdate.put(employeeToSave.getId(), new Employee(employeeToSave.getId(),
+                            employeeToSave.getDepartmentId(), null, null, employeeToSave.getTitle()));
+                    BeanUtils.copyProperties(editedEmployee, employeeToSave, "id", "version");
+                    results[i] = EmployeeBatchResult.success(i, 200, employeeToSave);
+                    saved.add(employeeToSave);
+                }
+            }
+            if (!saved.isEmpty()) {
+                // the versions of the snapshots are the incremented ones
+                employeeRepository.flush();
+                employeesChanged(saved.stream().map(EmployeeChangeEvent::updated).collect(Collectors.toList()));
+            }
+            return saved;
+        });
+        employeeCache.invalidateAll(savedEmployees.stream().map(Employee::getId).collect(Collectors.toList()));
+        savedEmployees.forEach(saved -> {
+            Employee beforeUpdate = employeesBeforeUpdate.get(saved.getId());
+            employeeCounters.moved(beforeUpdate.getDepartmentId(), beforeUpdate.getTitle(),
+                    saved.getDepartmentId(), saved.getTitle());
+        });
+        return ResponseEntity.ok(Arrays.asList(results));
     }
 
     /**
-     * Transfer all employees from one department to another and save them to repository,
+     * Transfer all employees from one department to another with set-based updates,
      * checking before that new department exists
      * (call external service department-management-ws).
+     * Employees are moved by one statement, or by chunks of "employees.replace-department.chunk-size"
+     * employees in separate transactions when the chunk size is positive.
      *
      * @param departments class with 2 department ids: old department and new department
      * @return ResponseEntity with code 200 and body "%d employee(s) are affected"(how many employees have been transferred),
      * or ResponseEntity with code 400 and body "Department with id %d not found!" if new department does not exist.
      */
+    @Timed(value = SERVICE_METRIC, histogram = true)
     public ResponseEntity<?> replaceDepartmentId(DepartmentsToReplaceDto departments) {
-        List<Employee> employeesWithOldDepartmentId = employeeRepository.findByDepartmentId(departments.getOldDepartmentID());
         if (nonexistentDepartment(departments.getNewDepartmentID())) {
-            return ResponseEntity
-                    .status(400)
+            return rejected(400, DEPARTMENT_NOT_FOUND)
                     .body(String.format("Department with id %d not found!", departments.getNewDepartmentID()));
         }
-        employeesWithOldDepartmentId.forEach(employee -> {
-            employee.setDepartmentId(departments.getNewDepartmentID());
-            employeeRepository.save(employee);
+        int affected = departments.getOldDepartmentID() == departments.getNewDepartmentID()
+                ? 0
+                : transferEmployees(departments.getOldDepartmentID(), departments.getNewDepartmentID());
+        if (affected > 0) {
+            employeeCache.invalidateDepartment(departments.getOldDepartmentID());
+            employeeCounters.departmentReplaced(departments.getOldDepartmentID(), departments.getNewDepartmentID());
+        }
+        return ResponseEntity.ok(affected + " employee(s) are affected");
+    }
+
+    /**
+     * Every statement or chunk commits with its own DEPARTMENT_REPLACED event,
+     * consumers applying the first one move the whole department at once.
+     */
+    private int transferEmployees(long oldDepartmentId, long newDepartmentId) {
+        if (replaceDepartmentChunkSize <= 0) {
+            return transferred(oldDepartmentId, newDepartmentId,
+                    () -> employeeRepository.updateDepartmentId(oldDepartmentId, newDepartmentId));
+        }
+        int affected = 0;
+        int chunk;
+        do {
+            chunk = transferred(oldDepartmentId, newDepartmentId, () -> employeeRepository.updateDepartmentIdChunk(
+                    oldDepartmentId, newDepartmentId, replaceDepartmentChunkSize));
+            affected += chunk;
+        } while (chunk == replaceDepartmentChunkSize);
+        return affected;
+    }
+
+    private int transferred(long oldDepartmentId, long newDepartmentId, IntSupplier transfer) {
+        Integer affected = transactionTemplate.execute(status -> {
+            int transferred = transfer.getAsInt();
+            if (transferred > 0) {
+                employeesChanged(Collections.singletonList(
+                        EmployeeChangeEvent.departmentReplaced(oldDepartmentId, newDepartmentId)));
+            }
+            return transferred;
         });
-        return ResponseEntity.ok(employeesWithOldDepartmentId.size() + " employee(s) are affected");
+        return affected == null ? 0 : affected;
     }
 
     /**
-     * Delete the employee from repository.
+     * Delete the employee from repository with one DELETE statement returning the deleted employee.
      *
      * @param id id of the employee to delete
      * @return ResponseEntity with code 204 without body.
      */
+    @Timed(value = SERVICE_METRIC, histogram = true)
     public ResponseEntity<?> delete(Long id) {
-        Optional<Employee> employeeOptional = employeeRepository.findById(id);
-        if (employeeOptional.isPresent()) {
-            employeeRepository.deleteById(id);
+        if (id == null) return ResponseEntity.status(204).build();
+        Optional<Employee> deletedEmployee = transactionTemplate.execute(status -> {
+            Optional<Employee> deleted = employeeRepository.deleteReturning(id);
+            deleted.ifPresent(employee -> employeesChanged(Collections.singletonList(EmployeeChangeEvent.deleted(employee))));
+            return deleted;
+        });
+        if (deletedEmployee.isPresent()) {
+            employeeCache.invalidate(id);
+            employeeCounters.removed(deletedEmployee.get().getDepartmentId(), deletedEmployee.get().getTitle());
         }
         return ResponseEntity.status(204).build();
     }
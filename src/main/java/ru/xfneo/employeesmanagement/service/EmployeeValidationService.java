@@ -0,0 +1,201 @@
+package ru.xfneo.employeesmanagement.service;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeValidation;
+import ru.xfneo.employeesmanagement.repository.EmployeeValidationRepository;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static ru.xfneo.employeesmanagement.service.EmployeeService.REJECTED_METRIC;
+import static ru.xfneo.employeesmanagement.service.EmployeeService.SERVICE_METRIC;
+
+/**
+ * Asynchronous create of employees: the employee is queued as PENDING_VALIDATION without waiting
+ * for the departments service, and the worker validates the queue every "employees.validation.interval-ms"
+ * in batches of "employees.validation.batch-size", checking the distinct departments of a batch by one bulk lookup,
+ * then promotes the queued employees to employees or rejects them (see {@link EmployeeService#validate}).
+ * While the departments service is unavailable the queue waits for the next run.
+ * At most "employees.validation.max-pending" employees wait in the queue, creates beyond it get 503.
+ * The number of pending employees is counted from the table on every run and by the creates of this instance
+ * between the runs. Validated employees are kept for "employees.validation.retention-seconds" for their status.
+ */
+@Slf4j
+@Service
+public class EmployeeValidationService {
+    public static final String VALIDATIONS_PATH = "/api/employees/validations/";
+    public static final String PREFER_HEADER = "Prefer";
+    public static final String RESPOND_ASYNC = "respond-async";
+    static final String PREFERENCE_APPLIED_HEADER = "Preference-Applied";
+    static final String PENDING_METRIC = "employees.validation.pending";
+    static final String VALIDATED_METRIC = "employees.validation.validated";
+    static final String DEFERRED_METRIC = "employees.validation.deferred";
+    static final String LAG_METRIC = "employees.validation.lag";
+    static final String VALIDATION_QUEUE_FULL = "validation_queue_full";
+    static final String VALIDATION_NOT_FOUND = "validation_not_found";
+
+    private final EmployeeValidationRepository repository;
+    private final EmployeeService employeeService;
+    private final DepartmentService departmentService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Counter promoted;
+    private final Counter rejected;
+    private final Counter deferred;
+    private final Timer lag;
+    private final AtomicLong pending = new AtomicLong();
+    private final int batchSize;
+    private final long maxPending;
+    private final long retentionMillis;
+    private final String retryAfterSeconds;
+
+    @Autowired
+    public EmployeeValidationService(EmployeeValidationRepository repository, EmployeeService employeeService,
+                                     DepartmentService departmentService, TransactionTemplate transactionTemplate,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${employees.validation.batch-size:500}") int batchSize,
+                                     @Value("${employees.validation.max-pending:100000}") long maxPending,
+                                     @Value("${employees.validation.interval-ms:1000}") long intervalMillis,
+                                     @Value("${employees.validation.retention-seconds:86400}") long retentionSeconds) {
+        this.repository = repository;
+        this.employeeService = employeeService;
+        this.departmentService = departmentService;
+        this.transactionTemplate = transactionTemplate;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.retentionMillis = TimeUnit.SECONDS.toMillis(retentionSeconds);
+        this.retryAfterSeconds = Long.toString(Math.max(1, TimeUnit.MILLISECONDS.toSeconds(intervalMillis)));
+        this.promoted = meterRegistry.counter(VALIDATED_METRIC, "status", "valid");
+        this.rejected = meterRegistry.counter(VALIDATED_METRIC, "status", "rejected");
+        this.deferred = meterRegistry.counter(DEFERRED_METRIC);
+        this.lag = Timer.builder(LAG_METRIC)
+                .description("Time from the create to the validation of queued employees")
+                .register(meterRegistry);
+        Gauge.builder(PENDING_METRIC, pending, AtomicLong::get)
+                .description("Employees waiting in the validation queue")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue the employee for the validation of its department.
+     *
+     * @param employee employee to queue, its id is ignored
+     * @return ResponseEntity with code 202, the queued employee in body, its status URI as Location
+     * and "Preference-Applied: respond-async",
+     * or ResponseEntity with code 503 and body "Validation queue is full, retry later!" if the queue is full.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    public ResponseEntity<?> submit(Employee employee) {
+        if (pending.get() >= maxPending) {
+            return rejected(503, VALIDATION_QUEUE_FULL)
+                    .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                    .body("Validation queue is full, retry later!");
+        }
+        EmployeeValidation queued = repository.save(new EmployeeValidation(employee));
+        pending.incrementAndGet();
+        return ResponseEntity.accepted()
+                .location(URI.create(VALIDATIONS_PATH + queued.getId()))
+                .header(PREFERENCE_APPLIED_HEADER, RESPOND_ASYNC)
+                .body(queued);
+    }
+
+    /**
+     * Get the status of the queued employee, read from the primary as it changes right after the create.
+     *
+     * @param id id of the queued employee
+     * @return ResponseEntity with code 200 and the queued employee in body,
+     * or ResponseEntity with code 404 and body "Validation Not Found" if it does not exist or is purged.
+     */
+    @Timed(value = SERVICE_METRIC, histogram = true)
+    public ResponseEntity<?> find(Long id) {
+        Optional<EmployeeValidation> validation = id == null
+                ? Optional.empty()
+                : transactionTemplate.execute(status -> repository.findById(id));
+        if (validation.isPresent()) return ResponseEntity.ok(validation.get());
+        return rejected(404, VALIDATION_NOT_FOUND).body("Validation Not Found");
+    }
+
+    /**
+     * Validate batches until the queue is drained or the departments service is unavailable.
+     *
+     * @return number of validated employees
+     */
+    @Scheduled(fixedDelayString = "${employees.validation.interval-ms:1000}")
+    public int validatePending() {
+        pending.set(transactionTemplate.execute(status ->
+                repository.countByStatus(EmployeeValidation.Status.PENDING_VALIDATION)));
+        int total = 0;
+        List<EmployeeValidation> batch;
+        do {
+            batch = transactionTemplate.execute(status -> repository.findByStatusOrderByIdAsc(
+                    EmployeeValidation.Status.PENDING_VALIDATION, PageRequest.of(0, batchSize)));
+            if (batch.isEmpty()) break;
+            Map<Long, Boolean> departmentsExistence;
+            try {
+                departmentsExistence = departmentService.exists(batch.stream()
+                        .map(EmployeeValidation::getDepartmentId)
+                        .collect(Collectors.toSet()));
+            } catch (DepartmentServiceUnavailableException e) {
+                log.warn("Departments service is unavailable, {} queued employee(s) from id {} wait for the next run",
+                        batch.size(), batch.get(0).getId());
+                deferred.increment(batch.size());
+                break;
+            }
+            List<EmployeeValidation> validated = employeeService.validate(
+                    batch.stream().map(EmployeeValidation::getId).collect(Collectors.toList()), departmentsExistence);
+            validated.forEach(validation -> {
+                (validation.getStatus() == EmployeeValidation.Status.VALID ? promoted : rejected).increment();
+                lag.record(Duration.between(validation.getCreatedAt(), validation.getValidatedAt()));
+            });
+            pending.addAndGet(-validated.size());
+            total += validated.size();
+        } while (batch.size() == batchSize);
+        return total;
+    }
+
+    /**
+     * Delete the validated employees older than "employees.validation.retention-seconds".
+     */
+    @Scheduled(fixedDelayString = "${employees.validation.purge-ms:600000}")
+    public void purgeValidated() {
+        repository.deleteValidatedBefore(Instant.now().minusMillis(retentionMillis));
+    }
+
+    /**
+     * @param prefer value of the "Prefer" header, or null
+     * @return true if the client prefers the asynchronous create
+     */
+    public static boolean respondAsync(String prefer) {
+        return prefer != null && Arrays.stream(prefer.split(","))
+                .map(preference -> preference.trim().split(";", 2)[0].trim())
+                .anyMatch(RESPOND_ASYNC::equalsIgnoreCase);
+    }
+
+    private ResponseEntity.BodyBuilder rejected(int status, String reason) {
+        meterRegistry.counter(REJECTED_METRIC, "reason", reason).increment();
+        return ResponseEntity.status(status);
+    }
+}
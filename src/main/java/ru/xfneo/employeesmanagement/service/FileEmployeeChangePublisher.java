@@ -0,0 +1,47 @@
+package ru.xfneo.employeesmanagement.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+/**
+ * Appends change events to "employees.changes.file" as newline delimited JSON,
+ * enabled by "employees.changes.publisher" = file.
+ */
+@Component
+@ConditionalOnProperty(name = "employees.changes.publisher", havingValue = "file")
+public class FileEmployeeChangePublisher implements EmployeeChangePublisher {
+    private final Path file;
+    private final ObjectWriter writer;
+
+    @Autowired
+    public FileEmployeeChangePublisher(@Value("${employees.changes.file:employee-changes.ndjson}") String file,
+                                       ObjectMapper objectMapper) {
+        this.file = Paths.get(file);
+        this.writer = objectMapper.writerFor(EmployeeChangeEvent.class);
+    }
+
+    @Override
+    public synchronized void publish(List<EmployeeChangeEvent> events) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, CREATE, APPEND)) {
+            for (EmployeeChangeEvent event : events) {
+                out.write(writer.writeValueAsString(event));
+                out.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package ru.xfneo.employeesmanagement.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.xfneo.employeesmanagement.model.IdempotencyRecord;
+import ru.xfneo.employeesmanagement.repository.IdempotencyRecordRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static ru.xfneo.employeesmanagement.service.EmployeeService.REJECTED_METRIC;
+
+/**
+ * Writes retried by clients with the same "Idempotency-Key" header are executed once.
+ * The first request claims the key by inserting an in-progress row, its response is stored in the row
+ * with its Location, Preference-Applied and ETag headers
+ * and replayed to every retry within "employees.idempotency.ttl-seconds" without executing the write,
+ * including its department check, again. Completed responses are cached in memory in front of the table.
+ * A retry while the first request is in progress gets 409, a key reused for another request gets 422.
+ * Failed writes and responses with status 5xx release the key, so the retry executes the write,
+ * a claim not completed within "employees.idempotency.claim-timeout-ms" (crashed instance) is released too.
+ */
+@Service
+public class IdempotencyService {
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    static final String REPLAYED_METRIC = "employees.idempotency.replayed";
+    static final String INVALID_IDEMPOTENCY_KEY = "invalid_idempotency_key";
+    static final String IDEMPOTENCY_KEY_IN_PROGRESS = "idempotency_key_in_progress";
+    static final String IDEMPOTENCY_KEY_REUSED = "idempotency_key_reused";
+    static final int MAX_KEY_LENGTH = 255;
+    private static final String CACHE_NAME = "idempotency";
+    private static final TypeReference<LinkedHashMap<String, List<String>>> HEADERS_TYPE =
+            new TypeReference<LinkedHashMap<String, List<String>>>() {
+            };
+    private static final int IN_PROGRESS = 0;
+    private static final List<String> STORED_HEADERS = Arrays.asList(
+            HttpHeaders.LOCATION, EmployeeValidationService.PREFERENCE_APPLIED_HEADER, HttpHeaders.ETAG);
+
+    private final IdempotencyRecordRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, IdempotencyRecord> completed;
+    /**
+     * In-progress rows of the keys claimed by this instance and not completed yet.
+     */
+    private final Map<String, IdempotencyRecord> claimed = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final long claimTimeoutMillis;
+
+    @Autowired
+    public IdempotencyService(IdempotencyRecordRepository repository,
+                              TransactionTemplate transactionTemplate,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${employees.idempotency.cache.maximum-size:10000}") long maximumSize,
+                              @Value("${employees.idempotency.ttl-seconds:86400}") long ttlSeconds,
+                              @Value("${employees.idempotency.claim-timeout-ms:60000}") long claimTimeoutMillis) {
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.claimTimeoutMillis = claimTimeoutMillis;
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, completed, CACHE_NAME);
+    }
+
+    /**
+     * Execute the write once per key.
+     *
+     * @param key       value of the Idempotency-Key header, or null to execute the write unconditionally
+     * @param operation name of the write, with the path variables of the request
+     * @param request   body of the request
+     * @param write     the write
+     * @return response of the write, or the stored response of the first request with the key,
+     * or ResponseEntity with code 400 and body "Idempotency-Key must have 1 to 255 characters!" if key is too long,
+     * or ResponseEntity with code 409 if the first request with the key is in progress,
+     * or ResponseEntity with code 422 if the key was used for another request.
+     */
+    public ResponseEntity<?> execute(String key, String operation, Object request, Supplier<ResponseEntity<?>> write) {
+        ResponseEntity<?> stored = begin(key, operation, request);
+        if (stored != null) return stored;
+        ResponseEntity<?> response;
+        try {
+            response = write.get();
+        } catch (RuntimeException e) {
+            release(key);
+            throw e;
+        }
+        return complete(key, response);
+    }
+
+    /**
+     * Claim the key before the write, for callers which can not pass the write as a Supplier.
+     * Must be followed by {@link #complete(String, ResponseEntity)} or {@link #release(String)}.
+     *
+     * @return the response to answer instead of executing the write (see {@link #execute}),
+     * or null if the key is claimed or null and the write must be executed.
+     */
+    public ResponseEntity<?> begin(String key, String operation, Object request) {
+        if (key == null) return null;
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            return rejected(400, INVALID_IDEMPOTENCY_KEY)
+                    .body(String.format("%s must have 1 to %d characters!", IDEMPOTENCY_KEY_HEADER, MAX_KEY_LENGTH));
+        }
+        String fingerprint = fingerprint(operation, request);
+        IdempotencyRecord cached = completed.getIfPresent(key);
+        if (cached != null) return replay(cached, fingerprint);
+        Optional<IdempotencyRecord> stored = find(key);
+        if (stored.isPresent()) {
+            if (!expired(stored.get())) {
+                if (stored.get().getStatus() != IN_PROGRESS) completed.put(key, stored.get());
+                return replay(stored.get(), fingerprint);
+            }
+            // take over the expired row only if it is still the one read, a concurrent request may have done it first
+            if (delete(stored.get()) == 0) return claimedConcurrently(key, fingerprint);
+        }
+        IdempotencyRecord claim = claim(key, fingerprint);
+        if (claim == null) return claimedConcurrently(key, fingerprint);
+        claimed.put(key, claim);
+        return null;
+    }
+
+    /**
+     * Store the response of the write made after {@link #begin(String, String, Object)},
+     * responses with status 5xx are not stored and release the key.
+     * The fingerprint is the one of the claim, the write may have changed the request (e.g. set the id).
+     * The response is stored only in the row of the claim, not if the claim expired and was taken over meanwhile.
+     *
+     * @return the response
+     */
+    public ResponseEntity<?> complete(String key, ResponseEntity<?> response) {
+        IdempotencyRecord claim = key == null ? null : claimed.get(key);
+        if (claim == null) return response;
+        if (response.getStatusCode().is5xxServerError()) {
+            release(key);
+            return response;
+        }
+        Object body = response.getBody();
+        IdempotencyRecord record;
+        try {
+            record = new IdempotencyRecord(key, claim.getFingerprint(), response.getStatusCodeValue(),
+                    body != null && !(body instanceof String),
+                    body == null || body instanceof String ? (String) body : objectMapper.writeValueAsString(body),
+                    storedHeaders(response.getHeaders()), now());
+        } catch (JsonProcessingException e) {
+            release(key);
+            throw new UncheckedIOException(e);
+        }
+        claimed.remove(key);
+        if (repository.completeClaim(key, claim.getFingerprint(), claim.getCreatedAt(), record.getStatus(),
+                record.isJsonBody(), record.getBody(), record.getHeaders(), record.getCreatedAt()) > 0) {
+            completed.put(key, record);
+        }
+        return response;
+    }
+
+    /**
+     * Release the key claimed by this instance, deleting its in-progress row unless it was taken over meanwhile.
+     */
+    public void release(String key) {
+        if (key == null) return;
+        IdempotencyRecord claim = claimed.remove(key);
+        completed.invalidate(key);
+        if (claim != null) delete(claim);
+    }
+
+    /**
+     * Delete the keys older than "employees.idempotency.ttl-seconds".
+     */
+    @Scheduled(fixedDelayString = "${employees.idempotency.purge-ms:600000}")
+    public void purgeExpired() {
+        repository.deleteCreatedBefore(Instant.now().minusMillis(ttlMillis));
+    }
+
+    private ResponseEntity<?> replay(IdempotencyRecord record, String fingerprint) {
+        if (!record.getFingerprint().equals(fingerprint)) {
+            return rejected(422, IDEMPOTENCY_KEY_REUSED)
+                    .body(String.format("%s is already used for another request!", IDEMPOTENCY_KEY_HEADER));
+        }
+        if (record.getStatus() == IN_PROGRESS) return inProgress();
+        meterRegistry.counter(REPLAYED_METRIC).increment();
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(record.getStatus()).header(REPLAYED_HEADER, "true");
+        try {
+            if (record.getHeaders() != null) {
+                Map<String, List<String>> headers = objectMapper.readValue(record.getHeaders(), HEADERS_TYPE);
+                headers.forEach((name, values) -> response.header(name, values.toArray(new String[0])));
+            }
+            if (record.getBody() == null) return response.build();
+            return response.body(record.isJsonBody() ? objectMapper.readTree(record.getBody()) : record.getBody());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return JSON object of the {@link #STORED_HEADERS} of the response, or null if it has none of them
+     */
+    private String storedHeaders(HttpHeaders headers) throws JsonProcessingException {
+        Map<String, List<String>> stored = new LinkedHashMap<>();
+        for (String name : STORED_HEADERS) {
+            List<String> values = headers.get(name);
+            if (values != null && !values.isEmpty()) stored.put(name, values);
+        }
+        return stored.isEmpty() ? null : objectMapper.writeValueAsString(stored);
+    }
+
+    private ResponseEntity<?> inProgress() {
+        return rejected(409, IDEMPOTENCY_KEY_IN_PROGRESS)
+                .body(String.format("Request with this %s is in progress, retry later!", IDEMPOTENCY_KEY_HEADER));
+    }
+
+    private boolean expired(IdempotencyRecord record) {
+        long age = System.currentTimeMillis() - record.getCreatedAt().toEpochMilli();
+        return age > (record.getStatus() == IN_PROGRESS ? claimTimeoutMillis : ttlMillis);
+    }
+
+    /**
+     * Read in a read-write transaction, so the claim of another instance is read from the primary.
+     */
+    private Optional<IdempotencyRecord> find(String key) {
+        return transactionTemplate.execute(status -> repository.findById(key));
+    }
+
+    /**
+     * @return the in-progress row inserted, or null if a concurrent request with the same key inserted it first
+     */
+    private IdempotencyRecord claim(String key, String fingerprint) {
+        Instant createdAt = now();
+        try {
+            repository.insertClaim(key, fingerprint, createdAt);
+            return new IdempotencyRecord(key, fingerprint, IN_PROGRESS, false, null, null, createdAt);
+        } catch (DataIntegrityViolationException e) {
+            return null;
+        }
+    }
+
+    private ResponseEntity<?> claimedConcurrently(String key, String fingerprint) {
+        return find(key)
+                .<ResponseEntity<?>>map(record -> replay(record, fingerprint))
+                .orElseGet(() -> inProgress());
+    }
+
+    private int delete(IdempotencyRecord record) {
+        return repository.deleteRecord(record.getIdempotencyKey(), record.getStatus(), record.getFingerprint(),
+                record.getCreatedAt());
+    }
+
+    /**
+     * Milliseconds only, the time identifies the row in conditional statements and the database may store less than nanoseconds.
+     */
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    String fingerprint(String operation, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(objectMapper.writeValueAsBytes(request));
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ResponseEntity.BodyBuilder rejected(int status, String reason) {
+        meterRegistry.counter(REJECTED_METRIC, "reason", reason).increment();
+        return ResponseEntity.status(status);
+    }
+}
@@ -0,0 +1,12 @@
+package ru.xfneo.employeesmanagement.service;
+
+import ru.xfneo.employeesmanagement.repository.EmployeeFieldsRepository;
+
+/**
+ * Thrown when the header of an imported CSV is missing or has a column which is not an employee field.
+ */
+public class InvalidCsvHeaderException extends RuntimeException {
+    public InvalidCsvHeaderException() {
+        super(String.format("CSV header must be of %s!", String.join(", ", EmployeeFieldsRepository.FIELDS)));
+    }
+}
@@ -0,0 +1,115 @@
+package ru.xfneo.employeesmanagement.service;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking department existence checks for the reactive mode.
+ * Shares the cache, the circuit breaker, the bulkhead and the fallback policy with {@link DepartmentService},
+ * so a department checked here is a cache hit for the blocking {@link DepartmentService#exists(long)}.
+ * The bulkhead must not wait ("departments.bulkhead.max-wait-ms" = 0), it is acquired on an event loop thread.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveDepartmentService {
+    private static final String DEPARTMENT_PATH = "/api/departments/{id}";
+
+    private final WebClient departmentWebClient;
+    private final DepartmentService departmentService;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final MeterRegistry meterRegistry;
+    private final Duration readTimeout;
+
+    @Autowired
+    public ReactiveDepartmentService(WebClient departmentWebClient,
+                                     DepartmentService departmentService,
+                                     CircuitBreaker departmentsCircuitBreaker,
+                                     Bulkhead departmentsBulkhead,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${departments.client.read-timeout-ms:3000}") long readTimeoutMillis) {
+        this.departmentWebClient = departmentWebClient;
+        this.departmentService = departmentService;
+        this.circuitBreaker = departmentsCircuitBreaker;
+        this.bulkhead = departmentsBulkhead;
+        this.meterRegistry = meterRegistry;
+        this.readTimeout = Duration.ofMillis(readTimeoutMillis);
+    }
+
+    /**
+     * Check that the department exists, calling department-management-ws only on a cache miss.
+     *
+     * @param departmentId ID of the department to check
+     * @return Mono of true if the department exists,
+     * or Mono of {@link DepartmentServiceUnavailableException} if department-management-ws can not answer
+     * and the fallback policy does not accept the department.
+     */
+    public Mono<Boolean> exists(long departmentId) {
+        Boolean cached = departmentService.cachedExistence(departmentId);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return fetchDepartmentExistence(departmentId)
+                .doOnNext(exists -> departmentService.cacheExistence(departmentId, exists))
+                .onErrorResume(DepartmentServiceUnavailableException.class,
+                        e -> departmentService.acceptedWhenUnavailable(departmentId) ? Mono.just(true) : Mono.error(e));
+    }
+
+    private Mono<Boolean> fetchDepartmentExistence(long departmentId) {
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return Mono.error(unavailable(departmentId,
+                        CallNotPermittedException.createCallNotPermittedException(circuitBreaker)));
+            }
+            if (!bulkhead.tryAcquirePermission()) {
+                circuitBreaker.releasePermission();
+                return Mono.error(unavailable(departmentId, BulkheadFullException.createBulkheadFullException(bulkhead)));
+            }
+            long start = System.nanoTime();
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return requestStatus(departmentId)
+                    .doOnNext(status -> departmentService.recordClientRequest(sample, Integer.toString(status)))
+                    .doOnError(e -> departmentService.recordClientRequest(sample, "IO_ERROR"))
+                    .map(status -> DepartmentService.existence(departmentId, status))
+                    .doOnSuccess(exists -> {
+                        circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        bulkhead.onComplete();
+                    })
+                    .doOnError(e -> {
+                        circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+                        bulkhead.onComplete();
+                    })
+                    .doOnCancel(() -> {
+                        circuitBreaker.releasePermission();
+                        bulkhead.onComplete();
+                    })
+                    .onErrorMap(e -> !(e instanceof DepartmentServiceUnavailableException), e -> unavailable(departmentId, e));
+        });
+    }
+
+    private Mono<Integer> requestStatus(long departmentId) {
+        return departmentWebClient.get()
+                .uri(DEPARTMENT_PATH, departmentId)
+                .exchange()
+                .flatMap(response -> response.bodyToMono(Void.class).thenReturn(response.rawStatusCode()))
+                .timeout(readTimeout);
+    }
+
+    private static DepartmentServiceUnavailableException unavailable(long departmentId, Throwable cause) {
+        return new DepartmentServiceUnavailableException(
+                String.format("Department with id %d can not be checked: %s", departmentId, cause.getMessage()), cause);
+    }
+}
@@ -0,0 +1,5 @@
+-- ids are allocated by hibernate in blocks of 50, the sequence value is the upper bound of the block
+alter sequence hibernate_sequence increment 50;
+
+select setval('hibernate_sequence', greatest((select last_value from hibernate_sequence),
+                                             (select coalesce(max(id), 0) from employee)));
@@ -0,0 +1,3 @@
+-- serves lookups by department_id through the leading column
+-- and keyset pages inside a department (department_id = ? and id > ? order by id) without a sort
+create index employee_department_id_id_idx on employee (department_id, id);
@@ -0,0 +1 @@
+alter table employee add column version int8 not null default 0;
@@ -0,0 +1,29 @@
+create sequence employee_change_event_seq start 1 increment 1;
+
+create table employee_change_event (
+    id int8 not null,
+    sequence_number int8,
+    type varchar(32) not null,
+    employee_id int8,
+    department_id int8 not null,
+    old_department_id int8,
+    first_name varchar(255),
+    last_name varchar(255),
+    title varchar(255),
+    created_at timestamp not null,
+    published_at timestamp,
+    primary key (id)
+);
+
+create unique index employee_change_event_sequence_number_idx on employee_change_event (sequence_number);
+create index employee_change_event_unsequenced_idx on employee_change_event (id) where sequence_number is null;
+create index employee_change_event_unpublished_idx on employee_change_event (sequence_number) where published_at is null;
+create index employee_change_event_created_at_idx on employee_change_event (created_at);
+
+create table employee_change_feed (
+    id int8 not null,
+    last_sequence_number int8 not null,
+    primary key (id)
+);
+
+insert into employee_change_feed (id, last_sequence_number) values (1, 0);
@@ -0,0 +1,5 @@
+create extension if not exists pg_trgm;
+
+create index employee_search_trgm_idx on employee using gin (
+    (lower(coalesce(first_name, '') || ' ' || coalesce(last_name, '') || ' ' || coalesce(title, ''))) gin_trgm_ops
+);
@@ -0,0 +1,2 @@
+-- serves headcounts by title inside a department (department_id = ? group by title) from the index
+create index employee_department_id_title_idx on employee (department_id, title);
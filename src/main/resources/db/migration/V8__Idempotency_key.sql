@@ -0,0 +1,12 @@
+create table idempotency_key (
+    idempotency_key varchar(255) not null,
+    fingerprint varchar(64) not null,
+    status int4 not null,
+    json_body boolean not null,
+    body text,
+    headers text,
+    created_at timestamp not null,
+    primary key (idempotency_key)
+);
+
+create index idempotency_key_created_at_idx on idempotency_key (created_at);
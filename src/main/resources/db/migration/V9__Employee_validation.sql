@@ -0,0 +1,17 @@
+create sequence employee_validation_seq start 1 increment 50;
+
+create table employee_validation (
+    id int8 not null,
+    status varchar(32) not null,
+    department_id int8 not null,
+    first_name varchar(255),
+    last_name varchar(255),
+    title varchar(255),
+    employee_id int8,
+    error varchar(255),
+    created_at timestamp not null,
+    validated_at timestamp,
+    primary key (id)
+);
+
+create index employee_validation_status_id_idx on employee_validation (status, id);
@@ -0,0 +1,93 @@
+package ru.xfneo.employeesmanagement.client;
+
+import feign.Logger;
+import feign.Response;
+import feign.RetryableException;
+import feign.Util;
+import lombok.SneakyThrows;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.xfneo.employeesmanagement.config.FeignConfig;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class DepartmentClientTest {
+    private DepartmentStubServer departmentStubServer;
+    private CloseableHttpClient httpClient;
+    private DepartmentClient sut;
+
+    @Before
+    @SneakyThrows
+    public void setUp() {
+        departmentStubServer = new DepartmentStubServer(Arrays.asList(1L, 2L), 0);
+        FeignConfig feignConfig = new FeignConfig();
+        ReflectionTestUtils.setField(feignConfig, "departmentServiceUrl", departmentStubServer.url());
+        ReflectionTestUtils.setField(feignConfig, "connectTimeoutMillis", 500);
+        ReflectionTestUtils.setField(feignConfig, "readTimeoutMillis", 200);
+        ReflectionTestUtils.setField(feignConfig, "poolTimeoutMillis", 500);
+        ReflectionTestUtils.setField(feignConfig, "maxConnections", 4);
+        ReflectionTestUtils.setField(feignConfig, "maxConnectionsPerRoute", 2);
+        ReflectionTestUtils.setField(feignConfig, "keepAliveMillis", 1000L);
+        ReflectionTestUtils.setField(feignConfig, "logLevel", Logger.Level.NONE);
+        httpClient = feignConfig.departmentHttpClient();
+        sut = feignConfig.departmentClientService(httpClient);
+    }
+
+    @After
+    @SneakyThrows
+    public void tearDown() {
+        httpClient.close();
+        departmentStubServer.close();
+    }
+
+    @Test
+    public void checkDepartment_CheckExistingAndNonexistentDepartments_OkAndNotFoundStatuses() {
+        try (Response existing = sut.checkDepartment(1); Response nonexistent = sut.checkDepartment(3)) {
+            assertEquals(200, existing.status());
+            assertEquals(404, nonexistent.status());
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void checkDepartments_CheckSeveralDepartments_ExistingDepartmentsInOneRequest() {
+        try (Response response = sut.checkDepartments(Arrays.asList(1L, 2L, 3L))) {
+            assertEquals(200, response.status());
+            assertEquals("[{\"id\":1},{\"id\":2}]", Util.toString(response.body().asReader()));
+        }
+        assertEquals(1, departmentStubServer.bulkRequests());
+    }
+
+    @Test
+    public void checkDepartments_StubWithoutBulkEndpoint_NotFoundStatus() {
+        departmentStubServer.setBulkEndpoint(false);
+        try (Response response = sut.checkDepartments(Arrays.asList(1L, 2L))) {
+            assertEquals(404, response.status());
+        }
+    }
+
+    @Test
+    public void checkDepartment_CheckMoreDepartmentsThanPooledConnections_ConnectionsReleased() {
+        for (int i = 0; i < 10; i++) {
+            try (Response response = sut.checkDepartment(2)) {
+                assertEquals(200, response.status());
+            }
+        }
+        assertEquals(10, departmentStubServer.requests());
+    }
+
+    @Test(expected = RetryableException.class)
+    public void checkDepartment_CheckDepartmentSlowerThanReadTimeout_FailsWithoutRetry() {
+        departmentStubServer.setLatencyMillis(1000);
+        try {
+            sut.checkDepartment(1);
+        } finally {
+            assertEquals(1, departmentStubServer.requests());
+        }
+    }
+}
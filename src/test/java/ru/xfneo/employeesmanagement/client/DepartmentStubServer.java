@@ -0,0 +1,135 @@
+package ru.xfneo.employeesmanagement.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Local stand-in for department-management-ws answering "GET /api/departments/{id}"
+ * with 200 for known departments and 404 otherwise, after a configurable latency.
+ * The bulk lookup "GET /api/departments?ids=" answers the known departments among the ids,
+ * or 404 like an older department-management-ws when the bulk endpoint is switched off.
+ */
+public class DepartmentStubServer implements AutoCloseable {
+    private static final String DEPARTMENTS_PATH = "/api/departments/";
+    private static final String BULK_PATH = "/api/departments";
+    private static final int BACKLOG = 4096;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Set<Long> departments = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger bulkRequests = new AtomicInteger();
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+    private volatile long latencyMillis;
+    private volatile boolean bulkEndpoint = true;
+
+    public DepartmentStubServer(Collection<Long> departments, long latencyMillis) throws IOException {
+        this.departments.addAll(departments);
+        this.latencyMillis = latencyMillis;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), BACKLOG);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext(DEPARTMENTS_PATH, this::handle);
+        server.createContext(BULK_PATH, this::handleBulk);
+        server.start();
+    }
+
+    public String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public int requests() {
+        return requests.get();
+    }
+
+    public int bulkRequests() {
+        return bulkRequests.get();
+    }
+
+    /**
+     * @return the largest number of requests handled at the same time
+     */
+    public int maxConcurrentRequests() {
+        return maxConcurrentRequests.get();
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setBulkEndpoint(boolean bulkEndpoint) {
+        this.bulkEndpoint = bulkEndpoint;
+    }
+
+    private void simulateLatency() {
+        maxConcurrentRequests.accumulateAndGet(concurrentRequests.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            concurrentRequests.decrementAndGet();
+        }
+    }
+
+    private void handleBulk(HttpExchange exchange) throws IOException {
+        bulkRequests.incrementAndGet();
+        simulateLatency();
+        exchange.getResponseHeaders().add("Connection", "close");
+        if (!bulkEndpoint || !exchange.getRequestURI().getPath().equals(BULK_PATH)) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        String query = exchange.getRequestURI().getQuery();
+        String body = (query == null ? Stream.<String>empty() : Arrays.stream(query.split("&")))
+                .filter(parameter -> parameter.startsWith("ids="))
+                .flatMap(parameter -> Arrays.stream(parameter.substring("ids=".length()).split(",")))
+                .filter(id -> id.matches("\\d+") && departments.contains(Long.parseLong(id)))
+                .distinct()
+                .map(id -> "{\"id\":" + id + "}")
+                .collect(Collectors.joining(",", "[", "]"));
+        byte[] bytes = body.getBytes();
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        simulateLatency();
+        String id = exchange.getRequestURI().getPath().substring(DEPARTMENTS_PATH.length());
+        byte[] body = ("{\"id\":" + id + "}").getBytes();
+        boolean exists = id.matches("\\d+") && departments.contains(Long.parseLong(id));
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        // kept alive connections are polled for the next request once a second only
+        exchange.getResponseHeaders().add("Connection", "close");
+        if (exists) {
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+        }
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,53 @@
+package ru.xfneo.employeesmanagement.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "employees.rate-limit.enabled=true",
+        "employees.rate-limit.read-per-second=0.001",
+        "employees.rate-limit.read-burst=2",
+        "employees.rate-limit.trusted-proxies=127.0.0.1,0:0:0:0:0:0:0:1",
+        "employees.load-shedding.enabled=true"})
+public class AdmissionControlIT {
+    private static final String EMPLOYEES_URI = "/api/employees";
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void getListOfEmployees_ClientOverReadBudget_TooManyRequests() {
+        assertEquals(HttpStatus.OK, get("client1").getStatusCode());
+        assertEquals(HttpStatus.OK, get("client1").getStatusCode());
+
+        ResponseEntity<String> rejected = get("client1");
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, rejected.getStatusCode());
+        assertEquals("1", rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(1, meterRegistry.counter(AdmissionControlInterceptor.SHED_METRIC,
+                "reason", AdmissionControlInterceptor.RATE_LIMIT, "budget", "read").count(), 0);
+
+        assertEquals(HttpStatus.OK, get("client2").getStatusCode());
+        assertEquals(0, meterRegistry.get("employees.requests.in-flight").gauge().value(), 0);
+    }
+
+    private ResponseEntity<String> get(String client) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("X-Client-Id", client);
+        return restTemplate.exchange(EMPLOYEES_URI, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+}
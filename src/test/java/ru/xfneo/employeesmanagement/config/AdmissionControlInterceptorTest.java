@@ -0,0 +1,49 @@
+package ru.xfneo.employeesmanagement.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdmissionControlInterceptorTest {
+    private static final String PROXY = "10.0.0.1";
+    private static final String CLIENT = "10.0.0.2";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AdmissionControlInterceptor sut;
+
+    @Before
+    public void setUp() {
+        sut = new AdmissionControlInterceptor(new ClientRateLimiter(1, 1, 1, 1, 100, () -> 0L), null,
+                meterRegistry, "X-Client-Id", Collections.singleton(PROXY));
+    }
+
+    @Test
+    public void preHandle_UntrustedCallerRotatesClientHeader_RemoteAddressLimited() throws Exception {
+        assertTrue(sut.preHandle(get(CLIENT, "client1"), new MockHttpServletResponse(), null));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertFalse(sut.preHandle(get(CLIENT, "client2"), response, null));
+        assertEquals(429, response.getStatus());
+    }
+
+    @Test
+    public void preHandle_TrustedProxySetsClientHeader_ClientsLimitedSeparately() throws Exception {
+        assertTrue(sut.preHandle(get(PROXY, "client1"), new MockHttpServletResponse(), null));
+        assertTrue(sut.preHandle(get(PROXY, "client2"), new MockHttpServletResponse(), null));
+        assertFalse(sut.preHandle(get(PROXY, "client1"), new MockHttpServletResponse(), null));
+    }
+
+    private static MockHttpServletRequest get(String remoteAddress, String client) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/employees");
+        request.setRemoteAddr(remoteAddress);
+        request.addHeader("X-Client-Id", client);
+        return request;
+    }
+}
@@ -0,0 +1,46 @@
+package ru.xfneo.employeesmanagement.config;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientRateLimiterTest {
+    private final AtomicLong nanoTime = new AtomicLong();
+    private ClientRateLimiter sut;
+
+    @Before
+    public void setUp() {
+        sut = new ClientRateLimiter(2, 4, 1, 1, 100, nanoTime::get);
+    }
+
+    @Test
+    public void tryAcquire_BurstSpent_Rejected() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(sut.tryAcquire("client1", false));
+        }
+        assertFalse(sut.tryAcquire("client1", false));
+    }
+
+    @Test
+    public void tryAcquire_TimePassed_Refilled() {
+        for (int i = 0; i < 4; i++) {
+            sut.tryAcquire("client1", false);
+        }
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(sut.tryAcquire("client1", false));
+        assertFalse(sut.tryAcquire("client1", false));
+    }
+
+    @Test
+    public void tryAcquire_WritesOverBudget_ReadsAndOtherClientsAdmitted() {
+        assertTrue(sut.tryAcquire("client1", true));
+        assertFalse(sut.tryAcquire("client1", true));
+        assertTrue(sut.tryAcquire("client1", false));
+        assertTrue(sut.tryAcquire("client2", true));
+    }
+}
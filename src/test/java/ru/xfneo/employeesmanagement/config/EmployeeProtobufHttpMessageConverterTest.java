@@ -0,0 +1,86 @@
+package ru.xfneo.employeesmanagement.config;
+
+import com.google.protobuf.CodedInputStream;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeesPage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EmployeeProtobufHttpMessageConverterTest {
+    private static final MediaType APPLICATION_X_PROTOBUF =
+            MediaType.parseMediaType(EmployeeProtobufHttpMessageConverter.APPLICATION_X_PROTOBUF_VALUE);
+    private final EmployeeProtobufHttpMessageConverter sut = new EmployeeProtobufHttpMessageConverter();
+
+    @Test
+    public void canWrite_ListForWildcardAndProtobuf_OnlyExplicitProtobufWritten() {
+        assertFalse(sut.canWrite(List.class, null));
+        assertFalse(sut.canWrite(Map.class, MediaType.ALL));
+        assertFalse(sut.canWrite(String.class, APPLICATION_X_PROTOBUF));
+        assertTrue(sut.canWrite(List.class, APPLICATION_X_PROTOBUF));
+    }
+
+    @Test
+    public void write_Employee_EmployeeMessageWithoutDefaultValues() throws IOException {
+        CodedInputStream input = write(new Employee(7, 2, "Anna", "Demeleva", ""));
+        assertEquals(1 << 3, input.readTag());
+        assertEquals(7, input.readInt64());
+        assertEquals(2 << 3, input.readTag());
+        assertEquals(2, input.readInt64());
+        assertEquals(3 << 3 | 2, input.readTag());
+        assertEquals("Anna", input.readString());
+        assertEquals(4 << 3 | 2, input.readTag());
+        assertEquals("Demeleva", input.readString());
+        assertEquals(0, input.readTag());
+    }
+
+    @Test
+    public void write_PageOfSparseFieldsets_EmbeddedEmployeesAndNextCursor() throws IOException {
+        Map<String, Object> sparse = new HashMap<>();
+        sparse.put("lastName", "Tikhonov");
+        CodedInputStream input = write(new EmployeesPage(Arrays.asList(
+                new Employee(1, 1, "Maksim", "Tikhonov", "Lead IT Engineer"), new Employee(2, 1, "Sergey", "Ivanov", "")), 2L));
+        assertEquals(1 << 3 | 2, input.readTag());
+        int limit = input.pushLimit(input.readRawVarint32());
+        assertEquals(1 << 3, input.readTag());
+        assertEquals(1, input.readInt64());
+        input.skipMessage();
+        input.popLimit(limit);
+        assertEquals(1 << 3 | 2, input.readTag());
+        input.skipField(1 << 3 | 2);
+        assertEquals(2 << 3, input.readTag());
+        assertEquals(2, input.readInt64());
+        assertEquals(0, input.readTag());
+
+        input = write(Collections.singletonList(sparse));
+        assertEquals(1 << 3 | 2, input.readTag());
+        assertEquals(10, input.readRawVarint32());
+        assertEquals(4 << 3 | 2, input.readTag());
+        assertEquals("Tikhonov", input.readString());
+        assertEquals(0, input.readTag());
+    }
+
+    @Test(expected = HttpMessageNotWritableException.class)
+    public void write_ListOfNotEmployees_NotWritable() throws IOException {
+        write(Collections.singletonList("Maksim"));
+    }
+
+    private CodedInputStream write(Object body) throws IOException {
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+        sut.write(body, APPLICATION_X_PROTOBUF, outputMessage);
+        assertEquals(APPLICATION_X_PROTOBUF, outputMessage.getHeaders().getContentType());
+        return CodedInputStream.newInstance(outputMessage.getBodyAsBytes());
+    }
+}
@@ -0,0 +1,72 @@
+package ru.xfneo.employeesmanagement.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LoadShedderTest {
+    private final AtomicLong currentTimeMillis = new AtomicLong(1_000_000);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger pending = new AtomicInteger();
+    private Timer acquire;
+    private LoadShedder sut;
+
+    @Before
+    public void setUp() {
+        acquire = meterRegistry.timer("hikaricp.connections.acquire", "pool", "primary");
+        Gauge.builder("hikaricp.connections.pending", pending, AtomicInteger::get).tag("pool", "primary")
+                .register(meterRegistry);
+        sut = new LoadShedder(meterRegistry, 1000, 100, currentTimeMillis::get);
+    }
+
+    @Test
+    public void shedReason_RequestsInFlightFast_Admitted() {
+        sut.begin();
+        currentTimeMillis.addAndGet(500);
+        sut.begin();
+        assertEquals(250, sut.getInFlightLatencyMillis());
+        assertNull(sut.shedReason());
+    }
+
+    @Test
+    public void shedReason_RequestsInFlightTwiceOverThreshold_Shed() {
+        long start = sut.begin();
+        currentTimeMillis.addAndGet(2500);
+        assertEquals(LoadShedder.LATENCY, sut.shedReason());
+        sut.end(start);
+        assertEquals(0, sut.getInFlightLatencyMillis());
+        assertNull(sut.shedReason());
+    }
+
+    @Test
+    public void shedReason_PoolWaitTwiceOverThreshold_Shed() {
+        acquire.record(Duration.ofMillis(300));
+        acquire.record(Duration.ofMillis(100));
+        currentTimeMillis.addAndGet(1000);
+        sut.samplePoolWait();
+        assertEquals(200, sut.getPoolWaitMillis());
+        assertEquals(LoadShedder.POOL_WAIT, sut.shedReason());
+        currentTimeMillis.addAndGet(1000);
+        sut.samplePoolWait();
+        assertEquals(0, sut.getPoolWaitMillis());
+        assertNull(sut.shedReason());
+    }
+
+    @Test
+    public void samplePoolWait_ThreadsWaitingAndNoneAcquired_SamplePeriod() {
+        pending.set(3);
+        currentTimeMillis.addAndGet(1000);
+        sut.samplePoolWait();
+        assertEquals(1000, sut.getPoolWaitMillis());
+        assertEquals(LoadShedder.POOL_WAIT, sut.shedReason());
+    }
+}
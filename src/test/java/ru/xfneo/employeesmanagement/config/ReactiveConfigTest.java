@@ -0,0 +1,55 @@
+package ru.xfneo.employeesmanagement.config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReactiveConfigTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private Scheduler sut;
+
+    @Before
+    public void setUp() {
+        sut = ReactiveConfig.jdbcScheduler(1, 1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        sut.dispose();
+    }
+
+    @Test
+    public void jdbcScheduler_ThreadsBusyAndQueueFull_CallRejectedAtOnce() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        Mono.fromCallable(() -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        }).subscribeOn(sut).subscribe();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Mono.fromCallable(() -> 1).subscribeOn(sut).subscribe();
+        long start = System.nanoTime();
+        try {
+            Mono.fromCallable(() -> 2).subscribeOn(sut).block();
+            fail("Call beyond the queue must be rejected");
+        } catch (RejectedExecutionException e) {
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        }
+    }
+
+    @Test
+    public void jdbcScheduler_QueueDrained_CallAccepted() {
+        release.countDown();
+        assertEquals(Integer.valueOf(1), Mono.fromCallable(() -> 1).subscribeOn(sut).block());
+    }
+}
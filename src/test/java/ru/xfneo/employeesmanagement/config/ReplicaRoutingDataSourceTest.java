@@ -0,0 +1,102 @@
+package ru.xfneo.employeesmanagement.config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReplicaRoutingDataSourceTest {
+    private final DataSource primary = mock(DataSource.class);
+    private final DataSource replica1 = mock(DataSource.class);
+    private final DataSource replica2 = mock(DataSource.class);
+    private final Connection primaryConnection = mock(Connection.class);
+    private final Connection replica1Connection = mock(Connection.class);
+    private final Connection replica2Connection = mock(Connection.class);
+    private ReplicaRoutingDataSource sut;
+
+    @Before
+    public void setUp() throws SQLException {
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica1.getConnection()).thenReturn(replica1Connection);
+        when(replica2.getConnection()).thenReturn(replica2Connection);
+        when(replica1Connection.isValid(anyInt())).thenReturn(true);
+        when(replica2Connection.isValid(anyInt())).thenReturn(true);
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-1", replica1);
+        replicas.put("replica-2", replica2);
+        sut = new ReplicaRoutingDataSource(primary, replicas, 1);
+    }
+
+    @After
+    public void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        ReplicaRoutingDataSource.endRequest();
+    }
+
+    @Test
+    public void getConnection_NotReadOnly_Primary() throws SQLException {
+        assertSame(primaryConnection, sut.getConnection());
+        assertSame(primaryConnection, sut.getConnection());
+    }
+
+    @Test
+    public void getConnection_ReadOnly_ReplicasRoundRobin() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(replica1Connection, sut.getConnection());
+        assertSame(replica2Connection, sut.getConnection());
+        assertSame(replica1Connection, sut.getConnection());
+    }
+
+    @Test
+    public void getConnection_ReadOnlyWithinRequest_SameReplica() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        ReplicaRoutingDataSource.beginRequest(false);
+        assertSame(replica1Connection, sut.getConnection());
+        assertSame(replica1Connection, sut.getConnection());
+        ReplicaRoutingDataSource.endRequest();
+        ReplicaRoutingDataSource.beginRequest(false);
+        assertSame(replica2Connection, sut.getConnection());
+    }
+
+    @Test
+    public void getConnection_ReadOnlyWithinPrimaryOnlyRequest_Primary() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        ReplicaRoutingDataSource.beginRequest(true);
+        assertSame(primaryConnection, sut.getConnection());
+    }
+
+    @Test
+    public void getConnection_ReplicaFails_ReplicaEjectedAndPrimaryUsed() throws SQLException {
+        when(replica1.getConnection()).thenThrow(new SQLException("Connection refused"));
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertSame(primaryConnection, sut.getConnection());
+        assertEquals(1, sut.getHealthyReplicas());
+        assertSame(replica2Connection, sut.getConnection());
+        assertSame(replica2Connection, sut.getConnection());
+    }
+
+    @Test
+    public void checkReplicas_ReplicaInvalidThenValid_EjectedThenReadmitted() throws SQLException {
+        when(replica1Connection.isValid(anyInt())).thenReturn(false, true);
+        when(replica2.getConnection()).thenThrow(new SQLException("Connection refused"));
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        sut.checkReplicas();
+        assertEquals(0, sut.getHealthyReplicas());
+        assertSame(primaryConnection, sut.getConnection());
+        sut.checkReplicas();
+        assertEquals(1, sut.getHealthyReplicas());
+        assertSame(replica1Connection, sut.getConnection());
+    }
+}
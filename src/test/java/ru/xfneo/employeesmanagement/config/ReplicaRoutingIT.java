@@ -0,0 +1,103 @@
+package ru.xfneo.employeesmanagement.config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.junit4.SpringRunner;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.repository.EmployeeRepository;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Two H2 databases: the primary with the schema created by Hibernate and a "replica" with the same tables,
+ * filled with different employees so the responses show which one was read.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=" + ReplicaRoutingIT.PRIMARY_URL,
+        "employees.datasource.replica-urls=" + ReplicaRoutingIT.REPLICA_URL,
+        "employees.datasource.read-your-writes-ms=60000"})
+public class ReplicaRoutingIT {
+    static final String PRIMARY_URL = "jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1";
+    private static final String EMPLOYEES_URI = "/api/employees";
+    private static final ParameterizedTypeReference<List<Employee>> EMPLOYEES = new ParameterizedTypeReference<List<Employee>>() {
+    };
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    private final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+    private Employee employee1;
+
+    @Before
+    public void setUp() {
+        replica.execute("create table if not exists employee (id bigint primary key, department_id bigint not null, " +
+                "first_name varchar(255), last_name varchar(255), title varchar(255), version bigint not null)");
+        replica.execute("create table if not exists employee_change_event (id bigint primary key, sequence_number bigint, type varchar(32), " +
+                "employee_id bigint, department_id bigint not null, old_department_id bigint, first_name varchar(255), " +
+                "last_name varchar(255), title varchar(255), created_at timestamp, published_at timestamp)");
+        replica.execute("create table if not exists employee_change_feed (id bigint primary key, last_sequence_number bigint)");
+        replica.update("insert into employee values (1000, 2, 'Replica', 'Employee', 'Lagging behind', 0)");
+        employee1 = employeeRepository.save(new Employee(0, 1, "Maksim", "Tikhonov", "Lead IT Engineer"));
+        employeeRepository.save(new Employee(0, 3, "Svetlana", "Melnikova", "Accounting specialist"));
+    }
+
+    @After
+    public void resetDb() {
+        replica.update("delete from employee");
+        employeeRepository.deleteAll();
+    }
+
+    @Test
+    public void getListOfEmployees_ReadFromReplica() {
+        ResponseEntity<List<Employee>> response = restTemplate.exchange(EMPLOYEES_URI, HttpMethod.GET, null, EMPLOYEES);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().size());
+        assertEquals("Replica", response.getBody().get(0).getFirstName());
+    }
+
+    @Test
+    public void getEmployee_ReadFromPrimary() {
+        ResponseEntity<Employee> response = restTemplate.getForEntity(EMPLOYEES_URI + "/{id}", Employee.class, employee1.getId());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("Maksim", response.getBody().getFirstName());
+    }
+
+    @Test
+    public void deleteEmployeeThenGetListOfEmployeesWithCookie_ReadFromPrimary() {
+        ResponseEntity<Void> deleted = restTemplate.exchange(EMPLOYEES_URI + "/{id}", HttpMethod.DELETE, null,
+                Void.class, employee1.getId());
+        assertEquals(HttpStatus.NO_CONTENT, deleted.getStatusCode());
+        String cookie = deleted.getHeaders().getFirst(HttpHeaders.SET_COOKIE);
+        assertThat(cookie, startsWith(ReadYourWritesFilter.PRIMARY_UNTIL_COOKIE + "="));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.COOKIE, cookie.split(";")[0]);
+        ResponseEntity<List<Employee>> ownWrites = restTemplate.exchange(EMPLOYEES_URI, HttpMethod.GET,
+                new HttpEntity<>(headers), EMPLOYEES);
+        assertEquals(1, ownWrites.getBody().size());
+        assertEquals("Svetlana", ownWrites.getBody().get(0).getFirstName());
+
+        ResponseEntity<List<Employee>> otherClient = restTemplate.exchange(EMPLOYEES_URI, HttpMethod.GET, null, EMPLOYEES);
+        assertEquals("Replica", otherClient.getBody().get(0).getFirstName());
+    }
+}
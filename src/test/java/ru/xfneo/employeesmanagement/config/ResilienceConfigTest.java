@@ -0,0 +1,71 @@
+package ru.xfneo.employeesmanagement.config;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ResilienceConfigTest {
+    private MeterRegistry meterRegistry;
+    private ResilienceConfig sut;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sut = new ResilienceConfig();
+        ReflectionTestUtils.setField(sut, "failureRateThreshold", 50f);
+        ReflectionTestUtils.setField(sut, "slowCallDurationMillis", 1000L);
+        ReflectionTestUtils.setField(sut, "slowCallRateThreshold", 100f);
+        ReflectionTestUtils.setField(sut, "slidingWindowSize", 4);
+        ReflectionTestUtils.setField(sut, "minimumNumberOfCalls", 2);
+        ReflectionTestUtils.setField(sut, "waitInOpenStateMillis", 60000L);
+        ReflectionTestUtils.setField(sut, "halfOpenProbes", 1);
+        ReflectionTestUtils.setField(sut, "maxConcurrentCalls", 1);
+        ReflectionTestUtils.setField(sut, "maxWaitMillis", 0L);
+    }
+
+    @Test
+    public void departmentsCircuitBreaker_FailedCallsOpenBreaker_TransitionAndRejectionCounted() {
+        CircuitBreaker circuitBreaker = sut.departmentsCircuitBreaker(meterRegistry);
+        circuitBreaker.onError(0, TimeUnit.MILLISECONDS, new IllegalStateException());
+        circuitBreaker.onError(0, TimeUnit.MILLISECONDS, new IllegalStateException());
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        assertEquals(1.0, meterRegistry.get("departments.circuitbreaker.transitions")
+                .tag("from", "CLOSED").tag("to", "OPEN").counter().count(), 0);
+        assertEquals(1.0, meterRegistry.get("departments.client.rejected")
+                .tag("reason", CallNotPermittedException.class.getSimpleName()).counter().count(), 0);
+        assertEquals(1.0, meterRegistry.get("departments.circuitbreaker.state").gauge().value(), 0);
+    }
+
+    @Test
+    public void departmentsCircuitBreaker_BulkheadRejections_NotRecordedAsFailures() {
+        CircuitBreaker circuitBreaker = sut.departmentsCircuitBreaker(meterRegistry);
+        Bulkhead bulkhead = sut.departmentsBulkhead(meterRegistry);
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onError(0, TimeUnit.MILLISECONDS, BulkheadFullException.createBulkheadFullException(bulkhead));
+        }
+        assertEquals(0, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void departmentsBulkhead_CallOverLimit_RejectionCounted() {
+        Bulkhead bulkhead = sut.departmentsBulkhead(meterRegistry);
+        bulkhead.acquirePermission();
+        assertFalse(bulkhead.tryAcquirePermission());
+        assertEquals(1.0, meterRegistry.get("departments.client.rejected")
+                .tag("reason", BulkheadFullException.class.getSimpleName()).counter().count(), 0);
+        assertEquals(0.0, meterRegistry.get("departments.bulkhead.available").gauge().value(), 0);
+    }
+}
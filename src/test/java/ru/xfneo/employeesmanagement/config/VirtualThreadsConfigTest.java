@@ -0,0 +1,26 @@
+package ru.xfneo.employeesmanagement.config;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class VirtualThreadsConfigTest {
+
+    @Test
+    public void virtualThreadPerTaskExecutor_SubmitTasks_EveryTaskRunsOnNewVirtualThread() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21);
+        ExecutorService sut = VirtualThreadsConfig.virtualThreadPerTaskExecutor("request-");
+        Method isVirtual = Thread.class.getMethod("isVirtual");
+        Thread first = sut.submit(Thread::currentThread).get();
+        Thread second = sut.submit(Thread::currentThread).get();
+        sut.shutdown();
+        assertTrue((Boolean) isVirtual.invoke(first));
+        assertEquals("request-0", first.getName());
+        assertEquals("request-1", second.getName());
+    }
+}
@@ -1,5 +1,10 @@
 package ru.xfneo.employeesmanagement.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.protobuf.CodedInputStream;
+import feign.Request;
 import feign.Response;
 import org.junit.After;
 import org.junit.Before;
@@ -12,25 +17,60 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
 import ru.xfneo.employeesmanagement.client.DepartmentClient;
+import ru.xfneo.employeesmanagement.config.EmployeeProtobufHttpMessageConverter;
+import ru.xfneo.employeesmanagement.config.MessageConvertersConfig;
+import ru.xfneo.employeesmanagement.model.DepartmentHeadcount;
 import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeBatchResult;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+import ru.xfneo.employeesmanagement.model.EmployeeChangesPage;
+import ru.xfneo.employeesmanagement.model.EmployeeFieldsPage;
+import ru.xfneo.employeesmanagement.model.EmployeeImportProgress;
+import ru.xfneo.employeesmanagement.model.EmployeeValidation;
+import ru.xfneo.employeesmanagement.model.EmployeesPage;
+import ru.xfneo.employeesmanagement.model.TitleHeadcount;
 import ru.xfneo.employeesmanagement.repository.EmployeeRepository;
+import ru.xfneo.employeesmanagement.repository.EmployeeValidationRepository;
+import ru.xfneo.employeesmanagement.service.EmployeeChangeSequencer;
+import ru.xfneo.employeesmanagement.service.EmployeeValidationService;
+import ru.xfneo.employeesmanagement.service.IdempotencyService;
 
-import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalToIgnoringCase;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
@@ -40,12 +80,18 @@ public class EmployeesControllerIT {
     private DepartmentClient departmentClient;
     @Mock
     Response mockResponse;
+    @Mock
+    Response mockNotFoundResponse;
     @Autowired
     private TestRestTemplate restTemplate;
     @Autowired
     private EmployeeRepository employeeRepository;
     @Autowired
-    private DataSource dataSource;
+    private EmployeeValidationRepository employeeValidationRepository;
+    @Autowired
+    private EmployeeValidationService employeeValidationService;
+    @Autowired
+    private EmployeeChangeSequencer changeSequencer;
     private Employee employee1;
     private Employee employee2;
     private Employee employee3;
@@ -53,24 +99,36 @@ public class EmployeesControllerIT {
     private static final String EMPLOYEES_URI = "/api/employees";
     private static final String EMPLOYEES_ID_URI = "/api/employees/{id}";
     private static final String EMPLOYEES_REPLACE_DEPARTMENT_URI = "/api/employees/replaceDepartment";
+    private static final String EMPLOYEES_PAGE_URI = "/api/employees/page?after={after}&size={size}";
+    private static final String EMPLOYEES_BATCH_URI = "/api/employees/batch";
+    private static final String EMPLOYEES_STREAM_URI = "/api/employees/stream";
+    private static final String EMPLOYEES_SEARCH_URI = "/api/employees/search?query={query}&mode={mode}&after={after}&size={size}";
+    private static final String EMPLOYEES_FIELDS_URI = "/api/employees?fields={fields}";
+    private static final String EMPLOYEES_PAGE_FIELDS_URI = "/api/employees/page?after={after}&size={size}&fields={fields}";
+    private static final String EMPLOYEES_ID_FIELDS_URI = "/api/employees/{id}?fields={fields}";
+    private static final String EMPLOYEES_DEPARTMENT_COUNTS_URI = "/api/employees/departments/counts";
+    private static final String EMPLOYEES_TITLE_COUNTS_URI = "/api/employees/departments/{departmentId}/titles/counts";
+    private static final String EMPLOYEES_DEPARTMENT_EXISTS_URI = "/api/employees/departments/{departmentId}/exists";
+    private static final String EMPLOYEES_EXPORT_URI = "/api/employees/export?format={format}";
+    private static final String EMPLOYEES_IMPORT_URI = "/api/employees/import";
+    private static final String EMPLOYEES_CHANGES_URI = "/api/employees/changes";
+    private static final String EMPLOYEES_CHANGES_SINCE_URI = "/api/employees/changes?since={since}";
 
 
     @Before
     public void setUp() {
-        employee1 = new Employee(1, 1, "Maksim", "Tikhonov", "Lead IT Engineer");
-        employee2 = new Employee(2, 1, "Sergey", "Ivanov", "Senior IT Engineer");
-        employee3 = new Employee(3, 2, "Anna", "Demeleva", "QA Engineer");
-        employee4 = new Employee(4, 3, "Svetlana", "Melnikova", "Accounting specialist");
-        employeeRepository.save(employee1);
-        employeeRepository.save(employee2);
-        employeeRepository.save(employee3);
-        employeeRepository.save(employee4);
+        employee1 = employeeRepository.save(new Employee(0, 1, "Maksim", "Tikhonov", "Lead IT Engineer"));
+        employee2 = employeeRepository.save(new Employee(0, 1, "Sergey", "Ivanov", "Senior IT Engineer"));
+        employee3 = employeeRepository.save(new Employee(0, 2, "Anna", "Demeleva", "QA Engineer"));
+        employee4 = employeeRepository.save(new Employee(0, 3, "Svetlana", "Melnikova", "Accounting specialist"));
+        // number the changes of the previous tests, so the list has a version
+        changeSequencer.sequence();
     }
 
     @After
     public void resetDb() {
         employeeRepository.deleteAll();
-        new JdbcTemplate(dataSource).update("ALTER SEQUENCE hibernate_sequence RESTART WITH 1");
+        employeeValidationRepository.deleteAll();
     }
 
     @Test
@@ -83,6 +141,130 @@ public class EmployeesControllerIT {
         assertThat(employees.get(0).getFirstName(), is("Maksim"));
     }
 
+    @Test
+    public void getListOfEmployeesWithCurrentETagAndNotModifiedUntilEmployeeCreated() {
+        String eTag = restTemplate.getForEntity(EMPLOYEES_URI, String.class).getHeaders().getETag();
+        assertThat(eTag, notNullValue());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(eTag);
+        ResponseEntity<String> notModifiedResponse =
+                restTemplate.exchange(EMPLOYEES_URI, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertThat(notModifiedResponse.getStatusCode(), is(HttpStatus.NOT_MODIFIED));
+        assertThat(notModifiedResponse.getBody(), nullValue());
+        when(mockResponse.status()).thenReturn(200);
+        when(departmentClient.checkDepartment(1L)).thenReturn(mockResponse);
+        restTemplate.postForEntity(EMPLOYEES_URI, new Employee(0, 1, "Maria", "Grenkova", "Engineer"), Employee.class);
+        ResponseEntity<String> notNumberedResponse =
+                restTemplate.exchange(EMPLOYEES_URI, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertThat(notNumberedResponse.getStatusCode(), is(HttpStatus.OK));
+        assertThat(notNumberedResponse.getHeaders().getETag(), nullValue());
+        changeSequencer.sequence();
+        ResponseEntity<String> modifiedResponse =
+                restTemplate.exchange(EMPLOYEES_URI, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertThat(modifiedResponse.getStatusCode(), is(HttpStatus.OK));
+        assertThat(modifiedResponse.getHeaders().getETag(), allOf(notNullValue(), not(eTag)));
+    }
+
+    @Test
+    public void getEmployeeWithVersionETagAndNotModifiedUntilEmployeeUpdated() {
+        ResponseEntity<String> response = restTemplate.getForEntity(EMPLOYEES_ID_URI, String.class, employee3.getId());
+        assertThat(response.getHeaders().getETag(), is("\"0\""));
+        assertThat(response.getBody(), containsString("\"version\":0"));
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch("\"0\"");
+        ResponseEntity<String> notModifiedResponse = restTemplate.exchange(EMPLOYEES_ID_URI, HttpMethod.GET,
+                new HttpEntity<>(headers), String.class, employee3.getId());
+        assertThat(notModifiedResponse.getStatusCode(), is(HttpStatus.NOT_MODIFIED));
+        when(mockResponse.status()).thenReturn(200);
+        when(departmentClient.checkDepartment(3L)).thenReturn(mockResponse);
+        HttpEntity<Employee> entity = new HttpEntity<>(new Employee(0, 3, "Anna", "Demeleva", "Senior QA Engineer"));
+        restTemplate.exchange(EMPLOYEES_ID_URI, HttpMethod.PUT, entity, Employee.class, employee3.getId());
+        ResponseEntity<String> modifiedResponse = restTemplate.exchange(EMPLOYEES_ID_URI, HttpMethod.GET,
+                new HttpEntity<>(headers), String.class, employee3.getId());
+        assertThat(modifiedResponse.getStatusCode(), is(HttpStatus.OK));
+        assertThat(modifiedResponse.getHeaders().getETag(), is("\"1\""));
+    }
+
+    @Test
+    public void scrapePrometheusAndLatencyHistogramsOfAllLayers() {
+        when(mockNotFoundResponse.status()).thenReturn(404);
+        when(departmentClient.checkDepartment(404L)).thenReturn(mockNotFoundResponse);
+        restTemplate.getForObject(EMPLOYEES_ID_URI, Employee.class, employee1.getId());
+        restTemplate.postForEntity(EMPLOYEES_URI, new Employee(0, 404, "Maria", "Grenkova", "Engineer"), String.class);
+        String metrics = restTemplate.getForObject("/actuator/prometheus", String.class);
+        assertThat(metrics, containsString("http_server_requests_seconds_bucket{exception=\"None\",method=\"GET\""));
+        assertThat(metrics, containsString("employees_service_seconds_bucket{class=\"ru.xfneo.employeesmanagement.service.EmployeeService\",exception=\"none\",method=\"find\""));
+        assertThat(metrics, containsString("employees_db_seconds_bucket{exception=\"none\",method=\"findById\",repository=\"EmployeeRepository\""));
+        assertThat(metrics, containsString("departments_client_requests_seconds_bucket{status=\"404\""));
+        assertThat(metrics, containsString("employees_rejected_total{reason=\"department_not_found\",}"));
+        assertThat(metrics, containsString("hikaricp_connections_pending"));
+    }
+
+    @Test
+    public void getPagesOfEmployeesAndAllEmployeesInIdOrder() {
+        EmployeesPage firstPage = restTemplate.getForObject(EMPLOYEES_PAGE_URI, EmployeesPage.class, 0, 3);
+        assertThat(firstPage.getEmployees(), hasSize(3));
+        assertThat(firstPage.getNextCursor(), is(employee3.getId()));
+        EmployeesPage lastPage =
+                restTemplate.getForObject(EMPLOYEES_PAGE_URI, EmployeesPage.class, firstPage.getNextCursor(), 3);
+        assertThat(lastPage.getEmployees(), hasSize(1));
+        assertEquals(employee4, lastPage.getEmployees().get(0));
+        assertThat(lastPage.getNextCursor(), nullValue());
+    }
+
+    @Test
+    public void searchEmployeesByWordPrefixAndFoundEmployeesInIdOrder() {
+        EmployeesPage firstPage =
+                restTemplate.getForObject(EMPLOYEES_SEARCH_URI, EmployeesPage.class, "ENGIN", "PREFIX", 0, 2);
+        assertThat(firstPage.getEmployees(), hasSize(2));
+        assertEquals(employee1, firstPage.getEmployees().get(0));
+        assertEquals(employee2, firstPage.getEmployees().get(1));
+        EmployeesPage lastPage = restTemplate.getForObject(
+                EMPLOYEES_SEARCH_URI, EmployeesPage.class, "ENGIN", "PREFIX", firstPage.getNextCursor(), 2);
+        assertThat(lastPage.getEmployees(), hasSize(1));
+        assertEquals(employee3, lastPage.getEmployees().get(0));
+        assertThat(lastPage.getNextCursor(), nullValue());
+        EmployeesPage notPrefix =
+                restTemplate.getForObject(EMPLOYEES_SEARCH_URI, EmployeesPage.class, "gineer", "PREFIX", 0, 10);
+        assertThat(notPrefix.getEmployees(), hasSize(0));
+    }
+
+    @Test
+    public void searchEmployeesWithShortQueryAndBadRequest() {
+        ResponseEntity<String> response =
+                restTemplate.getForEntity(EMPLOYEES_SEARCH_URI, String.class, "an", "FUZZY", 0, 10);
+        assertThat(response.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    public void getFieldsOfEmployeesAndOnlyRequestedFieldsInResponses() {
+        ResponseEntity<List<Map<String, Object>>> listResponse = restTemplate.exchange(EMPLOYEES_FIELDS_URI,
+                HttpMethod.GET, null, new ParameterizedTypeReference<List<Map<String, Object>>>() {
+                }, "id,departmentId");
+        assertThat(listResponse.getHeaders().getETag(), notNullValue());
+        assertThat(listResponse.getBody(), hasSize(4));
+        assertThat(listResponse.getBody().get(0).keySet(), is(new HashSet<>(Arrays.asList("id", "departmentId"))));
+        assertThat(((Number) listResponse.getBody().get(3).get("id")).longValue(), is(employee4.getId()));
+        EmployeeFieldsPage page =
+                restTemplate.getForObject(EMPLOYEES_PAGE_FIELDS_URI, EmployeeFieldsPage.class, 0, 3, "lastName");
+        assertThat(page.getEmployees(), hasSize(3));
+        assertThat(page.getEmployees().get(0), is(Collections.singletonMap("lastName", "Tikhonov")));
+        assertThat(page.getNextCursor(), is(employee3.getId()));
+        String employee = restTemplate.getForObject(EMPLOYEES_ID_FIELDS_URI, String.class, employee2.getId(), "title");
+        assertThat(employee, is("{\"title\":\"Senior IT Engineer\"}"));
+        ResponseEntity<String> invalidResponse =
+                restTemplate.getForEntity(EMPLOYEES_ID_FIELDS_URI, String.class, employee2.getId(), "salary");
+        assertThat(invalidResponse.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    public void streamEmployeesAndAllEmployeesInResponse() {
+        String body = restTemplate.getForObject(EMPLOYEES_STREAM_URI, String.class);
+        String[] lines = body.split("\n");
+        assertThat(lines.length, is(4));
+        assertThat(lines[0], containsString("\"firstName\":\"Maksim\""));
+    }
+
     @Test
     public void getEmployeeAndNotNullEmployee() {
         long id = employee2.getId();
@@ -99,8 +281,82 @@ public class EmployeesControllerIT {
         assertThat(response.getStatusCode(), is(HttpStatus.CREATED));
         assertThat(response.getBody().getId(), notNullValue());
         assertThat(response.getBody().getFirstName(), is(expectedEmployee.getFirstName()));
-        Employee actualEmployee = restTemplate.getForObject(EMPLOYEES_ID_URI, Employee.class, expectedEmployee.getId());
-        assertEquals(expectedEmployee, actualEmployee);
+        Employee actualEmployee = restTemplate.getForObject(EMPLOYEES_ID_URI, Employee.class, response.getBody().getId());
+        assertEquals(response.getBody(), actualEmployee);
+        assertThat(actualEmployee.getLastName(), is(expectedEmployee.getLastName()));
+    }
+
+    @Test
+    public void createEmployeeTwiceWithIdempotencyKeyAndOneEmployeeSaved() {
+        Employee expectedEmployee = new Employee(0, 2, "Maria", "Grenkova", "Senior accounting specialist");
+        when(mockResponse.status()).thenReturn(200);
+        when(departmentClient.checkDepartment(expectedEmployee.getDepartmentId())).thenReturn(mockResponse);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(IdempotencyService.IDEMPOTENCY_KEY_HEADER, UUID.randomUUID().toString());
+        ResponseEntity<Employee> first = restTemplate.postForEntity(EMPLOYEES_URI,
+                new HttpEntity<>(expectedEmployee, headers), Employee.class);
+        ResponseEntity<Employee> retry = restTemplate.postForEntity(EMPLOYEES_URI,
+                new HttpEntity<>(expectedEmployee, headers), Employee.class);
+        assertThat(first.getStatusCode(), is(HttpStatus.CREATED));
+        assertThat(retry.getStatusCode(), is(HttpStatus.CREATED));
+        assertThat(retry.getHeaders().getFirst("Idempotent-Replayed"), is("true"));
+        assertEquals(first.getBody(), retry.getBody());
+        assertEquals(5, employeeRepository.count());
+
+        expectedEmployee.setTitle("Chief accounting specialist");
+        ResponseEntity<String> reused = restTemplate.postForEntity(EMPLOYEES_URI,
+                new HttpEntity<>(expectedEmployee, headers), String.class);
+        assertThat(reused.getStatusCode(), is(HttpStatus.UNPROCESSABLE_ENTITY));
+        assertEquals(5, employeeRepository.count());
+    }
+
+    @Test
+    public void createEmployeesAsyncAndPromotedOrRejectedAfterValidation() {
+        when(mockResponse.status()).thenReturn(200);
+        when(departmentClient.checkDepartment(2)).thenReturn(mockResponse);
+        when(mockNotFoundResponse.status()).thenReturn(404);
+        when(departmentClient.checkDepartment(405L)).thenReturn(mockNotFoundResponse);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(EmployeeValidationService.PREFER_HEADER, EmployeeValidationService.RESPOND_ASYNC);
+        ResponseEntity<EmployeeValidation> valid = restTemplate.postForEntity(EMPLOYEES_URI,
+                new HttpEntity<>(new Employee(0, 2, "Maria", "Grenkova", "Engineer"), headers), EmployeeValidation.class);
+        ResponseEntity<EmployeeValidation> rejected = restTemplate.postForEntity(EMPLOYEES_URI,
+                new HttpEntity<>(new Employee(0, 405, "Ivan", "Petrov", "Engineer"), headers), EmployeeValidation.class);
+        assertThat(valid.getStatusCode(), is(HttpStatus.ACCEPTED));
+        assertThat(valid.getBody().getStatus(), is(EmployeeValidation.Status.PENDING_VALIDATION));
+        assertThat(valid.getHeaders().getLocation().getPath(),
+                is(EmployeeValidationService.VALIDATIONS_PATH + valid.getBody().getId()));
+
+        employeeValidationService.validatePending();
+        EmployeeValidation validStatus = restTemplate.getForObject(valid.getHeaders().getLocation().getPath(),
+                EmployeeValidation.class);
+        EmployeeValidation rejectedStatus = restTemplate.getForObject(rejected.getHeaders().getLocation().getPath(),
+                EmployeeValidation.class);
+        assertThat(validStatus.getStatus(), is(EmployeeValidation.Status.VALID));
+        assertThat(restTemplate.getForObject(EMPLOYEES_ID_URI, Employee.class, validStatus.getEmployeeId()).getFirstName(),
+                is("Maria"));
+        assertThat(rejectedStatus.getStatus(), is(EmployeeValidation.Status.REJECTED));
+        assertThat(rejectedStatus.getError(), is("Department with id 405 not found!"));
+        assertEquals(5, employeeRepository.count());
+    }
+
+    @Test
+    public void createEmployeeAsyncTwiceWithIdempotencyKeyAndLocationReplayed() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(EmployeeValidationService.PREFER_HEADER, EmployeeValidationService.RESPOND_ASYNC);
+        headers.set(IdempotencyService.IDEMPOTENCY_KEY_HEADER, UUID.randomUUID().toString());
+        Employee employee = new Employee(0, 2, "Maria", "Grenkova", "Engineer");
+        ResponseEntity<EmployeeValidation> first = restTemplate.postForEntity(EMPLOYEES_URI,
+                new HttpEntity<>(employee, headers), EmployeeValidation.class);
+        ResponseEntity<EmployeeValidation> retry = restTemplate.postForEntity(EMPLOYEES_URI,
+                new HttpEntity<>(employee, headers), EmployeeValidation.class);
+        assertThat(first.getStatusCode(), is(HttpStatus.ACCEPTED));
+        assertThat(retry.getStatusCode(), is(HttpStatus.ACCEPTED));
+        assertThat(retry.getHeaders().getFirst("Idempotent-Replayed"), is("true"));
+        assertThat(retry.getHeaders().getLocation().getPath(),
+                is(EmployeeValidationService.VALIDATIONS_PATH + first.getBody().getId()));
+        assertThat(retry.getHeaders().getFirst("Preference-Applied"), is(EmployeeValidationService.RESPOND_ASYNC));
+        assertEquals(first.getBody().getId(), retry.getBody().getId());
     }
 
     @Test
@@ -119,6 +375,30 @@ public class EmployeesControllerIT {
         assertEquals(actualEmployee.getTitle(), expectedEmployee.getTitle());
     }
 
+    @Test
+    public void patchEmployeeAndOnlyGivenFieldsChanged() {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("title", "Senior QA Engineer");
+        fields.put("lastName", null);
+        ResponseEntity<Employee> response = restTemplate.exchange(EMPLOYEES_ID_URI, HttpMethod.PATCH,
+                new HttpEntity<>(fields), Employee.class, employee3.getId());
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody().getFirstName(), is(employee3.getFirstName()));
+        assertThat(response.getBody().getLastName(), nullValue());
+        assertThat(response.getBody().getTitle(), is("Senior QA Engineer"));
+        Employee actualEmployee = employeeRepository.findById(employee3.getId()).get();
+        assertThat(actualEmployee.getLastName(), nullValue());
+        assertThat(actualEmployee.getTitle(), is("Senior QA Engineer"));
+        assertThat(actualEmployee.getVersion(), is(employee3.getVersion() + 1));
+
+        ResponseEntity<String> invalid = restTemplate.exchange(EMPLOYEES_ID_URI, HttpMethod.PATCH,
+                new HttpEntity<>(Collections.singletonMap("id", 1)), String.class, employee3.getId());
+        assertThat(invalid.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+        ResponseEntity<String> notFound = restTemplate.exchange(EMPLOYEES_ID_URI, HttpMethod.PATCH,
+                new HttpEntity<>(fields), String.class, 999999);
+        assertThat(notFound.getStatusCode(), is(HttpStatus.NOT_FOUND));
+    }
+
     @Test
     public void replaceDepartmentIdAndUpdatedEmployeesWithNewDepartment() {
         Map<String, Long> departments = new HashMap<>();
@@ -133,13 +413,67 @@ public class EmployeesControllerIT {
         ResponseEntity<List<Employee>> getResponse = restTemplate.exchange(EMPLOYEES_URI, HttpMethod.GET, null,
                 new ParameterizedTypeReference<List<Employee>>() {
                 });
+        // the whole list is not ordered
         List<Employee> employees = getResponse.getBody();
+        employees.sort(Comparator.comparingLong(Employee::getId));
         assertThat(employees.get(0).getDepartmentId(), is(employee4.getDepartmentId()));
         assertThat(employees.get(1).getDepartmentId(), is(employee4.getDepartmentId()));
         assertThat(employees.get(2).getDepartmentId(), is(employee3.getDepartmentId()));
         assertThat(employees.get(3).getDepartmentId(), is(employee4.getDepartmentId()));
     }
 
+    @Test
+    public void updateDepartmentIdByChunksAndAllEmployeesTransferred() {
+        long oldDepartmentId = employee1.getDepartmentId();
+        long newDepartmentId = employee4.getDepartmentId();
+        assertThat(employeeRepository.updateDepartmentIdChunk(oldDepartmentId, newDepartmentId, 1), is(1));
+        assertThat(employeeRepository.updateDepartmentIdChunk(oldDepartmentId, newDepartmentId, 1), is(1));
+        assertThat(employeeRepository.updateDepartmentIdChunk(oldDepartmentId, newDepartmentId, 1), is(0));
+        assertThat(employeeRepository.findByDepartmentId(oldDepartmentId), hasSize(0));
+        assertThat(employeeRepository.findByDepartmentId(newDepartmentId), hasSize(3));
+    }
+
+    @Test
+    public void createEmployeesAndSavedEmployeesInRepository() {
+        List<Employee> employees = Arrays.asList(
+                new Employee(0, 2, "Maria", "Grenkova", "Senior accounting specialist"),
+                new Employee(0, 4, "Ivan", "Petrov", "Accounting specialist"));
+        when(departmentClient.checkDepartments(Arrays.asList(2L, 4L))).thenReturn(Response.builder()
+                .status(200)
+                .request(Request.create(Request.HttpMethod.GET, "/api/departments", Collections.emptyMap(),
+                        null, StandardCharsets.UTF_8))
+                .headers(Collections.emptyMap())
+                .body("[{\"id\":2}]", StandardCharsets.UTF_8)
+                .build());
+        ResponseEntity<List<EmployeeBatchResult>> response = restTemplate.exchange(EMPLOYEES_BATCH_URI, HttpMethod.POST,
+                new HttpEntity<>(employees), new ParameterizedTypeReference<List<EmployeeBatchResult>>() {
+                });
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        List<EmployeeBatchResult> results = response.getBody();
+        assertThat(results, hasSize(2));
+        assertThat(results.get(0).getStatus(), is(201));
+        assertThat(results.get(1).getStatus(), is(400));
+        Employee actualEmployee =
+                restTemplate.getForObject(EMPLOYEES_ID_URI, Employee.class, results.get(0).getEmployee().getId());
+        assertThat(actualEmployee.getFirstName(), is("Maria"));
+        assertThat(employeeRepository.count(), is(5L));
+    }
+
+    @Test
+    public void updateEmployeesAndUpdatedEmployeesInRepository() {
+        Employee editedEmployee1 = new Employee(employee1.getId(), 1, "Maksim", "Tikhonov", "Head of IT");
+        Employee editedEmployee2 = new Employee(employee2.getId(), 1, "Sergey", "Ivanov", "Lead IT Engineer");
+        ResponseEntity<List<EmployeeBatchResult>> response = restTemplate.exchange(EMPLOYEES_BATCH_URI, HttpMethod.PUT,
+                new HttpEntity<>(Arrays.asList(editedEmployee1, editedEmployee2)),
+                new ParameterizedTypeReference<List<EmployeeBatchResult>>() {
+                });
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody().get(0).getStatus(), is(200));
+        assertThat(response.getBody().get(1).getStatus(), is(200));
+        assertThat(employeeRepository.findById(employee1.getId()).get().getTitle(), is("Head of IT"));
+        assertThat(employeeRepository.findById(employee2.getId()).get().getTitle(), is("Lead IT Engineer"));
+    }
+
     @Test
     public void deleteEmployeeAndDeletedEmployeeFromRepository() {
         long id = employee4.getId();
@@ -148,4 +482,175 @@ public class EmployeesControllerIT {
                 restTemplate.exchange(EMPLOYEES_ID_URI, HttpMethod.GET, null, Void.class, id);
         assertThat(response.getStatusCode(), is(HttpStatus.NOT_FOUND));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void exportEmployeesAsCsvAndImportThemBackWithErrorOfInvalidLine() throws IOException {
+        ResponseEntity<String> export = restTemplate.getForEntity(EMPLOYEES_EXPORT_URI, String.class, "CSV");
+        assertThat(export.getHeaders().getContentType().isCompatibleWith(MediaType.parseMediaType("text/csv")), is(true));
+        String[] exportedLines = export.getBody().split("\n");
+        assertThat(exportedLines[0], is("id,departmentId,firstName,lastName,title,version"));
+        assertThat(exportedLines[1], is(employee1.getId() + ",1,Maksim,Tikhonov,\"Lead IT Engineer\",0"));
+        assertThat(exportedLines.length, is(5));
+        employeeRepository.deleteAll();
+        when(mockResponse.status()).thenReturn(200);
+        when(departmentClient.checkDepartment(anyLong())).thenReturn(mockResponse);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("text/csv"));
+        ResponseEntity<String> response = restTemplate.exchange(EMPLOYEES_IMPORT_URI, HttpMethod.POST,
+                new HttpEntity<>(export.getBody() + "0,notANumber,Ivan,Petrov,Engineer,0\n", headers), String.class);
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        String[] reports = response.getBody().split("\n");
+        ObjectMapper objectMapper = new ObjectMapper();
+        EmployeeBatchResult error = objectMapper.readValue(reports[0], EmployeeBatchResult.class);
+        assertThat(error.getIndex(), is(6));
+        assertThat(error.getStatus(), is(400));
+        EmployeeImportProgress progress = objectMapper.readValue(reports[reports.length - 1], EmployeeImportProgress.class);
+        assertThat(progress, is(new EmployeeImportProgress(6, 4, 1, true)));
+        List<Employee> employees = employeeRepository.findAll();
+        assertThat(employees, hasSize(4));
+        assertThat(employees.get(0).getTitle(), is("Lead IT Engineer"));
+        assertThat(employees.get(0).getId(), is(not(employee1.getId())));
+    }
+
+    @Test
+    public void importEmployeesAsNdjsonAndErrorOfNonexistentDepartment() throws IOException {
+        when(mockResponse.status()).thenReturn(200);
+        when(departmentClient.checkDepartment(2)).thenReturn(mockResponse);
+        when(mockNotFoundResponse.status()).thenReturn(404);
+        when(departmentClient.checkDepartment(405)).thenReturn(mockNotFoundResponse);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(EmployeesController.APPLICATION_NDJSON_VALUE));
+        String ndjson = "{\"departmentId\":2,\"firstName\":\"Maria\",\"lastName\":\"Grenkova\"}\n\n" +
+                "{\"departmentId\":405,\"firstName\":\"Ivan\",\"lastName\":\"Petrov\"}\n";
+        String[] reports = restTemplate.exchange(EMPLOYEES_IMPORT_URI, HttpMethod.POST, new HttpEntity<>(ndjson, headers),
+                String.class).getBody().split("\n");
+        ObjectMapper objectMapper = new ObjectMapper();
+        assertThat(objectMapper.readValue(reports[0], EmployeeBatchResult.class),
+                is(EmployeeBatchResult.failure(3, 400, "Department with id 405 not found!")));
+        assertThat(objectMapper.readValue(reports[reports.length - 1], EmployeeImportProgress.class),
+                is(new EmployeeImportProgress(3, 1, 1, true)));
+        assertThat(employeeRepository.findByDepartmentId(2), hasSize(2));
+    }
+
+    @Test
+    public void importEmployeesAsCsvWithUnknownColumnAndBadRequest() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("text/csv"));
+        ResponseEntity<String> response = restTemplate.exchange(EMPLOYEES_IMPORT_URI, HttpMethod.POST,
+                new HttpEntity<>("firstName,salary\nIvan,1000\n", headers), String.class);
+        assertThat(response.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+        assertThat(employeeRepository.count(), is(4L));
+    }
+
+    @Test
+    public void countEmployeesAndHeadcountsGroupedByDatabase() {
+        employeeRepository.save(new Employee(0, 1, "Maria", "Grenkova", "Senior IT Engineer"));
+        ResponseEntity<List<DepartmentHeadcount>> departmentCounts = restTemplate.exchange(EMPLOYEES_DEPARTMENT_COUNTS_URI,
+                HttpMethod.GET, null, new ParameterizedTypeReference<List<DepartmentHeadcount>>() {
+                });
+        assertThat(departmentCounts.getBody(), is(Arrays.asList(
+                new DepartmentHeadcount(1, 3), new DepartmentHeadcount(2, 1), new DepartmentHeadcount(3, 1))));
+        ResponseEntity<List<TitleHeadcount>> titleCounts = restTemplate.exchange(EMPLOYEES_TITLE_COUNTS_URI,
+                HttpMethod.GET, null, new ParameterizedTypeReference<List<TitleHeadcount>>() {
+                }, 1);
+        assertThat(titleCounts.getBody(), is(Arrays.asList(
+                new TitleHeadcount("Lead IT Engineer", 1), new TitleHeadcount("Senior IT Engineer", 2))));
+        assertThat(restTemplate.getForObject(EMPLOYEES_DEPARTMENT_EXISTS_URI, Boolean.class, 2), is(true));
+        assertThat(restTemplate.getForObject(EMPLOYEES_DEPARTMENT_EXISTS_URI, Boolean.class, 4), is(false));
+    }
+
+    @Test
+    public void getChangesSinceLastChangeAndOnlyNewChangesInCommitOrder() {
+        EmployeeChangesPage start = restTemplate.getForObject(EMPLOYEES_CHANGES_URI, EmployeeChangesPage.class);
+        assertThat(start.getChanges(), hasSize(0));
+        Employee editedEmployee3 = new Employee(employee3.getId(), 2, "Anna", "Demeleva", "Senior QA Engineer");
+        restTemplate.put(EMPLOYEES_BATCH_URI, Arrays.asList(editedEmployee3));
+        restTemplate.delete(EMPLOYEES_ID_URI, employee4.getId());
+        assertThat(restTemplate.getForObject(EMPLOYEES_CHANGES_SINCE_URI, EmployeeChangesPage.class,
+                start.getLastSequenceNumber()).getChanges(), hasSize(0));
+        changeSequencer.sequence();
+        EmployeeChangesPage changes = restTemplate.getForObject(EMPLOYEES_CHANGES_SINCE_URI, EmployeeChangesPage.class,
+                start.getLastSequenceNumber());
+        assertThat(changes.getChanges(), hasSize(2));
+        assertThat(changes.getChanges().get(0).getType(), is(EmployeeChangeEvent.Type.UPDATED));
+        assertThat(changes.getChanges().get(0).getTitle(), is("Senior QA Engineer"));
+        assertThat(changes.getChanges().get(1).getType(), is(EmployeeChangeEvent.Type.DELETED));
+        assertThat(changes.getChanges().get(1).getEmployeeId(), is(employee4.getId()));
+        assertThat(changes.getLastSequenceNumber(), is(changes.getChanges().get(1).getSequenceNumber()));
+        EmployeeChangesPage noChanges = restTemplate.getForObject(EMPLOYEES_CHANGES_SINCE_URI, EmployeeChangesPage.class,
+                changes.getLastSequenceNumber());
+        assertThat(noChanges.getChanges(), hasSize(0));
+        assertThat(noChanges.getLastSequenceNumber(), is(changes.getLastSequenceNumber()));
+    }
+
+    @Test
+    public void getListOfEmployeesAsSmileAndCborAndSameEmployeesAsJson() throws IOException {
+        for (String format : Arrays.asList(MessageConvertersConfig.APPLICATION_SMILE_VALUE,
+                MessageConvertersConfig.APPLICATION_CBOR_VALUE)) {
+            ResponseEntity<byte[]> response = getWithAccept(EMPLOYEES_URI, format);
+            assertThat(response.getHeaders().getContentType().isCompatibleWith(MediaType.parseMediaType(format)), is(true));
+            assertThat(response.getHeaders().getVary(), hasItem(equalToIgnoringCase(HttpHeaders.ACCEPT)));
+            assertThat(response.getHeaders().getETag(),
+                    endsWith("-" + MediaType.parseMediaType(format).getSubtype() + "\""));
+            ObjectMapper objectMapper = new ObjectMapper(format.equals(MessageConvertersConfig.APPLICATION_SMILE_VALUE)
+                    ? new SmileFactory() : new CBORFactory());
+            Employee[] employees = objectMapper.readValue(response.getBody(), Employee[].class);
+            assertThat(Arrays.asList(employees), hasSize(4));
+            assertThat(employees[0].getFirstName(), is("Maksim"));
+        }
+    }
+
+    @Test
+    public void getEmployeeAsProtobufAndEmployeeMessage() throws IOException {
+        ResponseEntity<byte[]> response = getWithAccept(EMPLOYEES_URI + "/" + employee3.getId(),
+                EmployeeProtobufHttpMessageConverter.APPLICATION_X_PROTOBUF_VALUE);
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getHeaders().getContentType(),
+                is(MediaType.parseMediaType(EmployeeProtobufHttpMessageConverter.APPLICATION_X_PROTOBUF_VALUE)));
+        assertThat(response.getHeaders().getVary(), hasItem(equalToIgnoringCase(HttpHeaders.ACCEPT)));
+        assertThat(response.getHeaders().getETag(), endsWith("-x-protobuf\""));
+        CodedInputStream input = CodedInputStream.newInstance(response.getBody());
+        assertThat(input.readTag(), is(1 << 3));
+        assertThat(input.readInt64(), is(employee3.getId()));
+        assertThat(input.readTag(), is(2 << 3));
+        assertThat(input.readInt64(), is(2L));
+        assertThat(input.readTag(), is(3 << 3 | 2));
+        assertThat(input.readString(), is("Anna"));
+    }
+
+    @Test
+    public void getErrorWithoutAcceptAndJsonNotProtobuf() {
+        ResponseEntity<String> response = restTemplate.getForEntity("/api/unknown", String.class);
+        assertThat(response.getStatusCode(), is(HttpStatus.NOT_FOUND));
+        assertThat(response.getHeaders().getContentType().isCompatibleWith(MediaType.APPLICATION_JSON), is(true));
+    }
+
+    @Test
+    public void getListOfEmployeesWithGzipAndCompressedResponse() throws IOException {
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            employees.add(new Employee(0, 1, "firstName" + i, "lastName" + i, "Engineer"));
+        }
+        employeeRepository.saveAll(employees);
+        HttpURLConnection response = getWithGzip(EMPLOYEES_URI);
+        assertThat(response.getHeaderField(HttpHeaders.CONTENT_ENCODING), is("gzip"));
+        try (InputStream body = new GZIPInputStream(response.getInputStream())) {
+            assertThat(Arrays.asList(new ObjectMapper().readValue(body, Employee[].class)), hasSize(104));
+        }
+    }
+
+    /**
+     * TestRestTemplate decompresses responses by itself, so the encoding is checked on a plain connection.
+     */
+    private HttpURLConnection getWithGzip(String uri) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(restTemplate.getRootUri() + uri).openConnection();
+        connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        return connection;
+    }
+
+    private ResponseEntity<byte[]> getWithAccept(String uri, String mediaType) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Collections.singletonList(MediaType.parseMediaType(mediaType)));
+        return restTemplate.exchange(uri, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+    }
+}
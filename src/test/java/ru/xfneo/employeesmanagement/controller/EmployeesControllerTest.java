@@ -1,34 +1,62 @@
 package ru.xfneo.employeesmanagement.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.SneakyThrows;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.xfneo.employeesmanagement.model.DepartmentHeadcount;
 import ru.xfneo.employeesmanagement.model.DepartmentsToReplaceDto;
 import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeBatchResult;
+import ru.xfneo.employeesmanagement.model.EmployeesPage;
+import ru.xfneo.employeesmanagement.model.TitleHeadcount;
+import ru.xfneo.employeesmanagement.service.DepartmentServiceUnavailableException;
+import ru.xfneo.employeesmanagement.service.EmployeeBulkService;
 import ru.xfneo.employeesmanagement.service.EmployeeService;
+import ru.xfneo.employeesmanagement.service.EmployeeValidationService;
+import ru.xfneo.employeesmanagement.service.IdempotencyService;
 
+import java.io.BufferedReader;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static org.mockito.Mockito.*;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
 @RunWith(MockitoJUnitRunner.class)
 public class EmployeesControllerTest {
     @Mock
     private EmployeeService employeeService;
+    @Mock
+    private EmployeeBulkService employeeBulkService;
+    @Mock
+    private EmployeeValidationService employeeValidationService;
+    @Mock
+    private IdempotencyService idempotencyService;
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
 
     @InjectMocks
     private EmployeesController sut;
@@ -41,11 +69,19 @@ public class EmployeesControllerTest {
     private static final String GET_ALL_EMPLOYEES_URI = "/api/employees";
     private static final String POST_EMPLOYEE_URI = "/api/employees";
     private static final String GET_PUT_DELETE_EMPLOYEE_URI = "/api/employees/1";
+    private static final String POST_PUT_EMPLOYEES_BATCH_URI = "/api/employees/batch";
+    private static final String GET_PAGE_OF_EMPLOYEES_URI = "/api/employees/page";
+    private static final String GET_STREAM_OF_EMPLOYEES_URI = "/api/employees/stream";
+    private static final String GET_SEARCH_EMPLOYEES_URI = "/api/employees/search";
+    private static final String IMPORT_EMPLOYEES_URI = "/api/employees/import";
+    private static final String GET_DEPARTMENT_COUNTS_URI = "/api/employees/departments/counts";
+    private static final String GET_TITLE_COUNTS_URI = "/api/employees/departments/1/titles/counts";
     private static final String POST_REPLACE_DEPARTMENT_URI = "/api/employees/replaceDepartment";
     private static final String CREATE_EMPLOYEE1_JSON =
             "{\"departmentId\":1,\"firstName\":\"firstName1\",\"lastName\":\"lastName1\",\"title\":\"title1\"}";
     private static final String UPDATE_EMPLOYEE1_JSON =
             "{\"departmentId\":2,\"firstName\":\"firstName1\",\"lastName\":\"lastName1\",\"title\":\"title1\"}";
+    private static final String EMPLOYEES_BATCH_JSON = "[" + UPDATE_EMPLOYEE1_JSON + "]";
     private static final String REPLACE_DEPARTMENT_JSON =
             "{\"newDepartmentID\":1,\"oldDepartmentID\":2}";
 
@@ -56,12 +92,25 @@ public class EmployeesControllerTest {
         employee2 = new Employee(2, 2, "firstName2", "lastName2", "title2");
         employee1UpdatedDepartment = new Employee(1, 2, "firstName1", "lastName1", "title1");
         List<Employee> findAllList = Arrays.asList(employee1, employee2);
-        doReturn(findAllList).when(employeeService).findAll();
-        doReturn(ResponseEntity.ok(employee1)).when(employeeService).find(employee1.getId());
+        doReturn(ResponseEntity.ok(findAllList)).when(employeeService).findAll(null);
+        doReturn(Optional.of(5L)).when(employeeService).findAllVersion();
+        doReturn(ResponseEntity.ok(new EmployeesPage(findAllList, null))).when(employeeService).findPage(1L, 2, null);
+        doAnswer(invocation -> {
+            Consumer<Employee> consumer = invocation.getArgument(0);
+            findAllList.forEach(consumer);
+            return null;
+        }).when(employeeService).streamAll(any());
+        doReturn(ResponseEntity.ok(employee1)).when(employeeService).find(employee1.getId(), null);
         doReturn(ResponseEntity.ok(employee1)).when(employeeService).create(any(Employee.class));
+        doReturn(ResponseEntity.ok(Collections.singletonList(EmployeeBatchResult.success(0, 201, employee1))))
+                .when(employeeService).createAll(anyList());
+        doReturn(ResponseEntity.ok(Collections.singletonList(EmployeeBatchResult.success(0, 200, employee1UpdatedDepartment))))
+                .when(employeeService).updateAll(anyList());
         doReturn(ResponseEntity.ok(employee1UpdatedDepartment)).when(employeeService).update(eq(employee1.getId()), any(Employee.class));
         doReturn(ResponseEntity.ok().build()).when(employeeService).replaceDepartmentId(any(DepartmentsToReplaceDto.class));
         doReturn(ResponseEntity.ok().build()).when(employeeService).delete(employee1.getId());
+        doAnswer(invocation -> invocation.<Supplier<ResponseEntity<?>>>getArgument(3).get())
+                .when(idempotencyService).execute(any(), anyString(), any(), any());
     }
 
     @Test
@@ -80,8 +129,163 @@ public class EmployeesControllerTest {
                 .andExpect(jsonPath("$[1].departmentId", is((int) employee2.getDepartmentId())))
                 .andExpect(jsonPath("$[1].firstName", is(employee2.getFirstName())))
                 .andExpect(jsonPath("$[1].lastName", is(employee2.getLastName())))
-                .andExpect(jsonPath("$[1].title", is(employee2.getTitle())));
-        verify(employeeService).findAll();
+                .andExpect(jsonPath("$[1].title", is(employee2.getTitle())))
+                .andExpect(header().string("ETag", "W/\"5\""))
+                .andExpect(header().string("Vary", "Accept"));
+        verify(employeeService).findAll(null);
+    }
+
+    @Test
+    @SneakyThrows
+    public void getListOfEmployees_GetNotModifiedCborEmployees_NotModifiedResponseWithCborETag() {
+        mockMvc.perform(get(GET_ALL_EMPLOYEES_URI)
+                .header("Accept", "application/json;q=0.5, application/cbor")
+                .header("If-None-Match", "W/\"5-cbor\""))
+                .andDo(print())
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "W/\"5-cbor\""))
+                .andExpect(header().string("Vary", "Accept"));
+        verify(employeeService, never()).findAll(any());
+    }
+
+    @Test
+    @SneakyThrows
+    public void getListOfEmployees_GetCborEmployeesWithJsonETag_NotNotModifiedResponse() {
+        mockMvc.perform(get(GET_ALL_EMPLOYEES_URI)
+                .header("Accept", "application/cbor")
+                .header("If-None-Match", "W/\"5\""))
+                .andDo(print())
+                .andExpect(status().is(not(HttpStatus.NOT_MODIFIED.value())));
+        verify(employeeService).findAll(null);
+    }
+
+    @Test
+    @SneakyThrows
+    public void getListOfEmployees_GetEmployeesWhileLastChangeNotSettled_OkResponseWithoutETag() {
+        doReturn(Optional.empty()).when(employeeService).findAllVersion();
+        mockMvc.perform(get(GET_ALL_EMPLOYEES_URI).header("If-None-Match", "W/\"5\""))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id", is((int) employee1.getId())))
+                .andExpect(header().doesNotExist("ETag"));
+    }
+
+    @Test
+    @SneakyThrows
+    public void getListOfEmployees_GetNotModifiedEmployees_NotModifiedResponseWithoutList() {
+        mockMvc.perform(get(GET_ALL_EMPLOYEES_URI).header("If-None-Match", "\"5\""))
+                .andDo(print())
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        verify(employeeService).findAllVersion();
+        verify(employeeService, never()).findAll(any());
+    }
+
+    @Test
+    @SneakyThrows
+    public void getEmployee_GetNotModifiedEmployee_NotModifiedResponseWithoutBody() {
+        doReturn(ResponseEntity.ok().eTag("0").body(employee1)).when(employeeService).find(employee1.getId(), null);
+        mockMvc.perform(get(GET_PUT_DELETE_EMPLOYEE_URI).header("If-None-Match", "\"0\""))
+                .andDo(print())
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("Vary", "Accept"))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    @SneakyThrows
+    public void getPageOfEmployees_GetPage_OkResponseWithTwoEmployees() {
+        mockMvc.perform(get(GET_PAGE_OF_EMPLOYEES_URI).param("after", "1").param("size", "2"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+                .andExpect(jsonPath("$.employees[0].id", is((int) employee1.getId())))
+                .andExpect(jsonPath("$.employees[1].id", is((int) employee2.getId())))
+                .andExpect(jsonPath("$.nextCursor", nullValue()))
+                .andExpect(header().string("Vary", "Accept"));
+        verify(employeeService).findPage(1L, 2, null);
+    }
+
+    @Test
+    @SneakyThrows
+    public void getListOfEmployees_GetFields_OkResponseWithOnlyRequestedFields() {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("id", employee1.getId());
+        fields.put("departmentId", employee1.getDepartmentId());
+        Set<String> requestedFields = new HashSet<>(Arrays.asList("id", "departmentId"));
+        doReturn(ResponseEntity.ok(Collections.singletonList(fields))).when(employeeService).findAll(requestedFields);
+        mockMvc.perform(get(GET_ALL_EMPLOYEES_URI).param("fields", "id,departmentId"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\":1,\"departmentId\":1}]", true))
+                .andExpect(header().string("ETag", "W/\"5\""));
+        verify(employeeService).findAll(requestedFields);
+    }
+
+    @Test
+    @SneakyThrows
+    public void getListOfEmployees_GetUnknownField_BadRequestResponse() {
+        Set<String> requestedFields = Collections.singleton("salary");
+        doReturn(ResponseEntity.status(400).body("Fields must be of id!")).when(employeeService).findAll(requestedFields);
+        mockMvc.perform(get(GET_ALL_EMPLOYEES_URI).param("fields", "salary"))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Fields must be of id!"));
+    }
+
+    @Test
+    @SneakyThrows
+    public void importEmployees_ImportCsvWithUnknownColumn_BadRequestResponse() {
+        doReturn(null).when(employeeBulkService).rowReader(eq(EmployeeBulkService.Format.CSV), any(BufferedReader.class));
+        mockMvc.perform(post(IMPORT_EMPLOYEES_URI).contentType("text/csv").content("salary\n1000\n"))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("CSV header must be of id, departmentId, firstName, lastName, title, version!"));
+        verify(employeeBulkService, never()).importAll(any(), any(), any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    public void countEmployees_CountByDepartmentAndTitle_OkResponseWithHeadcounts() {
+        doReturn(Arrays.asList(new DepartmentHeadcount(1, 2), new DepartmentHeadcount(2, 1)))
+                .when(employeeService).countByDepartment();
+        doReturn(Collections.singletonList(new TitleHeadcount("title1", 2))).when(employeeService).countByTitle(1);
+        mockMvc.perform(get(GET_DEPARTMENT_COUNTS_URI))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"departmentId\":1,\"count\":2},{\"departmentId\":2,\"count\":1}]", true));
+        mockMvc.perform(get(GET_TITLE_COUNTS_URI))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"title\":\"title1\",\"count\":2}]", true));
+    }
+
+    @Test
+    @SneakyThrows
+    public void searchEmployees_SearchFuzzy_OkResponseWithFoundEmployees() {
+        doReturn(ResponseEntity.ok(new EmployeesPage(Collections.singletonList(employee1), null)))
+                .when(employeeService).search("firstNme", EmployeeService.SearchMode.FUZZY, null, null);
+        mockMvc.perform(get(GET_SEARCH_EMPLOYEES_URI).param("query", "firstNme").param("mode", "FUZZY"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.employees[0].id", is((int) employee1.getId())))
+                .andExpect(jsonPath("$.nextCursor", nullValue()));
+        verify(employeeService).search("firstNme", EmployeeService.SearchMode.FUZZY, null, null);
+    }
+
+    @Test
+    @SneakyThrows
+    public void streamEmployees_StreamAllEmployees_OkResponseWithNewlineDelimitedEmployees() {
+        MvcResult mvcResult = mockMvc.perform(get(GET_STREAM_OF_EMPLOYEES_URI))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(EmployeesController.APPLICATION_NDJSON_VALUE))
+                .andExpect(content().string(
+                        objectMapper.writeValueAsString(employee1) + "\n" + objectMapper.writeValueAsString(employee2)));
+        verify(employeeService).streamAll(any());
     }
 
     @Test
@@ -96,7 +300,7 @@ public class EmployeesControllerTest {
                 .andExpect(jsonPath("$.firstName", is(employee1.getFirstName())))
                 .andExpect(jsonPath("$.lastName", is(employee1.getLastName())))
                 .andExpect(jsonPath("$.title", is(employee1.getTitle())));
-        verify(employeeService).find(employee1.getId());
+        verify(employeeService).find(employee1.getId(), null);
     }
 
     @Test
@@ -116,6 +320,46 @@ public class EmployeesControllerTest {
         verify(employeeService).create(any(Employee.class));
     }
 
+    @Test
+    @SneakyThrows
+    public void createEmployee_DepartmentServiceUnavailable_ServiceUnavailableResponse() {
+        doThrow(new DepartmentServiceUnavailableException("timeout")).when(employeeService).create(any(Employee.class));
+        mockMvc.perform(post(POST_EMPLOYEE_URI)
+                    .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                    .content(CREATE_EMPLOYEE1_JSON))
+                .andDo(print())
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(content().string("Departments service is unavailable, try again later"));
+    }
+
+    @Test
+    @SneakyThrows
+    public void createEmployee_PreferRespondAsync_EmployeeQueuedForValidation() {
+        doReturn(ResponseEntity.accepted().body(employee1)).when(employeeValidationService).submit(any(Employee.class));
+        mockMvc.perform(post(POST_EMPLOYEE_URI)
+                    .header(EmployeeValidationService.PREFER_HEADER, EmployeeValidationService.RESPOND_ASYNC)
+                    .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                    .content(CREATE_EMPLOYEE1_JSON))
+                .andDo(print())
+                .andExpect(status().isAccepted());
+        verify(idempotencyService).execute(isNull(), eq("create async"), any(Employee.class), any());
+        verify(employeeValidationService).submit(any(Employee.class));
+        verify(employeeService, never()).create(any(Employee.class));
+    }
+
+    @Test
+    @SneakyThrows
+    public void createEmployee_CreateEmployeeWithIdempotencyKey_KeyPassedToIdempotencyService() {
+        mockMvc.perform(post(POST_EMPLOYEE_URI)
+                    .header(IdempotencyService.IDEMPOTENCY_KEY_HEADER, "key1")
+                    .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                    .content(CREATE_EMPLOYEE1_JSON))
+                .andDo(print())
+                .andExpect(status().isOk());
+        verify(idempotencyService).execute(eq("key1"), eq("create"), any(Employee.class), any());
+        verify(employeeService).create(any(Employee.class));
+    }
+
     @Test
     @SneakyThrows
     public void updateEmployee_UpdateEmployee_OkResponseWithUpdatedEmployee() {
@@ -133,6 +377,48 @@ public class EmployeesControllerTest {
         verify(employeeService).update(eq(employee1.getId()), any(Employee.class));
     }
 
+    @Test
+    @SneakyThrows
+    public void updateEmployee_EmployeeChangedConcurrently_ConflictResponse() {
+        doThrow(new ObjectOptimisticLockingFailureException(Employee.class, employee1.getId()))
+                .when(employeeService).update(eq(employee1.getId()), any(Employee.class));
+        mockMvc.perform(put(GET_PUT_DELETE_EMPLOYEE_URI)
+                    .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                    .content(UPDATE_EMPLOYEE1_JSON))
+                .andDo(print())
+                .andExpect(status().isConflict())
+                .andExpect(content().string("Employee was changed or deleted concurrently, try again"));
+    }
+
+    @Test
+    @SneakyThrows
+    public void createEmployees_CreateListOfEmployees_OkResponseWithResults() {
+        mockMvc.perform(post(POST_PUT_EMPLOYEES_BATCH_URI)
+                    .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                    .content(EMPLOYEES_BATCH_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+                .andExpect(jsonPath("$[0].index", is(0)))
+                .andExpect(jsonPath("$[0].status", is(201)))
+                .andExpect(jsonPath("$[0].employee.id", is((int) employee1.getId())));
+        verify(employeeService).createAll(anyList());
+    }
+
+    @Test
+    @SneakyThrows
+    public void updateEmployees_UpdateListOfEmployees_OkResponseWithResults() {
+        mockMvc.perform(put(POST_PUT_EMPLOYEES_BATCH_URI)
+                    .contentType(MediaType.APPLICATION_JSON_UTF8_VALUE)
+                    .content(EMPLOYEES_BATCH_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
+                .andExpect(jsonPath("$[0].status", is(200)))
+                .andExpect(jsonPath("$[0].employee.departmentId", is((int) employee1UpdatedDepartment.getDepartmentId())));
+        verify(employeeService).updateAll(anyList());
+    }
+
     @Test
     @SneakyThrows
     public void replaceDepartmentId_ReplaceDepartment_OkResponse() {
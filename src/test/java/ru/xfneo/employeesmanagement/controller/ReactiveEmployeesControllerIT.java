@@ -0,0 +1,195 @@
+package ru.xfneo.employeesmanagement.controller;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import ru.xfneo.employeesmanagement.client.DepartmentStubServer;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.repository.EmployeeRepository;
+import ru.xfneo.employeesmanagement.service.EmployeeChangeSequencer;
+import ru.xfneo.employeesmanagement.service.IdempotencyService;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+@ContextConfiguration(initializers = ReactiveEmployeesControllerIT.DepartmentsUrlInitializer.class)
+public class ReactiveEmployeesControllerIT {
+    private static DepartmentStubServer departmentStubServer;
+    @Autowired
+    private WebTestClient webTestClient;
+    @Autowired
+    private EmployeeRepository employeeRepository;
+    @Autowired
+    private EmployeeChangeSequencer changeSequencer;
+    private Employee employee1;
+    private static final String EMPLOYEES_URI = "/api/employees";
+    private static final String EMPLOYEES_ID_URI = "/api/employees/{id}";
+    private static final String EMPLOYEES_STREAM_URI = "/api/employees/stream";
+    private static final String EMPLOYEES_EXPORT_CSV_URI = "/api/employees/export?format=CSV";
+    private static final String EMPLOYEES_IMPORT_URI = "/api/employees/import";
+
+    @BeforeClass
+    public static void startDepartmentService() throws IOException {
+        departmentStubServer = new DepartmentStubServer(Arrays.asList(1L, 3L), 0);
+    }
+
+    @AfterClass
+    public static void stopDepartmentService() {
+        departmentStubServer.close();
+    }
+
+    static class DepartmentsUrlInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues.of("departments.service.url=" + departmentStubServer.url()).applyTo(context);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        employee1 = employeeRepository.save(new Employee(0, 1, "Maksim", "Tikhonov", "Lead IT Engineer"));
+        employeeRepository.save(new Employee(0, 3, "Svetlana", "Melnikova", "Accounting specialist"));
+        changeSequencer.sequence();
+    }
+
+    @After
+    public void resetDb() {
+        employeeRepository.deleteAll();
+    }
+
+    @Test
+    public void getEmployeeAndEmployeeExists() {
+        webTestClient.get().uri(EMPLOYEES_ID_URI, employee1.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists("ETag")
+                .expectBody()
+                .jsonPath("$.firstName").isEqualTo("Maksim");
+    }
+
+    @Test
+    public void getEmployeeAndEmployeeDoesNotExist() {
+        webTestClient.get().uri(EMPLOYEES_ID_URI, -1)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void getListOfEmployeesWithIfNoneMatchAndNotModified() {
+        String eTag = webTestClient.get().uri(EMPLOYEES_URI)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Employee.class).hasSize(2)
+                .returnResult().getResponseHeaders().getETag();
+        webTestClient.get().uri(EMPLOYEES_URI)
+                .header("If-None-Match", eTag)
+                .exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    public void createEmployeeAndDepartmentExists() {
+        webTestClient.post().uri(EMPLOYEES_URI)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .syncBody(new Employee(0, 3, "Anna", "Demeleva", "QA Engineer"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.lastName").isEqualTo("Demeleva");
+        assertEquals(3, employeeRepository.count());
+    }
+
+    @Test
+    public void createEmployeeTwiceWithIdempotencyKeyAndOneEmployeeSaved() {
+        String idempotencyKey = UUID.randomUUID().toString();
+        Employee employee = new Employee(0, 3, "Anna", "Demeleva", "QA Engineer");
+        webTestClient.post().uri(EMPLOYEES_URI)
+                .header(IdempotencyService.IDEMPOTENCY_KEY_HEADER, idempotencyKey)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .syncBody(employee)
+                .exchange()
+                .expectStatus().isCreated();
+        webTestClient.post().uri(EMPLOYEES_URI)
+                .header(IdempotencyService.IDEMPOTENCY_KEY_HEADER, idempotencyKey)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .syncBody(employee)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().valueEquals("Idempotent-Replayed", "true")
+                .expectBody()
+                .jsonPath("$.lastName").isEqualTo("Demeleva");
+        assertEquals(3, employeeRepository.count());
+    }
+
+    @Test
+    public void createEmployeeAndDepartmentDoesNotExist() {
+        webTestClient.post().uri(EMPLOYEES_URI)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .syncBody(new Employee(0, 1001, "Anna", "Demeleva", "QA Engineer"))
+                .exchange()
+                .expectStatus().isBadRequest();
+        assertEquals(2, employeeRepository.count());
+    }
+
+    @Test
+    public void streamEmployeesAndAllEmployeesStreamed() {
+        String body = webTestClient.get().uri(EMPLOYEES_STREAM_URI)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+        assertEquals(2, body.split("\n").length);
+    }
+
+    @Test
+    public void exportEmployeesAsCsvAndImportThemBack() {
+        String csv = webTestClient.get().uri(EMPLOYEES_EXPORT_CSV_URI)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType("text/csv")
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+        assertEquals(3, csv.split("\n").length);
+        String reports = webTestClient.post().uri(EMPLOYEES_IMPORT_URI)
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .syncBody(csv)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+        String[] lines = reports.split("\n");
+        assertEquals("{\"lines\":3,\"imported\":2,\"failed\":0,\"done\":true}", lines[lines.length - 1]);
+        assertEquals(4, employeeRepository.count());
+    }
+
+    @Test
+    public void importCsvWithUnknownColumnAndBadRequest() {
+        webTestClient.post().uri(EMPLOYEES_IMPORT_URI)
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .syncBody("salary\n1000\n")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("CSV header must be of id, departmentId, firstName, lastName, title, version!");
+        assertEquals(2, employeeRepository.count());
+    }
+}
@@ -0,0 +1,108 @@
+package ru.xfneo.employeesmanagement.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.service.EmployeeBulkService;
+import ru.xfneo.employeesmanagement.service.EmployeeService;
+import ru.xfneo.employeesmanagement.service.EmployeeValidationService;
+import ru.xfneo.employeesmanagement.service.IdempotencyService;
+import ru.xfneo.employeesmanagement.service.ReactiveDepartmentService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReactiveEmployeesControllerTest {
+    private static final String KEY = "key1";
+
+    @Mock
+    private EmployeeService employeeService;
+    @Mock
+    private EmployeeBulkService employeeBulkService;
+    @Mock
+    private EmployeeValidationService employeeValidationService;
+    @Mock
+    private ReactiveDepartmentService departmentService;
+    @Mock
+    private IdempotencyService idempotencyService;
+    private ReactiveEmployeesController sut;
+    private Employee employee1;
+
+    @Before
+    public void setUp() {
+        sut = new ReactiveEmployeesController(employeeService, employeeBulkService, employeeValidationService,
+                departmentService, idempotencyService, Schedulers.immediate(), new ObjectMapper());
+        employee1 = new Employee(1, 1, "firstName1", "lastName1", "title1");
+    }
+
+    @Test
+    public void updateEmployee_DepartmentUnchanged_DepartmentNotChecked() {
+        Employee edited = new Employee(1, 1, "firstName2", "lastName1", "title1");
+        doReturn(ResponseEntity.ok(employee1)).when(employeeService).find(1L);
+        doReturn(ResponseEntity.ok(edited)).when(employeeService).update(1L, edited);
+        assertEquals(200, sut.updateEmployee(null, 1L, edited).block().getStatusCodeValue());
+        verify(departmentService, never()).exists(anyLong());
+    }
+
+    @Test
+    public void updateEmployee_DepartmentChanged_DepartmentChecked() {
+        Employee edited = new Employee(1, 2, "firstName1", "lastName1", "title1");
+        doReturn(ResponseEntity.ok(employee1)).when(employeeService).find(1L);
+        when(departmentService.exists(2)).thenReturn(Mono.just(true));
+        doReturn(ResponseEntity.ok(edited)).when(employeeService).update(1L, edited);
+        assertEquals(200, sut.updateEmployee(null, 1L, edited).block().getStatusCodeValue());
+        verify(departmentService).exists(2);
+    }
+
+    @Test
+    public void jdbcQueueFull_ServiceUnavailableWithRetryAfter() {
+        ResponseEntity<?> response = sut.jdbcQueueFull();
+        assertEquals(503, response.getStatusCodeValue());
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    public void createEmployee_ClientCancelsWhileDepartmentChecked_KeyReleased() {
+        when(departmentService.exists(employee1.getDepartmentId())).thenReturn(Mono.never());
+        Disposable request = sut.createEmployee(KEY, null, employee1).subscribe();
+        request.dispose();
+        verify(idempotencyService).release(KEY);
+        verify(idempotencyService, never()).complete(eq(KEY), any());
+        verify(employeeService, never()).create(any(Employee.class));
+    }
+
+    @Test
+    public void createEmployee_WriteCompletesWithoutResponse_KeyReleased() {
+        when(departmentService.exists(employee1.getDepartmentId())).thenReturn(Mono.just(true));
+        assertNull(sut.createEmployee(KEY, null, employee1).block());
+        verify(idempotencyService).release(KEY);
+        verify(idempotencyService, never()).complete(eq(KEY), any());
+    }
+
+    @Test
+    public void createEmployee_CreateEmployee_ResponseStoredAndKeyNotReleased() {
+        when(departmentService.exists(employee1.getDepartmentId())).thenReturn(Mono.just(true));
+        doReturn(ResponseEntity.status(201).body(employee1)).when(employeeService).create(employee1);
+        when(idempotencyService.complete(eq(KEY), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        assertEquals(201, sut.createEmployee(KEY, null, employee1).block().getStatusCodeValue());
+        verify(idempotencyService).complete(eq(KEY), any());
+        verify(idempotencyService, never()).release(KEY);
+    }
+}
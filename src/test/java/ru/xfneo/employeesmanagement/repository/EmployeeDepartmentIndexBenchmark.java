@@ -0,0 +1,125 @@
+package ru.xfneo.employeesmanagement.repository;
+
+import lombok.SneakyThrows;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.util.StreamUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Query plan and latency of department lookups before and after the V3 index migration
+ * on a table with a million employees.
+ * Not part of the regular build, run explicitly:
+ * <pre>
+ * mvn test -Dtest=EmployeeDepartmentIndexBenchmark
+ * mvn test -Dtest=EmployeeDepartmentIndexBenchmark -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/benchmark \
+ *     -Dbenchmark.jdbc.username=postgres -Dbenchmark.jdbc.password=postgres
+ * </pre>
+ */
+public class EmployeeDepartmentIndexBenchmark {
+    private static final String MIGRATION = "db/migration/V3__Employee_department_index.sql";
+    private static final int EMPLOYEES = 1_000_000;
+    private static final int DEPARTMENTS = 1_000;
+    private static final int QUERIES = 200;
+    private static final String FIND_BY_DEPARTMENT_ID = "select * from employee where department_id = ?";
+    private static final String FIND_PAGE_BY_DEPARTMENT_ID =
+            "select * from employee where department_id = ? and id > ? order by id limit 100";
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private boolean postgres;
+
+    @Before
+    public void setUp() {
+        String url = System.getProperty("benchmark.jdbc.url", "jdbc:h2:file:./target/index-benchmark");
+        dataSource = new SingleConnectionDataSource(url,
+                System.getProperty("benchmark.jdbc.username", "sa"),
+                System.getProperty("benchmark.jdbc.password", ""),
+                true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        postgres = url.startsWith("jdbc:postgresql");
+        jdbcTemplate.execute("drop table if exists employee");
+        jdbcTemplate.execute("create table employee (" +
+                "id int8 not null, " +
+                "department_id int8 not null, " +
+                "first_name varchar(255), " +
+                "last_name varchar(255), " +
+                "title varchar(255), " +
+                "primary key (id))");
+        jdbcTemplate.execute("insert into employee (id, department_id, first_name, last_name, title) " +
+                "select x, mod(x, " + DEPARTMENTS + "), concat('First', x), concat('Last', x), concat('Title', mod(x, 50)) " +
+                (postgres ? "from generate_series(1, " + EMPLOYEES + ") x" : "from system_range(1, " + EMPLOYEES + ")"));
+        analyze();
+    }
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.execute("drop table if exists employee");
+        dataSource.destroy();
+    }
+
+    @Test
+    @SneakyThrows
+    public void findByDepartmentId_BeforeAndAfterMigration_IndexUsedAndFaster() {
+        String planBefore = plan(FIND_BY_DEPARTMENT_ID);
+        long latencyBefore = averageLatencyNanos(FIND_BY_DEPARTMENT_ID, false);
+        long pageLatencyBefore = averageLatencyNanos(FIND_PAGE_BY_DEPARTMENT_ID, true);
+
+        jdbcTemplate.execute(StreamUtils.copyToString(
+                new ClassPathResource(MIGRATION).getInputStream(), StandardCharsets.UTF_8));
+        analyze();
+
+        String planAfter = plan(FIND_BY_DEPARTMENT_ID);
+        String pagePlanAfter = plan(FIND_PAGE_BY_DEPARTMENT_ID);
+        long latencyAfter = averageLatencyNanos(FIND_BY_DEPARTMENT_ID, false);
+        long pageLatencyAfter = averageLatencyNanos(FIND_PAGE_BY_DEPARTMENT_ID, true);
+
+        System.out.printf("%n%d employees, %d departments, average of %d queries%n", EMPLOYEES, DEPARTMENTS, QUERIES);
+        System.out.printf("find by department before: %8.3f ms%n%s%n", latencyBefore / 1e6, planBefore);
+        System.out.printf("find by department after:  %8.3f ms%n%s%n", latencyAfter / 1e6, planAfter);
+        System.out.printf("page by department before: %8.3f ms%n", pageLatencyBefore / 1e6);
+        System.out.printf("page by department after:  %8.3f ms%n%s%n", pageLatencyAfter / 1e6, pagePlanAfter);
+
+        assertThat(planBefore.toLowerCase(), not(containsString("employee_department_id_id_idx")));
+        assertThat(planAfter.toLowerCase(), containsString("employee_department_id_id_idx"));
+        assertThat(pagePlanAfter.toLowerCase(), containsString("employee_department_id_id_idx"));
+        assertThat(latencyAfter, lessThan(latencyBefore));
+        assertThat(pageLatencyAfter, lessThan(pageLatencyBefore));
+    }
+
+    private void analyze() {
+        jdbcTemplate.execute(postgres ? "analyze employee" : "analyze table employee");
+    }
+
+    private String plan(String query) {
+        List<String> lines = jdbcTemplate.queryForList("explain " + query.replace("?", "1"), String.class);
+        return String.join(System.lineSeparator(), lines);
+    }
+
+    private long averageLatencyNanos(String query, boolean keyset) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long total = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            long departmentId = random.nextInt(DEPARTMENTS);
+            Object[] args = keyset
+                    ? new Object[]{departmentId, (long) random.nextInt(EMPLOYEES / 2)}
+                    : new Object[]{departmentId};
+            long start = System.nanoTime();
+            jdbcTemplate.queryForList(query, args);
+            total += System.nanoTime() - start;
+        }
+        return total / QUERIES;
+    }
+}
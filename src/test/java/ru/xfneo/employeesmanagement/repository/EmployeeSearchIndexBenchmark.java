@@ -0,0 +1,126 @@
+package ru.xfneo.employeesmanagement.repository;
+
+import lombok.SneakyThrows;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongFunction;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Query plan and latency of prefix and fuzzy search before and after the V6 trigram index migration
+ * on a table with a million employees. PostgreSQL only, not part of the regular build, run explicitly:
+ * <pre>
+ * mvn test -Dtest=EmployeeSearchIndexBenchmark -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/benchmark \
+ *     -Dbenchmark.jdbc.username=postgres -Dbenchmark.jdbc.password=postgres
+ * </pre>
+ */
+public class EmployeeSearchIndexBenchmark {
+    private static final String MIGRATION = "db/migration/V6__Employee_search_index.sql";
+    private static final int EMPLOYEES = 1_000_000;
+    private static final int QUERIES = 200;
+    private static final String SEARCH_BY_PREFIX = "select * from employee where (" + EmployeeRepository.SEARCH_TEXT +
+            " like ? or " + EmployeeRepository.SEARCH_TEXT + " like ?) and id > 0 order by id limit 100";
+    private static final String SEARCH_BY_SIMILARITY = "select * from employee where ? <% " +
+            EmployeeRepository.SEARCH_TEXT + " and id > 0 order by id limit 100";
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        String url = System.getProperty("benchmark.jdbc.url", "");
+        assumeTrue("pg_trgm requires PostgreSQL", url.startsWith("jdbc:postgresql"));
+        dataSource = new SingleConnectionDataSource(url,
+                System.getProperty("benchmark.jdbc.username", "postgres"),
+                System.getProperty("benchmark.jdbc.password", "postgres"),
+                true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("drop table if exists employee");
+        jdbcTemplate.execute("create table employee (" +
+                "id int8 not null, " +
+                "department_id int8 not null, " +
+                "first_name varchar(255), " +
+                "last_name varchar(255), " +
+                "title varchar(255), " +
+                "version int8 not null default 0, " +
+                "primary key (id))");
+        jdbcTemplate.execute("insert into employee (id, department_id, first_name, last_name, title) " +
+                "select x, mod(x, 1000), concat('First', mod(x, 5000)), substr(md5(x::text), 1, 10), " +
+                "concat('Title', mod(x, 50)) from generate_series(1, " + EMPLOYEES + ") x");
+        jdbcTemplate.execute("analyze employee");
+    }
+
+    @After
+    public void tearDown() {
+        if (jdbcTemplate != null) {
+            jdbcTemplate.execute("drop table if exists employee");
+            dataSource.destroy();
+        }
+    }
+
+    private static String lastName(long id) {
+        return DigestUtils.md5DigestAsHex(Long.toString(id).getBytes(StandardCharsets.UTF_8)).substring(0, 10);
+    }
+
+    @Test
+    @SneakyThrows
+    public void search_BeforeAndAfterMigration_TrigramIndexUsedAndFaster() {
+        LongFunction<Object[]> prefixArgs = id -> new Object[]{lastName(id).substring(0, 6) + "%", "% " + lastName(id).substring(0, 6) + "%"};
+        LongFunction<Object[]> similarityArgs = id -> new Object[]{lastName(id).substring(0, 8)};
+        long prefixLatencyBefore = averageLatencyNanos(SEARCH_BY_PREFIX, prefixArgs);
+        long similarityLatencyBefore = averageLatencyNanos(SEARCH_BY_SIMILARITY, similarityArgs);
+
+        jdbcTemplate.execute(StreamUtils.copyToString(
+                new ClassPathResource(MIGRATION).getInputStream(), StandardCharsets.UTF_8));
+        jdbcTemplate.execute("analyze employee");
+
+        String prefixPlan = plan(SEARCH_BY_PREFIX, prefixArgs.apply(1));
+        String similarityPlan = plan(SEARCH_BY_SIMILARITY, similarityArgs.apply(1));
+        long prefixLatencyAfter = averageLatencyNanos(SEARCH_BY_PREFIX, prefixArgs);
+        long similarityLatencyAfter = averageLatencyNanos(SEARCH_BY_SIMILARITY, similarityArgs);
+
+        System.out.printf("%n%d employees, average of %d queries%n", EMPLOYEES, QUERIES);
+        System.out.printf("prefix search before: %8.3f ms%n", prefixLatencyBefore / 1e6);
+        System.out.printf("prefix search after:  %8.3f ms%n%s%n", prefixLatencyAfter / 1e6, prefixPlan);
+        System.out.printf("fuzzy search before:  %8.3f ms%n", similarityLatencyBefore / 1e6);
+        System.out.printf("fuzzy search after:   %8.3f ms%n%s%n", similarityLatencyAfter / 1e6, similarityPlan);
+
+        assertThat(prefixPlan, containsString("employee_search_trgm_idx"));
+        assertThat(similarityPlan, containsString("employee_search_trgm_idx"));
+        assertThat(prefixPlan, not(containsString("Seq Scan")));
+        assertThat(prefixLatencyAfter, lessThan(prefixLatencyBefore));
+        assertThat(similarityLatencyAfter, lessThan(similarityLatencyBefore));
+    }
+
+    private String plan(String query, Object[] args) {
+        List<String> lines = jdbcTemplate.queryForList("explain " + query, String.class, args);
+        return String.join(System.lineSeparator(), lines);
+    }
+
+    private long averageLatencyNanos(String query, LongFunction<Object[]> args) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long total = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            Object[] queryArgs = args.apply(1 + random.nextInt(EMPLOYEES));
+            long start = System.nanoTime();
+            jdbcTemplate.queryForList(query, queryArgs);
+            total += System.nanoTime() - start;
+        }
+        return total / QUERIES;
+    }
+}
@@ -0,0 +1,348 @@
+package ru.xfneo.employeesmanagement.service;
+
+import feign.Logger;
+import feign.Request;
+import feign.Response;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.SneakyThrows;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.xfneo.employeesmanagement.client.DepartmentClient;
+import ru.xfneo.employeesmanagement.client.DepartmentStubServer;
+import ru.xfneo.employeesmanagement.config.FeignConfig;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DepartmentServiceTest {
+    @Mock
+    private DepartmentClient departmentClient;
+    @Mock
+    private Response okResponse;
+    @Mock
+    private Response notFoundResponse;
+    @Mock
+    private Response serverErrorResponse;
+    private MeterRegistry meterRegistry;
+    private CircuitBreaker circuitBreaker;
+    private Bulkhead bulkhead;
+    private DepartmentService sut;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        circuitBreaker = CircuitBreaker.ofDefaults("departments");
+        bulkhead = Bulkhead.of("departments", BulkheadConfig.custom().maxConcurrentCalls(1).build());
+        sut = departmentService(600, DepartmentService.FallbackPolicy.FAIL_FAST);
+    }
+
+    private DepartmentService departmentService(long positiveTtlSeconds, DepartmentService.FallbackPolicy fallbackPolicy) {
+        return new DepartmentService(departmentClient, circuitBreaker, bulkhead, meterRegistry,
+                100, positiveTtlSeconds, 0, 600, fallbackPolicy, 2, 2);
+    }
+
+    @Test
+    public void exists_CheckExistingDepartmentTwice_OneRemoteCallAndResponseClosed() {
+        when(okResponse.status()).thenReturn(200);
+        when(departmentClient.checkDepartment(1)).thenReturn(okResponse);
+        assertTrue(sut.exists(1));
+        assertTrue(sut.exists(1));
+        verify(departmentClient, times(1)).checkDepartment(1);
+        verify(okResponse).close();
+    }
+
+    @Test
+    public void exists_CheckNonexistentDepartmentTwice_NegativeResultExpiresSeparately() {
+        when(notFoundResponse.status()).thenReturn(404);
+        when(departmentClient.checkDepartment(2)).thenReturn(notFoundResponse);
+        assertFalse(sut.exists(2));
+        assertFalse(sut.exists(2));
+        verify(departmentClient, times(2)).checkDepartment(2);
+    }
+
+    @Test
+    public void exists_CheckDepartments_RemoteCallsTimedByStatus() {
+        when(okResponse.status()).thenReturn(200);
+        when(notFoundResponse.status()).thenReturn(404);
+        when(departmentClient.checkDepartment(1)).thenReturn(okResponse);
+        when(departmentClient.checkDepartment(2)).thenReturn(notFoundResponse);
+        sut.exists(1);
+        sut.exists(1);
+        sut.exists(2);
+        assertEquals(1, meterRegistry.get(DepartmentService.CLIENT_METRIC).tag("status", "200").timer().count());
+        assertEquals(1, meterRegistry.get(DepartmentService.CLIENT_METRIC).tag("status", "404").timer().count());
+    }
+
+    @Test
+    public void exists_CheckDepartmentTwice_HitAndMissMetricsRecorded() {
+        when(okResponse.status()).thenReturn(200);
+        when(departmentClient.checkDepartment(1)).thenReturn(okResponse);
+        sut.exists(1);
+        sut.exists(1);
+        assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tag("cache", DepartmentService.CACHE_NAME).tag("result", "hit").functionCounter().count(), 0);
+        assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tag("cache", DepartmentService.CACHE_NAME).tag("result", "miss").functionCounter().count(), 0);
+    }
+
+    @Test
+    @SneakyThrows
+    public void exists_CheckSameDepartmentConcurrently_OneRemoteCall() {
+        CountDownLatch remoteCallStarted = new CountDownLatch(1);
+        CountDownLatch releaseRemoteCall = new CountDownLatch(1);
+        when(okResponse.status()).thenReturn(200);
+        when(departmentClient.checkDepartment(1)).thenAnswer(invocation -> {
+            remoteCallStarted.countDown();
+            releaseRemoteCall.await(5, TimeUnit.SECONDS);
+            return okResponse;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> first = executor.submit(() -> sut.exists(1));
+            remoteCallStarted.await(5, TimeUnit.SECONDS);
+            Future<Boolean> second = executor.submit(() -> sut.exists(1));
+            releaseRemoteCall.countDown();
+            assertTrue(first.get(5, TimeUnit.SECONDS));
+            assertTrue(second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(departmentClient, times(1)).checkDepartment(1);
+    }
+
+    @Test
+    @SneakyThrows
+    public void exists_CheckSameDepartmentConcurrentlyAndRemoteCallThrowsError_BothChecksFail() {
+        CountDownLatch remoteCallStarted = new CountDownLatch(1);
+        CountDownLatch releaseRemoteCall = new CountDownLatch(1);
+        when(departmentClient.checkDepartment(1)).thenAnswer(invocation -> {
+            remoteCallStarted.countDown();
+            releaseRemoteCall.await(5, TimeUnit.SECONDS);
+            throw new NoClassDefFoundError("feign/Response");
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> first = executor.submit(() -> sut.exists(1));
+            remoteCallStarted.await(5, TimeUnit.SECONDS);
+            Future<Boolean> second = executor.submit(() -> sut.exists(1));
+            releaseRemoteCall.countDown();
+            for (Future<Boolean> check : Arrays.asList(first, second)) {
+                try {
+                    check.get(5, TimeUnit.SECONDS);
+                    fail("Error of the remote call must not be hidden");
+                } catch (ExecutionException expected) {
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void exists_DepartmentServiceAnswersServerError_ServiceUnavailableAndNotCached() {
+        when(serverErrorResponse.status()).thenReturn(500);
+        when(departmentClient.checkDepartment(1)).thenReturn(serverErrorResponse);
+        for (int i = 0; i < 2; i++) {
+            try {
+                sut.exists(1);
+                fail("Department service failure must not be hidden");
+            } catch (DepartmentServiceUnavailableException expected) {
+            }
+        }
+        verify(departmentClient, times(2)).checkDepartment(1);
+        assertEquals(2, circuitBreaker.getMetrics().getNumberOfFailedCalls());
+    }
+
+    @Test(expected = DepartmentServiceUnavailableException.class)
+    public void exists_DepartmentServiceThrows_ServiceUnavailable() {
+        when(departmentClient.checkDepartment(1)).thenThrow(new IllegalStateException("connection refused"));
+        sut.exists(1);
+    }
+
+    @Test
+    public void exists_CircuitBreakerOpen_FailFastWithoutRemoteCall() {
+        circuitBreaker.transitionToOpenState();
+        try {
+            sut.exists(1);
+            fail("Open circuit breaker must reject the check");
+        } catch (DepartmentServiceUnavailableException expected) {
+        }
+        verifyZeroInteractions(departmentClient);
+    }
+
+    @Test
+    public void exists_CircuitBreakerOpenWithAcceptKnownPolicy_KnownDepartmentAccepted() {
+        sut = departmentService(0, DepartmentService.FallbackPolicy.ACCEPT_KNOWN);
+        when(okResponse.status()).thenReturn(200);
+        when(departmentClient.checkDepartment(1)).thenReturn(okResponse);
+        assertTrue(sut.exists(1));
+        circuitBreaker.transitionToOpenState();
+        assertTrue(sut.exists(1));
+        try {
+            sut.exists(2);
+            fail("Unknown department must not be accepted");
+        } catch (DepartmentServiceUnavailableException expected) {
+        }
+        verify(departmentClient, times(1)).checkDepartment(1);
+        verify(departmentClient, never()).checkDepartment(2);
+    }
+
+    @Test
+    public void exists_BulkheadFull_ServiceUnavailableWithoutRemoteCall() {
+        bulkhead.tryAcquirePermission();
+        try {
+            sut.exists(1);
+            fail("Full bulkhead must reject the check");
+        } catch (DepartmentServiceUnavailableException expected) {
+        } finally {
+            bulkhead.onComplete();
+        }
+        verifyZeroInteractions(departmentClient);
+    }
+
+    private static Response bulkResponse(int status, String body) {
+        return Response.builder()
+                .status(status)
+                .request(Request.create(Request.HttpMethod.GET, "/api/departments", Collections.emptyMap(),
+                        null, StandardCharsets.UTF_8))
+                .headers(Collections.emptyMap())
+                .body(body, StandardCharsets.UTF_8)
+                .build();
+    }
+
+    @Test
+    public void existsAll_CheckSeveralDepartments_CacheMissesCheckedByBulkChunks() {
+        sut.cacheExistence(1, true);
+        when(departmentClient.checkDepartments(Arrays.asList(2L, 3L))).thenReturn(bulkResponse(200, "[{\"id\":2}]"));
+        when(departmentClient.checkDepartments(Collections.singletonList(4L))).thenReturn(bulkResponse(200, "[]"));
+        Map<Long, Boolean> expected = new HashMap<>();
+        expected.put(1L, true);
+        expected.put(2L, true);
+        expected.put(3L, false);
+        expected.put(4L, false);
+        assertEquals(expected, sut.exists(Arrays.asList(1L, 2L, 3L, 4L, 2L)));
+        assertTrue(sut.exists(Arrays.asList(1L, 2L)).values().stream().allMatch(Boolean::booleanValue));
+        verify(departmentClient, times(2)).checkDepartments(anyList());
+        verify(departmentClient, never()).checkDepartment(anyLong());
+        assertEquals(2, meterRegistry.get(DepartmentService.BULK_CLIENT_METRIC).tag("status", "200").timer().count());
+    }
+
+    @Test
+    public void existsAll_BulkEndpointMissing_SingleChecksFromNowOn() {
+        when(departmentClient.checkDepartments(anyList())).thenReturn(bulkResponse(404, ""));
+        when(okResponse.status()).thenReturn(200);
+        when(notFoundResponse.status()).thenReturn(404);
+        when(departmentClient.checkDepartment(2)).thenReturn(okResponse);
+        when(departmentClient.checkDepartment(3)).thenReturn(notFoundResponse);
+        Map<Long, Boolean> expected = new HashMap<>();
+        expected.put(2L, true);
+        expected.put(3L, false);
+        bulkhead = Bulkhead.of("departments", BulkheadConfig.custom().maxConcurrentCalls(2).build());
+        sut = departmentService(600, DepartmentService.FallbackPolicy.FAIL_FAST);
+        assertEquals(expected, sut.exists(Arrays.asList(2L, 3L)));
+        assertEquals(expected, sut.exists(Arrays.asList(2L, 3L)));
+        verify(departmentClient, times(1)).checkDepartments(anyList());
+        verify(departmentClient, times(1)).checkDepartment(2);
+        verify(departmentClient, times(2)).checkDepartment(3);
+    }
+
+    @Test
+    public void existsAll_BulkEndpointIgnoresIds_SingleChecksFromNowOn() {
+        when(departmentClient.checkDepartments(anyList())).thenReturn(bulkResponse(200, "[{\"id\":1},{\"id\":2},{\"id\":5}]"));
+        when(okResponse.status()).thenReturn(200);
+        when(notFoundResponse.status()).thenReturn(404);
+        when(departmentClient.checkDepartment(2)).thenReturn(okResponse);
+        when(departmentClient.checkDepartment(3)).thenReturn(notFoundResponse);
+        Map<Long, Boolean> expected = new HashMap<>();
+        expected.put(2L, true);
+        expected.put(3L, false);
+        bulkhead = Bulkhead.of("departments", BulkheadConfig.custom().maxConcurrentCalls(2).build());
+        sut = departmentService(600, DepartmentService.FallbackPolicy.FAIL_FAST);
+        assertEquals(expected, sut.exists(Arrays.asList(2L, 3L)));
+        assertEquals(expected, sut.exists(Arrays.asList(2L, 3L)));
+        verify(departmentClient, times(1)).checkDepartments(anyList());
+        verify(departmentClient, times(1)).checkDepartment(2);
+    }
+
+    @Test
+    public void existsAll_BulkEndpointAnswersNoArray_SingleChecks() {
+        when(departmentClient.checkDepartments(anyList())).thenReturn(bulkResponse(200, "{\"content\":[{\"id\":2}]}"));
+        when(okResponse.status()).thenReturn(200);
+        when(departmentClient.checkDepartment(anyLong())).thenReturn(okResponse);
+        bulkhead = Bulkhead.of("departments", BulkheadConfig.custom().maxConcurrentCalls(2).build());
+        sut = departmentService(600, DepartmentService.FallbackPolicy.FAIL_FAST);
+        assertTrue(sut.exists(Arrays.asList(2L, 3L)).values().stream().allMatch(Boolean::booleanValue));
+        verify(departmentClient, times(2)).checkDepartment(anyLong());
+    }
+
+    @Test(expected = DepartmentServiceUnavailableException.class)
+    public void existsAll_BulkEndpointAnswersServerError_ServiceUnavailable() {
+        when(departmentClient.checkDepartments(anyList())).thenReturn(bulkResponse(503, ""));
+        sut.exists(Arrays.asList(1L, 2L));
+    }
+
+    @Test
+    public void existsAll_BulkEndpointAnswersServerErrorWithAcceptKnownPolicy_KnownDepartmentsAccepted() {
+        sut = departmentService(0, DepartmentService.FallbackPolicy.ACCEPT_KNOWN);
+        sut.cacheExistence(1, true);
+        sut.cacheExistence(2, true);
+        when(departmentClient.checkDepartments(anyList())).thenReturn(bulkResponse(503, ""));
+        Map<Long, Boolean> expected = new HashMap<>();
+        expected.put(1L, true);
+        expected.put(2L, true);
+        assertEquals(expected, sut.exists(Arrays.asList(1L, 2L)));
+    }
+
+    @Test
+    @SneakyThrows
+    public void existsAll_SlowStubWithoutBulkEndpoint_ParallelChecksBoundedByParallelism() {
+        try (DepartmentStubServer stub = new DepartmentStubServer(Arrays.asList(1L, 2L, 3L, 4L), 200)) {
+            stub.setBulkEndpoint(false);
+            FeignConfig feignConfig = new FeignConfig();
+            ReflectionTestUtils.setField(feignConfig, "departmentServiceUrl", stub.url());
+            ReflectionTestUtils.setField(feignConfig, "connectTimeoutMillis", 500);
+            ReflectionTestUtils.setField(feignConfig, "readTimeoutMillis", 1000);
+            ReflectionTestUtils.setField(feignConfig, "poolTimeoutMillis", 1000);
+            ReflectionTestUtils.setField(feignConfig, "maxConnections", 10);
+            ReflectionTestUtils.setField(feignConfig, "maxConnectionsPerRoute", 10);
+            ReflectionTestUtils.setField(feignConfig, "keepAliveMillis", 1000L);
+            ReflectionTestUtils.setField(feignConfig, "logLevel", Logger.Level.NONE);
+            try (CloseableHttpClient httpClient = feignConfig.departmentHttpClient()) {
+                DepartmentService service = new DepartmentService(feignConfig.departmentClientService(httpClient),
+                        circuitBreaker, Bulkhead.of("departments", BulkheadConfig.custom().maxConcurrentCalls(10).build()),
+                        meterRegistry, 100, 600, 0, 600, DepartmentService.FallbackPolicy.FAIL_FAST, 100, 4);
+                long start = System.nanoTime();
+                Map<Long, Boolean> existence = service.exists(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L));
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                service.shutdown();
+                assertEquals(8, existence.size());
+                assertEquals(4, existence.values().stream().filter(Boolean::booleanValue).count());
+                assertEquals(8, stub.requests());
+                assertTrue("at most 4 checks at a time", stub.maxConcurrentRequests() <= 4);
+                assertTrue("checks run in parallel: " + elapsedMillis + " ms", elapsedMillis < 8 * 200);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package ru.xfneo.employeesmanagement.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeBatchResult;
+import ru.xfneo.employeesmanagement.model.EmployeeImportProgress;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EmployeeBulkServiceTest {
+    @Mock
+    private EmployeeService employeeService;
+    private EmployeeBulkService sut;
+    private final List<Object> reports = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        sut = new EmployeeBulkService(employeeService, new ObjectMapper());
+        ReflectionTestUtils.setField(sut, "chunkSize", 2);
+        ReflectionTestUtils.setField(sut, "maxReportedErrors", 10);
+    }
+
+    /**
+     * Creates every employee except the ones of department 404.
+     */
+    private void createAllExceptDepartment404() {
+        when(employeeService.createAll(anyList())).thenAnswer(invocation -> {
+            List<Employee> employees = invocation.getArgument(0);
+            return ResponseEntity.ok(IntStream.range(0, employees.size())
+                    .mapToObj(i -> employees.get(i).getDepartmentId() == 404
+                            ? EmployeeBatchResult.failure(i, 400, "Department with id 404 not found!")
+                            : EmployeeBatchResult.success(i, 201, employees.get(i)))
+                    .collect(Collectors.toList()));
+        });
+    }
+
+    private EmployeeImportProgress importAll(EmployeeBulkService.Format format, String lines) throws IOException {
+        BufferedReader input = new BufferedReader(new StringReader(lines));
+        ObjectReader rowReader = sut.rowReader(format, input);
+        Consumer<Object> report = reports::add;
+        return sut.importAll(format, rowReader, input, report);
+    }
+
+    @Test
+    public void importAll_ImportCsvWithInvalidLines_CreatedByChunksAndErrorsWithLineNumbers() throws IOException {
+        createAllExceptDepartment404();
+        EmployeeImportProgress progress = importAll(EmployeeBulkService.Format.CSV,
+                "lastName,departmentId,title\n" +
+                        "Tikhonov,1,Lead\n" +
+                        "Ivanov,x,Engineer\n" +
+                        "Demeleva,404,QA\n" +
+                        "\n" +
+                        "Melnikova,3,\"Accounting, specialist\"\n");
+        assertEquals(new EmployeeImportProgress(6, 2, 2, true), progress);
+        verify(employeeService, times(2)).createAll(anyList());
+        assertEquals(400, ((EmployeeBatchResult) reports.get(0)).getStatus());
+        assertEquals(3, ((EmployeeBatchResult) reports.get(0)).getIndex());
+        assertEquals(EmployeeBatchResult.failure(4, 400, "Department with id 404 not found!"), reports.get(1));
+        assertEquals(new EmployeeImportProgress(4, 1, 2, false), reports.get(2));
+        assertEquals(new EmployeeImportProgress(6, 2, 2, false), reports.get(3));
+        assertEquals(progress, reports.get(4));
+    }
+
+    @Test
+    public void importAll_ImportMoreErrorsThanReported_ErrorsCountedButNotReported() throws IOException {
+        ReflectionTestUtils.setField(sut, "maxReportedErrors", 1);
+        EmployeeImportProgress progress = importAll(EmployeeBulkService.Format.NDJSON, "{\n[\n\"\"\n");
+        assertEquals(new EmployeeImportProgress(3, 0, 3, true), progress);
+        assertEquals(Arrays.asList(EmployeeBatchResult.class, EmployeeImportProgress.class),
+                reports.stream().map(Object::getClass).collect(Collectors.toList()));
+        verify(employeeService, never()).createAll(anyList());
+    }
+
+    @Test
+    public void importAll_DepartmentsServiceUnavailable_ImportStoppedAtFirstLineOfChunk() throws IOException {
+        when(employeeService.createAll(anyList()))
+                .thenThrow(new DepartmentServiceUnavailableException("Departments service is unavailable"));
+        EmployeeImportProgress progress = importAll(EmployeeBulkService.Format.NDJSON,
+                "{\"departmentId\":1}\n{\"departmentId\":2}\n{\"departmentId\":3}\n");
+        assertEquals(new EmployeeImportProgress(2, 0, 2, true), progress);
+        assertEquals(503, ((EmployeeBatchResult) reports.get(0)).getStatus());
+        assertEquals(1, ((EmployeeBatchResult) reports.get(0)).getIndex());
+        verify(employeeService).createAll(anyList());
+    }
+
+    @Test
+    public void rowReader_ReadCsvWithUnknownColumn_NoReader() throws IOException {
+        assertNull(sut.rowReader(EmployeeBulkService.Format.CSV, new BufferedReader(new StringReader("id,salary\n"))));
+        assertNull(sut.rowReader(EmployeeBulkService.Format.CSV, new BufferedReader(new StringReader(""))));
+    }
+
+    @Test
+    public void exportAll_ExportCsv_HeaderAndOneLinePerEmployee() throws IOException {
+        Employee employee = new Employee(1, 2, "Anna", "Demeleva", null);
+        doAnswer(invocation -> {
+            Consumer<Employee> consumer = invocation.getArgument(0);
+            consumer.accept(employee);
+            return null;
+        }).when(employeeService).streamAll(any());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        sut.exportAll(EmployeeBulkService.Format.CSV, outputStream);
+        assertEquals("id,departmentId,firstName,lastName,title,version\n1,2,Anna,Demeleva,,0\n", outputStream.toString("UTF-8"));
+    }
+
+    @Test
+    public void exportPage_ExportPagesAsCsvAndNdjson_HeaderOnFirstPageAndEveryPageEndsWithLineBreak() throws IOException {
+        List<Employee> employees = Arrays.asList(new Employee(1, 2, "Anna", "Demeleva", null),
+                new Employee(3, 4, "Maksim", "Tikhonov", "Lead"));
+        assertEquals("id,departmentId,firstName,lastName,title,version\n1,2,Anna,Demeleva,,0\n3,4,Maksim,Tikhonov,Lead,0\n",
+                sut.exportPage(EmployeeBulkService.Format.CSV, employees, true));
+        assertEquals("3,4,Maksim,Tikhonov,Lead,0\n",
+                sut.exportPage(EmployeeBulkService.Format.CSV, employees.subList(1, 2), false));
+        assertEquals("{\"id\":1,\"departmentId\":2,\"firstName\":\"Anna\",\"lastName\":\"Demeleva\",\"title\":null,\"version\":0}\n" +
+                        "{\"id\":3,\"departmentId\":4,\"firstName\":\"Maksim\",\"lastName\":\"Tikhonov\",\"title\":\"Lead\",\"version\":0}\n",
+                sut.exportPage(EmployeeBulkService.Format.NDJSON, employees, true));
+    }
+
+    @Test
+    public void format_ContentTypeWithCharset_FormatOfMediaType() {
+        assertEquals(EmployeeBulkService.Format.CSV, EmployeeBulkService.Format.of(MediaType.parseMediaType("text/csv;charset=UTF-8")));
+        assertNull(EmployeeBulkService.Format.of(MediaType.APPLICATION_JSON));
+    }
+}
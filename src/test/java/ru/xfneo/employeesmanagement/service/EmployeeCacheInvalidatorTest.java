@@ -0,0 +1,112 @@
+package ru.xfneo.employeesmanagement.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.PageRequest;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeFeed;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeEventRepository;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeFeedRepository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EmployeeCacheInvalidatorTest {
+    @Mock
+    private EmployeeChangeEventRepository changeEventRepository;
+    @Mock
+    private EmployeeChangeFeedRepository changeFeedRepository;
+    private EmployeeCache employeeCache;
+    private EmployeeCacheInvalidator sut;
+    private Employee employee1;
+    private Employee employee2;
+    private Employee employee3;
+
+    @Before
+    public void setUp() {
+        employeeCache = new EmployeeCache(100, EmployeeCache.Eviction.TINY_LFU, 300, new SimpleMeterRegistry());
+        sut = new EmployeeCacheInvalidator(changeEventRepository, changeFeedRepository, employeeCache, 2);
+        employee1 = new Employee(1, 1, "firstName1", "lastName1", "title1");
+        employee2 = new Employee(2, 1, "firstName2", "lastName2", "title2");
+        employee3 = new Employee(3, 2, "firstName3", "lastName3", "title3");
+        when(changeFeedRepository.findById(EmployeeChangeFeed.ID))
+                .thenReturn(Optional.of(new EmployeeChangeFeed(EmployeeChangeFeed.ID, 5)));
+        sut.invalidate();
+        cache(employee1, employee2, employee3);
+    }
+
+    private void cache(Employee... employees) {
+        for (Employee employee : employees) {
+            employeeCache.get(employee.getId(), () -> employee);
+        }
+    }
+
+    private static EmployeeChangeEvent event(long sequenceNumber, EmployeeChangeEvent event) {
+        event.setSequenceNumber(sequenceNumber);
+        return event;
+    }
+
+    private boolean cached(Employee employee) {
+        return employeeCache.get(employee.getId(), () -> null) == employee;
+    }
+
+    @Test
+    public void invalidate_FirstRun_WholeCacheInvalidated() {
+        EmployeeCacheInvalidator started = new EmployeeCacheInvalidator(changeEventRepository, changeFeedRepository,
+                employeeCache, 2);
+        assertEquals(0, started.invalidate());
+        assertEquals(0, employeeCache.estimatedMemory());
+    }
+
+    @Test
+    public void invalidate_EventsInTwoBatches_ChangedEmployeesInvalidated() {
+        when(changeEventRepository.findBySequenceNumberGreaterThanOrderBySequenceNumberAsc(5, PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(event(6, EmployeeChangeEvent.updated(employee1)),
+                        event(7, EmployeeChangeEvent.created(new Employee(4, 1, "firstName4", "lastName4", "title4")))));
+        when(changeEventRepository.findBySequenceNumberGreaterThanOrderBySequenceNumberAsc(7, PageRequest.of(0, 2)))
+                .thenReturn(Collections.singletonList(event(8, EmployeeChangeEvent.deleted(employee3))));
+        assertEquals(3, sut.invalidate());
+        assertFalse(cached(employee1));
+        assertTrue(cached(employee2));
+        assertFalse(cached(employee3));
+    }
+
+    @Test
+    public void invalidate_DepartmentReplaced_EmployeesOfOldDepartmentInvalidated() {
+        when(changeEventRepository.findBySequenceNumberGreaterThanOrderBySequenceNumberAsc(5, PageRequest.of(0, 2)))
+                .thenReturn(Collections.singletonList(event(6, EmployeeChangeEvent.departmentReplaced(1, 3))));
+        assertEquals(1, sut.invalidate());
+        assertFalse(cached(employee1));
+        assertFalse(cached(employee2));
+        assertTrue(cached(employee3));
+    }
+
+    @Test
+    public void invalidate_EventsPurgedBeforeRead_WholeCacheInvalidated() {
+        when(changeEventRepository.findBySequenceNumberGreaterThanOrderBySequenceNumberAsc(5, PageRequest.of(0, 2)))
+                .thenReturn(Collections.singletonList(event(9, EmployeeChangeEvent.updated(employee1))));
+        assertEquals(1, sut.invalidate());
+        assertEquals(0, employeeCache.estimatedMemory());
+    }
+
+    @Test
+    public void invalidate_NoEvents_CacheKept() {
+        when(changeEventRepository.findBySequenceNumberGreaterThanOrderBySequenceNumberAsc(5, PageRequest.of(0, 2)))
+                .thenReturn(Collections.emptyList());
+        assertEquals(0, sut.invalidate());
+        assertSame(employee1, employeeCache.get(employee1.getId(), () -> null));
+    }
+}
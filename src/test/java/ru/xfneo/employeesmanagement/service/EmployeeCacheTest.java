@@ -0,0 +1,145 @@
+package ru.xfneo.employeesmanagement.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import ru.xfneo.employeesmanagement.model.Employee;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class EmployeeCacheTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void get_LruGetEmployeeTwice_LoadedOnce() {
+        EmployeeCache sut = new EmployeeCache(10, EmployeeCache.Eviction.LRU, 300, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        sut.get(1, () -> employee(1, 1, loads));
+        Employee actualEmployee = sut.get(1, () -> employee(1, 1, loads));
+        assertEquals(1, actualEmployee.getId());
+        assertEquals(1, loads.get());
+        assertEquals(0.5, meterRegistry.get("employees.cache.hit.ratio").gauge().value(), 0.0);
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count(), 0.0);
+    }
+
+    @Test
+    public void get_LruCacheIsFull_LeastRecentlyUsedEvicted() {
+        EmployeeCache sut = new EmployeeCache(2, EmployeeCache.Eviction.LRU, 300, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        sut.get(1, () -> employee(1, 1, loads));
+        sut.get(2, () -> employee(2, 1, loads));
+        sut.get(1, () -> employee(1, 1, loads));
+        sut.get(3, () -> employee(3, 1, loads));
+        sut.get(1, () -> employee(1, 1, loads));
+        assertEquals(3, loads.get());
+        sut.get(2, () -> employee(2, 1, loads));
+        assertEquals(4, loads.get());
+        assertEquals(2.0, meterRegistry.get("cache.evictions").functionCounter().count(), 0.0);
+    }
+
+    @Test
+    public void get_LruInvalidatedDuringLoad_LoadedEmployeeNotCached() {
+        EmployeeCache sut = new EmployeeCache(10, EmployeeCache.Eviction.LRU, 300, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        sut.get(1, () -> {
+            sut.invalidate(1);
+            return employee(1, 1, loads);
+        });
+        sut.get(1, () -> employee(1, 1, loads));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void get_TinyLfuInvalidatedDuringLoad_LoadedEmployeeNotCached() {
+        EmployeeCache sut = new EmployeeCache(10, EmployeeCache.Eviction.TINY_LFU, 300, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        sut.get(1, () -> {
+            sut.invalidate(1);
+            return employee(1, 1, loads);
+        });
+        sut.get(1, () -> employee(1, 1, loads));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void get_TinyLfuOtherEmployeeInvalidatedDuringLoad_LoadedEmployeeCached() {
+        invalidateOtherEmployeeDuringLoad(EmployeeCache.Eviction.TINY_LFU);
+    }
+
+    @Test
+    public void get_LruOtherEmployeeInvalidatedDuringLoad_LoadedEmployeeCached() {
+        invalidateOtherEmployeeDuringLoad(EmployeeCache.Eviction.LRU);
+    }
+
+    private void invalidateOtherEmployeeDuringLoad(EmployeeCache.Eviction eviction) {
+        EmployeeCache sut = new EmployeeCache(10, eviction, 300, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        sut.get(1, () -> {
+            sut.invalidate(2);
+            return employee(1, 1, loads);
+        });
+        sut.get(1, () -> employee(1, 1, loads));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void get_NonexistentEmployee_NotCached() {
+        EmployeeCache sut = new EmployeeCache(10, EmployeeCache.Eviction.TINY_LFU, 300, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        assertNull(sut.get(1, () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        sut.get(1, () -> employee(1, 1, loads));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void invalidateDepartment_TinyLfuInvalidateDepartment_OnlyEmployeesOfDepartmentReloaded() {
+        invalidateDepartment(EmployeeCache.Eviction.TINY_LFU);
+    }
+
+    @Test
+    public void invalidateDepartment_LruInvalidateDepartment_OnlyEmployeesOfDepartmentReloaded() {
+        invalidateDepartment(EmployeeCache.Eviction.LRU);
+    }
+
+    @Test
+    public void invalidateAll_InvalidateEmployees_EmployeesReloaded() {
+        EmployeeCache sut = new EmployeeCache(10, EmployeeCache.Eviction.TINY_LFU, 300, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        sut.get(1, () -> employee(1, 1, loads));
+        sut.get(2, () -> employee(2, 1, loads));
+        sut.invalidateAll(Arrays.asList(1L, 2L));
+        sut.get(1, () -> employee(1, 1, loads));
+        sut.get(2, () -> employee(2, 1, loads));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void estimatedMemory_CacheEmployee_MemoryGaugeIsPositive() {
+        EmployeeCache sut = new EmployeeCache(10, EmployeeCache.Eviction.TINY_LFU, 300, meterRegistry);
+        assertEquals(0.0, meterRegistry.get("employees.cache.memory").gauge().value(), 0.0);
+        sut.get(1, () -> employee(1, 1, new AtomicInteger()));
+        assertTrue(meterRegistry.get("employees.cache.memory").gauge().value() > 0);
+    }
+
+    private void invalidateDepartment(EmployeeCache.Eviction eviction) {
+        EmployeeCache sut = new EmployeeCache(10, eviction, 300, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+        sut.get(1, () -> employee(1, 1, loads));
+        sut.get(2, () -> employee(2, 2, loads));
+        sut.invalidateDepartment(1);
+        sut.get(1, () -> employee(1, 1, loads));
+        sut.get(2, () -> employee(2, 2, loads));
+        assertEquals(3, loads.get());
+    }
+
+    private static Employee employee(long id, long departmentId, AtomicInteger loads) {
+        loads.incrementAndGet();
+        return new Employee(id, departmentId, "firstName" + id, "lastName" + id, "title" + id);
+    }
+}
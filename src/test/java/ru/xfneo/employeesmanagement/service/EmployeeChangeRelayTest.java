@@ -0,0 +1,101 @@
+package ru.xfneo.employeesmanagement.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.PageRequest;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeEventRepository;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EmployeeChangeRelayTest {
+    @Mock
+    private EmployeeChangeEventRepository changeEventRepository;
+    @Mock
+    private ObjectProvider<EmployeeChangePublisher> publisherProvider;
+    private final InMemoryEmployeeChangePublisher publisher = new InMemoryEmployeeChangePublisher();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EmployeeChangeRelay sut;
+    private EmployeeChangeEvent event1, event2, event3;
+
+    @Before
+    public void setUp() {
+        when(publisherProvider.getIfAvailable()).thenReturn(publisher);
+        sut = new EmployeeChangeRelay(changeEventRepository, publisherProvider, meterRegistry, 2, 3600);
+        event1 = event(1);
+        event2 = event(2);
+        event3 = event(3);
+    }
+
+    private static EmployeeChangeEvent event(long id) {
+        EmployeeChangeEvent event = EmployeeChangeEvent.created(new Employee(id, 1, "firstName", "lastName", "title"));
+        event.setId(id);
+        event.setSequenceNumber(id);
+        return event;
+    }
+
+    @Test
+    public void relay_UnpublishedEventsInTwoBatches_AllEventsPublishedInOrderAndMarked() {
+        when(changeEventRepository.findBySequenceNumberNotNullAndPublishedAtIsNullOrderBySequenceNumberAsc(PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(event1, event2), Collections.singletonList(event3));
+        assertEquals(3, sut.relay());
+        assertEquals(Arrays.asList(event1, event2, event3), publisher.published());
+        verify(changeEventRepository).markPublished(eq(Arrays.asList(1L, 2L)), any(Instant.class));
+        verify(changeEventRepository).markPublished(eq(Collections.singletonList(3L)), any(Instant.class));
+        assertEquals(3.0, meterRegistry.get(EmployeeChangeRelay.PUBLISHED_METRIC).counter().count(), 0.0);
+    }
+
+    @Test
+    public void relay_PublisherFails_BatchNotMarkedAndPublishedOnNextRun() {
+        List<EmployeeChangeEvent> batch = Collections.singletonList(event1);
+        when(changeEventRepository.findBySequenceNumberNotNullAndPublishedAtIsNullOrderBySequenceNumberAsc(PageRequest.of(0, 2))).thenReturn(batch);
+        publisher.failNext(1);
+        assertEquals(0, sut.relay());
+        verify(changeEventRepository, never()).markPublished(anyCollection(), any(Instant.class));
+        assertEquals(1, sut.relay());
+        assertEquals(batch, publisher.published());
+        verify(changeEventRepository).markPublished(eq(Collections.singletonList(1L)), any(Instant.class));
+    }
+
+    @Test
+    public void purge_PublishedEventsOlderThanRetention_Deleted() {
+        sut.purge();
+        ArgumentCaptor<Instant> before = ArgumentCaptor.forClass(Instant.class);
+        verify(changeEventRepository).deleteCreatedBefore(before.capture(), eq(false));
+        assertTrue(before.getValue().isBefore(Instant.now().minusSeconds(3599)));
+    }
+
+    @Test
+    public void purge_NoPublisher_UnpublishedEventsDeletedToo() {
+        when(publisherProvider.getIfAvailable()).thenReturn(null);
+        sut = new EmployeeChangeRelay(changeEventRepository, publisherProvider, meterRegistry, 2, 3600);
+        sut.purge();
+        verify(changeEventRepository).deleteCreatedBefore(any(Instant.class), eq(true));
+    }
+
+    @Test
+    public void relay_NoPublisher_OutboxNotRead() {
+        when(publisherProvider.getIfAvailable()).thenReturn(null);
+        sut = new EmployeeChangeRelay(changeEventRepository, publisherProvider, meterRegistry, 2, 3600);
+        assertEquals(0, sut.relay());
+        verifyZeroInteractions(changeEventRepository);
+    }
+}
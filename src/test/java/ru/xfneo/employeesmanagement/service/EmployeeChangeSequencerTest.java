@@ -0,0 +1,81 @@
+package ru.xfneo.employeesmanagement.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeFeed;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeEventRepository;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeFeedRepository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EmployeeChangeSequencerTest {
+    @Mock
+    private EmployeeChangeEventRepository changeEventRepository;
+    @Mock
+    private EmployeeChangeFeedRepository changeFeedRepository;
+    private EmployeeChangeSequencer sut;
+    private EmployeeChangeFeed feed;
+
+    @Before
+    public void setUp() {
+        sut = new EmployeeChangeSequencer(changeEventRepository, changeFeedRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), 2);
+        feed = new EmployeeChangeFeed(EmployeeChangeFeed.ID, 5);
+    }
+
+    private static EmployeeChangeEvent event(long id) {
+        EmployeeChangeEvent event = EmployeeChangeEvent.created(new Employee(id, 1, "firstName", "lastName", "title"));
+        event.setId(id);
+        return event;
+    }
+
+    @Test
+    public void sequence_CommittedEventsInTwoBatches_NumberedAfterLastSequenceNumber() {
+        EmployeeChangeEvent event1 = event(1), event2 = event(3), event3 = event(2);
+        when(changeFeedRepository.lockById(EmployeeChangeFeed.ID)).thenReturn(Optional.of(feed));
+        when(changeEventRepository.findBySequenceNumberIsNullOrderByIdAsc(PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(event1, event2), Collections.singletonList(event3));
+        assertEquals(3, sut.sequence());
+        assertEquals(Long.valueOf(6), event1.getSequenceNumber());
+        assertEquals(Long.valueOf(7), event2.getSequenceNumber());
+        // committed after the first batch was numbered, so numbered after it despite its smaller id
+        assertEquals(Long.valueOf(8), event3.getSequenceNumber());
+        assertEquals(8, feed.getLastSequenceNumber());
+    }
+
+    @Test
+    public void sequence_NoCommittedEvents_LastSequenceNumberKept() {
+        when(changeFeedRepository.lockById(EmployeeChangeFeed.ID)).thenReturn(Optional.of(feed));
+        when(changeEventRepository.findBySequenceNumberIsNullOrderByIdAsc(PageRequest.of(0, 2)))
+                .thenReturn(Collections.emptyList());
+        assertEquals(0, sut.sequence());
+        assertEquals(5, feed.getLastSequenceNumber());
+    }
+
+    @Test
+    public void sequence_FeedRowMissing_RowCreatedAndEventsNumberedFromOne() {
+        EmployeeChangeEvent event1 = event(1);
+        when(changeFeedRepository.lockById(EmployeeChangeFeed.ID)).thenReturn(Optional.empty());
+        when(changeFeedRepository.saveAndFlush(any(EmployeeChangeFeed.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(changeEventRepository.findBySequenceNumberIsNullOrderByIdAsc(PageRequest.of(0, 2)))
+                .thenReturn(Collections.singletonList(event1));
+        assertEquals(1, sut.sequence());
+        assertEquals(Long.valueOf(1), event1.getSequenceNumber());
+    }
+}
@@ -0,0 +1,76 @@
+package ru.xfneo.employeesmanagement.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import ru.xfneo.employeesmanagement.model.DepartmentHeadcount;
+import ru.xfneo.employeesmanagement.model.TitleHeadcount;
+import ru.xfneo.employeesmanagement.repository.EmployeeRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EmployeeCountersTest {
+    @Mock
+    private EmployeeRepository employeeRepository;
+    private EmployeeCounters sut;
+
+    @Before
+    public void setUp() {
+        sut = new EmployeeCounters(employeeRepository, true);
+    }
+
+    private static List<Object[]> rows(Object[]... rows) {
+        return new ArrayList<>(Arrays.asList(rows));
+    }
+
+    @Test
+    public void countByDepartment_CountTwice_LoadedByDatabaseOnce() {
+        when(employeeRepository.countByDepartmentAndTitle()).thenReturn(rows(
+                new Object[]{2L, "QA Engineer", 1L}, new Object[]{1L, "Engineer", 2L}, new Object[]{1L, null, 1L}));
+        List<DepartmentHeadcount> expected = Arrays.asList(new DepartmentHeadcount(1, 3), new DepartmentHeadcount(2, 1));
+        assertEquals(expected, sut.countByDepartment());
+        assertEquals(expected, sut.countByDepartment());
+        assertEquals(Arrays.asList(new TitleHeadcount("Engineer", 2), new TitleHeadcount(null, 1)), sut.countByTitle(1));
+        verify(employeeRepository).countByDepartmentAndTitle();
+    }
+
+    @Test
+    public void changes_AddMoveAndRemoveEmployees_CountersUpdatedWithoutDatabase() {
+        when(employeeRepository.countByDepartmentAndTitle()).thenReturn(rows(new Object[]{1L, "Engineer", 1L}));
+        assertTrue(sut.hasEmployees(1));
+        sut.added(1, "Engineer");
+        sut.added(2, "Lead");
+        sut.moved(1, "Engineer", 2, "Engineer");
+        assertEquals(Arrays.asList(new DepartmentHeadcount(1, 1), new DepartmentHeadcount(2, 2)), sut.countByDepartment());
+        sut.removed(1, "Engineer");
+        assertFalse(sut.hasEmployees(1));
+        assertEquals(Collections.emptyList(), sut.countByTitle(1));
+        sut.departmentReplaced(2, 3);
+        assertEquals(Arrays.asList(new TitleHeadcount("Engineer", 1), new TitleHeadcount("Lead", 1)), sut.countByTitle(3));
+        assertFalse(sut.hasEmployees(2));
+        verify(employeeRepository).countByDepartmentAndTitle();
+    }
+
+    @Test
+    public void refresh_RefreshAfterFirstRead_CountersReplacedByDatabase() {
+        sut.refresh();
+        verifyZeroInteractions(employeeRepository);
+        when(employeeRepository.countByDepartmentAndTitle())
+                .thenReturn(rows(new Object[]{1L, "Engineer", 1L}), rows(new Object[]{1L, "Engineer", 5L}));
+        sut.added(1, "Engineer");
+        assertEquals(Collections.singletonList(new DepartmentHeadcount(1, 1)), sut.countByDepartment());
+        sut.refresh();
+        assertEquals(Collections.singletonList(new DepartmentHeadcount(1, 5)), sut.countByDepartment());
+    }
+}
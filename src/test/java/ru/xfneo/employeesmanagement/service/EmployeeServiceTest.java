@@ -1,21 +1,44 @@
 package ru.xfneo.employeesmanagement.service;
 
-import feign.Response;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
-import ru.xfneo.employeesmanagement.client.DepartmentClient;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.xfneo.employeesmanagement.model.DepartmentHeadcount;
 import ru.xfneo.employeesmanagement.model.DepartmentsToReplaceDto;
 import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeBatchResult;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeFeed;
+import ru.xfneo.employeesmanagement.model.EmployeeChangesPage;
+import ru.xfneo.employeesmanagement.model.EmployeeFieldsPage;
+import ru.xfneo.employeesmanagement.model.EmployeeValidation;
+import ru.xfneo.employeesmanagement.model.EmployeesPage;
+import ru.xfneo.employeesmanagement.model.TitleHeadcount;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeEventRepository;
+import ru.xfneo.employeesmanagement.repository.EmployeeChangeFeedRepository;
 import ru.xfneo.employeesmanagement.repository.EmployeeRepository;
+import ru.xfneo.employeesmanagement.repository.EmployeeValidationRepository;
 
+import javax.persistence.EntityManager;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -23,9 +46,24 @@ public class EmployeeServiceTest {
     @Mock
     private EmployeeRepository employeeRepository;
     @Mock
-    private DepartmentClient departmentClient;
+    private EmployeeChangeEventRepository changeEventRepository;
     @Mock
-    Response mockResponse;
+    private EmployeeChangeFeedRepository changeFeedRepository;
+    @Mock
+    private EmployeeValidationRepository validationRepository;
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+    @Mock
+    private DepartmentService departmentService;
+    @Spy
+    private EmployeeCache employeeCache =
+            new EmployeeCache(100, EmployeeCache.Eviction.TINY_LFU, 300, new SimpleMeterRegistry());
+    @Mock
+    private EmployeeCounters employeeCounters;
+    @Mock
+    private EntityManager entityManager;
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
     @InjectMocks
     private EmployeeService sut;
     private Employee employee1, employee2;
@@ -34,6 +72,9 @@ public class EmployeeServiceTest {
     public void setUp() {
         employee1 = new Employee(1, 1, "firstName1", "lastName1", "title1");
         employee2 = new Employee(2, 2, "firstName2", "lastName2", "title2");
+        ReflectionTestUtils.setField(sut, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(sut, "maxPageSize", 10);
+        ReflectionTestUtils.setField(sut, "maxBatchSize", 3);
     }
 
     @Test
@@ -46,15 +87,223 @@ public class EmployeeServiceTest {
         verifyNoMoreInteractions(employeeRepository);
     }
 
+    @Test
+    public void findAllVersion_GetVersion_SequenceNumberOfLastChange() {
+        when(changeFeedRepository.findVersion()).thenReturn(7L);
+        assertEquals(Optional.of(7L), sut.findAllVersion());
+    }
+
+    @Test
+    public void findAllVersion_GetVersionWithoutChanges_ZeroVersion() {
+        when(changeFeedRepository.findVersion()).thenReturn(0L);
+        assertEquals(Optional.of(0L), sut.findAllVersion());
+    }
+
+    @Test
+    public void findAllVersion_GetVersionWhileCommittedChangeNotNumbered_NoVersion() {
+        when(changeFeedRepository.findVersion()).thenReturn(-1L);
+        assertEquals(Optional.empty(), sut.findAllVersion());
+    }
+
+    @Test
+    public void findPage_GetFullFirstPage_OkResponseWithNextCursor() {
+        when(employeeRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(employee1, employee2));
+        ResponseEntity<?> expectedResponse =
+                ResponseEntity.ok(new EmployeesPage(Arrays.asList(employee1, employee2), employee2.getId()));
+        ResponseEntity<?> actualResponse = sut.findPage(null, null);
+        assertEquals(expectedResponse, actualResponse);
+    }
+
+    @Test
+    public void findPage_GetLastPage_OkResponseWithoutNextCursor() {
+        when(employeeRepository.findByIdGreaterThanOrderByIdAsc(employee1.getId(), PageRequest.of(0, 5)))
+                .thenReturn(Collections.singletonList(employee2));
+        ResponseEntity<?> expectedResponse =
+                ResponseEntity.ok(new EmployeesPage(Collections.singletonList(employee2), null));
+        ResponseEntity<?> actualResponse = sut.findPage(employee1.getId(), 5);
+        assertEquals(expectedResponse, actualResponse);
+    }
+
+    @Test
+    public void findPage_GetTooLargePage_BadRequestResponse() {
+        ResponseEntity<?> expectedResponse = ResponseEntity.status(400).body("Page size must be between 1 and 10!");
+        ResponseEntity<?> actualResponse = sut.findPage(null, 11);
+        assertEquals(expectedResponse, actualResponse);
+        verifyZeroInteractions(employeeRepository);
+    }
+
+    @Test
+    public void findAll_GetFields_OnlyRequestedFieldsSelectedInEntityOrder() {
+        List<Map<String, Object>> rows = Collections.singletonList(Collections.singletonMap("departmentId", 1L));
+        when(employeeRepository.findAllFields(Arrays.asList("id", "departmentId"))).thenReturn(rows);
+        ResponseEntity<?> actualResponse = sut.findAll(new LinkedHashSet<>(Arrays.asList("departmentId", "id")));
+        assertEquals(ResponseEntity.ok(rows), actualResponse);
+        verify(employeeRepository, never()).findAll();
+    }
+
+    @Test
+    public void findAll_GetUnknownField_BadRequestResponse() {
+        ResponseEntity<?> actualResponse = sut.findAll(Collections.singleton("salary"));
+        assertEquals(ResponseEntity.status(400)
+                .body("Fields must be of id, departmentId, firstName, lastName, title, version!"), actualResponse);
+        assertEquals(1.0, meterRegistry.get(EmployeeService.REJECTED_METRIC)
+                .tag("reason", EmployeeService.INVALID_FIELDS).counter().count(), 0.0);
+        verifyZeroInteractions(employeeRepository);
+    }
+
+    @Test
+    public void findPage_GetFieldsWithoutId_IdSelectedForCursorAndRemoved() {
+        Map<String, Object> row1 = new LinkedHashMap<>();
+        row1.put("id", 1L);
+        row1.put("departmentId", 1L);
+        Map<String, Object> row2 = new LinkedHashMap<>();
+        row2.put("id", 2L);
+        row2.put("departmentId", 2L);
+        when(employeeRepository.findFieldsByIdGreaterThan(0, Arrays.asList("id", "departmentId"), 2))
+                .thenReturn(Arrays.asList(row1, row2));
+        ResponseEntity<?> actualResponse = sut.findPage(null, null, Collections.singleton("departmentId"));
+        assertEquals(ResponseEntity.ok(new EmployeeFieldsPage(Arrays.asList(
+                Collections.singletonMap("departmentId", 1L),
+                Collections.singletonMap("departmentId", 2L)), 2L)), actualResponse);
+    }
+
+    @Test
+    public void find_GetFields_OkResponseWithRequestedFieldsAndVersionETag() {
+        employee1.setVersion(4);
+        when(employeeRepository.findById(employee1.getId())).thenReturn(Optional.of(employee1));
+        ResponseEntity<?> actualResponse = sut.find(employee1.getId(), new HashSet<>(Arrays.asList("title", "id")));
+        Map<String, Object> expectedFields = new LinkedHashMap<>();
+        expectedFields.put("id", employee1.getId());
+        expectedFields.put("title", employee1.getTitle());
+        assertEquals(ResponseEntity.ok().eTag("4").body(expectedFields), actualResponse);
+    }
+
+    @Test
+    public void search_SearchByPrefix_TrigramQueryWithEscapedLowerCasePatterns() {
+        ReflectionTestUtils.setField(sut, "trigramSearch", true);
+        when(employeeRepository.searchByPrefix("first\\_\\%name%", "% first\\_\\%name%", 0, 2))
+                .thenReturn(Arrays.asList(employee1, employee2));
+        ResponseEntity<?> actualResponse = sut.search("  First_%Name ", null, null, null);
+        assertEquals(ResponseEntity.ok(new EmployeesPage(Arrays.asList(employee1, employee2), 2L)), actualResponse);
+    }
+
+    @Test
+    public void search_SearchFuzzy_TrigramSimilarityQuery() {
+        ReflectionTestUtils.setField(sut, "trigramSearch", true);
+        when(employeeRepository.searchBySimilarity("lastnme1", 1, 5)).thenReturn(Collections.singletonList(employee2));
+        ResponseEntity<?> actualResponse = sut.search("lastNme1", EmployeeService.SearchMode.FUZZY, 1L, 5);
+        assertEquals(ResponseEntity.ok(new EmployeesPage(Collections.singletonList(employee2), null)), actualResponse);
+    }
+
+    @Test
+    public void search_SearchFuzzyWithoutTrigram_PortableSubstringQuery() {
+        when(employeeRepository.searchByPrefixPortable("%name1%", "%name1%", 0, PageRequest.of(0, 2)))
+                .thenReturn(Collections.singletonList(employee1));
+        ResponseEntity<?> actualResponse = sut.search("name1", EmployeeService.SearchMode.FUZZY, null, null);
+        assertEquals(ResponseEntity.ok(new EmployeesPage(Collections.singletonList(employee1), null)), actualResponse);
+        verify(employeeRepository, never()).searchBySimilarity(anyString(), anyLong(), anyInt());
+    }
+
+    @Test
+    public void search_SearchTooShortQuery_BadRequestResponse() {
+        ResponseEntity<?> actualResponse = sut.search(" ab ", EmployeeService.SearchMode.PREFIX, null, null);
+        assertEquals(ResponseEntity.status(400).body("Search query must have at least 3 characters!"), actualResponse);
+        assertEquals(1.0, meterRegistry.get(EmployeeService.REJECTED_METRIC)
+                .tag("reason", EmployeeService.INVALID_QUERY).counter().count(), 0.0);
+        verifyZeroInteractions(employeeRepository);
+    }
+
+    @Test
+    public void findChanges_GetChangesWithoutSince_OkResponseWithLastSequenceNumberOnly() {
+        when(changeFeedRepository.findById(EmployeeChangeFeed.ID)).thenReturn(Optional.of(new EmployeeChangeFeed(1, 7)));
+        ResponseEntity<?> actualResponse = sut.findChanges(null, null);
+        assertEquals(ResponseEntity.ok(new EmployeeChangesPage(Collections.emptyList(), 7)), actualResponse);
+        verify(changeEventRepository, never()).findBySequenceNumberGreaterThanOrderBySequenceNumberAsc(anyLong(), any());
+    }
+
+    @Test
+    public void findChanges_GetChangesSinceSequenceNumber_OkResponseWithSequenceNumberOfLastChange() {
+        EmployeeChangeEvent event1 = EmployeeChangeEvent.created(employee1);
+        event1.setId(9);
+        event1.setSequenceNumber(8L);
+        EmployeeChangeEvent event2 = EmployeeChangeEvent.created(employee2);
+        event2.setId(8);
+        event2.setSequenceNumber(9L);
+        when(changeEventRepository.findBySequenceNumberGreaterThanOrderBySequenceNumberAsc(7, PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(event1, event2));
+        ResponseEntity<?> actualResponse = sut.findChanges(7L, null);
+        assertEquals(ResponseEntity.ok(new EmployeeChangesPage(Arrays.asList(event1, event2), 9)), actualResponse);
+    }
+
+    @Test
+    public void findChanges_GetNoNewChanges_OkResponseWithSameSequenceNumber() {
+        when(changeEventRepository.findBySequenceNumberGreaterThanOrderBySequenceNumberAsc(7, PageRequest.of(0, 5)))
+                .thenReturn(Collections.emptyList());
+        ResponseEntity<?> actualResponse = sut.findChanges(7L, 5);
+        assertEquals(ResponseEntity.ok(new EmployeeChangesPage(Collections.emptyList(), 7)), actualResponse);
+    }
+
+    @Test
+    public void countByDepartment_CountWithoutInMemoryCounters_CountedByDatabase() {
+        List<DepartmentHeadcount> headcounts = Arrays.asList(new DepartmentHeadcount(1, 2), new DepartmentHeadcount(2, 1));
+        when(employeeRepository.countByDepartment()).thenReturn(headcounts);
+        assertEquals(headcounts, sut.countByDepartment());
+        verify(employeeCounters, never()).countByDepartment();
+    }
+
+    @Test
+    public void countByTitle_CountWithInMemoryCounters_CountedWithoutDatabase() {
+        List<TitleHeadcount> headcounts = Collections.singletonList(new TitleHeadcount("title1", 2));
+        when(employeeCounters.isEnabled()).thenReturn(true);
+        when(employeeCounters.countByTitle(1)).thenReturn(headcounts);
+        when(employeeCounters.hasEmployees(1)).thenReturn(true);
+        assertEquals(headcounts, sut.countByTitle(1));
+        assertTrue(sut.hasEmployees(1));
+        verifyZeroInteractions(employeeRepository);
+    }
+
+    @Test
+    public void streamAll_StreamEmployees_AllEmployeesConsumedAndDetached() {
+        when(employeeRepository.streamAll()).thenReturn(Stream.of(employee1, employee2));
+        List<Employee> consumed = new ArrayList<>();
+        sut.streamAll(consumed::add);
+        assertEquals(Arrays.asList(employee1, employee2), consumed);
+        verify(entityManager).detach(employee1);
+        verify(entityManager).detach(employee2);
+    }
+
     @Test
     public void find_GetEmployee_OkResponseWithEmployee() {
         when(employeeRepository.findById(employee1.getId())).thenReturn(Optional.of(employee1));
-        ResponseEntity<?> expectedResponse = ResponseEntity.ok(employee1);
+        employee1.setVersion(3);
+        ResponseEntity<?> expectedResponse = ResponseEntity.ok().eTag("3").body(employee1);
         ResponseEntity<?> actualResponse = sut.find(employee1.getId());
         assertEquals(expectedResponse, actualResponse);
         verify(employeeRepository).findById(employee1.getId());
     }
 
+    @Test
+    public void find_GetEmployeeTwice_SecondResponseFromCache() {
+        when(employeeRepository.findById(employee1.getId())).thenReturn(Optional.of(employee1));
+        sut.find(employee1.getId());
+        ResponseEntity<?> actualResponse = sut.find(employee1.getId());
+        assertEquals(ResponseEntity.ok().eTag("0").body(employee1), actualResponse);
+        verify(employeeRepository, times(1)).findById(employee1.getId());
+    }
+
+    @Test
+    public void find_GetEmployeeAfterUpdate_EmployeeReloaded() {
+        when(departmentService.exists(employee2.getDepartmentId())).thenReturn(true);
+        when(employeeRepository.updateFields(eq(employee1.getId()), eq(0L), anyMap())).thenReturn(Optional.of(employee1));
+        when(employeeRepository.findById(employee1.getId())).thenReturn(Optional.of(employee1));
+        sut.find(employee1.getId());
+        sut.update(employee1.getId(), employee2);
+        sut.find(employee1.getId());
+        verify(employeeCache).invalidate(employee1.getId());
+        verify(employeeRepository, times(3)).findById(employee1.getId());
+    }
+
     @Test
     public void find_GetNullEmployee_NotFoundResponse() {
         ResponseEntity<?> expectedNotFoundResponse = ResponseEntity.status(404).body("Employee Not Found");
@@ -64,47 +313,207 @@ public class EmployeeServiceTest {
 
     @Test
     public void create_CreateEmployee_CreatedResponseWithEmployee() {
-        when(mockResponse.status()).thenReturn(200);
-        when(departmentClient.checkDepartment(employee1.getDepartmentId())).thenReturn(mockResponse);
+        when(departmentService.exists(employee1.getDepartmentId())).thenReturn(true);
         when(employeeRepository.save(employee1)).thenReturn(employee1);
         ResponseEntity<?> expectedResponse = ResponseEntity.status(201).body(employee1);
         ResponseEntity<?> actualResponse = sut.create(employee1);
         assertEquals(expectedResponse, actualResponse);
         verify(employeeRepository).save(employee1);
+        verify(employeeCounters).added(employee1.getDepartmentId(), employee1.getTitle());
+    }
+
+    @Test
+    public void create_CreateEmployee_CreatedEventSavedInTransaction() {
+        when(departmentService.exists(employee1.getDepartmentId())).thenReturn(true);
+        when(employeeRepository.save(employee1)).thenReturn(employee1);
+        sut.create(employee1);
+        EmployeeChangeEvent event = savedEvents(1).get(0);
+        assertEquals(EmployeeChangeEvent.Type.CREATED, event.getType());
+        assertEquals(Long.valueOf(employee1.getId()), event.getEmployeeId());
+        assertEquals(employee1.getFirstName(), event.getFirstName());
+        verify(transactionTemplate).execute(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<EmployeeChangeEvent> savedEvents(int times) {
+        ArgumentCaptor<List<EmployeeChangeEvent>> captor = ArgumentCaptor.forClass(List.class);
+        verify(changeEventRepository, times(times)).saveAll(captor.capture());
+        return captor.getAllValues().stream().flatMap(List::stream).collect(Collectors.toList());
     }
 
     @Test
     public void create_CreateEmployeeWithWrongDepartment_NotFoundResponse() {
-        when(mockResponse.status()).thenReturn(400);
-        when(departmentClient.checkDepartment(employee1.getDepartmentId())).thenReturn(mockResponse);
+        when(departmentService.exists(employee1.getDepartmentId())).thenReturn(false);
         ResponseEntity<?> expectedResponse = ResponseEntity.status(400).body("Department with id " + employee1.getDepartmentId() + " not found!");
         ResponseEntity<?> actualResponse = sut.create(employee1);
         assertEquals(expectedResponse, actualResponse);
         verify(employeeRepository, times(0)).save(any(Employee.class));
+        assertEquals(1.0, meterRegistry.get(EmployeeService.REJECTED_METRIC)
+                .tag("reason", EmployeeService.DEPARTMENT_NOT_FOUND).counter().count(), 0.0);
+    }
+
+    @Test
+    public void createAll_CreateEmployees_OkResponseWithResultPerEmployee() {
+        Employee employee3 = new Employee(3, 1, "firstName3", "lastName3", "title3");
+        List<Employee> employees = Arrays.asList(employee1, employee2, employee3);
+        Map<Long, Boolean> departmentsExistence = new HashMap<>();
+        departmentsExistence.put(1L, true);
+        departmentsExistence.put(2L, false);
+        when(departmentService.exists(new HashSet<>(Arrays.asList(1L, 2L)))).thenReturn(departmentsExistence);
+        when(employeeRepository.saveAll(Arrays.asList(employee1, employee3))).thenReturn(Arrays.asList(employee1, employee3));
+        ResponseEntity<?> expectedResponse = ResponseEntity.ok(Arrays.asList(
+                EmployeeBatchResult.success(0, 201, employee1),
+                EmployeeBatchResult.failure(1, 400, "Department with id 2 not found!"),
+                EmployeeBatchResult.success(2, 201, employee3)));
+        ResponseEntity<?> actualResponse = sut.createAll(employees);
+        assertEquals(expectedResponse, actualResponse);
+        verify(departmentService, times(1)).exists(new HashSet<>(Arrays.asList(1L, 2L)));
+        verify(departmentService, never()).exists(anyLong());
+        verify(employeeRepository).saveAll(Arrays.asList(employee1, employee3));
+    }
+
+    @Test
+    public void validate_PendingEmployees_PromotedOrRejectedByDepartment() {
+        EmployeeValidation valid = new EmployeeValidation(employee1);
+        valid.setId(10);
+        EmployeeValidation rejected = new EmployeeValidation(employee2);
+        rejected.setId(11);
+        List<Long> ids = Arrays.asList(10L, 11L, 12L);
+        when(validationRepository.findByIdInAndStatus(ids, EmployeeValidation.Status.PENDING_VALIDATION))
+                .thenReturn(Arrays.asList(valid, rejected));
+        when(employeeRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Employee> employees = invocation.getArgument(0);
+            employees.forEach(employee -> employee.setId(5));
+            return employees;
+        });
+        Map<Long, Boolean> departmentsExistence = new HashMap<>();
+        departmentsExistence.put(1L, true);
+        departmentsExistence.put(2L, false);
+        List<EmployeeValidation> validated = sut.validate(ids, departmentsExistence);
+        assertEquals(Arrays.asList(valid, rejected), validated);
+        assertEquals(EmployeeValidation.Status.VALID, valid.getStatus());
+        assertEquals(Long.valueOf(5), valid.getEmployeeId());
+        assertEquals(EmployeeValidation.Status.REJECTED, rejected.getStatus());
+        assertEquals("Department with id 2 not found!", rejected.getError());
+        verify(employeeRepository).saveAll(Collections.singletonList(new Employee(5, 1, "firstName1", "lastName1", "title1")));
+        verify(changeEventRepository).saveAll(anyList());
+        verify(employeeCounters).added(1, "title1");
+        verifyZeroInteractions(departmentService);
+    }
+
+    @Test
+    public void createAll_CreateTooManyEmployees_BadRequestResponse() {
+        List<Employee> employees = Arrays.asList(employee1, employee2, employee1, employee2);
+        ResponseEntity<?> expectedResponse = ResponseEntity.status(400).body("Batch size must not exceed 3!");
+        ResponseEntity<?> actualResponse = sut.createAll(employees);
+        assertEquals(expectedResponse, actualResponse);
+        verifyZeroInteractions(employeeRepository, departmentService);
+    }
+
+    @Test
+    public void createAll_CreateEmptyList_BadRequestResponse() {
+        ResponseEntity<?> expectedResponse = ResponseEntity.status(400).body("Employees data is not valid!");
+        ResponseEntity<?> actualResponse = sut.createAll(Collections.emptyList());
+        assertEquals(expectedResponse, actualResponse);
+        verifyZeroInteractions(employeeRepository, departmentService);
+    }
+
+    @Test
+    public void updateAll_UpdateEmployees_OkResponseWithResultPerEmployee() {
+        Employee editedEmployee1 = new Employee(1, 2, "editedFirstName1", "lastName1", "title1");
+        Employee editedEmployee2 = new Employee(2, 3, "firstName2", "lastName2", "title2");
+        Employee nonexistentEmployee = new Employee(3, 1, "firstName3", "lastName3", "title3");
+        when(employeeRepository.findAllById(new HashSet<>(Arrays.asList(1L, 2L, 3L))))
+                .thenReturn(Arrays.asList(new Employee(1, 1, "firstName1", "lastName1", "title1"),
+                        new Employee(2, 2, "firstName2", "lastName2", "title2")));
+        when(employeeRepository.findAllById(new HashSet<>(Arrays.asList(1L, 2L))))
+                .thenReturn(Arrays.asList(employee1, employee2));
+        Map<Long, Boolean> departmentsExistence = new HashMap<>();
+        departmentsExistence.put(2L, true);
+        departmentsExistence.put(3L, false);
+        when(departmentService.exists(new HashSet<>(Arrays.asList(2L, 3L)))).thenReturn(departmentsExistence);
+        ResponseEntity<?> actualResponse = sut.updateAll(Arrays.asList(editedEmployee1, editedEmployee2, nonexistentEmployee));
+        ResponseEntity<?> expectedResponse = ResponseEntity.ok(Arrays.asList(
+                EmployeeBatchResult.success(0, 200, employee1),
+                EmployeeBatchResult.failure(1, 400, "Department with id 3 not found!"),
+                EmployeeBatchResult.failure(2, 404, "Employee Not Found")));
+        assertEquals(expectedResponse, actualResponse);
+        assertEquals(editedEmployee1.getDepartmentId(), employee1.getDepartmentId());
+        assertEquals(editedEmployee1.getFirstName(), employee1.getFirstName());
+        assertEquals(2, employee2.getDepartmentId());
+        verify(employeeRepository).flush();
+        verify(employeeRepository, never()).saveAll(anyCollection());
+        verify(departmentService).exists(new HashSet<>(Arrays.asList(2L, 3L)));
+        verify(employeeCounters).moved(1, "title1", 2, "title1");
+        verifyNoMoreInteractions(employeeCounters);
+    }
+
+    @Test
+    public void updateAll_RepeatedId_FirstAppliedAndRepeatedRejected() {
+        Employee editedEmployee1 = new Employee(1, 1, "editedFirstName1", "lastName1", "title1");
+        Employee repeatedEmployee1 = new Employee(1, 1, "repeatedFirstName1", "lastName1", "title1");
+        when(employeeRepository.findAllById(Collections.singleton(1L))).thenReturn(Collections.singletonList(employee1));
+        ResponseEntity<?> actualResponse = sut.updateAll(Arrays.asList(editedEmployee1, repeatedEmployee1));
+        ResponseEntity<?> expectedResponse = ResponseEntity.ok(Arrays.asList(
+                EmployeeBatchResult.success(0, 200, employee1),
+                EmployeeBatchResult.failure(1, 400, "Employee with id 1 is repeated!")));
+        assertEquals(expectedResponse, actualResponse);
+        assertEquals(editedEmployee1.getFirstName(), employee1.getFirstName());
+        verifyZeroInteractions(departmentService);
+    }
+
+    @Test
+    public void updateAll_EmployeeDeletedAfterDepartmentsChecked_NotFoundResult() {
+        Employee editedEmployee1 = new Employee(1, 2, "editedFirstName1", "lastName1", "title1");
+        when(employeeRepository.findAllById(Collections.singleton(1L)))
+                .thenReturn(Collections.singletonList(employee1), Collections.emptyList());
+        when(departmentService.exists(Collections.singleton(2L))).thenReturn(Collections.singletonMap(2L, true));
+        ResponseEntity<?> actualResponse = sut.updateAll(Collections.singletonList(editedEmployee1));
+        ResponseEntity<?> expectedResponse = ResponseEntity.ok(Collections.singletonList(
+                EmployeeBatchResult.failure(0, 404, "Employee Not Found")));
+        assertEquals(expectedResponse, actualResponse);
+        verify(employeeRepository, never()).flush();
+        verifyZeroInteractions(changeEventRepository);
     }
 
     @Test
     public void update_UpdateEmployee_OkResponseWithUpdatedEmployee() {
-        when(mockResponse.status()).thenReturn(200);
-        when(departmentClient.checkDepartment(employee2.getDepartmentId())).thenReturn(mockResponse);
-        when(employeeRepository.save(employee1)).thenReturn(employee1);
+        when(departmentService.exists(employee2.getDepartmentId())).thenReturn(true);
         when(employeeRepository.findById(employee1.getId())).thenReturn(Optional.of(employee1));
-        ResponseEntity<?> expectedResponse = ResponseEntity.ok(employee1);
+        employee1.setVersion(3);
+        Employee updatedEmployee = new Employee(employee1.getId(), employee2.getDepartmentId(),
+                employee2.getFirstName(), employee2.getLastName(), employee2.getTitle());
+        updatedEmployee.setVersion(4);
+        when(employeeRepository.updateFields(eq(employee1.getId()), eq(3L), anyMap())).thenReturn(Optional.of(updatedEmployee));
+        ResponseEntity<?> expectedResponse = ResponseEntity.ok(updatedEmployee);
         ResponseEntity<?> actualResponse = sut.update(employee1.getId(), employee2);
         assertEquals(expectedResponse, actualResponse);
-        assertEquals(employee1.getId(), ((Employee) Objects.requireNonNull(actualResponse.getBody())).getId());
-        assertEquals(employee2.getDepartmentId(), ((Employee) Objects.requireNonNull(actualResponse.getBody())).getDepartmentId());
-        assertEquals(employee2.getFirstName(), ((Employee) Objects.requireNonNull(actualResponse.getBody())).getFirstName());
-        assertEquals(employee2.getLastName(), ((Employee) Objects.requireNonNull(actualResponse.getBody())).getLastName());
-        assertEquals(employee2.getTitle(), ((Employee) Objects.requireNonNull(actualResponse.getBody())).getTitle());
-        verify(employeeRepository ).save(employee1);
+        assertEquals(4, ((Employee) Objects.requireNonNull(actualResponse.getBody())).getVersion());
+        ArgumentCaptor<Map<String, Object>> fields = ArgumentCaptor.forClass(Map.class);
+        verify(employeeRepository).updateFields(eq(employee1.getId()), eq(3L), fields.capture());
+        Map<String, Object> expectedFields = new LinkedHashMap<>();
+        expectedFields.put("departmentId", employee2.getDepartmentId());
+        expectedFields.put("firstName", employee2.getFirstName());
+        expectedFields.put("lastName", employee2.getLastName());
+        expectedFields.put("title", employee2.getTitle());
+        assertEquals(expectedFields, fields.getValue());
         verify(employeeRepository).findById(employee1.getId());
+        verify(employeeRepository, never()).save(any(Employee.class));
+        verify(employeeCounters).moved(1, "title1", employee2.getDepartmentId(), employee2.getTitle());
+        assertEquals(EmployeeChangeEvent.Type.UPDATED, savedEvents(1).get(0).getType());
+    }
+
+    @Test(expected = ObjectOptimisticLockingFailureException.class)
+    public void update_UpdateEmployeeChangedAfterRead_OptimisticLockingFailure() {
+        when(employeeRepository.findById(employee1.getId())).thenReturn(Optional.of(employee1));
+        when(employeeRepository.updateFields(eq(employee1.getId()), eq(0L), anyMap())).thenReturn(Optional.empty());
+        employee2.setDepartmentId(employee1.getDepartmentId());
+        sut.update(employee1.getId(), employee2);
     }
 
     @Test
     public void update_UpdateEmployeeWithWrongDepartment_NotFoundResponse() {
-        when(mockResponse.status()).thenReturn(400);
-        when(departmentClient.checkDepartment(employee2.getDepartmentId())).thenReturn(mockResponse);
+        when(departmentService.exists(employee2.getDepartmentId())).thenReturn(false);
         when(employeeRepository.findById(employee1.getId())).thenReturn(Optional.of(employee1));
         long employee1OriginId = employee1.getId();
         long employee1OriginDepartmentId = employee1.getDepartmentId();
@@ -113,7 +522,7 @@ public class EmployeeServiceTest {
         assertEquals(expectedResponse, actualResponse);
         assertEquals(employee1OriginId, employee1.getId());
         assertEquals(employee1OriginDepartmentId, employee1.getDepartmentId());
-        verify(employeeRepository, times(0)).save(any(Employee.class));
+        verify(employeeRepository, never()).updateFields(anyLong(), any(), anyMap());
         verify(employeeRepository).findById(employee1.getId());
     }
 
@@ -123,17 +532,81 @@ public class EmployeeServiceTest {
         ResponseEntity<?> expectedResponse = ResponseEntity.status(404).body("Employee Not Found");
         ResponseEntity<?> actualResponse = sut.update(employee1.getId(), employee2);
         assertEquals(expectedResponse, actualResponse);
-        verify(employeeRepository, times(0)).save(any(Employee.class));
+        assertEquals(1.0, meterRegistry.get(EmployeeService.REJECTED_METRIC)
+                .tag("reason", EmployeeService.EMPLOYEE_NOT_FOUND).counter().count(), 0.0);
+        verify(employeeRepository, never()).updateFields(anyLong(), any(), anyMap());
         verify(employeeRepository).findById(employee1.getId());
     }
 
     @Test
-    public void delete_DeleteEmployee_NoContentResponse() {
+    public void patch_PatchTitle_OneUpdateWithoutRead() {
+        Employee patchedEmployee = new Employee(employee1.getId(), employee1.getDepartmentId(),
+                employee1.getFirstName(), employee1.getLastName(), "title2");
+        when(employeeRepository.updateFields(employee1.getId(), null, Collections.singletonMap("title", "title2")))
+                .thenReturn(Optional.of(patchedEmployee));
+        ResponseEntity<?> actualResponse = sut.patch(employee1.getId(), Collections.singletonMap("title", "title2"));
+        assertEquals(ResponseEntity.ok(patchedEmployee), actualResponse);
+        verify(employeeRepository, never()).findById(anyLong());
+        verify(departmentService, never()).exists(anyLong());
+        verify(employeeCache).invalidate(employee1.getId());
+        verify(employeeCounters, never()).moved(anyLong(), any(), anyLong(), any());
+        assertEquals("title2", savedEvents(1).get(0).getTitle());
+    }
+
+    @Test
+    public void patch_PatchDepartmentWithInMemoryCounters_EmployeeReadForCounters() {
+        when(employeeCounters.isEnabled()).thenReturn(true);
+        when(departmentService.exists(2L)).thenReturn(true);
         when(employeeRepository.findById(employee1.getId())).thenReturn(Optional.of(employee1));
+        Employee patchedEmployee = new Employee(employee1.getId(), 2, employee1.getFirstName(),
+                employee1.getLastName(), employee1.getTitle());
+        when(employeeRepository.updateFields(employee1.getId(), null, Collections.singletonMap("departmentId", 2L)))
+                .thenReturn(Optional.of(patchedEmployee));
+        ResponseEntity<?> actualResponse = sut.patch(employee1.getId(), Collections.singletonMap("departmentId", 2));
+        assertEquals(ResponseEntity.ok(patchedEmployee), actualResponse);
+        verify(employeeCounters).moved(1, "title1", 2, "title1");
+    }
+
+    @Test
+    public void patch_PatchWrongDepartment_NotFoundResponse() {
+        when(departmentService.exists(5L)).thenReturn(false);
+        ResponseEntity<?> actualResponse = sut.patch(employee1.getId(), Collections.singletonMap("departmentId", 5));
+        assertEquals(ResponseEntity.status(400).body("Department with id 5 not found!"), actualResponse);
+        verify(employeeRepository, never()).updateFields(anyLong(), any(), anyMap());
+    }
+
+    @Test
+    public void patch_PatchVersionOrWrongType_BadRequestResponse() {
+        assertEquals(ResponseEntity.status(400).body("Fields must be of departmentId, firstName, lastName, title!"),
+                sut.patch(employee1.getId(), Collections.singletonMap("version", 7)));
+        assertEquals(ResponseEntity.status(400).body("Employee data is not valid!"),
+                sut.patch(employee1.getId(), Collections.singletonMap("departmentId", null)));
+        assertEquals(ResponseEntity.status(400).body("Employee data is not valid!"),
+                sut.patch(employee1.getId(), Collections.singletonMap("title", 7)));
+        verify(employeeRepository, never()).updateFields(anyLong(), any(), anyMap());
+    }
+
+    @Test
+    public void patch_PatchNonexistentEmployee_NotFoundResponse() {
+        when(employeeRepository.updateFields(anyLong(), any(), anyMap())).thenReturn(Optional.empty());
+        ResponseEntity<?> actualResponse = sut.patch(employee1.getId(), Collections.singletonMap("title", "title2"));
+        assertEquals(ResponseEntity.status(404).body("Employee Not Found"), actualResponse);
+        verify(changeEventRepository, never()).saveAll(any());
+    }
+
+    @Test
+    public void delete_DeleteEmployee_NoContentResponse() {
+        when(employeeRepository.deleteReturning(employee1.getId())).thenReturn(Optional.of(employee1));
         ResponseEntity<?> expectedResponse = ResponseEntity.status(204).build();
         ResponseEntity<?> actualResponse = sut.delete(employee1.getId());
         assertEquals(expectedResponse, actualResponse);
-        verify(employeeRepository).deleteById(employee1.getId());
+        verify(employeeRepository).deleteReturning(employee1.getId());
+        verify(employeeRepository, never()).findById(anyLong());
+        verify(employeeCache).invalidate(employee1.getId());
+        verify(employeeCounters).removed(employee1.getDepartmentId(), employee1.getTitle());
+        EmployeeChangeEvent event = savedEvents(1).get(0);
+        assertEquals(EmployeeChangeEvent.Type.DELETED, event.getType());
+        assertEquals(Long.valueOf(employee1.getId()), event.getEmployeeId());
     }
 
     @Test
@@ -141,7 +614,16 @@ public class EmployeeServiceTest {
         ResponseEntity<?> expectedResponse = ResponseEntity.status(204).build();
         ResponseEntity<?> actualResponse = sut.delete(null);
         assertEquals(expectedResponse, actualResponse);
-        verify(employeeRepository, times(0)).delete(any(Employee.class));
+        verify(employeeRepository, never()).deleteReturning(anyLong());
+    }
+
+    @Test
+    public void delete_DeleteNonexistentEmployee_NoContentResponseWithoutEvent() {
+        when(employeeRepository.deleteReturning(employee1.getId())).thenReturn(Optional.empty());
+        ResponseEntity<?> actualResponse = sut.delete(employee1.getId());
+        assertEquals(ResponseEntity.status(204).build(), actualResponse);
+        verify(changeEventRepository, never()).saveAll(any());
+        verify(employeeCounters, never()).removed(anyLong(), any());
     }
 
     @Test
@@ -149,17 +631,50 @@ public class EmployeeServiceTest {
         DepartmentsToReplaceDto departments = new DepartmentsToReplaceDto();
         departments.setOldDepartmentID(employee1.getDepartmentId());
         departments.setNewDepartmentID(employee2.getDepartmentId());
-        long employee1OriginDepartmentId = employee1.getDepartmentId();
-        when(employeeRepository.findByDepartmentId(employee1.getDepartmentId())).thenReturn(Collections.singletonList(employee1));
-        when(mockResponse.status()).thenReturn(200);
-        when(departmentClient.checkDepartment(employee2.getDepartmentId())).thenReturn(mockResponse);
+        when(employeeRepository.updateDepartmentId(employee1.getDepartmentId(), employee2.getDepartmentId())).thenReturn(1);
+        when(departmentService.exists(employee2.getDepartmentId())).thenReturn(true);
         ResponseEntity<?> expectedResponse = ResponseEntity.ok("1 employee(s) are affected");
         ResponseEntity<?> actualResponse = sut.replaceDepartmentId(departments);
         assertEquals(expectedResponse, actualResponse);
-        assertEquals(employee2.getDepartmentId(), employee1.getDepartmentId());
-        verify(employeeRepository).save(employee1);
-        verify(employeeRepository).findByDepartmentId(employee1OriginDepartmentId);
-        verify(departmentClient).checkDepartment(employee2.getDepartmentId());
+        verify(employeeRepository).updateDepartmentId(employee1.getDepartmentId(), employee2.getDepartmentId());
+        verify(departmentService).exists(employee2.getDepartmentId());
+        verify(employeeCache).invalidateDepartment(employee1.getDepartmentId());
+        verify(employeeCounters).departmentReplaced(employee1.getDepartmentId(), employee2.getDepartmentId());
+        verifyNoMoreInteractions(employeeRepository);
+    }
+
+    @Test
+    public void replaceDepartmentId_ReplaceDepartmentsByChunks_OkResponseWithTotalOfChunks() {
+        ReflectionTestUtils.setField(sut, "replaceDepartmentChunkSize", 2);
+        DepartmentsToReplaceDto departments = new DepartmentsToReplaceDto();
+        departments.setOldDepartmentID(employee1.getDepartmentId());
+        departments.setNewDepartmentID(employee2.getDepartmentId());
+        when(employeeRepository.updateDepartmentIdChunk(employee1.getDepartmentId(), employee2.getDepartmentId(), 2))
+                .thenReturn(2, 2, 1);
+        when(departmentService.exists(employee2.getDepartmentId())).thenReturn(true);
+        ResponseEntity<?> expectedResponse = ResponseEntity.ok("5 employee(s) are affected");
+        ResponseEntity<?> actualResponse = sut.replaceDepartmentId(departments);
+        assertEquals(expectedResponse, actualResponse);
+        verify(employeeRepository, times(3))
+                .updateDepartmentIdChunk(employee1.getDepartmentId(), employee2.getDepartmentId(), 2);
+        verifyNoMoreInteractions(employeeRepository);
+        for (EmployeeChangeEvent event : savedEvents(3)) {
+            assertEquals(EmployeeChangeEvent.Type.DEPARTMENT_REPLACED, event.getType());
+            assertEquals(Long.valueOf(employee1.getDepartmentId()), event.getOldDepartmentId());
+            assertEquals(employee2.getDepartmentId(), event.getDepartmentId());
+        }
+    }
+
+    @Test
+    public void replaceDepartmentId_ReplaceDepartmentWithItself_OkResponseWithoutUpdate() {
+        DepartmentsToReplaceDto departments = new DepartmentsToReplaceDto();
+        departments.setOldDepartmentID(employee1.getDepartmentId());
+        departments.setNewDepartmentID(employee1.getDepartmentId());
+        when(departmentService.exists(employee1.getDepartmentId())).thenReturn(true);
+        ResponseEntity<?> expectedResponse = ResponseEntity.ok("0 employee(s) are affected");
+        ResponseEntity<?> actualResponse = sut.replaceDepartmentId(departments);
+        assertEquals(expectedResponse, actualResponse);
+        verifyZeroInteractions(employeeRepository, changeEventRepository);
     }
 
     @Test
@@ -167,16 +682,11 @@ public class EmployeeServiceTest {
         DepartmentsToReplaceDto departments = new DepartmentsToReplaceDto();
         departments.setOldDepartmentID(employee1.getDepartmentId());
         departments.setNewDepartmentID(employee2.getDepartmentId());
-        long employee1OriginDepartmentId = employee1.getDepartmentId();
-        when(employeeRepository.findByDepartmentId(employee1.getDepartmentId())).thenReturn(Collections.singletonList(employee1));
-        when(mockResponse.status()).thenReturn(400);
-        when(departmentClient.checkDepartment(employee2.getDepartmentId())).thenReturn(mockResponse);
+        when(departmentService.exists(employee2.getDepartmentId())).thenReturn(false);
         ResponseEntity<?> expectedResponse = ResponseEntity.status(400).body("Department with id "+ employee2.getDepartmentId() + " not found!");
         ResponseEntity<?> actualResponse = sut.replaceDepartmentId(departments);
         assertEquals(expectedResponse, actualResponse);
-        assertEquals(employee1OriginDepartmentId, employee1.getDepartmentId());
-        verify(employeeRepository, times(0)).save(any(Employee.class));
-        verify(employeeRepository).findByDepartmentId(employee1.getDepartmentId());
-        verify(departmentClient).checkDepartment(employee2.getDepartmentId());
+        verifyZeroInteractions(employeeRepository);
+        verify(departmentService).exists(employee2.getDepartmentId());
     }
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package ru.xfneo.employeesmanagement.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeValidation;
+import ru.xfneo.employeesmanagement.repository.EmployeeValidationRepository;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+import static ru.xfneo.employeesmanagement.model.EmployeeValidation.Status.PENDING_VALIDATION;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EmployeeValidationServiceTest {
+    @Mock
+    private EmployeeValidationRepository repository;
+    @Mock
+    private EmployeeService employeeService;
+    @Mock
+    private DepartmentService departmentService;
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EmployeeValidationService sut;
+    private Employee employee;
+
+    @Before
+    public void setUp() {
+        sut = new EmployeeValidationService(repository, employeeService, departmentService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), meterRegistry, 2, 3, 1000, 86400);
+        employee = new Employee(0, 1, "firstName", "lastName", "title");
+    }
+
+    private static EmployeeValidation queued(long id, long departmentId) {
+        EmployeeValidation validation = new EmployeeValidation(new Employee(0, departmentId, "firstName", "lastName", "title"));
+        validation.setId(id);
+        return validation;
+    }
+
+    @Test
+    public void submit_QueueNotFull_EmployeeQueuedWithStatusLocation() {
+        when(repository.save(any(EmployeeValidation.class))).thenAnswer(invocation -> {
+            EmployeeValidation validation = invocation.getArgument(0);
+            validation.setId(7);
+            return validation;
+        });
+        ResponseEntity<?> response = sut.submit(employee);
+        assertEquals(202, response.getStatusCodeValue());
+        assertEquals("/api/employees/validations/7", response.getHeaders().getLocation().toString());
+        EmployeeValidation queued = (EmployeeValidation) response.getBody();
+        assertEquals(PENDING_VALIDATION, queued.getStatus());
+        assertEquals(1, queued.getDepartmentId());
+        assertEquals(1.0, meterRegistry.get(EmployeeValidationService.PENDING_METRIC).gauge().value(), 0.0);
+        verifyZeroInteractions(departmentService, employeeService);
+    }
+
+    @Test
+    public void submit_QueueFull_503WithRetryAfterAndNotQueued() {
+        when(repository.countByStatus(PENDING_VALIDATION)).thenReturn(3L);
+        when(repository.findByStatusOrderByIdAsc(PENDING_VALIDATION, PageRequest.of(0, 2)))
+                .thenReturn(Collections.emptyList());
+        sut.validatePending();
+        ResponseEntity<?> response = sut.submit(employee);
+        assertEquals(503, response.getStatusCodeValue());
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        verify(repository, never()).save(any());
+        assertEquals(1.0, meterRegistry.get(EmployeeService.REJECTED_METRIC)
+                .tag("reason", EmployeeValidationService.VALIDATION_QUEUE_FULL).counter().count(), 0.0);
+    }
+
+    @Test
+    public void validatePending_TwoBatches_DistinctDepartmentsCheckedByOneLookupPerBatchAndValidated() {
+        EmployeeValidation validation1 = queued(1, 1), validation2 = queued(2, 1), validation3 = queued(3, 2);
+        when(repository.countByStatus(PENDING_VALIDATION)).thenReturn(3L);
+        when(repository.findByStatusOrderByIdAsc(PENDING_VALIDATION, PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(validation1, validation2), Collections.singletonList(validation3));
+        when(departmentService.exists(Collections.singleton(1L))).thenReturn(Collections.singletonMap(1L, true));
+        when(departmentService.exists(Collections.singleton(2L))).thenReturn(Collections.singletonMap(2L, false));
+        when(employeeService.validate(anyCollection(), anyMap())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            Map<Long, Boolean> departmentsExistence = invocation.getArgument(1);
+            List<EmployeeValidation> validated = new ArrayList<>();
+            for (EmployeeValidation validation : Arrays.asList(validation1, validation2, validation3)) {
+                if (!ids.contains(validation.getId())) continue;
+                if (departmentsExistence.get(validation.getDepartmentId())) {
+                    validation.validated(new Employee(validation.getId() + 100, validation.getDepartmentId(), null, null, null));
+                } else {
+                    validation.rejected("Department not found");
+                }
+                validated.add(validation);
+            }
+            return validated;
+        });
+        assertEquals(3, sut.validatePending());
+        verify(departmentService, times(1)).exists(Collections.singleton(1L));
+        verify(departmentService, times(1)).exists(Collections.singleton(2L));
+        verify(employeeService).validate(Arrays.asList(1L, 2L), Collections.singletonMap(1L, true));
+        verify(employeeService).validate(Collections.singletonList(3L), Collections.singletonMap(2L, false));
+        assertEquals(2.0, meterRegistry.get(EmployeeValidationService.VALIDATED_METRIC)
+                .tag("status", "valid").counter().count(), 0.0);
+        assertEquals(1.0, meterRegistry.get(EmployeeValidationService.VALIDATED_METRIC)
+                .tag("status", "rejected").counter().count(), 0.0);
+        assertEquals(3, meterRegistry.get(EmployeeValidationService.LAG_METRIC).timer().count());
+        assertEquals(0.0, meterRegistry.get(EmployeeValidationService.PENDING_METRIC).gauge().value(), 0.0);
+    }
+
+    @Test
+    public void validatePending_DepartmentServiceUnavailable_BatchStaysPending() {
+        when(repository.countByStatus(PENDING_VALIDATION)).thenReturn(1L);
+        when(repository.findByStatusOrderByIdAsc(PENDING_VALIDATION, PageRequest.of(0, 2)))
+                .thenReturn(Collections.singletonList(queued(1, 1)));
+        when(departmentService.exists(Collections.singleton(1L))).thenThrow(new DepartmentServiceUnavailableException("Departments service is unavailable"));
+        assertEquals(0, sut.validatePending());
+        verify(employeeService, never()).validate(anyCollection(), anyMap());
+        assertEquals(1.0, meterRegistry.get(EmployeeValidationService.DEFERRED_METRIC).counter().count(), 0.0);
+        assertEquals(1.0, meterRegistry.get(EmployeeValidationService.PENDING_METRIC).gauge().value(), 0.0);
+    }
+
+    @Test
+    public void find_UnknownValidation_404() {
+        when(repository.findById(1L)).thenReturn(Optional.empty());
+        ResponseEntity<?> response = sut.find(1L);
+        assertEquals(404, response.getStatusCodeValue());
+        assertEquals("Validation Not Found", response.getBody());
+    }
+
+    @Test
+    public void respondAsync_PreferHeader_RespondAsyncAmongPreferences() {
+        assertTrue(EmployeeValidationService.respondAsync("respond-async"));
+        assertTrue(EmployeeValidationService.respondAsync("return=minimal, Respond-Async; wait=10"));
+        assertFalse(EmployeeValidationService.respondAsync("return=representation"));
+        assertFalse(EmployeeValidationService.respondAsync(null));
+    }
+}
@@ -0,0 +1,38 @@
+package ru.xfneo.employeesmanagement.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FileEmployeeChangePublisherTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void publish_PublishTwoBatches_OneJsonLinePerEventAppended() throws Exception {
+        File file = new File(folder.getRoot(), "changes.ndjson");
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        FileEmployeeChangePublisher sut = new FileEmployeeChangePublisher(file.getPath(), objectMapper);
+        EmployeeChangeEvent created = EmployeeChangeEvent.created(new Employee(1, 1, "firstName", "lastName", "title"));
+        created.setId(1);
+        EmployeeChangeEvent deleted = EmployeeChangeEvent.deleted(new Employee(1, 1, "firstName", "lastName", "title"));
+        deleted.setId(2);
+        sut.publish(Collections.singletonList(created));
+        sut.publish(Collections.singletonList(deleted));
+        List<String> lines = Files.readAllLines(file.toPath());
+        assertEquals(2, lines.size());
+        assertEquals(created.getFirstName(), objectMapper.readValue(lines.get(0), EmployeeChangeEvent.class).getFirstName());
+        assertEquals(EmployeeChangeEvent.Type.DELETED, objectMapper.readValue(lines.get(1), EmployeeChangeEvent.class).getType());
+    }
+}
@@ -0,0 +1,224 @@
+package ru.xfneo.employeesmanagement.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.xfneo.employeesmanagement.model.Employee;
+import ru.xfneo.employeesmanagement.model.IdempotencyRecord;
+import ru.xfneo.employeesmanagement.repository.IdempotencyRecordRepository;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IdempotencyServiceTest {
+    private static final String KEY = "key1";
+
+    @Mock
+    private IdempotencyRecordRepository repository;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private IdempotencyService sut;
+    private Employee employee1;
+    private AtomicInteger writes;
+    private Supplier<ResponseEntity<?>> create;
+
+    @Before
+    public void setUp() {
+        sut = new IdempotencyService(repository, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                objectMapper, meterRegistry, 100, 3600, 60000);
+        employee1 = new Employee(1, 1, "firstName1", "lastName1", "title1");
+        writes = new AtomicInteger();
+        create = () -> {
+            writes.incrementAndGet();
+            return ResponseEntity.status(201).body(employee1);
+        };
+    }
+
+    @Test
+    public void execute_NoKey_WriteExecutedWithoutStoring() {
+        ResponseEntity<?> response = sut.execute(null, "create", employee1, create);
+        assertEquals(201, response.getStatusCodeValue());
+        assertEquals(1, writes.get());
+        verify(repository, never()).insertClaim(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void execute_FirstRequest_KeyClaimedAndResponseStored() {
+        ResponseEntity<?> response = sut.execute(KEY, "create", employee1, create);
+        assertEquals(employee1, response.getBody());
+        assertEquals(1, writes.get());
+        ArgumentCaptor<Instant> claimedAt = ArgumentCaptor.forClass(Instant.class);
+        verify(repository).insertClaim(eq(KEY), eq(sut.fingerprint("create", employee1)), claimedAt.capture());
+        verify(repository).completeClaim(eq(KEY), eq(sut.fingerprint("create", employee1)), eq(claimedAt.getValue()),
+                eq(201), eq(true), anyString(), any(), any());
+    }
+
+    @Test
+    public void execute_Retry_StoredResponseReplayedWithoutWrite() throws Exception {
+        claimCompleted();
+        sut.execute(KEY, "create", employee1, create);
+        ResponseEntity<?> replayed = sut.execute(KEY, "create", employee1, create);
+        assertEquals(1, writes.get());
+        assertEquals(201, replayed.getStatusCodeValue());
+        assertEquals("true", replayed.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(employee1)), replayed.getBody());
+        assertEquals(1, meterRegistry.counter(IdempotencyService.REPLAYED_METRIC).count(), 0);
+    }
+
+    @Test
+    public void execute_RetryOnAnotherInstance_ResponseReplayedFromDatabase() {
+        when(repository.findById(KEY)).thenReturn(Optional.of(new IdempotencyRecord(KEY, sut.fingerprint("create", employee1),
+                400, false, "Department with id 1 not found!", null, Instant.now())));
+        ResponseEntity<?> replayed = sut.execute(KEY, "create", employee1, create);
+        assertEquals(0, writes.get());
+        assertEquals(400, replayed.getStatusCodeValue());
+        assertEquals("Department with id 1 not found!", replayed.getBody());
+    }
+
+    @Test
+    public void execute_RetryOfAsyncCreate_LocationReplayed() {
+        claimCompleted();
+        URI location = URI.create(EmployeeValidationService.VALIDATIONS_PATH + 1);
+        Supplier<ResponseEntity<?>> submit = () -> {
+            writes.incrementAndGet();
+            return ResponseEntity.accepted().location(location).body(employee1);
+        };
+        sut.execute(KEY, "create async", employee1, submit);
+        ResponseEntity<?> replayed = sut.execute(KEY, "create async", employee1, submit);
+        assertEquals(1, writes.get());
+        assertEquals(202, replayed.getStatusCodeValue());
+        assertEquals(location, replayed.getHeaders().getLocation());
+    }
+
+    @Test
+    public void execute_RetryOfAsyncCreateOnAnotherInstance_LocationReplayedFromDatabase() {
+        when(repository.findById(KEY)).thenReturn(Optional.of(new IdempotencyRecord(KEY,
+                sut.fingerprint("create async", employee1), 202, false, null,
+                "{\"Location\":[\"/api/employees/validations/1\"]}", Instant.now())));
+        ResponseEntity<?> replayed = sut.execute(KEY, "create async", employee1, create);
+        assertEquals(0, writes.get());
+        assertEquals(URI.create("/api/employees/validations/1"), replayed.getHeaders().getLocation());
+    }
+
+    @Test
+    public void execute_KeyReusedForAnotherRequest_UnprocessableEntityResponse() {
+        claimCompleted();
+        sut.execute(KEY, "create", employee1, create);
+        ResponseEntity<?> response = sut.execute(KEY, "update 1", employee1, create);
+        assertEquals(422, response.getStatusCodeValue());
+        assertEquals("Idempotency-Key is already used for another request!", response.getBody());
+        assertEquals(1, writes.get());
+    }
+
+    @Test
+    public void execute_FirstRequestInProgress_ConflictResponse() {
+        when(repository.insertClaim(eq(KEY), anyString(), any())).thenThrow(new DataIntegrityViolationException("duplicate key"));
+        when(repository.findById(KEY)).thenReturn(Optional.empty()).thenAnswer(invocation -> Optional.of(
+                new IdempotencyRecord(KEY, sut.fingerprint("create", employee1), 0, false, null, null, Instant.now())));
+        ResponseEntity<?> response = sut.execute(KEY, "create", employee1, create);
+        assertEquals(409, response.getStatusCodeValue());
+        assertEquals(0, writes.get());
+    }
+
+    @Test
+    public void execute_AbandonedClaim_KeyReclaimedAndWriteExecuted() {
+        IdempotencyRecord abandoned = new IdempotencyRecord(KEY, sut.fingerprint("create", employee1), 0, false, null, null,
+                Instant.now().minusSeconds(61));
+        when(repository.findById(KEY)).thenReturn(Optional.of(abandoned));
+        when(repository.deleteRecord(KEY, 0, abandoned.getFingerprint(), abandoned.getCreatedAt())).thenReturn(1);
+        ResponseEntity<?> response = sut.execute(KEY, "create", employee1, create);
+        assertEquals(201, response.getStatusCodeValue());
+        assertEquals(1, writes.get());
+        verify(repository).insertClaim(eq(KEY), anyString(), any());
+    }
+
+    @Test
+    public void execute_AbandonedClaimTakenOverConcurrently_ConflictResponse() {
+        IdempotencyRecord abandoned = new IdempotencyRecord(KEY, sut.fingerprint("create", employee1), 0, false, null, null,
+                Instant.now().minusSeconds(61));
+        when(repository.findById(KEY)).thenReturn(Optional.of(abandoned), Optional.of(new IdempotencyRecord(KEY,
+                abandoned.getFingerprint(), 0, false, null, null, Instant.now())));
+        ResponseEntity<?> response = sut.execute(KEY, "create", employee1, create);
+        assertEquals(409, response.getStatusCodeValue());
+        assertEquals(0, writes.get());
+        verify(repository, never()).insertClaim(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void execute_ClaimTakenOverBeforeCompleted_ResponseNotCached() {
+        sut.execute(KEY, "create", employee1, create);
+        sut.execute(KEY, "create", employee1, create);
+        assertEquals(2, writes.get());
+    }
+
+    @Test
+    public void execute_WriteFails_KeyReleased() {
+        try {
+            sut.execute(KEY, "create", employee1, () -> {
+                throw new DepartmentServiceUnavailableException("timeout");
+            });
+        } catch (DepartmentServiceUnavailableException expected) {
+            verify(repository).deleteRecord(eq(KEY), eq(0), anyString(), any());
+            verifyNotCompleted();
+            return;
+        }
+        throw new AssertionError("Exception of the write is not rethrown");
+    }
+
+    @Test
+    public void execute_ServerErrorResponse_KeyReleased() {
+        ResponseEntity<?> response = sut.execute(KEY, "create", employee1, () -> ResponseEntity.status(503).build());
+        assertEquals(503, response.getStatusCodeValue());
+        verify(repository).deleteRecord(eq(KEY), eq(0), anyString(), any());
+        verifyNotCompleted();
+    }
+
+    @Test
+    public void begin_KeyTooLong_BadRequestResponse() {
+        ResponseEntity<?> response = sut.begin(String.join("", Collections.nCopies(256, "k")), "create", employee1);
+        assertEquals(400, response.getStatusCodeValue());
+        verify(repository, never()).insertClaim(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void begin_NoKey_WriteMustBeExecuted() {
+        assertNull(sut.begin(null, "create", employee1));
+        assertFalse(meterRegistry.getMeters().stream()
+                .anyMatch(meter -> meter.getId().getName().equals(EmployeeService.REJECTED_METRIC)));
+    }
+
+    private void claimCompleted() {
+        when(repository.completeClaim(eq(KEY), anyString(), any(), anyInt(), anyBoolean(), any(), any(), any())).thenReturn(1);
+    }
+
+    private void verifyNotCompleted() {
+        verify(repository, never()).completeClaim(anyString(), anyString(), any(), anyInt(), anyBoolean(), any(), any(), any());
+    }
+}
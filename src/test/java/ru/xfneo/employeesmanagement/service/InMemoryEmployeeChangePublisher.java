@@ -0,0 +1,31 @@
+package ru.xfneo.employeesmanagement.service;
+
+import ru.xfneo.employeesmanagement.model.EmployeeChangeEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects published change events, or fails the next "failures" batches.
+ */
+public class InMemoryEmployeeChangePublisher implements EmployeeChangePublisher {
+    private final List<EmployeeChangeEvent> published = new ArrayList<>();
+    private int failures;
+
+    public synchronized void failNext(int batches) {
+        failures = batches;
+    }
+
+    @Override
+    public synchronized void publish(List<EmployeeChangeEvent> events) {
+        if (failures > 0) {
+            failures--;
+            throw new IllegalStateException("Publisher is unavailable");
+        }
+        published.addAll(events);
+    }
+
+    public synchronized List<EmployeeChangeEvent> published() {
+        return new ArrayList<>(published);
+    }
+}